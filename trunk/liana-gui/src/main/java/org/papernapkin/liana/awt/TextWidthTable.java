@@ -0,0 +1,219 @@
+package org.papernapkin.liana.awt;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.papernapkin.liana.util.TextSegmenter;
+
+/**
+ * Measures and wraps text by its display width in a font.  The advance
+ * widths of the first 256 characters are read from the FontMetrics once;
+ * those of other characters are looked up the first time they are needed,
+ * a page of 256 characters at a time, and kept.  Measuring a string is then
+ * a table lookup per character.
+ *
+ * <p>
+ * The width of a text is the sum of the advances of its characters, which
+ * is what {@link FontMetrics#charsWidth(char[], int, int)} gives for text
+ * without kerning or complex shaping.
+ * </p>
+ *
+ * <p>
+ * Tables are cached per font and rendering context, and are safe to use from
+ * several threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class TextWidthTable
+{
+	/** The number of tables kept, the least recently used being dropped. */
+	private static final int MAX_CACHED = 32;
+
+	private static final int PAGE_SIZE = 256;
+
+	private static final Map<List<Object>, TextWidthTable> cache =
+		new LinkedHashMap<List<Object>, TextWidthTable>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, TextWidthTable> eldest) {
+				return size() > MAX_CACHED;
+			}
+		};
+
+	private final FontMetrics metrics;
+	/** The widths of the first page of characters. */
+	private final int[] latin;
+	/** The widths of the other pages of the basic multilingual plane. */
+	private final AtomicReferenceArray<int[]> pages;
+	private final int spaceWidth;
+
+	private TextWidthTable(FontMetrics metrics)
+	{
+		super();
+		this.metrics = metrics;
+		int[] widths = metrics.getWidths();
+		this.latin = widths.length >= PAGE_SIZE ? widths : loadPage(metrics, 0);
+		this.pages = new AtomicReferenceArray<int[]>((Character.MAX_VALUE + 1) / PAGE_SIZE);
+		this.spaceWidth = latin[' '];
+	}
+
+	/**
+	 * Gets the table for the font and rendering context of the metrics, as
+	 * given by a component or a Graphics.
+	 * @param metrics The metrics of the font.
+	 * @return The table.
+	 */
+	public static TextWidthTable getInstance(FontMetrics metrics)
+	{
+		List<Object> key = Arrays.<Object>asList(metrics.getFont(), metrics.getFontRenderContext());
+		synchronized (cache) {
+			TextWidthTable table = cache.get(key);
+			if (table == null) {
+				table = new TextWidthTable(metrics);
+				cache.put(key, table);
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Gets the table for the font in the default rendering context of an
+	 * image, which does not need a display.
+	 * @param font The font.
+	 * @return The table.
+	 */
+	public static TextWidthTable getInstance(Font font)
+	{
+		Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		try {
+			return getInstance(g.getFontMetrics(font));
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/** The metrics from which the widths are read. */
+	public FontMetrics getFontMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * The advance width of a character.
+	 * @param codePoint The code point of the character.
+	 * @return The width in pixels.
+	 */
+	public int charWidth(int codePoint)
+	{
+		if (codePoint < PAGE_SIZE && codePoint >= 0) {
+			return latin[codePoint];
+		}
+		if (codePoint > Character.MAX_VALUE) {
+			return metrics.charWidth(codePoint);
+		}
+		int p = codePoint / PAGE_SIZE;
+		int[] page = pages.get(p);
+		if (page == null) {
+			// Two threads may load the same page; they load the same widths
+			page = loadPage(metrics, p);
+			pages.set(p, page);
+		}
+		return page[codePoint % PAGE_SIZE];
+	}
+
+	/**
+	 * The width of a range of text.
+	 * @param text The text.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The width in pixels.
+	 */
+	public int width(CharSequence text, int start, int end)
+	{
+		int width = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < PAGE_SIZE) {
+				width += latin[c];
+			} else if (Character.isHighSurrogate(c) && i + 1 < end &&
+					Character.isLowSurrogate(text.charAt(i + 1))) {
+				width += charWidth(Character.toCodePoint(c, text.charAt(++i)));
+			} else {
+				width += charWidth(c);
+			}
+		}
+		return width;
+	}
+
+	/**
+	 * The width of a text.
+	 * @param text The text.
+	 * @return The width in pixels.
+	 */
+	public int width(CharSequence text)
+	{
+		return width(text, 0, text.length());
+	}
+
+	/**
+	 * Wraps text so that lines are no wider than the maximum width.  Words are
+	 * separated by whitespace; each line holds as many words as fit, separated
+	 * by single spaces.  A word wider than the maximum is put on a line of its
+	 * own rather than broken.
+	 * @param text The text to wrap.
+	 * @param maxWidth The maximum width of a line in pixels.
+	 * @return The wrapped text, with lines separated by newlines.
+	 */
+	public String wrap(String text, int maxWidth)
+	{
+		return wrap(text, maxWidth, new StringBuilder(text.length() + 16)).toString();
+	}
+
+	/**
+	 * Wraps text so that lines are no wider than the maximum width.
+	 * @param text The text to wrap.
+	 * @param maxWidth The maximum width of a line in pixels.
+	 * @param sb The builder to which the wrapped text is appended.
+	 * @return The builder.
+	 * @see #wrap(String, int)
+	 */
+	public StringBuilder wrap(final CharSequence text, final int maxWidth, final StringBuilder sb)
+	{
+		// The width of the current line, or -1 before the first word
+		final int[] lineWidth = { -1 };
+		TextSegmenter.words(text, new TextSegmenter.RangeHandler() {
+			public void range(int start, int end) {
+				int w = width(text, start, end);
+				if (lineWidth[0] < 0) {
+					lineWidth[0] = w;
+				} else if (lineWidth[0] + spaceWidth + w <= maxWidth) {
+					sb.append(' ');
+					lineWidth[0] += spaceWidth + w;
+				} else {
+					sb.append('\n');
+					lineWidth[0] = w;
+				}
+				sb.append(text, start, end);
+			}
+		});
+		return sb;
+	}
+
+	private static int[] loadPage(FontMetrics metrics, int page)
+	{
+		int[] widths = new int[PAGE_SIZE];
+		int base = page * PAGE_SIZE;
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			widths[i] = metrics.charWidth((char)(base + i));
+		}
+		return widths;
+	}
+}
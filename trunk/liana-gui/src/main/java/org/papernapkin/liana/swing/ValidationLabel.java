@@ -1,11 +1,15 @@
 package org.papernapkin.liana.swing;
 
+import java.awt.Font;
+
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.UIManager;
 
+import org.papernapkin.liana.awt.TextWidthTable;
 import org.papernapkin.liana.bean.IValidator;
+import org.papernapkin.liana.util.StringUtil;
 
 /**
  * A label which can be used to show the status of validated data.
@@ -34,6 +38,8 @@ public class ValidationLabel extends JLabel
 	private static final ImageIcon errorIcon = new ImageIcon(ValidationLabel.class.getClassLoader().getResource(ERROR_IMAGE_PATH));
 	private static final ImageIcon requiredIcon = new ImageIcon(ValidationLabel.class.getClassLoader().getResource(REQUIRED_IMAGE_PATH));
 	private static final ImageIcon validIcon = new ImageIcon(ValidationLabel.class.getClassLoader().getResource(VALID_IMAGE_PATH));
+	/** The widest a line of validation error text may be, in pixels. */
+	private static final int TOOLTIP_WIDTH = 300;
 	
 	private boolean required = false;
 	private boolean errorFeedbackUsed = false;
@@ -184,9 +190,28 @@ public class ValidationLabel extends JLabel
 	public void setValidationStatus(ValidationStatus status, String validationErrorText)
 	{
 		this.status = status;
-		setToolTipText(validationErrorText);
+		setToolTipText(wrapToolTipText(validationErrorText));
 		evaluateStatus();
 	}
+
+	/**
+	 * Tool tips show plain text on a single line, so long validation error
+	 * text is wrapped to TOOLTIP_WIDTH in the tool tip font and shown as
+	 * HTML.  Text which is already HTML is left alone.
+	 */
+	static String wrapToolTipText(String text)
+	{
+		Font font = UIManager.getFont("ToolTip.font");
+		if (text == null || font == null || text.startsWith("<html>")) {
+			return text;
+		}
+		TextWidthTable widths = TextWidthTable.getInstance(font);
+		if (widths.width(text) <= TOOLTIP_WIDTH) {
+			return text;
+		}
+		String wrapped = StringUtil.replaceHTMLEntities(widths.wrap(text, TOOLTIP_WIDTH));
+		return "<html>" + wrapped.replace("\n", "<br>") + "</html>";
+	}
 	
 	/**
 	 * Sets the status of validation based on whether an error message was
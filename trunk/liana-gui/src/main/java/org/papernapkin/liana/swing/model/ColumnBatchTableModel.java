@@ -0,0 +1,81 @@
+package org.papernapkin.liana.swing.model;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.papernapkin.liana.util.ColumnBatch;
+
+/**
+ * A read-only table model which displays a ColumnBatch.  Objects are created
+ * only for the cells being displayed, so a model over a large batch costs no
+ * more than the batch's vectors.  The columns are named with the batch's
+ * column names.
+ *
+ * <p>If the batch is changed, call {@link #fireTableDataChanged()} or one of
+ * the other fire methods so that the table is repainted.
+ *
+ * @author pchapman
+ */
+@SuppressWarnings("serial")
+public class ColumnBatchTableModel extends AbstractTableModel
+{
+	private ColumnBatch batch;
+
+	/**
+	 * Creates a model which displays the given batch.
+	 * @param batch The batch.
+	 */
+	public ColumnBatchTableModel(ColumnBatch batch)
+	{
+		super();
+		this.batch = batch;
+	}
+
+	/** Returns the displayed batch. */
+	public ColumnBatch getColumnBatch()
+	{
+		return batch;
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnClass(int)
+	 */
+	@Override
+	public Class<?> getColumnClass(int column)
+	{
+		return batch.getValueClass(column);
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnCount()
+	 */
+	public int getColumnCount()
+	{
+		return batch.getColumnCount();
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnName(int)
+	 */
+	@Override
+	public String getColumnName(int column)
+	{
+		String name = batch.getName(column);
+		return name == null ? super.getColumnName(column) : name;
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getRowCount()
+	 */
+	public int getRowCount()
+	{
+		return batch.size();
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getValueAt(int, int)
+	 */
+	public Object getValueAt(int row, int column)
+	{
+		return batch.getValue(row, column);
+	}
+}
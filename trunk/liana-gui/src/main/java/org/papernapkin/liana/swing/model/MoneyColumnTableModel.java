@@ -0,0 +1,93 @@
+package org.papernapkin.liana.swing.model;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.papernapkin.liana.util.Money;
+import org.papernapkin.liana.util.MoneyColumn;
+
+/**
+ * A read-only table model which displays one or more MoneyColumns side by
+ * side.  Money objects are created only for the cells being displayed, so
+ * a model over millions of rows costs no more than the columns themselves.
+ * If the columns differ in size, the missing cells of the shorter columns are
+ * shown as null.
+ *
+ * <p>If a column is changed, call {@link #fireTableDataChanged()} or one of
+ * the other fire methods so that the table is repainted.
+ *
+ * @author pchapman
+ */
+@SuppressWarnings("serial")
+public class MoneyColumnTableModel extends AbstractTableModel
+{
+	private String[] names;
+	private MoneyColumn[] columns;
+
+	/**
+	 * Creates a model which displays the given columns.
+	 * @param names The column names.
+	 * @param columns The columns, in the same order as the names.
+	 */
+	public MoneyColumnTableModel(String[] names, MoneyColumn[] columns)
+	{
+		super();
+		if (names.length != columns.length) {
+			throw new IllegalArgumentException("There must be a name for each column");
+		}
+		this.names = names.clone();
+		this.columns = columns.clone();
+	}
+
+	/** Returns the MoneyColumn displayed in the given column. */
+	public MoneyColumn getMoneyColumn(int column)
+	{
+		return columns[column];
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnClass(int)
+	 */
+	@Override
+	public Class<?> getColumnClass(int column)
+	{
+		return Money.class;
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnCount()
+	 */
+	public int getColumnCount()
+	{
+		return columns.length;
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getColumnName(int)
+	 */
+	@Override
+	public String getColumnName(int column)
+	{
+		return names[column];
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getRowCount()
+	 */
+	public int getRowCount()
+	{
+		int rows = 0;
+		for (MoneyColumn c : columns) {
+			rows = Math.max(rows, c.size());
+		}
+		return rows;
+	}
+
+	/**
+	 * @see javax.swing.table.TableModel#getValueAt(int, int)
+	 */
+	public Object getValueAt(int row, int column)
+	{
+		MoneyColumn c = columns[column];
+		return row < c.size() ? c.getMoney(row) : null;
+	}
+}
@@ -0,0 +1,434 @@
+package org.papernapkin.liana.swing.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.papernapkin.liana.util.SearchQuery;
+import org.papernapkin.liana.util.TextSegmenter;
+
+/**
+ * An inverted index of the values displayed by a table model, which finds
+ * the rows matching a {@link SearchQuery} without scanning every value.
+ * Each value is rendered as a string and broken into terms, and the index
+ * records the rows in which each term occurs.  A search looks up the terms
+ * which contain each word of the query and intersects their rows; only when
+ * the query has quoted phrases are the candidate rows' values checked.
+ *
+ * <p>
+ * The index listens to the model and updates itself from the model's
+ * events, re-rendering only the rows which were inserted or updated.  An
+ * event for all rows, or a change of structure, rebuilds the index.  Like
+ * the model, the index is not synchronized and should only be used on the
+ * EDT.  Call {@link #dispose()} to stop listening once the index is no longer
+ * needed.
+ * </p>
+ *
+ * <p>
+ * Searches made while typing into a filter field usually extend the previous
+ * search; the terms matched by recent words are kept so that each longer
+ * word is matched against them rather than against every term.
+ * </p>
+ *
+ * @param <T> The type of objects referenced by the model.
+ *
+ * @author pchapman
+ */
+public class TableModelSearchIndex<T> implements TableModelListener
+{
+	/** Renders the values of the model as the strings which are searched. */
+	public interface ValueRenderer
+	{
+		/**
+		 * Renders a value.
+		 * @param value The value, which may be null.
+		 * @param row The row of the value.
+		 * @param column The column of the value.
+		 * @return The displayed text, or null if there is none.
+		 */
+		String render(Object value, int row, int column);
+	}
+
+	/** Renders values with their toString() method. */
+	public static final ValueRenderer TO_STRING_RENDERER = new ValueRenderer() {
+		public String render(Object value, int row, int column) {
+			return value == null ? null : value.toString();
+		}
+	};
+
+	/** The number of words whose matching terms are kept. */
+	private static final int MAX_CACHED_WORDS = 64;
+
+	/** The ids of the rows in which a term occurs, in no particular order. */
+	private static class Postings
+	{
+		int[] ids = new int[4];
+		int size;
+
+		void add(int id)
+		{
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		void remove(int id)
+		{
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					ids[i] = ids[--size];
+					return;
+				}
+			}
+		}
+	}
+
+	private final GenericTableModel<T> model;
+	private final ValueRenderer renderer;
+
+	private final Map<String, Postings> index = new HashMap<String, Postings>();
+	/** The terms matched by recently searched words. */
+	private final Map<String, String[]> matchCache = new HashMap<String, String[]>();
+
+	/**
+	 * Each row is indexed under an id, so that inserting and deleting rows
+	 * does not renumber the postings.
+	 */
+	private int[] idOfRow = new int[0];
+	private int rowCount;
+	/** The terms of each id, or null if the id is free. */
+	private String[][] termsOfId = new String[0][];
+	private int[] freeIds = new int[0];
+	private int freeCount;
+	private int idLimit;
+	/** The number of terms matched so far by each id during a search. */
+	private int[] marks = new int[0];
+
+	/**
+	 * Creates an index of the model's values as given by their toString()
+	 * methods.
+	 * @param model The model to index.
+	 */
+	public TableModelSearchIndex(GenericTableModel<T> model)
+	{
+		this(model, TO_STRING_RENDERER);
+	}
+
+	/**
+	 * Creates an index of the model's values.
+	 * @param model The model to index.
+	 * @param renderer Renders the values as they are displayed.
+	 */
+	public TableModelSearchIndex(GenericTableModel<T> model, ValueRenderer renderer)
+	{
+		super();
+		this.model = model;
+		this.renderer = renderer;
+		rebuild();
+		model.addTableModelListener(this);
+	}
+
+	// ACCESSORS
+
+	/** The indexed model. */
+	public GenericTableModel<T> getModel()
+	{
+		return model;
+	}
+
+	/** The number of distinct terms in the index. */
+	public int getTermCount()
+	{
+		return index.size();
+	}
+
+	// SEARCHING
+
+	/**
+	 * Finds the rows matching a search string.
+	 * @param query The search string.
+	 * @return The matching rows in ascending order.
+	 * @see SearchQuery#compile(String)
+	 */
+	public int[] search(String query)
+	{
+		return search(SearchQuery.compile(query));
+	}
+
+	/**
+	 * Finds the rows matching a query: those in whose values every phrase of
+	 * the query is found, ignoring case.
+	 * @param query The query.
+	 * @return The matching rows in ascending order.
+	 */
+	public int[] search(SearchQuery query)
+	{
+		int[] rows = new int[rowCount];
+		int n = 0;
+		List<String> terms = query.getTerms();
+		if (terms.isEmpty()) {
+			for (int row = 0; row < rowCount; row++) {
+				rows[row] = row;
+			}
+			n = rowCount;
+		} else {
+			// An id matches the first k terms if its mark is k
+			if (marks.length < idLimit) {
+				marks = new int[termsOfId.length];
+			} else {
+				Arrays.fill(marks, 0, idLimit, 0);
+			}
+			for (int k = 0; k < terms.size(); k++) {
+				for (String term : matchingTerms(terms.get(k))) {
+					Postings p = index.get(term);
+					for (int i = 0; i < p.size; i++) {
+						int id = p.ids[i];
+						if (marks[id] == k) {
+							marks[id] = k + 1;
+						}
+					}
+				}
+			}
+			int all = terms.size();
+			for (int row = 0; row < rowCount; row++) {
+				if (marks[idOfRow[row]] == all) {
+					rows[n++] = row;
+				}
+			}
+		}
+		if (!query.isTermsOnly()) {
+			// Quoted phrases must be found in the values themselves
+			int m = 0;
+			for (int i = 0; i < n; i++) {
+				if (query.matches(render(rows[i]))) {
+					rows[m++] = rows[i];
+				}
+			}
+			n = m;
+		}
+		return n == rows.length ? rows : Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Finds the objects of the rows matching a query.
+	 * @param query The query.
+	 * @return The objects of the matching rows, in row order.
+	 */
+	public List<T> searchObjects(SearchQuery query)
+	{
+		int[] rows = search(query);
+		List<T> objects = new ArrayList<T>(rows.length);
+		for (int row : rows) {
+			objects.add(model.getObjectAt(row));
+		}
+		return objects;
+	}
+
+	// MAINTENANCE
+
+	/**
+	 * Discards the index and indexes every row of the model again.
+	 */
+	public void rebuild()
+	{
+		index.clear();
+		matchCache.clear();
+		rowCount = 0;
+		idLimit = 0;
+		freeCount = 0;
+		int rows = model.getRowCount();
+		idOfRow = new int[Math.max(rows, 16)];
+		termsOfId = new String[idOfRow.length][];
+		freeIds = new int[0];
+		insertRows(0, rows - 1);
+	}
+
+	/**
+	 * Stops listening to the model.  The index is no longer updated.
+	 */
+	public void dispose()
+	{
+		model.removeTableModelListener(this);
+	}
+
+	/**
+	 * Updates the index from a change to the model.
+	 * @see javax.swing.event.TableModelListener#tableChanged(javax.swing.event.TableModelEvent)
+	 */
+	public void tableChanged(TableModelEvent e)
+	{
+		int first = e.getFirstRow();
+		int last = e.getLastRow();
+		if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE) {
+			rebuild();
+			return;
+		}
+		matchCache.clear();
+		switch (e.getType()) {
+			case TableModelEvent.INSERT:
+				insertRows(first, last);
+				break;
+			case TableModelEvent.DELETE:
+				deleteRows(first, last);
+				break;
+			default:
+				for (int row = first; row <= last && row < rowCount; row++) {
+					int id = idOfRow[row];
+					unindex(id);
+					index(row, id);
+				}
+				break;
+		}
+		if (rowCount != model.getRowCount()) {
+			// The events did not describe the change; start over
+			rebuild();
+		}
+	}
+
+	private void insertRows(int first, int last)
+	{
+		int count = last - first + 1;
+		if (count <= 0) {
+			return;
+		}
+		if (first > rowCount) {
+			first = rowCount;
+		}
+		if (rowCount + count > idOfRow.length) {
+			idOfRow = Arrays.copyOf(idOfRow, Math.max(rowCount + count, idOfRow.length * 2));
+		}
+		System.arraycopy(idOfRow, first, idOfRow, first + count, rowCount - first);
+		rowCount += count;
+		for (int row = first; row < first + count; row++) {
+			int id = allocateId();
+			idOfRow[row] = id;
+			index(row, id);
+		}
+	}
+
+	private void deleteRows(int first, int last)
+	{
+		last = Math.min(last, rowCount - 1);
+		int count = last - first + 1;
+		if (count <= 0) {
+			return;
+		}
+		for (int row = first; row <= last; row++) {
+			int id = idOfRow[row];
+			unindex(id);
+			if (freeCount == freeIds.length) {
+				freeIds = Arrays.copyOf(freeIds, Math.max(16, freeCount * 2));
+			}
+			freeIds[freeCount++] = id;
+		}
+		System.arraycopy(idOfRow, last + 1, idOfRow, first, rowCount - last - 1);
+		rowCount -= count;
+	}
+
+	private int allocateId()
+	{
+		if (freeCount > 0) {
+			return freeIds[--freeCount];
+		}
+		if (idLimit == termsOfId.length) {
+			termsOfId = Arrays.copyOf(termsOfId, Math.max(16, idLimit * 2));
+		}
+		return idLimit++;
+	}
+
+	/** Renders a row and records its terms under the id. */
+	private void index(int row, int id)
+	{
+		final Set<String> terms = new LinkedHashSet<String>();
+		for (final String value : render(row)) {
+			if (value != null) {
+				SearchQuery.terms(value, new TextSegmenter.RangeHandler() {
+					public void range(int start, int end) {
+						terms.add(SearchQuery.toLowerAscii(value, start, end));
+					}
+				});
+			}
+		}
+		String[] termArray = new String[terms.size()];
+		int i = 0;
+		for (String term : terms) {
+			Postings p = index.get(term);
+			if (p == null) {
+				p = new Postings();
+				index.put(term, p);
+			}
+			p.add(id);
+			termArray[i++] = term;
+		}
+		termsOfId[id] = termArray;
+	}
+
+	private void unindex(int id)
+	{
+		String[] terms = termsOfId[id];
+		if (terms == null) {
+			return;
+		}
+		for (String term : terms) {
+			Postings p = index.get(term);
+			p.remove(id);
+			if (p.size == 0) {
+				index.remove(term);
+			}
+		}
+		termsOfId[id] = null;
+	}
+
+	private String[] render(int row)
+	{
+		String[] values = new String[model.getColumnCount()];
+		for (int column = 0; column < values.length; column++) {
+			values[column] = renderer.render(model.getValueAt(row, column), row, column);
+		}
+		return values;
+	}
+
+	/**
+	 * The terms of the index which contain the word.  If a shorter word
+	 * within this one was searched recently, only its terms are examined.
+	 */
+	private String[] matchingTerms(String word)
+	{
+		String[] matched = matchCache.get(word);
+		if (matched != null) {
+			return matched;
+		}
+		Collection<String> candidates = index.keySet();
+		String best = null;
+		for (Map.Entry<String, String[]> e : matchCache.entrySet()) {
+			String key = e.getKey();
+			if (word.contains(key) && (best == null || key.length() > best.length())) {
+				best = key;
+			}
+		}
+		if (best != null) {
+			candidates = Arrays.asList(matchCache.get(best));
+		}
+		List<String> result = new ArrayList<String>();
+		for (String term : candidates) {
+			if (term.contains(word)) {
+				result.add(term);
+			}
+		}
+		matched = result.toArray(new String[result.size()]);
+		if (matchCache.size() >= MAX_CACHED_WORDS) {
+			matchCache.clear();
+		}
+		matchCache.put(word, matched);
+		return matched;
+	}
+}
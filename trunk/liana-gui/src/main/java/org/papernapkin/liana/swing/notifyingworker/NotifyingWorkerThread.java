@@ -1,5 +1,7 @@
 package org.papernapkin.liana.swing.notifyingworker;
 
+import java.util.Locale;
+
 import org.papernapkin.liana.event.GenericEventNotifier;
 import org.papernapkin.liana.locale.Translation;
 import org.slf4j.LoggerFactory;
@@ -102,11 +104,16 @@ public abstract class NotifyingWorkerThread extends Thread
 		if (dependency == null || test(dependency.isSuccessful())) {
 			execute();
 		} else {
-			notifyListeners(
-				new WorkerThreadEvent(
-					this, Translation.getTranslation(NotifyingWorkerThread.class).getString("label.waiting.dependency", dependency.getName())
-				)
-			);
+			// Translations are cached, so this does not reload the bundle
+			Translation trans = Translation.getTranslation(NotifyingWorkerThread.class);
+			String message = trans == null ? null : trans.getString("label.waiting.dependency", dependency.getName());
+			if (message == null) {
+				LoggerFactory.getLogger(getClass()).warn(
+					"No translation of label.waiting.dependency for locale {}", Locale.getDefault()
+				);
+				message = "label.waiting.dependency";
+			}
+			notifyListeners(new WorkerThreadEvent(this, message));
 			if (!dependency.isAlive()) {
 				dependency.start();
 				try {
@@ -9,6 +9,7 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
 import org.papernapkin.liana.util.Money;
+import org.papernapkin.liana.util.MoneyAccumulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -119,7 +120,7 @@ public class JTableSumUtility
 	
 	private class SummationThread extends Thread
 	{
-		private BigDecimal total;
+		private MoneyAccumulator total;
 		
 		private Integer x1; Integer x2; Integer y1; Integer y2;
 		
@@ -136,12 +137,12 @@ public class JTableSumUtility
 		{
 			Object o = table.getValueAt(y, x);
 			if (o instanceof BigDecimal) {
-				total = total.add((BigDecimal)o);
+				total.add((BigDecimal)o);
 			} else if (o instanceof Money) {
-				total = total.add(((Money)o).getValue());
+				total.add((Money)o);
 			} else {
 				try {
-					total = total.add(new BigDecimal(o.toString()));
+					total.add(new BigDecimal(o.toString()));
 				} catch (NumberFormatException nfe) {
 					total = null;
 					return false;
@@ -159,14 +160,16 @@ public class JTableSumUtility
 			if (x1 == null || x2 == null || y1 == null || y2 == null) {
 				total = null;
 			} else {
-				total = BigDecimal.ZERO;
+				total = new MoneyAccumulator();
 				for (int x = x1; total != null && x <= x2; x++) {
 					for (int y = y1; total != null && y <= y2; y++) {
 						add(x, y);
 					}
 				}
 			}
-			UpdateRunnable r = new UpdateRunnable(label, total);
+			UpdateRunnable r = new UpdateRunnable(
+					label, total == null ? null : total.getSum()
+				);
 			if (SwingUtilities.isEventDispatchThread()) {
 				r.run();
 			} else {
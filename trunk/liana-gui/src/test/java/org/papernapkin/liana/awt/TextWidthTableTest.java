@@ -0,0 +1,60 @@
+package org.papernapkin.liana.awt;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the TextWidthTable class.  The fonts are measured through an image,
+ * so no display is needed.
+ *
+ * @author pchapman
+ */
+public class TextWidthTableTest
+{
+	private static final String TEXT =
+		"The quick brown fox jumps over the lazy dog.  WWW iii mmm — Ünïcödé ΑΒΓ 漢字 𝐀";
+
+	/** Tests that widths match those given by the font metrics. */
+	@Test
+	public void testWidths() {
+		Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+		TextWidthTable table = TextWidthTable.getInstance(font);
+		FontMetrics metrics = table.getFontMetrics();
+		assertSame(table, TextWidthTable.getInstance(metrics));
+
+		int expected = 0;
+		for (int i = 0; i < TEXT.length(); i = TEXT.offsetByCodePoints(i, 1)) {
+			int cp = TEXT.codePointAt(i);
+			assertEquals(Integer.toHexString(cp), metrics.charWidth(cp), table.charWidth(cp));
+			expected += metrics.charWidth(cp);
+		}
+		assertEquals(expected, table.width(TEXT));
+		assertEquals(metrics.charsWidth("iiii".toCharArray(), 0, 4), table.width("iiii"));
+	}
+
+	/** Tests that wrapped lines fit and hold every word. */
+	@Test
+	public void testWrap() {
+		TextWidthTable table = TextWidthTable.getInstance(new Font(Font.SERIF, Font.PLAIN, 14));
+		String text = TEXT + " " + TEXT + "\n" + TEXT;
+		for (int max = 1; max < 400; max += 37) {
+			String wrapped = table.wrap(text, max);
+			String[] lines = wrapped.split("\n");
+			for (String line : lines) {
+				assertTrue(line, table.width(line) <= max || line.indexOf(' ') < 0);
+			}
+			assertEquals(text.replaceAll("\\s+", " "), wrapped.replace('\n', ' '));
+			if (lines.length > 1) {
+				// The first word of each line did not fit on the one before
+				String next = lines[1].split(" ")[0];
+				assertTrue(table.width(lines[0] + " " + next) > max);
+			}
+		}
+		assertEquals("", table.wrap("   ", 100));
+	}
+}
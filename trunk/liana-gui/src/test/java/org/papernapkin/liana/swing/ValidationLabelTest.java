@@ -0,0 +1,43 @@
+package org.papernapkin.liana.swing;
+
+import java.awt.Font;
+
+import javax.swing.UIManager;
+
+import org.papernapkin.liana.awt.TextWidthTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the wrapping of validation error text in ValidationLabel tool tips.
+ *
+ * @author pchapman
+ */
+public class ValidationLabelTest
+{
+	/** Tests that long error text is wrapped and escaped, and short text is not. */
+	@Test
+	public void testWrapToolTipText() {
+		assertNull(ValidationLabel.wrapToolTipText(null));
+		assertEquals("Required", ValidationLabel.wrapToolTipText("Required"));
+		assertEquals("<html><b>x</b></html>", ValidationLabel.wrapToolTipText("<html><b>x</b></html>"));
+
+		StringBuilder sb = new StringBuilder("A & B < C:");
+		for (int i = 0; i < 40; i++) {
+			sb.append(" word").append(i);
+		}
+		String tip = ValidationLabel.wrapToolTipText(sb.toString());
+		assertTrue(tip, tip.startsWith("<html>A &amp; B &lt; C: word0"));
+		assertTrue(tip, tip.endsWith(" word39</html>"));
+		Font font = UIManager.getFont("ToolTip.font");
+		TextWidthTable widths = TextWidthTable.getInstance(font);
+		String[] lines = tip.substring(6, tip.length() - 7).split("<br>");
+		assertTrue(lines.length > 1);
+		for (String line : lines) {
+			assertTrue(line, widths.width(line.replace("&amp;", "&").replace("&lt;", "<")) <= 300);
+		}
+	}
+}
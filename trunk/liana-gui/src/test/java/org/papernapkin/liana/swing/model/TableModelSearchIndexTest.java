@@ -0,0 +1,127 @@
+package org.papernapkin.liana.swing.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.papernapkin.liana.util.SearchQuery;
+
+/**
+ * Tests the TableModelSearchIndex class against a scan of every row.
+ *
+ * @author pchapman
+ */
+public class TableModelSearchIndexTest
+{
+	private static final String[] WORDS = {
+		"alpha", "Beta", "gamma", "delta", "New", "York", "pizza", "o'brien", "x-ray", "42", "4.2"
+	};
+	private static final String[] QUERIES = {
+		"", "a", "al", "alp", "alpha", "ALPHA beta", "new york", "\"new york\"", "\"york new\"",
+		"pi", "pizza 42", "4", "\"4.2\"", "o'brien", "\"x-ray\" gamma", "nothing", "\"-\""
+	};
+
+	private static class RowModel extends ListTableModel<String[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		public int getColumnCount() {
+			return 3;
+		}
+
+		public Object getValueAt(int row, int column) {
+			return data.get(row)[column];
+		}
+	}
+
+	private static String[] randomRow(Random random) {
+		String[] row = new String[3];
+		for (int c = 0; c < row.length; c++) {
+			if (random.nextInt(10) == 0) {
+				continue;
+			}
+			StringBuilder sb = new StringBuilder();
+			int words = 1 + random.nextInt(3);
+			for (int w = 0; w < words; w++) {
+				if (w > 0) {
+					sb.append(' ');
+				}
+				sb.append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			row[c] = sb.toString();
+		}
+		return row;
+	}
+
+	private static void check(RowModel model, TableModelSearchIndex<String[]> index) {
+		for (String q : QUERIES) {
+			SearchQuery query = SearchQuery.compile(q);
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int row = 0; row < model.getRowCount(); row++) {
+				if (query.matches(model.getObjectAt(row))) {
+					expected.add(row);
+				}
+			}
+			int[] rows = index.search(query);
+			int[] expectedRows = new int[expected.size()];
+			for (int i = 0; i < expectedRows.length; i++) {
+				expectedRows[i] = expected.get(i);
+			}
+			assertArrayEquals(q, expectedRows, rows);
+		}
+	}
+
+	/** Tests that searches follow inserts, updates and deletes. */
+	@Test
+	public void testIncrementalUpdates() {
+		Random random = new Random(7);
+		RowModel model = new RowModel();
+		for (int i = 0; i < 300; i++) {
+			model.addObject(randomRow(random));
+		}
+		TableModelSearchIndex<String[]> index = new TableModelSearchIndex<String[]>(model);
+		check(model, index);
+
+		for (int round = 0; round < 40; round++) {
+			switch (random.nextInt(4)) {
+				case 0:
+					model.insertObject(randomRow(random), random.nextInt(model.getRowCount() + 1));
+					break;
+				case 1:
+					if (model.getRowCount() > 0) {
+						model.removeObject(random.nextInt(model.getRowCount()));
+					}
+					break;
+				case 2:
+					if (model.getRowCount() > 0) {
+						int row = random.nextInt(model.getRowCount());
+						String[] values = model.getObjectAt(row);
+						System.arraycopy(randomRow(random), 0, values, 0, values.length);
+						model.fireTableRowsUpdated(row, row);
+					}
+					break;
+				default:
+					List<String[]> rows = new ArrayList<String[]>();
+					for (int i = 0; i < 5; i++) {
+						rows.add(randomRow(random));
+					}
+					model.addObjects(rows);
+					break;
+			}
+			check(model, index);
+		}
+
+		model.clear();
+		check(model, index);
+		assertEquals(0, index.getTermCount());
+		model.addObjects(Arrays.<String[]>asList(new String[] { "New York", "pizza", null }));
+		model.fireTableDataChanged();
+		check(model, index);
+		assertEquals(Arrays.<String[]>asList(model.getObjectAt(0)), index.searchObjects(SearchQuery.compile("yor piz")));
+		index.dispose();
+	}
+}
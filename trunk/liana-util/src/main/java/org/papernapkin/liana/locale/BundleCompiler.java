@@ -0,0 +1,134 @@
+package org.papernapkin.liana.locale;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.InvalidPropertiesFormatException;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles XML resource bundle properties files, such as
+ * Translation_en_US.xml, into the binary form loaded by
+ * {@link CompiledResourceBundleControl}, such as Translation_en_US.bundle.
+ * The compiled bundle is written beside the XML file.
+ *
+ * <p>
+ * This is meant to be run at build time over the directory of compiled
+ * classes and resources, after they have been copied there.  The
+ * compiled-bundles profile of liana-util and liana-gui does so in the
+ * process-classes phase, with the execution managed by the parent pom:
+ * </p>
+ * <code>
+ *   mvn -Pcompiled-bundles install
+ * </code>
+ *
+ * @author pchapman
+ */
+public final class BundleCompiler
+{
+	/** The names of the XML files of a locale: {basename}_{locale}.xml. */
+	private static final Pattern BUNDLE_FILE =
+		Pattern.compile(".+_[a-z]{2,3}(_[A-Z]{2}(_\\w+)?)?\\.xml");
+
+	private static final Logger logger = LoggerFactory.getLogger(BundleCompiler.class);
+
+	private BundleCompiler()
+	{
+		super();
+	}
+
+	/**
+	 * Compiles an XML properties file.  The bundle is written to a temporary
+	 * file which is then renamed over the compiled file, so that a bundle
+	 * already mapped by {@link CompiledResourceBundleControl} is replaced
+	 * rather than changed under it.
+	 * @param xml The XML file.
+	 * @param compiled The file to which the compiled bundle is written.
+	 * @throws IOException If the XML file cannot be read or is not a
+	 *                     properties file, or the bundle cannot be written.
+	 */
+	public static void compile(File xml, File compiled)
+		throws IOException
+	{
+		Properties props = new Properties();
+		InputStream in = new BufferedInputStream(new FileInputStream(xml));
+		try {
+			props.loadFromXML(in);
+		} finally {
+			in.close();
+		}
+		File temp = File.createTempFile(
+			compiled.getName(), ".tmp", compiled.getAbsoluteFile().getParentFile()
+		);
+		try {
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				CompiledResourceBundle.write(props, out);
+			} finally {
+				out.close();
+			}
+			// Where a rename cannot replace a file, the old one is removed
+			if (!temp.renameTo(compiled) && !(compiled.delete() && temp.renameTo(compiled))) {
+				throw new IOException("Unable to replace " + compiled);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Compiles every XML properties file of a locale in a directory and its
+	 * subdirectories.  XML files which are not properties files are skipped.
+	 * @param dir The directory.
+	 * @return The number of bundles compiled.
+	 * @throws IOException If a file cannot be read or written.
+	 */
+	public static int compileDirectory(File dir)
+		throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Not a directory: " + dir);
+		}
+		int compiled = 0;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				compiled += compileDirectory(file);
+			} else if (BUNDLE_FILE.matcher(file.getName()).matches()) {
+				String name = file.getName();
+				File target = new File(
+					dir, name.substring(0, name.length() - 3) + CompiledResourceBundleControl.COMPILED
+				);
+				try {
+					compile(file, target);
+					compiled++;
+				} catch (InvalidPropertiesFormatException e) {
+					logger.warn("Skipping {}, which is not a properties file", file);
+				}
+			}
+		}
+		return compiled;
+	}
+
+	public static void main(String args[]) throws Exception {
+		if (args.length == 0) {
+			System.out.print("Usage:\t");
+			System.out.print(BundleCompiler.class.getName());
+			System.out.println(" dir [dir ...]");
+			System.out.println("\tdir\t- A directory whose {basename}_{locale}.xml files are compiled");
+			return;
+		}
+		for (String arg : args) {
+			int n = compileDirectory(new File(arg));
+			System.out.println("Compiled " + n + " bundles in " + arg);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package org.papernapkin.liana.locale;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * A resource bundle read from the compiled form of an XML properties file,
+ * as written by {@link BundleCompiler}.  Keys are found by a binary search of
+ * the compiled table, and only the values asked for are made into Strings,
+ * so a bundle is ready as soon as its bytes are available; typically they
+ * are memory-mapped by {@link CompiledResourceBundleControl}.
+ *
+ * <p>
+ * The format is big-endian.  A header of the magic number and the number of
+ * entries is followed by a table with an entry for each key, in order of
+ * {@link String#compareTo(String)}, and then by a pool of UTF-16 chars.  Each
+ * entry holds four ints: the offset and length in the pool of the key, and
+ * the offset and length in the pool of its value.  Strings which occur more
+ * than once are held in the pool once.
+ * </p>
+ *
+ * <p>
+ * Lookups do not change the buffers read, so bundles may be shared between
+ * threads as ResourceBundle expects.
+ * </p>
+ *
+ * @author pchapman
+ */
+final class CompiledResourceBundle extends ResourceBundle
+{
+	/** "LRB1", which starts every compiled bundle. */
+	static final int MAGIC = 0x4C524231;
+
+	private static final int HEADER_SIZE = 8;
+	private static final int ENTRY_SIZE = 16;
+
+	private final ByteBuffer table;
+	private final CharBuffer pool;
+	private final int count;
+
+	/**
+	 * Creates a bundle.
+	 * @param buffer The compiled bundle, from its position to its limit.  It
+	 *               must not be changed while the bundle is used.
+	 * @throws IOException The buffer does not hold a compiled bundle.
+	 */
+	CompiledResourceBundle(ByteBuffer buffer)
+		throws IOException
+	{
+		super();
+		table = buffer.slice();
+		if (table.limit() < HEADER_SIZE || table.getInt(0) != MAGIC) {
+			throw new IOException("Not a compiled resource bundle");
+		}
+		count = table.getInt(4);
+		long poolStart = HEADER_SIZE + (long)count * ENTRY_SIZE;
+		if (count < 0 || poolStart > table.limit()) {
+			throw new IOException("Truncated compiled resource bundle");
+		}
+		table.position((int)poolStart);
+		pool = table.slice().asCharBuffer();
+		table.position(0);
+		for (int i = 0; i < count; i++) {
+			if (!inPool(entry(i)) || !inPool(entry(i) + 8)) {
+				throw new IOException("Corrupt compiled resource bundle");
+			}
+		}
+	}
+
+	/**
+	 * Writes the compiled form of properties.
+	 * @param props The properties.
+	 * @param out The stream to which the bundle is written.  It is flushed
+	 *            but not closed.
+	 * @throws IOException If thrown by the stream.
+	 */
+	static void write(Properties props, OutputStream out)
+		throws IOException
+	{
+		List<String> keys = new ArrayList<String>(props.stringPropertyNames());
+		Collections.sort(keys);
+		Map<String, Integer> offsets = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		int poolSize = 0;
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(keys.size());
+		for (String key : keys) {
+			for (String s : new String[] { key, props.getProperty(key) }) {
+				Integer offset = offsets.get(s);
+				if (offset == null) {
+					offset = poolSize;
+					offsets.put(s, offset);
+					strings.add(s);
+					poolSize += s.length();
+				}
+				data.writeInt(offset);
+				data.writeInt(s.length());
+			}
+		}
+		for (String s : strings) {
+			data.writeChars(s);
+		}
+		data.flush();
+	}
+
+	// ACCESSORS
+
+	/** The number of keys in this bundle, not counting its parents. */
+	int size()
+	{
+		return count;
+	}
+
+	@Override
+	protected Object handleGetObject(String key)
+	{
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		int i = find(key);
+		return i < 0 ? null : string(entry(i) + 8);
+	}
+
+	@Override
+	protected Set<String> handleKeySet()
+	{
+		Set<String> keys = new HashSet<String>(count * 2);
+		for (int i = 0; i < count; i++) {
+			keys.add(string(entry(i)));
+		}
+		return keys;
+	}
+
+	@Override
+	public Enumeration<String> getKeys()
+	{
+		Set<String> keys = new LinkedHashSet<String>(handleKeySet());
+		if (parent != null) {
+			keys.addAll(Collections.list(parent.getKeys()));
+		}
+		return Collections.enumeration(keys);
+	}
+
+	/**
+	 * Finds a key by binary search.
+	 * @return The index of its entry, or -1 if it is not in the table.
+	 */
+	private int find(String key)
+	{
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compareKey(mid, key);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/** Compares the key of an entry with a key, without making a String. */
+	private int compareKey(int i, String key)
+	{
+		int offset = table.getInt(entry(i));
+		int length = table.getInt(entry(i) + 4);
+		int n = Math.min(length, key.length());
+		for (int k = 0; k < n; k++) {
+			int cmp = pool.get(offset + k) - key.charAt(k);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - key.length();
+	}
+
+	/** The position in the table of an entry. */
+	private static int entry(int i)
+	{
+		return HEADER_SIZE + i * ENTRY_SIZE;
+	}
+
+	/** Whether the offset and length at a position of the table are in the pool. */
+	private boolean inPool(int position)
+	{
+		long offset = table.getInt(position);
+		long length = table.getInt(position + 4);
+		return offset >= 0 && length >= 0 && offset + length <= pool.limit();
+	}
+
+	/** The string whose offset and length are at a position of the table. */
+	private String string(int position)
+	{
+		char[] chars = new char[table.getInt(position + 4)];
+		CharBuffer view = pool.duplicate();
+		view.position(table.getInt(position));
+		view.get(chars);
+		return new String(chars);
+	}
+}
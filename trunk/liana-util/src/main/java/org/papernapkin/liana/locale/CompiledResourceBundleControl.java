@@ -0,0 +1,117 @@
+package org.papernapkin.liana.locale;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * A resource bundle loader which looks for bundles compiled by
+ * {@link BundleCompiler}, and for XML resource bundle properties files where
+ * there are none.  For each candidate locale the compiled bundle, named
+ * {basename}_{locale}.bundle, is looked for first; if it is not found the
+ * XML file is loaded as by {@link XmlResourceBundleControl}.
+ *
+ * <p>
+ * A compiled bundle in the file system is memory-mapped, and one in a jar,
+ * or one being reloaded, is read into memory.  Either way it is not parsed:
+ * keys are found by binary search of the compiled table when they are asked
+ * for.  {@link BundleCompiler} replaces compiled files rather than
+ * rewriting them, so a mapped bundle keeps the contents it was loaded with.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class CompiledResourceBundleControl extends XmlResourceBundleControl
+{
+	/** The format of compiled bundles, which is also their file extension. */
+	public static final String COMPILED = "bundle";
+
+	private static final String XML = "xml";
+
+	public List<String> getFormats(String baseName) {
+		if (baseName == null)
+			throw new NullPointerException();
+		return Arrays.asList(COMPILED, XML);
+	}
+
+	public ResourceBundle newBundle(
+			String baseName, Locale locale, String format, ClassLoader loader, boolean reload
+		) throws IllegalAccessException, InstantiationException, IOException
+	{
+		if (!COMPILED.equals(format)) {
+			return super.newBundle(baseName, locale, format, loader, reload);
+		}
+		if (baseName == null || locale == null || loader == null) {
+			throw new NullPointerException();
+		}
+		URL url = loader.getResource(toResourceName(toBundleName(baseName, locale), COMPILED));
+		if (url == null) {
+			return null;
+		}
+		// A reloaded bundle is likely to be replaced again, so is not mapped
+		ByteBuffer buffer = !reload && "file".equals(url.getProtocol()) ? map(url) : null;
+		if (buffer == null) {
+			buffer = read(url, reload);
+		}
+		return buffer == null ? null : new CompiledResourceBundle(buffer);
+	}
+
+	/** Maps a file read-only, or returns null if the URL is not a file. */
+	private static ByteBuffer map(URL url)
+		throws IOException
+	{
+		File file;
+		try {
+			file = new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// The mapping remains valid once the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** Reads a resource into memory. */
+	private static ByteBuffer read(URL url, boolean reload)
+		throws IOException
+	{
+		URLConnection connection = url.openConnection();
+		if (connection == null) {
+			return null;
+		}
+		if (reload) {
+			connection.setUseCaches(false);
+		}
+		InputStream stream = connection.getInputStream();
+		if (stream == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(connection.getContentLength(), 256));
+			byte[] buffer = new byte[4096];
+			for (int n = stream.read(buffer); n >= 0; n = stream.read(buffer)) {
+				bytes.write(buffer, 0, n);
+			}
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} finally {
+			stream.close();
+		}
+	}
+}
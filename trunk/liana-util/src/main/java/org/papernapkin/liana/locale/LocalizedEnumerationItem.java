@@ -32,8 +32,9 @@ public class LocalizedEnumerationItem<T extends Enum>
 	}
 
 	/**
-	 * Attempts to find a translation based on the enums' class name.  Failing
-	 * that, the name of the enum as defined in the source code is used.
+	 * Attempts to find a translation based on the enums' class name, or that
+	 * of the class enclosing it.  Failing that, the name of the enum as
+	 * defined in the source code is used.
 	 * @param enums The enums to return LocalizedEnumerationItems for.
 	 * @param <T> A subclass of Enum.
 	 * @return LocalizedEnumerationItems which wrap the enums.
@@ -43,15 +44,9 @@ public class LocalizedEnumerationItem<T extends Enum>
 		if (enums == null || enums.length == 0) {
 			return new LocalizedEnumerationItem[0];
 		} else {
-            Class clazz = ((Enum)enums[0]).getDeclaringClass();
-			Translation trans = Translation.getTranslation(clazz);
-            if (trans == null) {
-                // See if this has an enclosing class
-                clazz = clazz.getEnclosingClass();
-                if (clazz != null) {
-                    trans = Translation.getTranslation(clazz);
-                }
-            }
+			// Looks in the enclosing class's translation if the enum has none;
+			// the translation, or its absence, is cached
+			Translation trans = Translation.getTranslation(((Enum)enums[0]).getDeclaringClass());
 			return getLocalizedItems(trans, enums);
 		}
 	}
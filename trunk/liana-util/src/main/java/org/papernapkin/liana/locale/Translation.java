@@ -1,31 +1,139 @@
 package org.papernapkin.liana.locale;
 
+import java.lang.ref.SoftReference;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.papernapkin.liana.util.MessageTemplate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Provides text to be displayed in the application by base name and locale.
- * The text will be searched for in the file {basename}_{locale}.xml.  This is
- * basically an extension of java.util.ResourceBundle.  This class allows for
- * loading the resource bundle through xml style properties files.  It also
+ * The text will be searched for in the file {basename}_{locale}.xml, or in
+ * {basename}_{locale}.bundle if it has been compiled by
+ * {@link BundleCompiler}.  This is basically an extension of
+ * java.util.ResourceBundle.  This class allows for loading the resource
+ * bundle through xml style properties files.  It also
  * adds a method which also provides for argument replacement in the strings
  * contained in the bundle.
+ *
+ * <p>
+ * Translations are cached by base name and locale, so that each lookup after
+ * the first returns the same Translation without going back to
+ * ResourceBundle.  A bundle which cannot be found is remembered for
+ * {@link #getMissTimeToLive()} milliseconds before it is looked for again,
+ * and is logged only the first time it is missed; so is the en_US
+ * translation used in its place.
+ * </p>
+ *
+ * <p>
+ * Cached translations are softly held, so that they and their bundles can
+ * be collected when memory runs short.  Until then a cached translation
+ * keeps its bundle loaded, so {@link #clearCache()} should be called along
+ * with {@link ResourceBundle#clearCache()} when bundles are to be reloaded.
+ * </p>
  * 
  * @author pchapman
  */
 public class Translation
 {
-	private static XmlResourceBundleControl xmlcontrol = new XmlResourceBundleControl();
+	/** A translation looked for by base name and locale. */
+	private static final class CacheKey
+	{
+		private final String basename;
+		private final Locale locale;
+
+		CacheKey(String basename, Locale locale) {
+			this.basename = basename;
+			this.locale = locale;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey k = (CacheKey)o;
+			return basename.equals(k.basename) && locale.equals(k.locale);
+		}
+
+		@Override
+		public int hashCode() {
+			return basename.hashCode() * 31 + locale.hashCode();
+		}
+	}
+
+	/**
+	 * The translation found, softly held, until the time the entry expires.
+	 * A miss holds no translation.
+	 */
+	private static final class CacheEntry
+	{
+		private final SoftReference<Translation> translation;
+		final long expires;
+
+		CacheEntry(Translation translation, long expires) {
+			this.translation = translation == null ? null : new SoftReference<Translation>(translation);
+			this.expires = expires;
+		}
+
+		/** The translation, or null for a miss or once it has been collected. */
+		Translation get() {
+			return translation == null ? null : translation.get();
+		}
+
+		boolean isMiss() {
+			return translation == null;
+		}
+	}
+
+	/** The default time for which a missing translation is remembered. */
+	public static final long DEFAULT_MISS_TIME_TO_LIVE = 60 * 1000L;
+
+	private static final Logger logger = LoggerFactory.getLogger(Translation.class);
+
+	/** Loads compiled bundles where there are any, otherwise XML bundles. */
+	private static XmlResourceBundleControl xmlcontrol = new CompiledResourceBundleControl();
+
+	private static final ConcurrentMap<CacheKey, CacheEntry> cache =
+		new ConcurrentHashMap<CacheKey, CacheEntry>();
+	/** The misses which have been logged. */
+	private static final ConcurrentMap<CacheKey, Boolean> loggedMisses =
+		new ConcurrentHashMap<CacheKey, Boolean>();
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+	private static volatile long missTimeToLive = DEFAULT_MISS_TIME_TO_LIVE;
+
+	/**
+	 * The parsed text of each bundle by key.  ResourceBundle caches bundles,
+	 * so the Translations of a bundle share its templates.  The bundles are
+	 * weakly held so that they can still be unloaded.
+	 */
+	private static final Map<ResourceBundle, ConcurrentMap<String, MessageTemplate>> templateCache =
+		Collections.synchronizedMap(new WeakHashMap<ResourceBundle, ConcurrentMap<String, MessageTemplate>>());
 	
 	private ResourceBundle bundle;
+	private ConcurrentMap<String, MessageTemplate> templates;
 	
 	private Translation(ResourceBundle bundle) {
 		super();
 		this.bundle = bundle;
+		synchronized (templateCache) {
+			templates = templateCache.get(bundle);
+			if (templates == null) {
+				templates = new ConcurrentHashMap<String, MessageTemplate>();
+				templateCache.put(bundle, templates);
+			}
+		}
 	}
 
 	/** Gets the underlying resource bundle. */
@@ -75,37 +183,100 @@ public class Translation
 	/**
 	 * Gets the appropriate translation for the indicated locale.  If no
 	 * appropriate translation can be found for the locale, the translation
-	 * for en_US is returned, if found.
+	 * for en_US is returned, if found.  Translations and misses are cached;
+	 * the en_US translation is cached for the locale only as long as a miss.
 	 * @param locale The locale to return a translation for.
 	 * @return A translation instance.
 	 */
 	public static Translation getTranslation(String basename, Locale locale) {
-		Translation trans = null;
-		try {
-			ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, xmlcontrol);
-			if (bundle == null) {
-				LoggerFactory.getLogger(Translation.class).warn("Translation not found for basename{}, locale {}", basename, locale);
-				if (! locale.equals(Locale.US)) {
-					// Try defaulting to US English
-					trans = getTranslation(basename, Locale.US);
-				}
-			} else {
-				trans = new Translation(bundle);
+		CacheKey key = new CacheKey(basename, locale);
+		CacheEntry entry = cache.get(key);
+		long now = System.currentTimeMillis();
+		if (entry != null && now < entry.expires) {
+			Translation trans = entry.get();
+			if (trans != null || entry.isMiss()) {
+				hitCount.incrementAndGet();
+				return trans;
 			}
-		} catch (MissingResourceException mre) {
-			LoggerFactory.getLogger(Translation.class).error("Error loading translation for basename " + basename + ", locale " + locale, mre);
+		}
+		missCount.incrementAndGet();
+		Translation trans = load(key);
+		long expires = Long.MAX_VALUE;
+		if (trans == null) {
+			expires = now + missTimeToLive;
 			if (! locale.equals(Locale.US)) {
 				// Try defaulting to US English
 				trans = getTranslation(basename, Locale.US);
 			}
-		} catch (Exception ioe) {
-			LoggerFactory.getLogger(Translation.class).error("Error loading translation for basename " + basename + ", locale " + locale, ioe);
-			if (! locale.equals(Locale.US)) {
-				// Try defaulting to US English
-				trans = getTranslation(basename, Locale.US);
+		}
+		CacheEntry loaded = new CacheEntry(trans, expires);
+		CacheEntry current;
+		if (entry == null) {
+			current = cache.putIfAbsent(key, loaded);
+		} else {
+			current = cache.replace(key, entry, loaded) ? null : cache.get(key);
+		}
+		// Another thread may have cached the translation first
+		Translation cached = current == null ? null : current.get();
+		return cached == null ? trans : cached;
+	}
+
+	private static Translation load(CacheKey key) {
+		try {
+			return new Translation(ResourceBundle.getBundle(key.basename, key.locale, xmlcontrol));
+		} catch (MissingResourceException mre) {
+			if (loggedMisses.putIfAbsent(key, Boolean.TRUE) == null) {
+				logger.warn("Translation not found for basename {}, locale {}", key.basename, key.locale);
+			}
+		} catch (Exception e) {
+			if (loggedMisses.putIfAbsent(key, Boolean.TRUE) == null) {
+				logger.error("Error loading translation for basename " + key.basename + ", locale " + key.locale, e);
 			}
 		}
-		return trans;
+		return null;
+	}
+
+	/** The number of lookups answered from the cache. */
+	public static long getCacheHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of lookups not answered from the cache, which went to
+	 * ResourceBundle.
+	 */
+	public static long getCacheMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The time for which a missing translation is remembered before it is
+	 * looked for again, in milliseconds.
+	 */
+	public static long getMissTimeToLive() {
+		return missTimeToLive;
+	}
+
+	/**
+	 * Sets the time for which a missing translation is remembered before it
+	 * is looked for again.  Misses already cached keep their time.
+	 * @param millis The time in milliseconds.
+	 */
+	public static void setMissTimeToLive(long millis) {
+		missTimeToLive = millis;
+	}
+
+	/**
+	 * Empties the cache, so that every translation is looked for again, and
+	 * resets the counts of hits and misses.  Call this after
+	 * {@link ResourceBundle#clearCache()} so that the cleared bundles are
+	 * not still used.
+	 */
+	public static void clearCache() {
+		cache.clear();
+		loggedMisses.clear();
+		hitCount.set(0);
+		missCount.set(0);
 	}
 	
 	/**
@@ -137,27 +308,31 @@ public class Translation
 	 * @return The translated text.
 	 */
 	public String getString(String key, Object ... params) {
-		String s;
+		MessageTemplate template = getTemplate(key);
+		return template == null ? null : template.render(params);
+	}
 
-		// Look up the string.
-		try {
-			s = bundle.getString(key).trim();
-		} catch (MissingResourceException e) {
-			LoggerFactory.getLogger(getClass()).warn("Unable to find string {}", key, e);
-			return null;
-		}
-		
-		// Replace placeholders with param values
-		StringBuilder sb;
-		String val;
-		for (int i = 0; i < params.length; i++) {
-			sb = new StringBuilder();
-			sb.append('{');
-			sb.append(i + 1);
-			sb.append('}');
-			val = params[i] == null ? "null" : params[i].toString();
-			s = s.replace(sb.toString(), val);
+	/**
+	 * Returns the text in the translation based on the key, parsed into a
+	 * template in which placeholders can be replaced.  The text is parsed
+	 * the first time it is asked for, and the template is then reused.
+	 * Templates can be rendered to a StringBuilder or a Writer, and can
+	 * format numbers, dates and Money amounts for a locale.
+	 * @param key A key identifying the text.
+	 * @return The template, or null if there is no text for the key.
+	 * @see #getString(java.lang.String, java.lang.Object[])
+	 */
+	public MessageTemplate getTemplate(String key) {
+		MessageTemplate template = templates.get(key);
+		if (template == null) {
+			try {
+				template = MessageTemplate.compile(bundle.getString(key).trim());
+			} catch (MissingResourceException e) {
+				LoggerFactory.getLogger(getClass()).warn("Unable to find string {}", key, e);
+				return null;
+			}
+			templates.putIfAbsent(key, template);
 		}
-		return s;
+		return template;
 	}
 }
@@ -0,0 +1,760 @@
+package org.papernapkin.liana.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Encodes and decodes Base64, as defined by RFC 2045, section 6.8, between
+ * arrays of bytes and arrays of bytes or chars.  Each group of three bytes is
+ * encoded to four characters through a table, and the size of the output is
+ * computed before encoding so that it is written into an array of exactly
+ * the right length.
+ *
+ * <p>
+ * A codec may break its output into lines, as MIME requires.  Decoding
+ * ignores every character which is not in the Base64 alphabet, including
+ * line separators and padding, as {@link BASE64Decoder} always has.  A final
+ * single character, which cannot hold a whole byte, is ignored.
+ * </p>
+ *
+ * <p>
+ * Large arrays may be encoded and decoded in parallel chunks by an
+ * ExecutorService, each chunk being written directly to its place in the
+ * output.
+ * </p>
+ *
+ * <p>
+ * Input too large to hold in memory is encoded and decoded a chunk at a time
+ * by {@link Base64OutputStream} and {@link Base64InputStream}, or between
+ * channels by {@link #encode(ReadableByteChannel, WritableByteChannel)} and
+ * {@link #decode(ReadableByteChannel, WritableByteChannel)}.
+ * </p>
+ *
+ * <p>
+ * Codecs are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class Base64Codec
+{
+	private static final char[] ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final byte[] ENCODE = new byte[64];
+	/** The value of each character, or -1 if it is not in the alphabet. */
+	private static final byte[] DECODE = new byte[256];
+	static {
+		Arrays.fill(DECODE, (byte)-1);
+		for (int i = 0; i < ALPHABET.length; i++) {
+			ENCODE[i] = (byte)ALPHABET[i];
+			DECODE[ALPHABET[i]] = (byte)i;
+		}
+	}
+
+	/** The size of the buffers used to read and write channels. */
+	private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+	/** The least number of bytes or chars which is split into chunks. */
+	private static final int MIN_PARALLEL_SIZE = 1 << 16;
+
+	/** The length of MIME lines. */
+	public static final int MIME_LINE_LENGTH = 76;
+
+	/** Encodes without line breaks. */
+	public static final Base64Codec BASIC = new Base64Codec(0, "", false);
+
+	/** Encodes lines of 76 characters separated by CRLF, as MIME requires. */
+	public static final Base64Codec MIME = new Base64Codec(MIME_LINE_LENGTH, "\r\n", false);
+
+	/**
+	 * Encodes as BASE64Encoder always has: lines of 76 characters, each full
+	 * line followed by a newline.
+	 */
+	static final Base64Codec LEGACY = new Base64Codec(MIME_LINE_LENGTH, "\n", true);
+
+	private final int lineLength;
+	private final char[] separator;
+	private final boolean terminateFullLines;
+
+	/**
+	 * Creates a codec whose output is broken into lines.
+	 * @param lineLength The number of characters in each line, a multiple of
+	 *                   four; or zero for no line breaks.
+	 * @param lineSeparator The characters placed between lines.
+	 */
+	public Base64Codec(int lineLength, String lineSeparator)
+	{
+		this(lineLength, lineSeparator, false);
+	}
+
+	private Base64Codec(int lineLength, String lineSeparator, boolean terminateFullLines)
+	{
+		super();
+		if (lineLength < 0 || lineLength % 4 != 0) {
+			throw new IllegalArgumentException("Line length must be a multiple of 4: " + lineLength);
+		}
+		for (int i = 0; i < lineSeparator.length(); i++) {
+			if (lineSeparator.charAt(i) < 128 && DECODE[lineSeparator.charAt(i)] >= 0) {
+				throw new IllegalArgumentException("Line separator contains Base64 characters");
+			}
+		}
+		this.lineLength = lineSeparator.length() == 0 ? 0 : lineLength;
+		this.separator = lineSeparator.toCharArray();
+		this.terminateFullLines = terminateFullLines;
+	}
+
+	// ACCESSORS
+
+	/** The number of characters in each line, or zero if there are no lines. */
+	public int getLineLength()
+	{
+		return lineLength;
+	}
+
+	/** The characters placed between lines. */
+	public String getLineSeparator()
+	{
+		return new String(separator);
+	}
+
+	/** The number of bytes encoded in a line, or zero if there are no lines. */
+	int getLineBytes()
+	{
+		return lineLength / 4 * 3;
+	}
+
+	/**
+	 * Whether a separator must be written between the encodings of two
+	 * chunks of whole lines, encoded separately, for them to read as one
+	 * encoding.  It must unless full lines are always terminated.
+	 */
+	boolean isSeparatedBetweenChunks()
+	{
+		return lineLength > 0 && !terminateFullLines;
+	}
+
+	/**
+	 * Writes the line separator into an array.
+	 * @return The number of bytes written.
+	 */
+	int writeSeparator(byte[] dst, int dstOffset)
+	{
+		for (int i = 0; i < separator.length; i++) {
+			dst[dstOffset + i] = (byte)separator[i];
+		}
+		return separator.length;
+	}
+
+	/** Whether an ASCII byte is a character of the Base64 alphabet. */
+	static boolean isAlphabet(byte b)
+	{
+		return DECODE[b & 0xFF] >= 0;
+	}
+
+	// ENCODING
+
+	/**
+	 * The number of characters to which a number of bytes is encoded,
+	 * including padding and line separators.
+	 * @param length The number of bytes.
+	 * @throws IllegalArgumentException The encoding would be longer than an
+	 *                                  array can be.
+	 */
+	public int encodedLength(int length)
+	{
+		long chars = (length + 2L) / 3 * 4;
+		if (lineLength > 0 && chars > 0) {
+			// A full line holds lineLength / 4 * 3 bytes; padding cannot fill one
+			long breaks = terminateFullLines
+				? length / (lineLength / 4 * 3)
+				: (chars - 1) / lineLength;
+			chars += breaks * separator.length;
+		}
+		if (chars > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many bytes to encode: " + length);
+		}
+		return (int)chars;
+	}
+
+	/**
+	 * Encodes bytes.
+	 * @param src The bytes.
+	 * @return The encoding, as ASCII bytes.
+	 */
+	public byte[] encode(byte[] src)
+	{
+		byte[] dst = new byte[encodedLength(src.length)];
+		encode(src, 0, src.length, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Encodes bytes into an array of bytes.
+	 * @param src The bytes.
+	 * @param offset The index of the first byte to encode.
+	 * @param length The number of bytes to encode.
+	 * @param dst The array into which the ASCII characters of the encoding
+	 *            are written; it must have room for
+	 *            {@link #encodedLength(int)} of them.
+	 * @param dstOffset The index at which the encoding is written.
+	 * @return The number of bytes written.
+	 */
+	public int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset)
+	{
+		int end = offset + length;
+		int d = dstOffset;
+		int lineBytes = lineLength > 0 ? lineLength / 4 * 3 : Integer.MAX_VALUE;
+		int sp = offset;
+		while (sp < end) {
+			int lineStart = sp;
+			int lineEnd = end - sp > lineBytes ? sp + lineBytes : end;
+			int full = sp + (lineEnd - sp) / 3 * 3;
+			for (; sp < full; sp += 3) {
+				int bits = (src[sp] & 0xFF) << 16 | (src[sp + 1] & 0xFF) << 8 | (src[sp + 2] & 0xFF);
+				dst[d++] = ENCODE[bits >>> 18];
+				dst[d++] = ENCODE[(bits >>> 12) & 0x3F];
+				dst[d++] = ENCODE[(bits >>> 6) & 0x3F];
+				dst[d++] = ENCODE[bits & 0x3F];
+			}
+			if (sp < lineEnd) {
+				// One or two bytes are left at the end of the input
+				int b0 = src[sp++] & 0xFF;
+				dst[d++] = ENCODE[b0 >> 2];
+				if (sp < lineEnd) {
+					int b1 = src[sp++] & 0xFF;
+					dst[d++] = ENCODE[(b0 << 4 | b1 >> 4) & 0x3F];
+					dst[d++] = ENCODE[(b1 << 2) & 0x3F];
+				} else {
+					dst[d++] = ENCODE[(b0 << 4) & 0x3F];
+					dst[d++] = '=';
+				}
+				dst[d++] = '=';
+			}
+			if (isLineBreak(lineStart, lineEnd, end, lineBytes)) {
+				for (char c : separator) {
+					dst[d++] = (byte)c;
+				}
+			}
+		}
+		return d - dstOffset;
+	}
+
+	/**
+	 * Encodes bytes into an array of chars.
+	 * @param src The bytes.
+	 * @param offset The index of the first byte to encode.
+	 * @param length The number of bytes to encode.
+	 * @param dst The array into which the encoding is written; it must have
+	 *            room for {@link #encodedLength(int)} chars.
+	 * @param dstOffset The index at which the encoding is written.
+	 * @return The number of chars written.
+	 */
+	public int encode(byte[] src, int offset, int length, char[] dst, int dstOffset)
+	{
+		int end = offset + length;
+		int d = dstOffset;
+		int lineBytes = lineLength > 0 ? lineLength / 4 * 3 : Integer.MAX_VALUE;
+		int sp = offset;
+		while (sp < end) {
+			int lineStart = sp;
+			int lineEnd = end - sp > lineBytes ? sp + lineBytes : end;
+			int full = sp + (lineEnd - sp) / 3 * 3;
+			for (; sp < full; sp += 3) {
+				int bits = (src[sp] & 0xFF) << 16 | (src[sp + 1] & 0xFF) << 8 | (src[sp + 2] & 0xFF);
+				dst[d++] = ALPHABET[bits >>> 18];
+				dst[d++] = ALPHABET[(bits >>> 12) & 0x3F];
+				dst[d++] = ALPHABET[(bits >>> 6) & 0x3F];
+				dst[d++] = ALPHABET[bits & 0x3F];
+			}
+			if (sp < lineEnd) {
+				int b0 = src[sp++] & 0xFF;
+				dst[d++] = ALPHABET[b0 >> 2];
+				if (sp < lineEnd) {
+					int b1 = src[sp++] & 0xFF;
+					dst[d++] = ALPHABET[(b0 << 4 | b1 >> 4) & 0x3F];
+					dst[d++] = ALPHABET[(b1 << 2) & 0x3F];
+				} else {
+					dst[d++] = ALPHABET[(b0 << 4) & 0x3F];
+					dst[d++] = '=';
+				}
+				dst[d++] = '=';
+			}
+			if (isLineBreak(lineStart, lineEnd, end, lineBytes)) {
+				System.arraycopy(separator, 0, dst, d, separator.length);
+				d += separator.length;
+			}
+		}
+		return d - dstOffset;
+	}
+
+	/**
+	 * Whether a separator follows a line: if another line follows it, or if
+	 * full lines are terminated and it is full.
+	 */
+	private boolean isLineBreak(int lineStart, int lineEnd, int end, int lineBytes)
+	{
+		return lineLength > 0 && (lineEnd < end || terminateFullLines && lineEnd - lineStart == lineBytes);
+	}
+
+	/**
+	 * Encodes bytes to a string.
+	 * @param src The bytes.
+	 * @return The encoding.
+	 */
+	public String encodeToString(byte[] src)
+	{
+		char[] dst = new char[encodedLength(src.length)];
+		encode(src, 0, src.length, dst, 0);
+		return new String(dst);
+	}
+
+	/**
+	 * Encodes everything read from a channel, writing the encoding to
+	 * another.  Memory use does not depend on the amount of data.  The
+	 * channels must be in blocking mode, and are not closed.
+	 * @param in The channel from which bytes are read until its end.
+	 * @param out The channel to which the encoding is written.
+	 * @return The number of bytes read.
+	 * @throws IOException If thrown by either channel.
+	 */
+	public long encode(ReadableByteChannel in, WritableByteChannel out)
+		throws IOException
+	{
+		Base64OutputStream os = new Base64OutputStream(Channels.newOutputStream(out), this);
+		ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+		long count = 0;
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+			if (!buffer.hasRemaining()) {
+				os.write(buffer.array(), 0, buffer.position());
+				count += buffer.position();
+				buffer.clear();
+			}
+		}
+		os.write(buffer.array(), 0, buffer.position());
+		count += buffer.position();
+		os.finish();
+		return count;
+	}
+
+	/**
+	 * Encodes bytes in parallel chunks.
+	 * @param src The bytes.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The encoding, as ASCII bytes.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public byte[] encode(byte[] src, ExecutorService executor, int chunks)
+		throws InterruptedException
+	{
+		byte[] dst = new byte[encodedLength(src.length)];
+		encode(src, 0, src.length, dst, 0, executor, chunks);
+		return dst;
+	}
+
+	/**
+	 * Encodes bytes into an array of bytes in parallel chunks.  The input is
+	 * split after whole lines, or whole groups of three bytes if there are
+	 * no lines, so that the position of each chunk's encoding is known
+	 * before it is encoded.
+	 * @param src The bytes.
+	 * @param offset The index of the first byte to encode.
+	 * @param length The number of bytes to encode.
+	 * @param dst The array into which the encoding is written; it must have
+	 *            room for {@link #encodedLength(int)} bytes.
+	 * @param dstOffset The index at which the encoding is written.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The number of bytes written.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 * @see #encode(byte[], int, int, byte[], int)
+	 */
+	public int encode(
+			final byte[] src, final int offset, final int length, final byte[] dst,
+			final int dstOffset, ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		if (length < MIN_PARALLEL_SIZE || chunks < 2) {
+			return encode(src, offset, length, dst, dstOffset);
+		}
+		int unit = lineLength > 0 ? getLineBytes() : 3;
+		int unitChars = lineLength > 0 ? lineLength + separator.length : 4;
+		int[] bounds = ParallelTasks.chunkBounds((length + unit - 1) / unit, chunks);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = (int)Math.min(length, (long)bounds[c] * unit);
+			final int to = (int)Math.min(length, (long)bounds[c + 1] * unit);
+			final int d = dstOffset + bounds[c] * unitChars;
+			final boolean last = c == bounds.length - 2;
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					int n = encode(src, offset + from, to - from, dst, d);
+					if (!last && isSeparatedBetweenChunks()) {
+						n += writeSeparator(dst, d + n);
+					}
+					return n;
+				}
+			});
+		}
+		return sum(ParallelTasks.invokeAll(executor, tasks));
+	}
+
+	// DECODING
+
+	/**
+	 * Decodes everything read from a channel, writing the bytes to another.
+	 * Memory use does not depend on the amount of data.  The channels must be
+	 * in blocking mode, and are not closed.
+	 * @param in The channel from which encoded text is read until its end.
+	 * @param out The channel to which the decoded bytes are written.
+	 * @return The number of bytes written.
+	 * @throws IOException If thrown by either channel.
+	 * @see #encode(ReadableByteChannel, WritableByteChannel)
+	 */
+	public static long decode(ReadableByteChannel in, WritableByteChannel out)
+		throws IOException
+	{
+		Base64InputStream is = new Base64InputStream(Channels.newInputStream(in));
+		ByteBuffer buffer = ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+		long count = 0;
+		for (int n = is.read(buffer.array()); n >= 0; n = is.read(buffer.array())) {
+			buffer.limit(n);
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+			count += n;
+		}
+		return count;
+	}
+
+	/**
+	 * The number of bytes encoded by a range of characters: three for every
+	 * four characters of the Base64 alphabet, ignoring all other characters.
+	 * @param src The encoded text, as ASCII bytes.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 */
+	public static int decodedLength(byte[] src, int offset, int length)
+	{
+		int useful = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			if (DECODE[src[i] & 0xFF] >= 0) {
+				useful++;
+			}
+		}
+		return (int)(useful * 3L / 4);
+	}
+
+	/**
+	 * The number of bytes encoded by a range of characters.
+	 * @param src The encoded text.
+	 * @param offset The index of the first char.
+	 * @param length The number of chars.
+	 * @see #decodedLength(byte[], int, int)
+	 */
+	public static int decodedLength(char[] src, int offset, int length)
+	{
+		int useful = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			char c = src[i];
+			if (c < 128 && DECODE[c] >= 0) {
+				useful++;
+			}
+		}
+		return (int)(useful * 3L / 4);
+	}
+
+	/**
+	 * Decodes ASCII bytes.
+	 * @param src The encoded text.
+	 * @return The decoded bytes.
+	 */
+	public static byte[] decode(byte[] src)
+	{
+		byte[] dst = new byte[decodedLength(src, 0, src.length)];
+		decode(src, 0, src.length, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Decodes a string.
+	 * @param src The encoded text.
+	 * @return The decoded bytes.
+	 */
+	public static byte[] decode(String src)
+	{
+		char[] chars = src.toCharArray();
+		byte[] dst = new byte[decodedLength(chars, 0, chars.length)];
+		decode(chars, 0, chars.length, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Decodes ASCII bytes into an array.
+	 * @param src The encoded text.
+	 * @param offset The index of the first byte to decode.
+	 * @param length The number of bytes to decode.
+	 * @param dst The array into which the bytes are written; it must have
+	 *            room for {@link #decodedLength(byte[], int, int)} of them.
+	 * @param dstOffset The index at which the bytes are written.
+	 * @return The number of bytes written.
+	 */
+	public static int decode(byte[] src, int offset, int length, byte[] dst, int dstOffset)
+	{
+		int end = offset + length;
+		int d = dstOffset;
+		int sp = offset;
+		int bits = 0;
+		int n = 0;
+		while (sp < end) {
+			// Whole groups of four alphabet characters take the fast path
+			if (n == 0 && end - sp >= 4) {
+				int group = DECODE[src[sp] & 0xFF] << 18 | DECODE[src[sp + 1] & 0xFF] << 12 |
+					DECODE[src[sp + 2] & 0xFF] << 6 | DECODE[src[sp + 3] & 0xFF];
+				if (group >= 0) {
+					dst[d++] = (byte)(group >> 16);
+					dst[d++] = (byte)(group >> 8);
+					dst[d++] = (byte)group;
+					sp += 4;
+					continue;
+				}
+			}
+			int v = DECODE[src[sp++] & 0xFF];
+			if (v >= 0) {
+				bits = bits << 6 | v;
+				if (++n == 4) {
+					dst[d++] = (byte)(bits >> 16);
+					dst[d++] = (byte)(bits >> 8);
+					dst[d++] = (byte)bits;
+					bits = 0;
+					n = 0;
+				}
+			}
+		}
+		return d - dstOffset + finish(bits, n, dst, d);
+	}
+
+	/**
+	 * Decodes chars into an array.
+	 * @param src The encoded text.
+	 * @param offset The index of the first char to decode.
+	 * @param length The number of chars to decode.
+	 * @param dst The array into which the bytes are written; it must have
+	 *            room for {@link #decodedLength(char[], int, int)} of them.
+	 * @param dstOffset The index at which the bytes are written.
+	 * @return The number of bytes written.
+	 */
+	public static int decode(char[] src, int offset, int length, byte[] dst, int dstOffset)
+	{
+		int end = offset + length;
+		int d = dstOffset;
+		int sp = offset;
+		int bits = 0;
+		int n = 0;
+		while (sp < end) {
+			if (n == 0 && end - sp >= 4) {
+				char c0 = src[sp];
+				char c1 = src[sp + 1];
+				char c2 = src[sp + 2];
+				char c3 = src[sp + 3];
+				if ((c0 | c1 | c2 | c3) < 128) {
+					int group = DECODE[c0] << 18 | DECODE[c1] << 12 | DECODE[c2] << 6 | DECODE[c3];
+					if (group >= 0) {
+						dst[d++] = (byte)(group >> 16);
+						dst[d++] = (byte)(group >> 8);
+						dst[d++] = (byte)group;
+						sp += 4;
+						continue;
+					}
+				}
+			}
+			char c = src[sp++];
+			int v = c < 128 ? DECODE[c] : -1;
+			if (v >= 0) {
+				bits = bits << 6 | v;
+				if (++n == 4) {
+					dst[d++] = (byte)(bits >> 16);
+					dst[d++] = (byte)(bits >> 8);
+					dst[d++] = (byte)bits;
+					bits = 0;
+					n = 0;
+				}
+			}
+		}
+		return d - dstOffset + finish(bits, n, dst, d);
+	}
+
+	/**
+	 * Decodes ASCII bytes in parallel chunks.
+	 * @param src The encoded text.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The decoded bytes.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static byte[] decode(byte[] src, ExecutorService executor, int chunks)
+		throws InterruptedException
+	{
+		if (src.length < MIN_PARALLEL_SIZE || chunks < 2) {
+			return decode(src);
+		}
+		int[] bounds = ParallelTasks.chunkBounds(src.length, chunks);
+		int[] counts = countAlphabet(src, 0, bounds, executor);
+		long useful = 0;
+		for (int count : counts) {
+			useful += count;
+		}
+		byte[] dst = new byte[(int)(useful * 3 / 4)];
+		decode(src, 0, src.length, bounds, counts, dst, 0, executor);
+		return dst;
+	}
+
+	/**
+	 * Decodes ASCII bytes into an array in parallel chunks.  The characters
+	 * of the alphabet in each chunk are counted first, in parallel, and the
+	 * chunks are then moved to start on a whole group of four of them, so
+	 * that any line breaks or other characters ignored are accounted for and
+	 * the position of each chunk's bytes is known before it is decoded.
+	 * @param src The encoded text.
+	 * @param offset The index of the first byte to decode.
+	 * @param length The number of bytes to decode.
+	 * @param dst The array into which the bytes are written; it must have
+	 *            room for {@link #decodedLength(byte[], int, int)} of them.
+	 * @param dstOffset The index at which the bytes are written.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The number of bytes written.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 * @see #decode(byte[], int, int, byte[], int)
+	 */
+	public static int decode(
+			byte[] src, int offset, int length, byte[] dst, int dstOffset,
+			ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		if (length < MIN_PARALLEL_SIZE || chunks < 2) {
+			return decode(src, offset, length, dst, dstOffset);
+		}
+		int[] bounds = ParallelTasks.chunkBounds(length, chunks);
+		int[] counts = countAlphabet(src, offset, bounds, executor);
+		return decode(src, offset, length, bounds, counts, dst, dstOffset, executor);
+	}
+
+	/** Counts the alphabet characters in each chunk, in parallel. */
+	private static int[] countAlphabet(
+			final byte[] src, final int offset, int[] bounds, ExecutorService executor
+		)
+		throws InterruptedException
+	{
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = offset + bounds[c];
+			final int to = offset + bounds[c + 1];
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					int count = 0;
+					for (int i = from; i < to; i++) {
+						if (DECODE[src[i] & 0xFF] >= 0) {
+							count++;
+						}
+					}
+					return count;
+				}
+			});
+		}
+		List<Integer> results = ParallelTasks.invokeAll(executor, tasks);
+		int[] counts = new int[results.size()];
+		for (int c = 0; c < counts.length; c++) {
+			counts[c] = results.get(c);
+		}
+		return counts;
+	}
+
+	/** Decodes the chunks whose alphabet characters have been counted. */
+	private static int decode(
+			final byte[] src, final int offset, int length, int[] bounds, int[] counts,
+			final byte[] dst, int dstOffset, ExecutorService executor
+		)
+		throws InterruptedException
+	{
+		int n = counts.length;
+		// The start of each chunk, and the alphabet characters before it
+		int[] starts = new int[n + 1];
+		long[] before = new long[n + 1];
+		starts[n] = length;
+		long counted = 0;
+		for (int c = 1; c < n; c++) {
+			counted += counts[c - 1];
+			int p = bounds[c];
+			long useful = counted;
+			if (p < starts[c - 1]) {
+				// The previous chunk was moved past this one's start
+				p = starts[c - 1];
+				useful = before[c - 1];
+			}
+			// Move the start past the rest of the group it splits
+			while (useful % 4 != 0 && p < length) {
+				if (DECODE[src[offset + p] & 0xFF] >= 0) {
+					useful++;
+				}
+				p++;
+			}
+			starts[c] = p;
+			before[c] = useful;
+		}
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int c = 0; c < n; c++) {
+			final int from = offset + starts[c];
+			final int len = starts[c + 1] - starts[c];
+			final int d = dstOffset + (int)(before[c] / 4 * 3);
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					return decode(src, from, len, dst, d);
+				}
+			});
+		}
+		return sum(ParallelTasks.invokeAll(executor, tasks));
+	}
+
+	private static int sum(List<Integer> counts)
+	{
+		int sum = 0;
+		for (int count : counts) {
+			sum += count;
+		}
+		return sum;
+	}
+
+	/**
+	 * Writes the bytes of a final group of two or three characters.
+	 * @return The number of bytes written.
+	 */
+	private static int finish(int bits, int n, byte[] dst, int d)
+	{
+		if (n == 2) {
+			dst[d] = (byte)(bits >> 4);
+			return 1;
+		} else if (n == 3) {
+			dst[d] = (byte)(bits >> 10);
+			dst[d + 1] = (byte)(bits >> 2);
+			return 2;
+		}
+		return 0;
+	}
+}
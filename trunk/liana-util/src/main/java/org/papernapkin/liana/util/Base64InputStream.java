@@ -0,0 +1,145 @@
+package org.papernapkin.liana.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes Base64 text read from an underlying stream.  Text is read and
+ * decoded a buffer at a time, so memory use does not depend on the amount of
+ * data, and the bytes read are exactly those which
+ * {@link Base64Codec#decode(byte[])} would produce for all of the text at
+ * once: characters which are not in the Base64 alphabet are ignored.
+ *
+ * <p>
+ * Mark and reset are not supported.  This class is not synchronized.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class Base64InputStream extends FilterInputStream
+{
+	/** The number of characters read from the underlying stream at a time. */
+	private static final int BUFFER_SIZE = 4 * 4096;
+
+	/**
+	 * Text read; the alphabet characters of an incomplete group carried to
+	 * the next read are at its start.
+	 */
+	private final byte[] text = new byte[BUFFER_SIZE];
+	private final byte[] decoded = new byte[BUFFER_SIZE / 4 * 3];
+	private int carried;
+	private int pos;
+	private int limit;
+	private boolean eof;
+
+	/**
+	 * Creates a stream.
+	 * @param in The stream from which Base64 text is read.
+	 */
+	public Base64InputStream(InputStream in)
+	{
+		super(in);
+	}
+
+	@Override
+	public int read()
+		throws IOException
+	{
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return decoded[pos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len)
+		throws IOException
+	{
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(decoded, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n)
+		throws IOException
+	{
+		long skipped = 0;
+		while (skipped < n && (pos < limit || fill())) {
+			int k = (int)Math.min(n - skipped, limit - pos);
+			pos += k;
+			skipped += k;
+		}
+		return skipped;
+	}
+
+	/** The number of decoded bytes which can be read without blocking. */
+	@Override
+	public int available()
+		throws IOException
+	{
+		return limit - pos;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	@Override
+	public void mark(int readlimit)
+	{
+		// Not supported
+	}
+
+	@Override
+	public void reset()
+		throws IOException
+	{
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Reads and decodes text until there are decoded bytes to return.
+	 * @return Whether there are any; false at the end of the text.
+	 */
+	private boolean fill()
+		throws IOException
+	{
+		pos = 0;
+		limit = 0;
+		while (limit == 0 && !eof) {
+			int n = in.read(text, carried, text.length - carried);
+			if (n < 0) {
+				eof = true;
+				limit = Base64Codec.decode(text, 0, carried, decoded, 0);
+				carried = 0;
+			} else {
+				// Keep only alphabet characters, then decode whole groups
+				int k = carried;
+				for (int i = carried, end = carried + n; i < end; i++) {
+					if (Base64Codec.isAlphabet(text[i])) {
+						text[k++] = text[i];
+					}
+				}
+				int whole = k & ~3;
+				limit = Base64Codec.decode(text, 0, whole, decoded, 0);
+				carried = k - whole;
+				System.arraycopy(text, whole, text, 0, carried);
+			}
+		}
+		return limit > 0;
+	}
+}
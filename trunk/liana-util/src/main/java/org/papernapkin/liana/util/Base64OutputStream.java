@@ -0,0 +1,158 @@
+package org.papernapkin.liana.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the bytes written to it in Base64, writing the encoding to an
+ * underlying stream.  Bytes are encoded a chunk of whole lines at a time, so
+ * memory use does not depend on the amount of data, and the encoding written
+ * is exactly that which {@link Base64Codec#encode(byte[])} would produce for
+ * all of the bytes at once.
+ *
+ * <p>
+ * The last group of bytes can only be encoded once it is known to be the
+ * last, so the encoding is not complete until the stream is finished or
+ * closed; {@link #flush()} flushes only the chunks already encoded.
+ * </p>
+ *
+ * <p>
+ * This class is not synchronized.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class Base64OutputStream extends FilterOutputStream
+{
+	/** The approximate number of bytes encoded at a time. */
+	private static final int CHUNK_SIZE = 3 * 4096;
+
+	private final Base64Codec codec;
+	/** Bytes written but not yet encoded. */
+	private final byte[] input;
+	private final byte[] output;
+	private int count;
+	/** Whether a line separator must precede the next chunk's encoding. */
+	private boolean separatorPending;
+	private boolean finished;
+
+	/**
+	 * Creates a stream which writes lines of 76 characters separated by CRLF,
+	 * as MIME requires.
+	 * @param out The stream to which the encoding is written.
+	 */
+	public Base64OutputStream(OutputStream out)
+	{
+		this(out, Base64Codec.MIME);
+	}
+
+	/**
+	 * Creates a stream.
+	 * @param out The stream to which the encoding is written.
+	 * @param codec The codec which lays out the encoding.
+	 */
+	public Base64OutputStream(OutputStream out, Base64Codec codec)
+	{
+		super(out);
+		this.codec = codec;
+		int lineBytes = codec.getLineBytes();
+		int chunk = lineBytes == 0 ? CHUNK_SIZE : Math.max(1, CHUNK_SIZE / lineBytes) * lineBytes;
+		input = new byte[chunk];
+		output = new byte[codec.encodedLength(chunk) + codec.getLineSeparator().length()];
+	}
+
+	@Override
+	public void write(int b)
+		throws IOException
+	{
+		ensureOpen();
+		input[count++] = (byte)b;
+		if (count == input.length) {
+			encode(input, 0, count, false);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+		throws IOException
+	{
+		ensureOpen();
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		int end = off + len;
+		if (count > 0) {
+			int n = Math.min(len, input.length - count);
+			System.arraycopy(b, off, input, count, n);
+			count += n;
+			off += n;
+			if (count < input.length) {
+				return;
+			}
+			encode(input, 0, count, false);
+			count = 0;
+		}
+		// Whole chunks are encoded straight from the caller's array
+		for (; end - off >= input.length; off += input.length) {
+			encode(b, off, input.length, false);
+		}
+		System.arraycopy(b, off, input, 0, end - off);
+		count = end - off;
+	}
+
+	/**
+	 * Encodes the bytes remaining and writes the end of the encoding,
+	 * without closing the underlying stream.  Nothing more may be written.
+	 * @throws IOException If thrown by the underlying stream.
+	 */
+	public void finish()
+		throws IOException
+	{
+		if (!finished) {
+			if (count > 0) {
+				encode(input, 0, count, true);
+				count = 0;
+			}
+			finished = true;
+			out.flush();
+		}
+	}
+
+	/**
+	 * Finishes the encoding and closes the underlying stream.
+	 * @throws IOException If thrown by the underlying stream.
+	 */
+	@Override
+	public void close()
+		throws IOException
+	{
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void encode(byte[] src, int off, int len, boolean last)
+		throws IOException
+	{
+		int d = 0;
+		if (separatorPending) {
+			d = codec.writeSeparator(output, 0);
+			separatorPending = false;
+		}
+		d += codec.encode(src, off, len, output, d);
+		out.write(output, 0, d);
+		separatorPending = !last && codec.isSeparatedBetweenChunks();
+	}
+
+	private void ensureOpen()
+		throws IOException
+	{
+		if (finished) {
+			throw new IOException("The encoding has been finished");
+		}
+	}
+}
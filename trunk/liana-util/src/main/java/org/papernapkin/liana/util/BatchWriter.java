@@ -0,0 +1,353 @@
+package org.papernapkin.liana.util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes rows through a prepared insert or update statement in JDBC batches.
+ * Each row is bound to the statement's parameters and added to the batch
+ * with addBatch(); once a chunk of rows has been added the batch is sent to
+ * the database with executeBatch().  Rows may be objects, bound by a
+ * {@link RowBinder} which would typically use the setNullable methods of
+ * {@link IntegerUtil}, {@link LongUtil}, {@link StringUtil},
+ * {@link CalendarUtil} and {@link Money}, or the rows of a
+ * {@link ColumnBatch}, which are bound from its vectors.
+ *
+ * <p>
+ * The writer does not commit.  If the connection is not in auto-commit mode
+ * the caller commits once the writer has been flushed.
+ * </p>
+ *
+ * <p>
+ * The writer counts the rows it has executed and the time spent doing so,
+ * from which {@link #getRowsPerSecond()} reports its throughput.  This class
+ * is not synchronized; a writer is used by one thread.
+ * </p>
+ *
+ * @param <T> The type of object written.
+ *
+ * @author pchapman
+ */
+public class BatchWriter<T>
+{
+	/** Sets the parameters of a statement from an object. */
+	public interface RowBinder<T>
+	{
+		/**
+		 * Sets the parameters of the statement to the values of the row.
+		 * @param stmt The statement.
+		 * @param row The row.
+		 * @throws SQLException If thrown by the statement.
+		 */
+		void bind(PreparedStatement stmt, T row) throws SQLException;
+	}
+
+	/** The default number of rows sent to the database in each batch. */
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	/** Marks the end of the rows given by a producer thread. */
+	private static final Object END = new Object();
+
+	/** Queued for a null row, since the queue does not hold nulls. */
+	private static final Object NULL_ROW = new Object();
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchWriter.class);
+
+	private final PreparedStatement stmt;
+	private final RowBinder<? super T> binder;
+	private final int chunkSize;
+
+	private int pending;
+	private long rowCount;
+	private long updateCount;
+	private long nanos;
+	/** The time spent binding the pending rows. */
+	private long pendingNanos;
+
+	/**
+	 * Creates a writer for rows of a ColumnBatch.
+	 * @param stmt The statement.
+	 * @param chunkSize The number of rows in each batch.
+	 */
+	public BatchWriter(PreparedStatement stmt, int chunkSize)
+	{
+		this(stmt, null, chunkSize);
+	}
+
+	/**
+	 * Creates a writer.
+	 * @param stmt The statement.
+	 * @param binder Binds the objects written, or null if only the rows of
+	 *               ColumnBatches are written.
+	 * @param chunkSize The number of rows in each batch.
+	 */
+	public BatchWriter(PreparedStatement stmt, RowBinder<? super T> binder, int chunkSize)
+	{
+		super();
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+		this.stmt = stmt;
+		this.binder = binder;
+		this.chunkSize = chunkSize;
+	}
+
+	// ACCESSORS
+
+	/** The number of rows in each batch. */
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/** The number of rows added but not yet executed. */
+	public int getPendingCount()
+	{
+		return pending;
+	}
+
+	/** The number of rows executed. */
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * The number of rows the database reported as affected.  Drivers which
+	 * do not report the count of a statement in a batch are taken to have
+	 * affected one row.
+	 */
+	public long getUpdateCount()
+	{
+		return updateCount;
+	}
+
+	/**
+	 * The time spent binding and executing the rows executed so far, in
+	 * milliseconds.  Time spent waiting for rows, such as in an iterator or
+	 * for a producer thread, is not counted.
+	 */
+	public long getElapsedMillis()
+	{
+		return nanos / 1000000L;
+	}
+
+	/** The number of rows executed per second of elapsed time. */
+	public double getRowsPerSecond()
+	{
+		return nanos == 0 ? 0 : rowCount * 1e9 / nanos;
+	}
+
+	/** The number of rows executed, the time taken and the throughput. */
+	@Override
+	public String toString()
+	{
+		return rowCount + " rows in " + getElapsedMillis() + " ms (" +
+			Math.round(getRowsPerSecond()) + " rows/s)";
+	}
+
+	// MUTATORS
+
+	/**
+	 * Adds an object to the batch, executing the batch if it is full.
+	 * @param row The row.
+	 * @throws SQLException If thrown by the statement.
+	 */
+	public void add(T row)
+		throws SQLException
+	{
+		if (binder == null) {
+			throw new IllegalStateException("The writer has no binder for objects");
+		}
+		long start = System.nanoTime();
+		binder.bind(stmt, row);
+		added(start);
+	}
+
+	/**
+	 * Adds rows of a ColumnBatch, executing batches as they fill.
+	 * @param batch The rows.
+	 * @param fromRow The first row to add.
+	 * @param toRow The row after the last row to add.
+	 * @throws SQLException If thrown by the statement.
+	 * @see ColumnBatch#bind(PreparedStatement, int)
+	 */
+	public void addRows(ColumnBatch batch, int fromRow, int toRow)
+		throws SQLException
+	{
+		for (int row = fromRow; row < toRow; row++) {
+			long start = System.nanoTime();
+			batch.bind(stmt, row);
+			added(start);
+		}
+	}
+
+	/**
+	 * Adds all of the rows of a ColumnBatch and flushes the writer.
+	 * @param batch The rows.
+	 * @return The number of rows written.
+	 * @throws SQLException If thrown by the statement.
+	 */
+	public int writeAll(ColumnBatch batch)
+		throws SQLException
+	{
+		addRows(batch, 0, batch.size());
+		flush();
+		return batch.size();
+	}
+
+	/**
+	 * Writes the objects given by an iterator and flushes the writer.
+	 * @param rows The rows.
+	 * @return The number of rows written.
+	 * @throws SQLException If thrown by the statement.
+	 */
+	public long writeAll(Iterator<? extends T> rows)
+		throws SQLException
+	{
+		long count = 0;
+		while (rows.hasNext()) {
+			add(rows.next());
+			count++;
+		}
+		flush();
+		return count;
+	}
+
+	/**
+	 * Writes the objects given by an iterator and flushes the writer.  The
+	 * iterator is run by a producer thread, so that work done to create the
+	 * rows, such as parsing a file, overlaps with the database's work.  The
+	 * producer runs up to two chunks ahead of the writer.  Null rows are
+	 * passed to the binder, as they are when the iterator is run in the
+	 * calling thread.  If the iterator throws, the rows added since the last
+	 * batch was executed are discarded.
+	 * @param rows The rows.  Only the producer thread calls the iterator.
+	 * @param producerThread Whether to run the iterator in a producer
+	 *                       thread rather than in the calling thread.
+	 * @return The number of rows written.
+	 * @throws SQLException If thrown by the statement.
+	 * @throws InterruptedException The calling thread was interrupted.
+	 * @throws RuntimeException Thrown by the iterator.
+	 */
+	public long writeAll(final Iterator<? extends T> rows, boolean producerThread)
+		throws SQLException, InterruptedException
+	{
+		if (!producerThread) {
+			return writeAll(rows);
+		}
+		final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(chunkSize * 2);
+		final Holder<Throwable> failure = new Holder<Throwable>();
+		Thread producer = new Thread("BatchWriter producer") {
+			@Override
+			public void run() {
+				try {
+					while (rows.hasNext()) {
+						T row = rows.next();
+						queue.put(row == null ? NULL_ROW : row);
+					}
+				} catch (InterruptedException ie) {
+					// The writer has stopped
+					return;
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+				try {
+					queue.put(END);
+				} catch (InterruptedException ie) {
+					// The writer has stopped
+				}
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+
+		long count = 0;
+		boolean done = false;
+		try {
+			for (Object o = queue.take(); o != END; o = queue.take()) {
+				@SuppressWarnings("unchecked")
+				T row = o == NULL_ROW ? null : (T)o;
+				add(row);
+				count++;
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				producer.interrupt();
+			}
+			// The iterator is not called once this returns
+			producer.join();
+		}
+		Throwable t = failure.get();
+		if (t != null) {
+			// The rows after the failure are missing, so none of the
+			// unexecuted ones are written
+			stmt.clearBatch();
+			pending = 0;
+			pendingNanos = 0;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		} else if (t instanceof Error) {
+			throw (Error)t;
+		} else if (t != null) {
+			throw new IllegalStateException(t);
+		}
+		flush();
+		return count;
+	}
+
+	/**
+	 * Executes the rows which have been added but not yet executed.
+	 * @return The number of rows executed.
+	 * @throws SQLException If thrown by the statement.
+	 */
+	public int flush()
+		throws SQLException
+	{
+		if (pending == 0) {
+			return 0;
+		}
+		int rows = pending;
+		long binding = pendingNanos;
+		pending = 0;
+		pendingNanos = 0;
+		long start = System.nanoTime();
+		int[] counts = stmt.executeBatch();
+		for (int c : counts) {
+			if (c == Statement.SUCCESS_NO_INFO) {
+				updateCount++;
+			} else if (c > 0) {
+				updateCount += c;
+			}
+		}
+		rowCount += rows;
+		nanos += binding + System.nanoTime() - start;
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executed a batch of " + rows + " rows; " + this);
+		}
+		return rows;
+	}
+
+	/**
+	 * Adds the bound row to the batch, executing the batch if it is full.
+	 * @param start When binding the row began.
+	 */
+	private void added(long start)
+		throws SQLException
+	{
+		stmt.addBatch();
+		pendingNanos += System.nanoTime() - start;
+		if (++pending == chunkSize) {
+			flush();
+		}
+	}
+}
@@ -9,6 +9,8 @@ import java.text.DateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * Utility class for dealing with dates and times.
@@ -402,6 +404,150 @@ public class CalendarUtil
      	return cal;
     }
     
+	/** The number of milliseconds in a day without a change of offset. */
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	/**
+	 * Converts a date to an epoch day, the number of days since
+	 * 1 January 1970, in the proleptic Gregorian calendar.  Dates after
+	 * 15 October 1582 are those of GregorianCalendar.
+	 * @param year The year.
+	 * @param month The month, such as Calendar.JANUARY.
+	 * @param dayOfMonth The day of the month, from 1.
+	 * @return The epoch day.
+	 */
+	public static long toEpochDay(int year, int month, int dayOfMonth)
+	{
+		// Counted in eras of 400 years, whose years start in March
+		int m = month + 1;
+		long y = m <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + dayOfMonth - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * The epoch day of a calendar's date, in its own time zone.
+	 * @param cal The calendar.
+	 * @return The epoch day.
+	 */
+	public static long toEpochDay(Calendar cal)
+	{
+		return toEpochDay(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH));
+	}
+
+	/**
+	 * The epoch day of the date on which an instant falls in a time zone.
+	 * @param millis The instant, in milliseconds since the epoch.
+	 * @param zone The time zone.
+	 * @return The epoch day.
+	 */
+	public static long toEpochDay(long millis, TimeZone zone)
+	{
+		long local = millis + zone.getOffset(millis);
+		long day = local / MILLIS_PER_DAY;
+		return local % MILLIS_PER_DAY < 0 ? day - 1 : day;
+	}
+
+	/**
+	 * The year of an epoch day.
+	 * @see #toEpochDay(int, int, int)
+	 */
+	public static int getYear(long epochDay)
+	{
+		return (int)(civil(epochDay) >> 9);
+	}
+
+	/**
+	 * The month of an epoch day, such as Calendar.JANUARY.
+	 * @see #toEpochDay(int, int, int)
+	 */
+	public static int getMonth(long epochDay)
+	{
+		return (int)((civil(epochDay) >> 5) & 0xF);
+	}
+
+	/**
+	 * The day of the month of an epoch day, from 1.
+	 * @see #toEpochDay(int, int, int)
+	 */
+	public static int getDayOfMonth(long epochDay)
+	{
+		return (int)(civil(epochDay) & 0x1F);
+	}
+
+	/**
+	 * The day of the week of an epoch day, such as Calendar.SUNDAY.
+	 */
+	public static int getDayOfWeek(long epochDay)
+	{
+		// 1 January 1970 was a Thursday
+		int d = (int)((epochDay + 4) % 7);
+		return (d < 0 ? d + 7 : d) + Calendar.SUNDAY;
+	}
+
+	/**
+	 * Creates a calendar set to the start of an epoch day in the default time
+	 * zone and locale.
+	 * @param epochDay The day.
+	 * @return A new calendar.
+	 */
+	public static Calendar toCalendar(long epochDay)
+	{
+		long c = civil(epochDay);
+		return new GregorianCalendar((int)(c >> 9), (int)((c >> 5) & 0xF), (int)(c & 0x1F));
+	}
+
+	/**
+	 * The epoch day on which a week of a year starts in a locale, found in
+	 * the locale's {@link WeekTable}.  The week is numbered exactly as by
+	 * {@link #getWeekStart(int, int)}, so week 0 may start after the day of
+	 * January given by the locale's minimal days in the first week.
+	 * @param weekOfYear The week, numbered from 0.
+	 * @param year The year.
+	 * @param locale The locale whose weeks are used.
+	 * @return The epoch day.
+	 */
+	public static long getWeekStartDay(int weekOfYear, int year, Locale locale)
+	{
+		return WeekTable.getInstance(locale).getWeekStart(weekOfYear, year);
+	}
+
+	/**
+	 * The epoch day on which a week of a year ends in a locale, found in the
+	 * locale's {@link WeekTable}.  The week is numbered exactly as by
+	 * {@link #getWeekEnd(int, int)}, so week 0 may start after the day of
+	 * January given by the locale's minimal days in the first week.
+	 * @param weekOfYear The week, numbered from 0.
+	 * @param year The year.
+	 * @param locale The locale whose weeks are used.
+	 * @return The epoch day.
+	 */
+	public static long getWeekEndDay(int weekOfYear, int year, Locale locale)
+	{
+		return WeekTable.getInstance(locale).getWeekEnd(weekOfYear, year);
+	}
+
+	/**
+	 * The year, month and day of an epoch day, packed as
+	 * year &lt;&lt; 9 | month &lt;&lt; 5 | day.
+	 */
+	static long civil(long epochDay)
+	{
+		long z = epochDay + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return (year << 9) | ((month - 1) << 5) | day;
+	}
+
     public static final void main(String[] args) {
     	DateFormat df = DateFormat.getDateTimeInstance();
     	Calendar cal = Calendar.getInstance();
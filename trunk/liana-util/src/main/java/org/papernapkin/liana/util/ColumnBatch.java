@@ -0,0 +1,585 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Rows of typed values held column by column in primitive vectors, each with
+ * a bitmap marking its null entries.  A batch is read from a result set
+ * without creating an object per value, as the getNullable methods of
+ * {@link IntegerUtil}, {@link LongUtil}, {@link DoubleUtil},
+ * {@link CalendarUtil} and {@link Money} do: ints are held in an int[],
+ * longs, amounts in minor units and dates in milliseconds since the epoch in
+ * long[]s, and doubles in a double[].  Only strings are held as objects.
+ *
+ * <p>
+ * The columns are described by {@link ColumnSpec}s.  The accessor for a
+ * column's type must be used to read it; {@link #getValue(int, int)} creates
+ * an object for any type, for display.
+ * </p>
+ *
+ * <p>
+ * This class is not synchronized.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class ColumnBatch
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final ColumnSpec[] specs;
+	private final String[] names;
+
+	/** The vector of each column; an int[], long[], double[] or String[]. */
+	private final Object[] vectors;
+	/** One bit per row for each column, set if the entry is null. */
+	private final long[][] nulls;
+	private int capacity;
+	private int size;
+
+	/**
+	 * Creates an empty batch.
+	 * @param specs The columns.
+	 * @param names The names of the columns, or null.
+	 */
+	public ColumnBatch(ColumnSpec[] specs, String[] names)
+	{
+		this(specs, names, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty batch.
+	 * @param specs The columns.
+	 * @param names The names of the columns, or null.
+	 * @param initialCapacity The number of rows for which space is initially
+	 *                        allocated.
+	 */
+	public ColumnBatch(ColumnSpec[] specs, String[] names, int initialCapacity)
+	{
+		super();
+		if (names != null && names.length != specs.length) {
+			throw new IllegalArgumentException("There must be a name for each column");
+		}
+		this.specs = specs.clone();
+		this.names = names == null ? new String[specs.length] : names.clone();
+		this.capacity = Math.max(initialCapacity, 1);
+		this.vectors = new Object[specs.length];
+		this.nulls = new long[specs.length][];
+		for (int c = 0; c < specs.length; c++) {
+			vectors[c] = newVector(specs[c], capacity);
+			nulls[c] = new long[(capacity + 63) >>> 6];
+		}
+	}
+
+	/**
+	 * Reads the remaining rows of a result set.  The rows are read forward
+	 * only, so the result set need not be scrollable, and the fetch size
+	 * controls how many rows the driver fetches from the database at a time.
+	 * The columns are named with their labels.
+	 * @param result The result set.
+	 * @param specs The columns to read.
+	 * @param fetchSize The fetch size to set on the result set, or zero to
+	 *                  leave the driver's default.
+	 * @return The new batch.
+	 * @throws SQLException If thrown by the result set.
+	 */
+	public static ColumnBatch read(ResultSet result, ColumnSpec[] specs, int fetchSize)
+		throws SQLException
+	{
+		if (fetchSize > 0) {
+			result.setFetchSize(fetchSize);
+		}
+		ResultSetMetaData meta = result.getMetaData();
+		String[] names = new String[specs.length];
+		for (int c = 0; c < specs.length; c++) {
+			names[c] = meta.getColumnLabel(specs[c].getIndex());
+		}
+		ColumnBatch batch = new ColumnBatch(specs, names, Math.max(fetchSize, DEFAULT_CAPACITY));
+		batch.readFrom(result, 0);
+		return batch;
+	}
+
+	// ACCESSORS
+
+	/** The number of rows. */
+	public int size()
+	{
+		return size;
+	}
+
+	/** The number of columns. */
+	public int getColumnCount()
+	{
+		return specs.length;
+	}
+
+	/** The description of a column. */
+	public ColumnSpec getSpec(int column)
+	{
+		return specs[column];
+	}
+
+	/** The name of a column, which may be null. */
+	public String getName(int column)
+	{
+		return names[column];
+	}
+
+	/** Returns true if the entry is null. */
+	public boolean isNull(int row, int column)
+	{
+		checkRow(row);
+		return (nulls[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/** The entry of an INT column; 0 if it is null. */
+	public int getInt(int row, int column)
+	{
+		checkRow(row);
+		return ((int[])vectors[column])[row];
+	}
+
+	/**
+	 * The entry of a LONG column, the minor units of a MONEY column or the
+	 * milliseconds of a DATE, TIME or TIMESTAMP column; 0 if it is null.
+	 */
+	public long getLong(int row, int column)
+	{
+		checkRow(row);
+		return ((long[])vectors[column])[row];
+	}
+
+	/** The entry of a DOUBLE column; 0 if it is null. */
+	public double getDouble(int row, int column)
+	{
+		checkRow(row);
+		return ((double[])vectors[column])[row];
+	}
+
+	/** The entry of a STRING column, or null. */
+	public String getString(int row, int column)
+	{
+		checkRow(row);
+		return ((String[])vectors[column])[row];
+	}
+
+	/**
+	 * The vector of an INT column.  The array is that held by the batch, and
+	 * may be longer than the number of rows.
+	 */
+	public int[] getIntVector(int column)
+	{
+		return (int[])vectors[column];
+	}
+
+	/**
+	 * The vector of a LONG, MONEY, DATE, TIME or TIMESTAMP column.  The array
+	 * is that held by the batch, and may be longer than the number of rows.
+	 */
+	public long[] getLongVector(int column)
+	{
+		return (long[])vectors[column];
+	}
+
+	/**
+	 * The vector of a DOUBLE column.  The array is that held by the batch,
+	 * and may be longer than the number of rows.
+	 */
+	public double[] getDoubleVector(int column)
+	{
+		return (double[])vectors[column];
+	}
+
+	/**
+	 * The entry at a row as an object, for display: an Integer, Long,
+	 * Double, Money, Date or String, or null.
+	 */
+	public Object getValue(int row, int column)
+	{
+		if (isNull(row, column)) {
+			return null;
+		}
+		ColumnSpec spec = specs[column];
+		switch (spec.getType()) {
+			case INT:
+				return Integer.valueOf(getInt(row, column));
+			case LONG:
+				return Long.valueOf(getLong(row, column));
+			case DOUBLE:
+				return Double.valueOf(getDouble(row, column));
+			case MONEY:
+				long units = getLong(row, column);
+				if (spec.getScale() <= 2) {
+					return new Money(units, spec.getScale(), spec.getLocale());
+				}
+				return new Money(BigDecimal.valueOf(units, spec.getScale()), spec.getLocale());
+			case DATE:
+			case TIME:
+			case TIMESTAMP:
+				return new Date(getLong(row, column));
+			default:
+				return getString(row, column);
+		}
+	}
+
+	/** The class of the objects returned by getValue for a column. */
+	public Class<?> getValueClass(int column)
+	{
+		switch (specs[column].getType()) {
+			case INT:
+				return Integer.class;
+			case LONG:
+				return Long.class;
+			case DOUBLE:
+				return Double.class;
+			case MONEY:
+				return Money.class;
+			case DATE:
+			case TIME:
+			case TIMESTAMP:
+				return Date.class;
+			default:
+				return String.class;
+		}
+	}
+
+	/**
+	 * Creates a column holding the entries of a MONEY column.
+	 * @param column The column.
+	 * @return A new MoneyColumn.
+	 */
+	public MoneyColumn toMoneyColumn(int column)
+	{
+		ColumnSpec spec = specs[column];
+		if (spec.getType() != ColumnSpec.Type.MONEY) {
+			throw new IllegalArgumentException("Column " + column + " is not a MONEY column");
+		}
+		MoneyColumn m = new MoneyColumn(spec.getScale(), spec.getLocale(), size);
+		long[] units = (long[])vectors[column];
+		for (int row = 0; row < size; row++) {
+			if (isNull(row, column)) {
+				m.addNull();
+			} else {
+				m.addUnits(units[row]);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Sets the parameters of a statement to the entries of a row, as the
+	 * setNullable methods would.  Each column is bound to the parameter at
+	 * its index.  A MONEY column is bound as a count of minor units if its
+	 * database column holds minor units, and as an exact decimal otherwise.
+	 * @param stmt The statement.
+	 * @param row The row.
+	 * @throws SQLException If thrown by the statement.
+	 * @see BatchWriter#addRows(ColumnBatch, int, int)
+	 */
+	public void bind(PreparedStatement stmt, int row)
+		throws SQLException
+	{
+		checkRow(row);
+		for (int c = 0; c < specs.length; c++) {
+			ColumnSpec spec = specs[c];
+			int index = spec.getIndex();
+			if ((nulls[c][row >>> 6] & (1L << row)) != 0) {
+				stmt.setNull(index, sqlType(spec));
+				continue;
+			}
+			switch (spec.getType()) {
+				case INT:
+					stmt.setInt(index, ((int[])vectors[c])[row]);
+					break;
+				case LONG:
+					stmt.setLong(index, ((long[])vectors[c])[row]);
+					break;
+				case DOUBLE:
+					stmt.setDouble(index, ((double[])vectors[c])[row]);
+					break;
+				case MONEY:
+					long units = ((long[])vectors[c])[row];
+					if (spec.isMinorUnits()) {
+						stmt.setLong(index, units);
+					} else {
+						stmt.setBigDecimal(index, BigDecimal.valueOf(units, spec.getScale()));
+					}
+					break;
+				case DATE:
+					stmt.setDate(index, new java.sql.Date(((long[])vectors[c])[row]));
+					break;
+				case TIME:
+					stmt.setTime(index, new java.sql.Time(((long[])vectors[c])[row]));
+					break;
+				case TIMESTAMP:
+					stmt.setTimestamp(index, new java.sql.Timestamp(((long[])vectors[c])[row]));
+					break;
+				default:
+					stmt.setString(index, ((String[])vectors[c])[row]);
+					break;
+			}
+		}
+	}
+
+	// MUTATORS
+
+	/**
+	 * Appends rows read from a result set, reading forward with next().
+	 * Reading stops after the given number of rows, so that a large result
+	 * can be processed in batches, or when the result set is exhausted.
+	 * @param result The result set.
+	 * @param maxRows The maximum number of rows to read, or zero to read
+	 *                all of the remaining rows.
+	 * @return The number of rows read; less than maxRows only if the result
+	 *         set was exhausted.
+	 * @throws SQLException If thrown by the result set.
+	 * @throws ArithmeticException An amount does not fit in a long at the
+	 *                             scale of its column.
+	 */
+	public int readFrom(ResultSet result, int maxRows)
+		throws SQLException
+	{
+		int columns = specs.length;
+		ColumnSpec.Type[] types = new ColumnSpec.Type[columns];
+		int[] indexes = new int[columns];
+		boolean[] integral = new boolean[columns];
+		ResultSetMetaData meta = result.getMetaData();
+		for (int c = 0; c < columns; c++) {
+			types[c] = specs[c].getType();
+			indexes[c] = specs[c].getIndex();
+			if (types[c] == ColumnSpec.Type.MONEY) {
+				integral[c] = MoneyColumn.isIntegral(meta.getColumnType(indexes[c]));
+			}
+		}
+
+		int count = 0;
+		while ((maxRows <= 0 || count < maxRows) && result.next()) {
+			if (size == capacity) {
+				grow(Math.max(capacity * 2, size + Math.max(result.getFetchSize(), 1)));
+			}
+			int row = size;
+			// The row may hold null bits from a read which failed part way
+			for (int c = 0; c < columns; c++) {
+				clearNull(row, c);
+			}
+			for (int c = 0; c < columns; c++) {
+				int index = indexes[c];
+				boolean isNull;
+				switch (types[c]) {
+					case INT:
+						((int[])vectors[c])[row] = result.getInt(index);
+						isNull = result.wasNull();
+						break;
+					case LONG:
+						((long[])vectors[c])[row] = result.getLong(index);
+						isNull = result.wasNull();
+						break;
+					case DOUBLE:
+						((double[])vectors[c])[row] = result.getDouble(index);
+						isNull = result.wasNull();
+						break;
+					case MONEY:
+						((long[])vectors[c])[row] = MoneyColumn.readUnits(
+								result, index, specs[c].getScale(), integral[c], specs[c].isMinorUnits()
+							);
+						isNull = result.wasNull();
+						break;
+					case DATE:
+						isNull = setMillis(c, row, result.getDate(index));
+						break;
+					case TIME:
+						isNull = setMillis(c, row, result.getTime(index));
+						break;
+					case TIMESTAMP:
+						isNull = setMillis(c, row, result.getTimestamp(index));
+						break;
+					default:
+						String s = result.getString(index);
+						((String[])vectors[c])[row] = s;
+						isNull = s == null;
+						break;
+				}
+				if (isNull) {
+					nulls[c][row >>> 6] |= 1L << row;
+				}
+			}
+			size++;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Appends a row in which every entry is null, to be filled in with the
+	 * set methods.
+	 * @return The index of the new row.
+	 */
+	public int addRow()
+	{
+		if (size == capacity) {
+			grow(capacity * 2);
+		}
+		for (int c = 0; c < specs.length; c++) {
+			clearValue(c, size);
+			nulls[c][size >>> 6] |= 1L << size;
+		}
+		return size++;
+	}
+
+	/** Replaces the entry of an INT column. */
+	public void setInt(int row, int column, int value)
+	{
+		checkRow(row);
+		((int[])vectors[column])[row] = value;
+		clearNull(row, column);
+	}
+
+	/**
+	 * Replaces the entry of a LONG column, the minor units of a MONEY column
+	 * or the milliseconds of a DATE, TIME or TIMESTAMP column.
+	 */
+	public void setLong(int row, int column, long value)
+	{
+		checkRow(row);
+		((long[])vectors[column])[row] = value;
+		clearNull(row, column);
+	}
+
+	/** Replaces the entry of a DOUBLE column. */
+	public void setDouble(int row, int column, double value)
+	{
+		checkRow(row);
+		((double[])vectors[column])[row] = value;
+		clearNull(row, column);
+	}
+
+	/** Replaces the entry of a STRING column; null sets it to null. */
+	public void setString(int row, int column, String value)
+	{
+		checkRow(row);
+		if (value == null) {
+			setNull(row, column);
+		} else {
+			((String[])vectors[column])[row] = value;
+			clearNull(row, column);
+		}
+	}
+
+	/** Sets an entry to null. */
+	public void setNull(int row, int column)
+	{
+		checkRow(row);
+		clearValue(column, row);
+		nulls[column][row >>> 6] |= 1L << row;
+	}
+
+	/** Removes all rows. */
+	public void clear()
+	{
+		for (int c = 0; c < specs.length; c++) {
+			Arrays.fill(nulls[c], 0L);
+			if (vectors[c] instanceof String[]) {
+				Arrays.fill((String[])vectors[c], 0, size, null);
+			}
+		}
+		size = 0;
+	}
+
+	private boolean setMillis(int column, int row, Date date)
+	{
+		if (date == null) {
+			((long[])vectors[column])[row] = 0;
+			return true;
+		}
+		((long[])vectors[column])[row] = date.getTime();
+		return false;
+	}
+
+	private void clearNull(int row, int column)
+	{
+		nulls[column][row >>> 6] &= ~(1L << row);
+	}
+
+	private void clearValue(int column, int row)
+	{
+		Object v = vectors[column];
+		if (v instanceof int[]) {
+			((int[])v)[row] = 0;
+		} else if (v instanceof long[]) {
+			((long[])v)[row] = 0;
+		} else if (v instanceof double[]) {
+			((double[])v)[row] = 0;
+		} else {
+			((String[])v)[row] = null;
+		}
+	}
+
+	private void grow(int newCapacity)
+	{
+		for (int c = 0; c < specs.length; c++) {
+			Object v = vectors[c];
+			if (v instanceof int[]) {
+				vectors[c] = Arrays.copyOf((int[])v, newCapacity);
+			} else if (v instanceof long[]) {
+				vectors[c] = Arrays.copyOf((long[])v, newCapacity);
+			} else if (v instanceof double[]) {
+				vectors[c] = Arrays.copyOf((double[])v, newCapacity);
+			} else {
+				vectors[c] = Arrays.copyOf((String[])v, newCapacity);
+			}
+			nulls[c] = Arrays.copyOf(nulls[c], (newCapacity + 63) >>> 6);
+		}
+		capacity = newCapacity;
+	}
+
+	/** The SQL type with which a null entry of the column is bound. */
+	private static int sqlType(ColumnSpec spec)
+	{
+		switch (spec.getType()) {
+			case INT:
+				return Types.INTEGER;
+			case LONG:
+				return Types.BIGINT;
+			case DOUBLE:
+				return Types.DOUBLE;
+			case MONEY:
+				return spec.isMinorUnits() ? Types.BIGINT : Types.DECIMAL;
+			case DATE:
+				return Types.DATE;
+			case TIME:
+				return Types.TIME;
+			case TIMESTAMP:
+				return Types.TIMESTAMP;
+			default:
+				return Types.VARCHAR;
+		}
+	}
+
+	private static Object newVector(ColumnSpec spec, int capacity)
+	{
+		switch (spec.getType()) {
+			case INT:
+				return new int[capacity];
+			case DOUBLE:
+				return new double[capacity];
+			case STRING:
+				return new String[capacity];
+			default:
+				return new long[capacity];
+		}
+	}
+
+	private void checkRow(int row)
+	{
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.papernapkin.liana.util;
+
+import java.util.Locale;
+
+/**
+ * Describes a column of a {@link ColumnBatch}: the type in which its values
+ * are held and the index of the result set column or statement parameter
+ * they are read from or bound to.
+ *
+ * @author pchapman
+ */
+public final class ColumnSpec
+{
+	/** The types of column, and the vectors in which they are held. */
+	public enum Type {
+		/** Held in an int[]. */
+		INT,
+		/** Held in a long[]. */
+		LONG,
+		/** Held in a double[]. */
+		DOUBLE,
+		/** Monetary amounts held in a long[] of minor units. */
+		MONEY,
+		/** Dates held in a long[] of milliseconds since the epoch. */
+		DATE,
+		/** Times held in a long[] of milliseconds since the epoch. */
+		TIME,
+		/** Timestamps held in a long[] of milliseconds since the epoch. */
+		TIMESTAMP,
+		/** Held in a String[]. */
+		STRING
+	}
+
+	private final Type type;
+	private final int index;
+	private final int scale;
+	private final Locale locale;
+	private final boolean minorUnits;
+
+	private ColumnSpec(Type type, int index, int scale, Locale locale, boolean minorUnits)
+	{
+		super();
+		if (index < 1) {
+			throw new IllegalArgumentException("Invalid column index: " + index);
+		}
+		this.type = type;
+		this.index = index;
+		this.scale = scale;
+		this.locale = locale;
+		this.minorUnits = minorUnits;
+	}
+
+	/** A column of int values at the given index. */
+	public static ColumnSpec intColumn(int index)
+	{
+		return new ColumnSpec(Type.INT, index, 0, null, false);
+	}
+
+	/** A column of long values at the given index. */
+	public static ColumnSpec longColumn(int index)
+	{
+		return new ColumnSpec(Type.LONG, index, 0, null, false);
+	}
+
+	/** A column of double values at the given index. */
+	public static ColumnSpec doubleColumn(int index)
+	{
+		return new ColumnSpec(Type.DOUBLE, index, 0, null, false);
+	}
+
+	/**
+	 * A column of monetary amounts at the given index.
+	 * @param index The index of the column.
+	 * @param scale The number of decimal places of the minor units; 2 for
+	 *              cents.
+	 * @param locale The locale of Money objects created from the column.
+	 * @param minorUnits Whether the database column is an integer column
+	 *                   holding counts of minor units, as opposed to holding
+	 *                   the amounts themselves.
+	 * @see MoneyColumn#readFrom(java.sql.ResultSet, int, boolean)
+	 */
+	public static ColumnSpec moneyColumn(int index, int scale, Locale locale, boolean minorUnits)
+	{
+		FixedPoint.checkScale(scale);
+		return new ColumnSpec(Type.MONEY, index, scale, locale, minorUnits);
+	}
+
+	/** A column of dates at the given index. */
+	public static ColumnSpec dateColumn(int index)
+	{
+		return new ColumnSpec(Type.DATE, index, 0, null, false);
+	}
+
+	/** A column of times at the given index. */
+	public static ColumnSpec timeColumn(int index)
+	{
+		return new ColumnSpec(Type.TIME, index, 0, null, false);
+	}
+
+	/** A column of timestamps at the given index. */
+	public static ColumnSpec timestampColumn(int index)
+	{
+		return new ColumnSpec(Type.TIMESTAMP, index, 0, null, false);
+	}
+
+	/** A column of strings at the given index. */
+	public static ColumnSpec stringColumn(int index)
+	{
+		return new ColumnSpec(Type.STRING, index, 0, null, false);
+	}
+
+	/** The type of the column. */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/** The index of the result set column or statement parameter. */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/** The scale of a MONEY column. */
+	public int getScale()
+	{
+		return scale;
+	}
+
+	/** The locale of a MONEY column. */
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	/** Whether a MONEY column is stored in the database as minor units. */
+	public boolean isMinorUnits()
+	{
+		return minorUnits;
+	}
+}
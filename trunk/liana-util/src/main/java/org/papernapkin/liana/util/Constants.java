@@ -1,28 +0,0 @@
-package org.papernapkin.liana.util;
-
-final class Constants
-{
-  /**
-   * Byte value that maps to 'a' in Base64 encoding
-   */
-  final static int LOWER_CASE_A_VALUE = 26;
-  /**
-   * Byte value that maps to '0' in Base64 encoding
-   */
-  final static int ZERO_VALUE = 52;
-  /**
-   * Byte value that maps to '+' in Base64 encoding
-   */
-  final static int PLUS_VALUE = 62;
-  /**
-   * Byte value that maps to '/' in Base64 encoding
-   */
-  final static int SLASH_VALUE = 63;
-  /**
-   * Bit mask for one character worth of bits in Base64 encoding.
-   * Equivalent to binary value 111111b.
-   */
-  final static int SIX_BIT_MASK = 63;
-  
-  private Constants() {}
-}
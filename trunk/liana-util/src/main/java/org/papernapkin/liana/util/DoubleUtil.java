@@ -34,24 +34,81 @@ public class DoubleUtil
 	}	
 
 	/**
-	 * This method uses java.lang.Double.parseDouble(String) to parse the
-	 * string value into a double.  The difference is that if a
-	 * NumberFormatException is caught, 0 is returned. 
-	 * @param str The string to return.
+	 * Parses the string as java.lang.Double.parseDouble(String) does,
+	 * returning 0 if it cannot be parsed.  No exception is thrown or caught.
+	 * @param str The string to parse.
 	 * @return The double value, or 0 if the string cannot be parsed into a
 	 *         double.
 	 */
-    public static double parseDoubleSafe(String str) {
-	// Initialize
-	double d = (double)0;
+	public static double parseDoubleSafe(String str)
+	{
+		return parseDouble(str, (double)0);
+	}
+
+	/**
+	 * Parses text as java.lang.Double.parseDouble(String) does, without
+	 * throwing an exception or creating any objects.  Leading and trailing
+	 * whitespace is ignored, as by Double.parseDouble.
+	 * @param s The text, or null.
+	 * @param defaultValue The value returned if the text is null, empty or
+	 *                     not a double.
+	 * @return The double value, or the default.
+	 * @see NumberParser
+	 */
+	public static double parseDouble(CharSequence s, double defaultValue)
+	{
+		return s == null ? defaultValue : parseDouble(s, 0, s.length(), defaultValue);
+	}
 
-	// Try to parse the string
-	try {
-	    d = Double.valueOf(str).doubleValue();
-	} catch (NumberFormatException e) {}
+	/**
+	 * Parses a range of text as java.lang.Double.parseDouble(String) does,
+	 * without throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @param defaultValue The value returned if the range is empty or not a
+	 *                     double.
+	 * @return The double value, or the default.
+	 */
+	public static double parseDouble(CharSequence s, int start, int end, double defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseDouble(s, start, end) == NumberParser.Status.OK
+			? parser.getDouble() : defaultValue;
+	}
 
-	// Return the value.  Notice that if a Number Format Exception was 
-	// caught, (double)0 is returned.
-	return d;
-    }
+	/**
+	 * Parses a slice of a char array as java.lang.Double.parseDouble(String)
+	 * does, without throwing an exception or creating any objects.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     double.
+	 * @return The double value, or the default.
+	 */
+	public static double parseDouble(char[] buf, int offset, int length, double defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseDouble(buf, offset, length) == NumberParser.Status.OK
+			? parser.getDouble() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a byte array of ASCII or ISO-8859-1 text as
+	 * java.lang.Double.parseDouble(String) does, without throwing an
+	 * exception or creating any objects.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     double.
+	 * @return The double value, or the default.
+	 */
+	public static double parseDouble(byte[] buf, int offset, int length, double defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseDouble(buf, offset, length) == NumberParser.Status.OK
+			? parser.getDouble() : defaultValue;
+	}
 }
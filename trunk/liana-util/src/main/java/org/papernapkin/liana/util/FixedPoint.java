@@ -0,0 +1,178 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic helpers for amounts held as a long count of units of
+ * 10<sup>-scale</sup>.  Used by {@link Money} and the classes which work on
+ * amounts in that compact form.
+ *
+ * @author pchapman
+ */
+final class FixedPoint
+{
+	/** The largest scale held in compact form. */
+	static final int MAX_SCALE = 18;
+
+	/** Powers of ten indexed by exponent, used to align scales. */
+	static final long[] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+		100000000L, 1000000000L, 10000000000L, 100000000000L,
+		1000000000000L, 10000000000000L, 100000000000000L,
+		1000000000000000L, 10000000000000000L, 100000000000000000L,
+		1000000000000000000L
+	};
+
+	private FixedPoint()
+	{
+		super();
+	}
+
+	/**
+	 * Returns true if units multiplied by 10<sup>exponent</sup> fits in a
+	 * long.
+	 */
+	static boolean fits(long units, int exponent)
+	{
+		long limit = Long.MAX_VALUE / POWERS_OF_TEN[exponent];
+		return units <= limit && units >= -limit;
+	}
+
+	/**
+	 * Compares two compact amounts of possibly different scales.
+	 * @return -1, 0, or 1 as the first amount is numerically less than,
+	 *         equal to, or greater than the second.
+	 */
+	static int compare(long a, int scaleA, long b, int scaleB)
+	{
+		if (scaleA < scaleB) {
+			if (!fits(a, scaleB - scaleA)) {
+				// Once aligned, a would exceed any long in magnitude.
+				return a < 0 ? -1 : 1;
+			}
+			a *= POWERS_OF_TEN[scaleB - scaleA];
+		} else if (scaleA > scaleB) {
+			if (!fits(b, scaleA - scaleB)) {
+				return b < 0 ? 1 : -1;
+			}
+			b *= POWERS_OF_TEN[scaleA - scaleB];
+		}
+		return a < b ? -1 : (a == b ? 0 : 1);
+	}
+
+	/**
+	 * Maps one of the BigDecimal rounding mode constants, which the Money
+	 * classes take, to the RoundingMode.
+	 * @throws IllegalArgumentException The mode is not a rounding mode.
+	 */
+	static RoundingMode toRoundingMode(int mode)
+	{
+		return RoundingMode.valueOf(mode);
+	}
+
+	/**
+	 * Divides two longs, rounding the quotient according to the given
+	 * BigDecimal rounding mode.  The divisor must not be zero or
+	 * Long.MIN_VALUE.
+	 */
+	static long divideAndRound(long dividend, long divisor, int mode)
+	{
+		return divideAndRound(dividend, divisor, toRoundingMode(mode));
+	}
+
+	/**
+	 * Divides two longs, rounding the quotient according to the given
+	 * rounding mode.  The divisor must not be zero or Long.MIN_VALUE.
+	 */
+	static long divideAndRound(long dividend, long divisor, RoundingMode mode)
+	{
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+		int signum = (dividend < 0) == (divisor < 0) ? 1 : -1;
+		long r = Math.abs(remainder);
+		long rest = Math.abs(divisor) - r;
+		boolean increment;
+		switch (mode) {
+			case UP:
+				increment = true;
+				break;
+			case DOWN:
+				increment = false;
+				break;
+			case CEILING:
+				increment = signum > 0;
+				break;
+			case FLOOR:
+				increment = signum < 0;
+				break;
+			case HALF_UP:
+				increment = r >= rest;
+				break;
+			case HALF_DOWN:
+				increment = r > rest;
+				break;
+			case HALF_EVEN:
+				increment = r > rest || (r == rest && (quotient & 1) != 0);
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid rounding mode");
+		}
+		return increment ? quotient + signum : quotient;
+	}
+
+	/** Returns true if the mode can be applied by divideAndRound. */
+	static boolean isCompactRoundingMode(int mode)
+	{
+		try {
+			return toRoundingMode(mode) != RoundingMode.UNNECESSARY;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Converts a value to units of 10<sup>-scale</sup>, rounding with the
+	 * mode if necessary.
+	 * @throws ArithmeticException The value does not fit in a long at the
+	 *                             scale.
+	 */
+	static long toUnits(BigDecimal value, int scale, int mode)
+	{
+		BigDecimal scaled = value.setScale(scale, toRoundingMode(mode));
+		if (scaled.unscaledValue().bitLength() > 63) {
+			throw new ArithmeticException("Amount " + value + " does not fit in a long at scale " + scale);
+		}
+		return scaled.unscaledValue().longValue();
+	}
+
+	/** Throws IllegalArgumentException unless the scale is 0 to MAX_SCALE. */
+	static void checkScale(int scale)
+	{
+		if (scale < 0 || scale > MAX_SCALE) {
+			throw new IllegalArgumentException(
+					"Invalid scale: " + scale + " (must be 0 to " + MAX_SCALE + ")"
+				);
+		}
+	}
+
+	/**
+	 * Hashes a value given as units of 10<sup>-scale</sup>, such that equal
+	 * values of different scales have the same hash.
+	 */
+	static int hash(long units, int scale)
+	{
+		if (units == 0) {
+			scale = 0;
+		} else {
+			while (units % 10 == 0) {
+				units /= 10;
+				scale--;
+			}
+		}
+		return 31 * (int)(units ^ (units >>> 32)) + scale;
+	}
+}
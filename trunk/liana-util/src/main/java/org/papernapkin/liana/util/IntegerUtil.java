@@ -62,26 +62,82 @@ public class IntegerUtil
 	}
 	
 	/**
-	 * This method uses java.lang.Integer.parseInteger(String) to parse the
-	 * string value into a integer.  The difference is that if a
-	 * NumberFormatException is caught, 0 is returned. 
-	 * @param str The string to return.
-	 * @return The integer value, or 0 if the string cannot be parsed into a
+	 * Parses the string as java.lang.Integer.parseInt(String) does, returning
+	 * 0 if it cannot be parsed.  No exception is thrown or caught.
+	 * @param str The string to parse.
+	 * @return The integer value, or 0 if the string cannot be parsed into an
 	 *         integer.
 	 */
-    public static int parseIntegerSafe(String str) {
-	// Initialize
-	int i = (int)0;
+	public static int parseIntegerSafe(String str)
+	{
+		return parseInt(str, (int)0);
+	}
 
-	// Try to parse the string
-	try {
-	    i = Integer.valueOf(str).intValue();
-	} catch (NumberFormatException e) {}
+	/**
+	 * Parses text as java.lang.Integer.parseInt(String) does, without
+	 * throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param defaultValue The value returned if the text is null, empty or
+	 *                     not an integer.
+	 * @return The integer value, or the default.
+	 * @see NumberParser
+	 */
+	public static int parseInt(CharSequence s, int defaultValue)
+	{
+		return s == null ? defaultValue : parseInt(s, 0, s.length(), defaultValue);
+	}
 
-	// Return the value.  Notice that if a Number Format Exception was 
-	// caught, (integer)0 is returned.
-	return i;
-    }
+	/**
+	 * Parses a range of text as java.lang.Integer.parseInt(String) does,
+	 * without throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @param defaultValue The value returned if the range is empty or not an
+	 *                     integer.
+	 * @return The integer value, or the default.
+	 */
+	public static int parseInt(CharSequence s, int start, int end, int defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseInt(s, start, end) == NumberParser.Status.OK
+			? parser.getInt() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a char array as java.lang.Integer.parseInt(String)
+	 * does, without throwing an exception or creating any objects.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @param defaultValue The value returned if the slice is empty or not an
+	 *                     integer.
+	 * @return The integer value, or the default.
+	 */
+	public static int parseInt(char[] buf, int offset, int length, int defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseInt(buf, offset, length) == NumberParser.Status.OK
+			? parser.getInt() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a byte array of ASCII or ISO-8859-1 text as
+	 * java.lang.Integer.parseInt(String) does, without throwing an exception
+	 * or creating any objects.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param defaultValue The value returned if the slice is empty or not an
+	 *                     integer.
+	 * @return The integer value, or the default.
+	 */
+	public static int parseInt(byte[] buf, int offset, int length, int defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseInt(buf, offset, length) == NumberParser.Status.OK
+			? parser.getInt() : defaultValue;
+	}
 
     /**
      * Sets the parameter in the statement with an integer value, or null if
@@ -62,26 +62,82 @@ public class LongUtil
 	}
 	
 	/**
-	 * This method uses java.lang.Long.parseLong(String) to parse the
-	 * string value into a long.  The difference is that if a
-	 * NumberFormatException is caught, 0 is returned. 
-	 * @param str The string to return.
+	 * Parses the string as java.lang.Long.parseLong(String) does, returning 0
+	 * if it cannot be parsed.  No exception is thrown or caught.
+	 * @param str The string to parse.
 	 * @return The long value, or 0 if the string cannot be parsed into a
 	 *         long.
 	 */
-    public static long parseLongSafe(String str) {
-		// Initialize
-		long i = (long)0;
-	
-		// Try to parse the string
-		try {
-		    i = Long.valueOf(str).longValue();
-		} catch (NumberFormatException e) {}
-	
-		// Return the value.  Notice that if a Number Format Exception was 
-		// caught, (long)0 is returned.
-		return i;
-    }
+	public static long parseLongSafe(String str)
+	{
+		return parseLong(str, (long)0);
+	}
+
+	/**
+	 * Parses text as java.lang.Long.parseLong(String) does, without throwing
+	 * an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param defaultValue The value returned if the text is null, empty or
+	 *                     not a long.
+	 * @return The long value, or the default.
+	 * @see NumberParser
+	 */
+	public static long parseLong(CharSequence s, long defaultValue)
+	{
+		return s == null ? defaultValue : parseLong(s, 0, s.length(), defaultValue);
+	}
+
+	/**
+	 * Parses a range of text as java.lang.Long.parseLong(String) does,
+	 * without throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @param defaultValue The value returned if the range is empty or not a
+	 *                     long.
+	 * @return The long value, or the default.
+	 */
+	public static long parseLong(CharSequence s, int start, int end, long defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseLong(s, start, end) == NumberParser.Status.OK
+			? parser.getLong() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a char array as java.lang.Long.parseLong(String)
+	 * does, without throwing an exception or creating any objects.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     long.
+	 * @return The long value, or the default.
+	 */
+	public static long parseLong(char[] buf, int offset, int length, long defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseLong(buf, offset, length) == NumberParser.Status.OK
+			? parser.getLong() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a byte array of ASCII or ISO-8859-1 text as
+	 * java.lang.Long.parseLong(String) does, without throwing an exception or
+	 * creating any objects.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     long.
+	 * @return The long value, or the default.
+	 */
+	public static long parseLong(byte[] buf, int offset, int length, long defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseLong(buf, offset, length) == NumberParser.Status.OK
+			? parser.getLong() : defaultValue;
+	}
 
     /**
      * Sets the parameter in the statement with an long value, or null if
@@ -0,0 +1,303 @@
+package org.papernapkin.liana.util;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * A message with {n} placeholders, parsed once into literal segments and
+ * argument slots so that it can be rendered many times in a single pass.
+ * The placeholders follow {@link StringUtil#replaceArgs(String, Object...)}:
+ * {1} is replaced by the first argument, {2} by the second, and so on.
+ * Placeholders for which no argument is given are left in the text as they
+ * are.
+ *
+ * <p>
+ * Arguments are written by an {@link ArgumentFormatter}.  The default one
+ * writes the toString() of each argument, as replaceArgs does; one for a
+ * locale formats numbers, dates and Money amounts for that locale.
+ * </p>
+ *
+ * <p>
+ * Templates are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class MessageTemplate
+{
+	/** Placeholders with more digits than this are left as text. */
+	private static final int MAX_SLOT_DIGITS = 9;
+
+	/**
+	 * Writes the arguments of a message.  Subclasses override the method for
+	 * the type of argument whose formatting they change.
+	 */
+	public static class ArgumentFormatter
+	{
+		/** Writes each argument's toString(), or "null". */
+		public static final ArgumentFormatter DEFAULT = new ArgumentFormatter();
+
+		protected ArgumentFormatter()
+		{
+			super();
+		}
+
+		/** Writes an argument, choosing the method for its type. */
+		public void format(Object arg, Appendable out) throws IOException
+		{
+			if (arg == null) {
+				out.append("null");
+			} else if (arg instanceof Money) {
+				formatMoney((Money)arg, out);
+			} else if (arg instanceof Number) {
+				formatNumber((Number)arg, out);
+			} else if (arg instanceof Date) {
+				formatDate((Date)arg, out);
+			} else {
+				formatObject(arg, out);
+			}
+		}
+
+		/** Writes a monetary amount. */
+		protected void formatMoney(Money arg, Appendable out) throws IOException
+		{
+			arg.appendTo(out);
+		}
+
+		/** Writes a number. */
+		protected void formatNumber(Number arg, Appendable out) throws IOException
+		{
+			formatObject(arg, out);
+		}
+
+		/** Writes a date. */
+		protected void formatDate(Date arg, Appendable out) throws IOException
+		{
+			formatObject(arg, out);
+		}
+
+		/** Writes any other argument. */
+		protected void formatObject(Object arg, Appendable out) throws IOException
+		{
+			out.append(arg.toString());
+		}
+	}
+
+	/**
+	 * Creates a formatter which writes numbers, dates and Money amounts in
+	 * the style of a locale.  Each amount keeps its own rounding mode.  The
+	 * formatter holds a NumberFormat and a DateFormat, so it must not be used
+	 * by several threads at once.
+	 * @param locale The locale.
+	 * @param dateStyle The DateFormat style of dates, such as
+	 *                  DateFormat.MEDIUM.
+	 * @param timeStyle The DateFormat style of times, or -1 to write dates
+	 *                  without times.
+	 */
+	public static ArgumentFormatter getFormatter(
+			final Locale locale, int dateStyle, int timeStyle
+		)
+	{
+		final NumberFormat numberFormat = NumberFormat.getInstance(locale);
+		final DateFormat dateFormat = timeStyle < 0
+			? DateFormat.getDateInstance(dateStyle, locale)
+			: DateFormat.getDateTimeInstance(dateStyle, timeStyle, locale);
+		return new ArgumentFormatter() {
+			protected void formatMoney(Money arg, Appendable out) throws IOException {
+				out.append(MoneyFormat.getInstance(locale, arg.getRoundingMode()).format(arg.getValue()));
+			}
+			protected void formatNumber(Number arg, Appendable out) throws IOException {
+				out.append(numberFormat.format(arg));
+			}
+			protected void formatDate(Date arg, Appendable out) throws IOException {
+				out.append(dateFormat.format(arg));
+			}
+		};
+	}
+
+	/** The text between the slots; one more than there are slots. */
+	private final String[] literals;
+	/** The zero based index of the argument of each slot. */
+	private final int[] slots;
+	/** The length of the literal text, for sizing the output. */
+	private final int literalLength;
+
+	private MessageTemplate(String[] literals, int[] slots)
+	{
+		super();
+		this.literals = literals;
+		this.slots = slots;
+		int length = 0;
+		for (String s : literals) {
+			length += s.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Parses a message into a template.
+	 * @param pattern The message, with placeholders of the form {n}.
+	 * @return The template.
+	 */
+	public static MessageTemplate compile(String pattern)
+	{
+		int count = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			if (slotEnd(pattern, i) > 0) {
+				count++;
+			}
+		}
+		String[] literals = new String[count + 1];
+		int[] slots = new int[count];
+		int n = 0;
+		int start = 0;
+		for (int i = 0; i < pattern.length(); i++) {
+			int end = slotEnd(pattern, i);
+			if (end > 0) {
+				literals[n] = pattern.substring(start, i);
+				slots[n++] = Integer.parseInt(pattern.substring(i + 1, end - 1)) - 1;
+				start = end;
+				i = end - 1;
+			}
+		}
+		literals[n] = pattern.substring(start);
+		return new MessageTemplate(literals, slots);
+	}
+
+	/**
+	 * Replaces the placeholders in a message with arguments in a single pass,
+	 * without keeping a template.
+	 * @param pattern The message, with placeholders of the form {n}.
+	 * @param args The arguments.
+	 * @return The message with the placeholders replaced.
+	 */
+	public static String replaceArgs(String pattern, Object... args)
+	{
+		int first = pattern.indexOf('{');
+		if (first < 0 || args.length == 0) {
+			return pattern;
+		}
+		StringBuilder sb = new StringBuilder(pattern.length() + 16 * args.length);
+		sb.append(pattern, 0, first);
+		try {
+			int start = first;
+			for (int i = first; i < pattern.length(); i++) {
+				int end = slotEnd(pattern, i);
+				if (end > 0) {
+					int slot = Integer.parseInt(pattern.substring(i + 1, end - 1)) - 1;
+					if (slot < args.length) {
+						sb.append(pattern, start, i);
+						ArgumentFormatter.DEFAULT.format(args[slot], sb);
+						start = end;
+					}
+					i = end - 1;
+				}
+			}
+			sb.append(pattern, start, pattern.length());
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/** The number of placeholders in the template. */
+	public int getSlotCount()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * Renders the template, writing each argument's toString().
+	 * @param args The arguments.
+	 * @return The message.
+	 */
+	public String render(Object... args)
+	{
+		if (slots.length == 0) {
+			return literals[0];
+		}
+		return render(new StringBuilder(literalLength + 16 * slots.length), args).toString();
+	}
+
+	/**
+	 * Renders the template into a StringBuilder, writing each argument's
+	 * toString().
+	 * @param sb The builder to append to.
+	 * @param args The arguments.
+	 * @return The builder.
+	 */
+	public StringBuilder render(StringBuilder sb, Object... args)
+	{
+		try {
+			appendTo(sb, ArgumentFormatter.DEFAULT, args);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return sb;
+	}
+
+	/**
+	 * Renders the template to an Appendable, such as a Writer.
+	 * @param out The output.
+	 * @param formatter Writes the arguments.
+	 * @param args The arguments.
+	 * @throws IOException If thrown by the output.
+	 */
+	public void appendTo(Appendable out, ArgumentFormatter formatter, Object... args)
+		throws IOException
+	{
+		for (int i = 0; i < slots.length; i++) {
+			out.append(literals[i]);
+			int slot = slots[i];
+			if (slot < args.length) {
+				formatter.format(args[slot], out);
+			} else {
+				out.append('{').append(String.valueOf(slot + 1)).append('}');
+			}
+		}
+		out.append(literals[slots.length]);
+	}
+
+	/**
+	 * The pattern of the template, with the placeholders in the form {n}.
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(literalLength + 4 * slots.length);
+		for (int i = 0; i < slots.length; i++) {
+			sb.append(literals[i]).append('{').append(slots[i] + 1).append('}');
+		}
+		return sb.append(literals[slots.length]).toString();
+	}
+
+	/**
+	 * Returns the index after the placeholder starting at the index, or -1 if
+	 * there is none.  A placeholder is a positive number without leading
+	 * zeros between braces.
+	 */
+	private static int slotEnd(String s, int i)
+	{
+		if (s.charAt(i) != '{' || i + 2 >= s.length()) {
+			return -1;
+		}
+		char c = s.charAt(i + 1);
+		if (c < '1' || c > '9') {
+			return -1;
+		}
+		for (int j = i + 2; j < s.length(); j++) {
+			c = s.charAt(j);
+			if (c == '}') {
+				return j + 1;
+			}
+			if (c < '0' || c > '9' || j - i >= MAX_SLOT_DIGITS) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+}
@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.text.*; // Java Text classes
+import java.util.Arrays;
 import java.util.Locale;
 
 import java.math.*; // Java Math classes
@@ -49,6 +50,21 @@ import java.io.*; // Java I/O
  * separates each group of 3 consecutive digits in the dollar amount.
  * </p>
  * <p>Examples: $1,234.56   ($1,234.56)</p>
+ * <p>
+ * The Currency Format and Rounding Mode are held in an immutable
+ * {@link MoneyFormat} which is shared by all Money objects of the same locale
+ * and Rounding Mode, so arithmetic does not copy formatting state.
+ * </p>
+ *
+ * <p><b>Representation</b></p>
+ * <p>
+ * Amounts whose unscaled value fits in a long and whose scale is between 0
+ * and 18 are held as a count of minor units plus a scale.  Arithmetic and
+ * comparisons on such amounts are done with long arithmetic.  An operation
+ * whose result would overflow a long transparently falls back to BigDecimal,
+ * so results are identical to those of the BigDecimal arithmetic regardless
+ * of which representation is in use.
+ * </p>
  *
  * <p><b>Immutability</b></p>
  * <p>
@@ -73,21 +89,68 @@ public class Money implements Cloneable, Serializable
 {
 	private static final long serialVersionUID = 1L;
 
-	/** The monetary value. */
+	/**
+	 * The monetary value.  This is null while the value is held in compact
+	 * form (see {@link #units}) until it is first asked for.
+	 *
+	 * @deprecated Use {@link #getInflatedValue()}, which creates the value
+	 *             when it is held in compact form.
+	 */
+	@Deprecated
 	protected BigDecimal value = null; // The monetary value
 
+	/**
+	 * The monetary value as a count of units of 10<sup>-scale</sup>.  Only
+	 * meaningful when {@link #scale} is not {@link #INFLATED}.
+	 */
+	private transient long units;
+
+	/**
+	 * The scale of {@link #units}, or {@link #INFLATED} if the monetary value
+	 * is held only in {@link #value}.
+	 */
+	private transient int scale = INFLATED;
+
+	/**
+	 * The Currency Format and Rounding Mode, used for formatting and parsing
+	 * a monetary value.  The instance is immutable and shared by all Money
+	 * objects with the same locale and rounding mode.
+	 *
+	 * @see MoneyFormat
+	 */
+	private MoneyFormat moneyFormat;
+
 	/**
 	 * The Rounding Mode. Specifies if and how the monetary value is to be
 	 * rounded off to an integral cent.
+	 *
+	 * @deprecated The Rounding Mode is held by the shared
+	 *             {@link MoneyFormat}; this field mirrors it and assigning
+	 *             it has no effect.  Use {@link #getRoundingMode()}.
 	 */
-	protected int roundingMode = BigDecimal.ROUND_DOWN; // Rounding Mode
+	@Deprecated
+	protected transient int roundingMode = DEFAULT_ROUNDING_MODE; // Rounding Mode
 
 	/**
 	 * The Currency Format, used for formatting and parsing a monetary value.
 	 * Refer to the Java API documentation for the DecimalFormat class for
 	 * information on formats.
+	 *
+	 * @deprecated The Currency Format is held by the shared
+	 *             {@link MoneyFormat}; this field refers to a copy of it which
+	 *             is shared by all Money objects of the same format, so it
+	 *             must not be modified, and changes to it have no effect.  Use
+	 *             {@link #getCurrencyFormat()}.
 	 */
-	protected DecimalFormat currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance();
+	@Deprecated
+	protected transient DecimalFormat currencyFormat; // Currency Format
+
+	/** The default Rounding Mode, which truncates to 2 decimal places. */
+	@SuppressWarnings("deprecation") // Rounding Modes are BigDecimal constants
+	static final int DEFAULT_ROUNDING_MODE = BigDecimal.ROUND_DOWN;
+
+	/** Scale value indicating that the amount is held only as a BigDecimal. */
+	private static final int INFLATED = -1;
 
 	/** The special monetary value of zero ($0.00). */
 	protected static final BigDecimal ZERO = new BigDecimal("0.00");
@@ -183,8 +246,8 @@ public class Money implements Cloneable, Serializable
 	public Money(Locale locale)
 
 	{
-		value = ZERO; // Initialize the monetary value to $0.00.
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setUnits(0L, 2); // Initialize the monetary value to $0.00.
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 	}
 
 	/**
@@ -258,8 +321,8 @@ public class Money implements Cloneable, Serializable
 		// Convert the parsed value to a simple string (decimal point only)
 		// and use it to set the monetary value.
 		
-		value = new BigDecimal(Double.toString(amount));
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setValue(new BigDecimal(Double.toString(amount)));
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 	}
 
 	/**
@@ -299,8 +362,8 @@ public class Money implements Cloneable, Serializable
 	 */
 	public Money(long amount, Locale locale) // Monetary amount, whole dollars (no cents)
 	{
-		value = new BigDecimal(Long.toString(amount)); // Set monetary value.
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setUnits(amount, 0); // Set monetary value.
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 	}
 
 	/**
@@ -378,8 +441,8 @@ public class Money implements Cloneable, Serializable
 
 		// Set the monetary value and scale as specified.
 
-		value = (new BigDecimal(Long.toString(amount))).movePointLeft(scale);
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setUnits(amount, scale);
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 	}
 
 	/**
@@ -447,11 +510,27 @@ public class Money implements Cloneable, Serializable
 	 */
 	public Money(String string, Locale locale) throws ParseException
 	{
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 
-		// We make use of the format's parse() method, which parses the string
-		// according to the format and returns either a Double or a Long
-		// object representing the value.
+		// Amounts in whole cents, with or without currency symbols, are
+		// parsed directly from the format's symbols.  They are given the
+		// scale the DecimalFormat and BigDecimal parses below would give
+		// them.
+
+		long cents = moneyFormat.parseCents(string);
+		if (cents != Long.MIN_VALUE) {
+			setParsedCents(cents);
+			return;
+		}
+		cents = moneyFormat.parsePlainCents(string);
+		if (cents != Long.MIN_VALUE) {
+			setPlainCents(cents, string);
+			return;
+		}
+
+		// Otherwise we make use of the format's parse() method, which parses
+		// the string according to the format and returns either a Double or a
+		// Long object representing the value.
 
 		Number number;
 
@@ -460,7 +539,7 @@ public class Money implements Cloneable, Serializable
 		// Format.
 
 		try {
-			number = currencyFormat.parse(string);
+			number = moneyFormat.parse(string);
 
 			// In general, a double floating point value cannot represent a
 			// decimal value exactly, and
@@ -485,11 +564,11 @@ public class Money implements Cloneable, Serializable
 			// Convert the parsed value to a simple string (decimal point only)
 			// and use it to set the monetary value.
 
-			value = new BigDecimal(number.toString());
+			setValue(new BigDecimal(number.toString()));
 		} catch (ParseException pe) {
 			try {
 				// Try to parse it as a number without currency symbols
-				value = new BigDecimal(string);
+				setValue(new BigDecimal(string));
 			} catch (NumberFormatException nfe) {
 				// Unable to parse the string into a number.
 				throw nfe;
@@ -526,8 +605,8 @@ public class Money implements Cloneable, Serializable
 	 */
 	public Money(BigDecimal amount, Locale locale)
 	{
-		value = new BigDecimal(amount.toString()); // Set the monetary value.
-		currencyFormat = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+		setValue(new BigDecimal(amount.toString())); // Set the monetary value.
+		setMoneyFormat(MoneyFormat.getInstance(locale, DEFAULT_ROUNDING_MODE));
 	}
 
 	/**
@@ -544,17 +623,179 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		roundingMode = amount.roundingMode; // Copy the Rounding Mode.
+		// Share the Currency Format and Rounding Mode; they are immutable.
 
-		// Clone the Currency Format.
-
-		currencyFormat = (DecimalFormat) amount.currencyFormat.clone();
+		moneyFormat = amount.moneyFormat;
+		roundingMode = amount.roundingMode;
+		currencyFormat = amount.currencyFormat;
 
 		value = amount.value; // Copy the Monetary Value.
+		units = amount.units;
+		scale = amount.scale;
 
 	} // Copy Constructor Money(Money money)
 
+	/** Constructs a Money object of units of 10<sup>-scale</sup>. */
+	Money(long units, int scale, MoneyFormat moneyFormat)
+	{
+		setUnits(units, scale);
+		setMoneyFormat(moneyFormat);
+	}
+
+	/** Constructs a Money object with the given value and format. */
+	Money(BigDecimal amount, MoneyFormat moneyFormat)
+	{
+		setValue(amount);
+		setMoneyFormat(moneyFormat);
+	}
+
+	/** The shared Currency Format and Rounding Mode of this object. */
+	MoneyFormat getMoneyFormat()
+	{
+		return moneyFormat;
+	}
+
+	/**
+	 * Sets the shared Currency Format and Rounding Mode, and the deprecated
+	 * fields which mirror them.
+	 */
+	private void setMoneyFormat(MoneyFormat format)
+	{
+		moneyFormat = format;
+		roundingMode = format.getRoundingMode();
+		currencyFormat = format.getSharedDecimalFormat();
+	}
+
 	// METHODS
+
+	/**
+	 * Sets the monetary value, holding it in compact form if it fits.
+	 */
+	private void setValue(BigDecimal amount)
+	{
+		value = amount;
+		scale = INFLATED;
+		BigInteger unscaled = amount.unscaledValue();
+		if (
+				amount.scale() >= 0 && amount.scale() <= FixedPoint.MAX_SCALE &&
+				unscaled.bitLength() < 64
+			)
+		{
+			units = unscaled.longValue();
+			scale = amount.scale();
+		}
+	}
+
+	/**
+	 * Sets the monetary value to a count of units of 10<sup>-scale</sup>.
+	 * The BigDecimal form is created lazily by {@link #getValue()}.
+	 */
+	private void setUnits(long units, int scale)
+	{
+		this.units = units;
+		this.scale = scale;
+		value = null;
+	}
+
+	/**
+	 * Sets the monetary value to a count of cents parsed in the Currency
+	 * Format.  The DecimalFormat parses such an amount to a Long or a Double,
+	 * whose string form has no trailing zeros in its fraction, so the value
+	 * is given the scale of that form.
+	 */
+	private void setParsedCents(long cents)
+	{
+		int s = 2;
+		while (s > 0 && cents % 10 == 0) {
+			cents /= 10;
+			s--;
+		}
+		setUnits(cents, s);
+	}
+
+	/**
+	 * Sets the monetary value to a count of cents parsed from a plain number.
+	 * The value is given the scale of the number's fraction, as by
+	 * new BigDecimal(string).
+	 */
+	private void setPlainCents(long cents, String string)
+	{
+		int dot = string.indexOf('.');
+		int s = dot < 0 ? 0 : string.length() - dot - 1;
+		if (s <= 2) {
+			// The digits dropped are zeros added by the parse
+			setUnits(cents / FixedPoint.POWERS_OF_TEN[2 - s], s);
+		} else if (s <= FixedPoint.MAX_SCALE && FixedPoint.fits(cents, s - 2)) {
+			// The digits beyond the cents are zeros
+			setUnits(cents * FixedPoint.POWERS_OF_TEN[s - 2], s);
+		} else {
+			setValue(new BigDecimal(string));
+		}
+	}
+
+	/**
+	 * Compares the monetary values of this and another Money object,
+	 * ignoring scale.
+	 */
+	private int compareValue(Money other)
+	{
+		if (scale != INFLATED && other.scale != INFLATED) {
+			return FixedPoint.compare(units, scale, other.units, other.scale);
+		}
+		return getValue().compareTo(other.getValue());
+	}
+
+	/**
+	 * Returns the scale of the compact form of the monetary value, or -1 if
+	 * the value is held only as a BigDecimal.
+	 */
+	int getCompactScale()
+	{
+		return scale;
+	}
+
+	/**
+	 * Returns the compact form of the monetary value as a count of units of
+	 * 10<sup>-scale</sup>; only meaningful if getCompactScale() is not -1.
+	 */
+	long getCompactUnits()
+	{
+		return units;
+	}
+
+	/**
+	 * Converts the monetary value to a count of units of
+	 * 10<sup>-scale</sup>, rounding with the rounding mode if necessary.  For
+	 * example $19.95 is 1995 units with a scale of 2.
+	 * @param scale The scale of the result, from 0 to 18.
+	 * @return The value in minor units.
+	 * @throws ArithmeticException The value does not fit in a long at the
+	 *                             given scale.
+	 */
+	public long toUnits(int scale)
+	{
+		FixedPoint.checkScale(scale);
+		int roundingMode = getRoundingMode();
+		if (this.scale != INFLATED && FixedPoint.isCompactRoundingMode(roundingMode)) {
+			if (this.scale > scale) {
+				return FixedPoint.divideAndRound(
+						units, FixedPoint.POWERS_OF_TEN[this.scale - scale], roundingMode
+					);
+			} else if (FixedPoint.fits(units, scale - this.scale)) {
+				return units * FixedPoint.POWERS_OF_TEN[scale - this.scale];
+			}
+		}
+		return FixedPoint.toUnits(getValue(), scale, roundingMode);
+	}
+
+	/** Returns the signum of the monetary value. */
+	private int signum()
+	{
+		if (scale != INFLATED) {
+			return units < 0 ? -1 : (units == 0 ? 0 : 1);
+		}
+		return value.signum();
+	}
 	
 	public static Money getNonNullableMoney(ResultSet result, int index)
 		throws SQLException
@@ -576,34 +817,68 @@ public class Money implements Cloneable, Serializable
 		return m;
 	}
 	
+	/**
+	 * Reads an amount from a decimal column.  The value is read with
+	 * getBigDecimal, so it is exact.
+	 * @return The amount, or null if the column is null.
+	 */
 	public static Money getNullableMoney(ResultSet result, int index)
 		throws SQLException
 	{
-		double d = result.getDouble(index);
-		if (result.wasNull()) {
-			return null;
-		} else {
-			return new Money(d);
-		}
+		BigDecimal d = result.getBigDecimal(index);
+		return d == null ? null : new Money(d);
 	}
 	
+	/**
+	 * Reads an amount from a decimal parameter.  The value is read with
+	 * getBigDecimal, so it is exact.
+	 * @return The amount, or null if the parameter is null.
+	 */
 	public static Money getNullableMoney(CallableStatement stmt, int index)
 		throws SQLException
 	{
-		double d = stmt.getDouble(index);
-		if (stmt.wasNull()) {
-			return null;
-		} else {
-			return new Money(d);
-		}
+		BigDecimal d = stmt.getBigDecimal(index);
+		return d == null ? null : new Money(d);
+	}
+	
+	/**
+	 * Reads an amount stored in an integer column as a count of minor units,
+	 * such as cents.
+	 * @param scale The declared scale of the column; 2 if it holds cents.
+	 * @return The amount, or null if the column is null.
+	 */
+	public static Money getNullableMoneyUnits(ResultSet result, int index, int scale)
+		throws SQLException
+	{
+		FixedPoint.checkScale(scale);
+		long l = result.getLong(index);
+		return result.wasNull() ? null : valueOfUnits(l, scale);
+	}
+	
+	/**
+	 * Reads an amount stored in an integer parameter as a count of minor
+	 * units, such as cents.
+	 * @param scale The declared scale of the parameter; 2 if it holds cents.
+	 * @return The amount, or null if the parameter is null.
+	 */
+	public static Money getNullableMoneyUnits(CallableStatement stmt, int index, int scale)
+		throws SQLException
+	{
+		FixedPoint.checkScale(scale);
+		long l = stmt.getLong(index);
+		return stmt.wasNull() ? null : valueOfUnits(l, scale);
 	}
 	
 	public static void setNullableMoney(PreparedStatement stmt, int index, Money m)
 		throws SQLException
 	{
-		setNullableMoney(stmt, index, m, Types.DOUBLE);
+		setNullableMoney(stmt, index, m, Types.DECIMAL);
 	}
 	
+	/**
+	 * Sets a parameter to an amount.  The amount is set exactly with
+	 * setBigDecimal unless the SQL type is a floating point type.
+	 */
 	public static void setNullableMoney(
 			PreparedStatement stmt, int index, Money m, int sqlType
 		)
@@ -611,11 +886,44 @@ public class Money implements Cloneable, Serializable
 	{
 		if (m == null) {
 			stmt.setNull(index, sqlType);
-		} else {
+		} else if (
+				sqlType == Types.DOUBLE || sqlType == Types.FLOAT ||
+				sqlType == Types.REAL
+			)
+		{
 			stmt.setDouble(index, m.toDouble());
+		} else {
+			stmt.setBigDecimal(index, m.getValue());
 		}
 	}
 	
+	/**
+	 * Sets an integer parameter to an amount as a count of minor units, such
+	 * as cents, rounding with the amount's rounding mode if necessary.
+	 * @param scale The declared scale of the parameter; 2 if it holds cents.
+	 * @throws ArithmeticException The amount does not fit in a long at the
+	 *                             given scale.
+	 */
+	public static void setNullableMoneyUnits(
+			PreparedStatement stmt, int index, Money m, int scale
+		)
+		throws SQLException
+	{
+		if (m == null) {
+			stmt.setNull(index, Types.BIGINT);
+		} else {
+			stmt.setLong(index, m.toUnits(scale));
+		}
+	}
+	
+	private static Money valueOfUnits(long units, int scale)
+	{
+		return new Money(
+				units, scale,
+				MoneyFormat.getInstance(Locale.getDefault(), DEFAULT_ROUNDING_MODE)
+			);
+	}
+	
 	/**
 	 *
 	 *       Adds a specified monetary value to this monetary value.
@@ -643,7 +951,22 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.value = value.add(money.value); // Add the two monetary values.
+		// Add the two monetary values, using long arithmetic if both are
+		// compact and the sum does not overflow.
+
+		if (scale != INFLATED && money.scale != INFLATED) {
+			int s = Math.max(scale, money.scale);
+			if (FixedPoint.fits(units, s - scale) && FixedPoint.fits(money.units, s - money.scale)) {
+				long a = units * FixedPoint.POWERS_OF_TEN[s - scale];
+				long b = money.units * FixedPoint.POWERS_OF_TEN[s - money.scale];
+				long r = a + b;
+				if (((a ^ r) & (b ^ r)) >= 0) {
+					result.setUnits(r, s);
+					return result;
+				}
+			}
+		}
+		result.setValue(getValue().add(money.getValue()));
 
 		return result; // Return the result.
 
@@ -677,8 +1000,22 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.value = value.subtract(money.value); // Subtract the specified
-		// monetary value.
+		// Subtract the specified monetary value, using long arithmetic if
+		// both are compact and the difference does not overflow.
+
+		if (scale != INFLATED && money.scale != INFLATED) {
+			int s = Math.max(scale, money.scale);
+			if (FixedPoint.fits(units, s - scale) && FixedPoint.fits(money.units, s - money.scale)) {
+				long a = units * FixedPoint.POWERS_OF_TEN[s - scale];
+				long b = money.units * FixedPoint.POWERS_OF_TEN[s - money.scale];
+				long r = a - b;
+				if (((a ^ b) & (a ^ r)) >= 0) {
+					result.setUnits(r, s);
+					return result;
+				}
+			}
+		}
+		result.setValue(getValue().subtract(money.getValue()));
 
 		return result; // Return the result.
 
@@ -713,7 +1050,7 @@ public class Money implements Cloneable, Serializable
 
 		// Multiply by the specified value.
 
-		result.value = value.multiply(new BigDecimal(mult));
+		result.setValue(getValue().multiply(new BigDecimal(mult)));
 
 		return result; // Return the result.
 
@@ -748,7 +1085,20 @@ public class Money implements Cloneable, Serializable
 
 		// Multiply by the specified value.
 
-		result.value = value.multiply(new BigDecimal(Long.toString(mult)));
+		if (scale != INFLATED) {
+			long r = units * mult;
+			long a = Math.abs(units);
+			long b = Math.abs(mult);
+			if (((a | b) >>> 31) == 0 || (
+					(mult == 0 || r / mult == units) &&
+					!(units == Long.MIN_VALUE && mult == -1)
+				))
+			{
+				result.setUnits(r, scale);
+				return result;
+			}
+		}
+		result.setValue(getValue().multiply(BigDecimal.valueOf(mult)));
 
 		return result; // Return the result.
 
@@ -784,13 +1134,64 @@ public class Money implements Cloneable, Serializable
 		// Divide the monetary value by the specified value and round if
 		// necessary.
 
-		result.value = value.divide(new BigDecimal(div),
-				BigDecimal.ROUND_HALF_UP);
+		result.setValue(getValue().divide(new BigDecimal(div),
+				RoundingMode.HALF_UP));
 
 		return result; // Return the result.
 
 	} // Method Money.divide()
 
+	/**
+	 * Splits this monetary value into parts in proportion to weights.  The
+	 * parts are whole cents, or of the scale of this value if it has more
+	 * decimal places, and always sum exactly to this value.  Units left over
+	 * after rounding the shares down go to the parts with the largest
+	 * remainders.
+	 *
+	 * <p>
+	 * The value of this object is not affected in any way.
+	 * </p>
+	 *
+	 * @param weights The non-negative weights of the parts, at least one of
+	 *                which must be positive.
+	 * @return The parts.
+	 * @throws ArithmeticException The value does not fit in a long count of
+	 *         minor units.
+	 * @see MoneyAllocation
+	 */
+	public Money[] allocate(long[] weights)
+	{
+		int s = Math.max(2, scale != INFLATED ? scale : value.scale());
+		if (s > FixedPoint.MAX_SCALE) {
+			throw new ArithmeticException("Too many decimal places to allocate: " + s);
+		}
+		long[] parts = MoneyAllocation.allocate(toUnits(s), weights);
+		Money[] result = new Money[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = new Money(parts[i], s, moneyFormat);
+		}
+		return result;
+	}
+
+	/**
+	 * Splits this monetary value into the given number of parts which differ
+	 * by at most one minor unit and sum exactly to this value.  The minor
+	 * unit is a cent, or the last decimal place of this value if it has more
+	 * than two.
+	 * @param parts The number of parts.
+	 * @return The parts.
+	 * @see #allocate(long[])
+	 */
+	public Money[] allocate(int parts)
+	{
+		if (parts < 1) {
+			throw new IllegalArgumentException("Invalid number of parts: " + parts);
+		}
+		long[] weights = new long[parts];
+		Arrays.fill(weights, 1L);
+		return allocate(weights);
+	}
+
 	/**
 	 *
 	 *       Divides this monetary value by a specified value.
@@ -821,8 +1222,18 @@ public class Money implements Cloneable, Serializable
 		// Divide the monetary value by the specified value and round if
 		// necessary.
 
-		result.value = value.divide(new BigDecimal(Long.toString(div)),
-				BigDecimal.ROUND_HALF_UP);
+		if (
+				scale != INFLATED && div != 0 &&
+				units != Long.MIN_VALUE && div != Long.MIN_VALUE
+			)
+		{
+			result.setUnits(
+					FixedPoint.divideAndRound(units, div, RoundingMode.HALF_UP), scale
+				);
+			return result;
+		}
+		result.setValue(getValue().divide(BigDecimal.valueOf(div),
+				RoundingMode.HALF_UP));
 
 		return result; // Return the result.
 
@@ -855,7 +1266,13 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.value = value.negate(); // Negate the monetary value.
+		// Negate the monetary value.
+
+		if (scale != INFLATED && units != Long.MIN_VALUE) {
+			result.setUnits(-units, scale);
+		} else {
+			result.setValue(getValue().negate());
+		}
 
 		return result; // Return the result.
 
@@ -888,7 +1305,13 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.value = value.abs(); // Get the abolute monetary value.
+		// Get the abolute monetary value.
+
+		if (scale != INFLATED && units != Long.MIN_VALUE) {
+			result.setUnits(Math.abs(units), scale);
+		} else {
+			result.setValue(getValue().abs());
+		}
 
 		return result; // Return the result.
 
@@ -917,7 +1340,18 @@ public class Money implements Cloneable, Serializable
 
 		// Round off the monetary value to 2 decimal places.
 
-		BigDecimal result = value.setScale(2, roundingMode);
+		int roundingMode = moneyFormat.getRoundingMode();
+		if (scale != INFLATED && FixedPoint.isCompactRoundingMode(roundingMode)) {
+			if (scale > 2) {
+				return FixedPoint.divideAndRound(
+						units, FixedPoint.POWERS_OF_TEN[scale - 2], roundingMode
+					);
+			} else if (FixedPoint.fits(units, 2 - scale)) {
+				return units * FixedPoint.POWERS_OF_TEN[2 - scale];
+			}
+		}
+
+		BigDecimal result = getValue().setScale(2, FixedPoint.toRoundingMode(roundingMode));
 
 		result = result.movePointRight(2); // Move decimal point 2 places to
 		// the right to preserve cents.
@@ -949,7 +1383,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return value.doubleValue(); // Return the monetary value as a
+		return getValue().doubleValue(); // Return the monetary value as a
 		// double floating point value.
 
 	} // Method Money.toDouble()
@@ -968,10 +1402,27 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return value; // Return the monetary value.
+		return getInflatedValue(); // Return the monetary value.
 
 	} // Method Money.getValue()
 
+	/**
+	 * Returns the monetary value as a BigDecimal, creating it on first use
+	 * if the value is held in compact form.  Subclasses should read the
+	 * value through this method rather than the {@link #value} field, which
+	 * is null until then.
+	 * @return The monetary value.
+	 */
+	protected final BigDecimal getInflatedValue()
+	{
+		BigDecimal v = value;
+		if (v == null) {
+			v = BigDecimal.valueOf(units, scale);
+			value = v;
+		}
+		return v;
+	}
+
 	/**
 	 *
 	 *       Returns the Rounding Mode.
@@ -998,7 +1449,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return roundingMode; // Return the Rounding Mode.
+		return moneyFormat.getRoundingMode(); // Return the Rounding Mode.
 
 	} // Method Money.getRoundingMode()
 
@@ -1051,6 +1502,7 @@ public class Money implements Cloneable, Serializable
 	 *
 	 */
 
+	@SuppressWarnings("deprecation") // Rounding Modes are BigDecimal constants
 	public Money setRoundingMode(int mode) // Rounding Mode
 
 			throws InvalidRoundingModeException
@@ -1066,7 +1518,9 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.roundingMode = mode; // Set the Rounding Mode.
+		// Set the Rounding Mode.
+
+		result.setMoneyFormat(moneyFormat.withRoundingMode(mode));
 
 		return result; // Return the result.
 
@@ -1083,7 +1537,8 @@ public class Money implements Cloneable, Serializable
 	 *       particular.
 	 *
 	 *       <p>
-	 *       @return                           The Currency Format
+	 *       @return                           A copy of the Currency
+	 *                                         Format
 	 *       </p>
 	 *
 	 *       @see DecimalFormat
@@ -1094,7 +1549,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return currencyFormat; // Return the Currency Format.
+		return moneyFormat.getDecimalFormat(); // Return the Currency Format.
 
 	} // Method Money.getCurrencyFormat()
 
@@ -1144,7 +1599,12 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a new Money object for
 		// the result.
 
-		result.currencyFormat = format; // Set the Currency Format.
+		// Set the Currency Format.  The format is copied, so later changes to
+		// it do not affect the result.
+
+		result.setMoneyFormat(MoneyFormat.getInstance(
+				format, moneyFormat.getRoundingMode()
+			));
 
 		return result; // Return the result.
 
@@ -1180,13 +1640,29 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		// Round off the monetary value to 2 decimal places.
+		// Round off the monetary value to 2 decimal places and format the
+		// result according to the Currency Format.
 
-		BigDecimal result = value.setScale(2, roundingMode);
+		if (scale != INFLATED) {
+			return moneyFormat.format(units, scale);
+		}
+		return moneyFormat.format(getValue());
 
-		return currencyFormat.format(result); // Format the result according
-		// to the Currency Format.
+	}
 
+	/**
+	 * Appends the monetary value, formatted as by {@link #toString()}, to the
+	 * output.
+	 * @param out The output to append to.
+	 * @throws IOException If thrown by the output.
+	 */
+	public void appendTo(Appendable out) throws IOException
+	{
+		if (scale != INFLATED) {
+			moneyFormat.format(units, scale, out);
+		} else {
+			out.append(moneyFormat.format(getValue()));
+		}
 	}
 
 	/**
@@ -1239,6 +1715,16 @@ public class Money implements Cloneable, Serializable
 		Money result = new Money(this); // Create a Money object for the
 		// result.
 
+		// Amounts in whole cents are parsed directly from the format's
+		// symbols, and given the scale the DecimalFormat parse below would
+		// give them.
+
+		long cents = moneyFormat.parseCents(string);
+		if (cents != Long.MIN_VALUE) {
+			result.setParsedCents(cents);
+			return result;
+		}
+
 		// We make use of the format's parse() method, which parses the string
 		// according to the format and returns either a Double or a Long
 		// object representing the value.
@@ -1249,7 +1735,7 @@ public class Money implements Cloneable, Serializable
 		// ParseException if the string is not consistent with the Currency
 		// Format.
 
-		number = currencyFormat.parse(string);
+		number = moneyFormat.parse(string);
 
 		// In general, a double floating point value cannot represent a
 		// decimal value exactly, and
@@ -1274,7 +1760,7 @@ public class Money implements Cloneable, Serializable
 		// Convert the parsed value to a simple string (decimal point only)
 		// and use it to set the monetary value.
 
-		result.value = new BigDecimal(number.toString());
+		result.setValue(new BigDecimal(number.toString()));
 
 		return result; // Return the new Money object.
 
@@ -1297,7 +1783,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return (value.compareTo(ZERO) == 0); // Return true if value is zero.
+		return (signum() == 0); // Return true if value is zero.
 
 	} // Method Money.isZero()
 
@@ -1318,7 +1804,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return (value.compareTo(ZERO) < 0); // Return true if value is less
+		return (signum() < 0); // Return true if value is less
 		// than zero.
 
 	} // Method Money.isNegative()
@@ -1340,7 +1826,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return (value.compareTo(ZERO) >= 0); // Return true if value is
+		return (signum() >= 0); // Return true if value is
 		// greater than zero.
 
 	} // Method Money.isPositive()
@@ -1368,7 +1854,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return (value.compareTo(other.value) == 0); // Return true if equal to
+		return (compareValue(other) == 0); // Return true if equal to
 		// the other amount.
 
 	} // Method Money.isEqual()
@@ -1399,7 +1885,7 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return (value.compareTo(other.value) < 0); // Return true if less than
+		return (compareValue(other) < 0); // Return true if less than
 		// the other amount.
 
 	} // Method Money.isLessThan()
@@ -1434,7 +1920,7 @@ public class Money implements Cloneable, Serializable
 
 		// Return true if less than or equal to the other amount.
 
-		return (value.compareTo(other.value) <= 0);
+		return (compareValue(other) <= 0);
 
 	} // Method Money.isLessThanOrEqual()
 
@@ -1466,7 +1952,7 @@ public class Money implements Cloneable, Serializable
 
 		// Return true if greater than the other amount.
 
-		return (value.compareTo(other.value) > 0);
+		return (compareValue(other) > 0);
 
 	} // Method Money.isGreaterThan()
 
@@ -1500,7 +1986,7 @@ public class Money implements Cloneable, Serializable
 
 		// Return true if greater than or equal to the other amount.
 
-		return (value.compareTo(other.value) >= 0);
+		return (compareValue(other) >= 0);
 
 	} // Method Money.isGreaterThanOrEqual()
 
@@ -1546,15 +2032,16 @@ public class Money implements Cloneable, Serializable
 
 		// Return true if monetary values are the same.
 
-		return (value.compareTo(((Money) object).value) == 0);
+		return (compareValue((Money) object) == 0);
 
 	} // Method Money.equals()
 
 	/**
 	 *
-	 *       Returns a hashcode for this object. The hashcode is identical
-	 *       to that for the BigDecimal
-	 *       object that represents the monetary value.
+	 *       Returns a hashcode for this object. The hashcode depends
+	 *       only on the monetary value and not on its scale, so that
+	 *       amounts which are equal, such as 1.0 and 1.00, have the
+	 *       same hashcode.
 	 *
 	 *       <p>
 	 *       @return                    The hashcode
@@ -1566,8 +2053,20 @@ public class Money implements Cloneable, Serializable
 
 	{
 
-		return value.hashCode(); // Return the hashcode for the
-		// monetary value.
+		// Hash the value with its trailing zeros removed.
+
+		if (scale != INFLATED) {
+			return FixedPoint.hash(units, scale);
+		}
+		if (value.signum() == 0) {
+			return FixedPoint.hash(0L, 0);
+		}
+		BigDecimal stripped = value.stripTrailingZeros();
+		BigInteger unscaled = stripped.unscaledValue();
+		if (unscaled.bitLength() < 64) {
+			return FixedPoint.hash(unscaled.longValue(), stripped.scale());
+		}
+		return 31 * unscaled.hashCode() + stripped.scale();
 
 	} // Method Money.hashCode()
 
@@ -1611,7 +2110,100 @@ public class Money implements Cloneable, Serializable
      */
 	public int compareTo(Money val)
 	{
-		return value.compareTo(val.getValue());
+		return compareValue(val);
+	}
+
+	/**
+	 * Money objects are serialized in a compact form written by
+	 * {@link #writeObject(ObjectOutputStream)} rather than as fields.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {};
+
+	/** Serial form flag: the value is written as a BigDecimal. */
+	private static final int SERIAL_INFLATED = 1;
+
+	/** The longest unscaled value read from a stream, in bytes. */
+	private static final int MAX_SERIAL_LENGTH = 65536;
+
+	/**
+	 * Writes the value as a count of units and a scale, or as the unscaled
+	 * bytes and scale of the BigDecimal if it is not held in compact form,
+	 * followed by the shared MoneyFormat.  Within a stream each MoneyFormat is
+	 * written once and referred to by a handle thereafter.
+	 *
+	 * @serialData A flags byte; then, if the value is compact, the scale as a
+	 *             byte and the units as a long, or else the scale as an int,
+	 *             the length of the unscaled value as an int and its two's
+	 *             complement bytes; then the MoneyFormat.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		out.defaultWriteObject();
+		if (scale != INFLATED) {
+			out.writeByte(0);
+			out.writeByte(scale);
+			out.writeLong(units);
+		} else {
+			byte[] unscaled = value.unscaledValue().toByteArray();
+			out.writeByte(SERIAL_INFLATED);
+			out.writeInt(value.scale());
+			out.writeInt(unscaled.length);
+			out.write(unscaled);
+		}
+		out.writeObject(moneyFormat);
+	}
+
+	/**
+	 * Reads the compact form, or the field based form written by earlier
+	 * versions.  Objects serialized before formats were shared carry their
+	 * own DecimalFormat and Rounding Mode, which are wrapped in an unshared
+	 * MoneyFormat.
+	 */
+	private void readObject(ObjectInputStream in)
+		throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = in.readFields();
+		ObjectStreamClass desc = fields.getObjectStreamClass();
+		MoneyFormat format = null;
+		if (desc.getField("value") == null) {
+			int flags = in.readByte();
+			if ((flags & SERIAL_INFLATED) == 0) {
+				int s = in.readByte();
+				if (s < 0 || s > FixedPoint.MAX_SCALE) {
+					throw new InvalidObjectException("Invalid scale: " + s);
+				}
+				setUnits(in.readLong(), s);
+			} else {
+				int s = in.readInt();
+				int length = in.readInt();
+				if (length <= 0 || length > MAX_SERIAL_LENGTH) {
+					throw new InvalidObjectException("Invalid unscaled value length: " + length);
+				}
+				byte[] unscaled = new byte[length];
+				in.readFully(unscaled);
+				setValue(new BigDecimal(new BigInteger(unscaled), s));
+			}
+			Object o = in.readObject();
+			if (o != null && !(o instanceof MoneyFormat)) {
+				throw new InvalidObjectException("Not a currency format: " + o.getClass().getName());
+			}
+			format = (MoneyFormat)o;
+		} else {
+			if (desc.getField("moneyFormat") != null) {
+				format = (MoneyFormat)fields.get("moneyFormat", null);
+			}
+			if (format == null) {
+				format = MoneyFormat.getInstance(
+						(DecimalFormat)fields.get("currencyFormat", null),
+						fields.get("roundingMode", DEFAULT_ROUNDING_MODE)
+					);
+			}
+			setValue((BigDecimal)fields.get("value", null));
+		}
+		if (format == null) {
+			throw new InvalidObjectException("Missing currency format");
+		}
+		setMoneyFormat(format);
 	}
 
 } // Class Money
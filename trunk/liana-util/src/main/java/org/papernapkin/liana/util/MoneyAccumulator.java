@@ -0,0 +1,293 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A mutable accumulator which computes the count, sum, minimum, maximum and
+ * average of a series of monetary amounts.  Amounts may be given as
+ * {@link Money} objects, BigDecimals, or counts of minor units with a scale.
+ *
+ * <p>
+ * Whenever possible the sum is kept as a long count of minor units, so adding
+ * an amount does not create any objects.  Should the sum outgrow a long, the
+ * excess is carried in a BigDecimal, so the result is always exact and equal
+ * to what chaining {@link BigDecimal#add(BigDecimal)} would have produced.
+ * Null amounts are ignored, which allows values read with
+ * {@link Money#getNullableMoney(java.sql.ResultSet, int)} to be added
+ * directly.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread safe.  To aggregate in parallel, give each thread
+ * its own accumulator and combine them with {@link #merge(MoneyAccumulator)}.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class MoneyAccumulator
+{
+	private long count;
+
+	/** The part of the sum held as units of 10<sup>-sumScale</sup>. */
+	private long sumUnits;
+	private int sumScale;
+	/** The part of the sum which did not fit in sumUnits, or null. */
+	private BigDecimal sumOverflow;
+
+	/** The minimum; minValue is non-null if it is not held in compact form. */
+	private long minUnits;
+	private int minScale;
+	private BigDecimal minValue;
+
+	/** The maximum; maxValue is non-null if it is not held in compact form. */
+	private long maxUnits;
+	private int maxScale;
+	private BigDecimal maxValue;
+
+	public MoneyAccumulator()
+	{
+		super();
+	}
+
+	/**
+	 * Adds a monetary amount.
+	 * @param amount The amount to add, or null.
+	 * @return This accumulator.
+	 */
+	public MoneyAccumulator add(Money amount)
+	{
+		if (amount != null) {
+			int scale = amount.getCompactScale();
+			if (scale < 0) {
+				add(amount.getValue());
+			} else {
+				accumulate(amount.getCompactUnits(), scale, null);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a monetary amount.
+	 * @param amount The amount to add, or null.
+	 * @return This accumulator.
+	 */
+	public MoneyAccumulator add(BigDecimal amount)
+	{
+		if (amount != null) {
+			if (amount.scale() >= 0 && amount.scale() <= FixedPoint.MAX_SCALE) {
+				BigInteger unscaled = amount.unscaledValue();
+				if (unscaled.bitLength() < 64) {
+					accumulate(unscaled.longValue(), amount.scale(), null);
+					return this;
+				}
+			}
+			accumulate(0L, 0, amount);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a monetary amount given as a count of minor units.  For example,
+	 * 1995 units with a scale of 2 is $19.95.
+	 * @param units The amount in units of 10<sup>-scale</sup>.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point, from 0 to 18.
+	 * @return This accumulator.
+	 */
+	public MoneyAccumulator addUnits(long units, int scale)
+	{
+		FixedPoint.checkScale(scale);
+		accumulate(units, scale, null);
+		return this;
+	}
+
+	/**
+	 * Adds each of the monetary amounts.
+	 * @param amounts The amounts to add.  Null elements are ignored.
+	 * @return This accumulator.
+	 */
+	public MoneyAccumulator addAll(Iterable<? extends Money> amounts)
+	{
+		for (Money m : amounts) {
+			add(m);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the amounts accumulated by another accumulator to this one.  The
+	 * other accumulator is not changed.
+	 * @param other The accumulator to merge into this one.
+	 * @return This accumulator.
+	 */
+	public MoneyAccumulator merge(MoneyAccumulator other)
+	{
+		if (other.count == 0) {
+			return this;
+		}
+		if (count == 0) {
+			minUnits = other.minUnits;
+			minScale = other.minScale;
+			minValue = other.minValue;
+			maxUnits = other.maxUnits;
+			maxScale = other.maxScale;
+			maxValue = other.maxValue;
+		} else {
+			offer(other.minUnits, other.minScale, other.minValue);
+			offer(other.maxUnits, other.maxScale, other.maxValue);
+		}
+		count += other.count;
+		sum(other.sumUnits, other.sumScale);
+		if (other.sumOverflow != null) {
+			sumOverflow = sumOverflow == null ?
+				other.sumOverflow : sumOverflow.add(other.sumOverflow);
+		}
+		return this;
+	}
+
+	/** Discards all accumulated amounts. */
+	public void reset()
+	{
+		count = 0;
+		sumUnits = 0;
+		sumScale = 0;
+		sumOverflow = null;
+		minValue = null;
+		maxValue = null;
+	}
+
+	/** The number of (non-null) amounts added. */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/** The sum of the amounts added, or zero if none have been added. */
+	public BigDecimal getSum()
+	{
+		BigDecimal sum = BigDecimal.valueOf(sumUnits, sumScale);
+		return sumOverflow == null ? sum : sumOverflow.add(sum);
+	}
+
+	/** The smallest amount added, or null if none have been added. */
+	public BigDecimal getMin()
+	{
+		if (count == 0) {
+			return null;
+		}
+		return minValue == null ? BigDecimal.valueOf(minUnits, minScale) : minValue;
+	}
+
+	/** The largest amount added, or null if none have been added. */
+	public BigDecimal getMax()
+	{
+		if (count == 0) {
+			return null;
+		}
+		return maxValue == null ? BigDecimal.valueOf(maxUnits, maxScale) : maxValue;
+	}
+
+	/**
+	 * The average of the amounts added.
+	 * @param scale The scale of the result.
+	 * @param roundingMode The BigDecimal rounding mode used to round the
+	 *                     result to the scale.
+	 * @return The average, or null if no amounts have been added.
+	 */
+	public BigDecimal getAverage(int scale, int roundingMode)
+	{
+		if (count == 0) {
+			return null;
+		}
+		return getSum().divide(BigDecimal.valueOf(count), scale, FixedPoint.toRoundingMode(roundingMode));
+	}
+
+	/**
+	 * Counts an amount and adds it to the sum and extremes.  If value is not
+	 * null it is the amount, else the amount is units with the given scale.
+	 */
+	private void accumulate(long units, int scale, BigDecimal value)
+	{
+		if (count == 0) {
+			minUnits = maxUnits = units;
+			minScale = maxScale = scale;
+			minValue = maxValue = value;
+		} else {
+			offer(units, scale, value);
+		}
+		count++;
+		if (value == null) {
+			sum(units, scale);
+		} else {
+			sumOverflow = sumOverflow == null ? value : sumOverflow.add(value);
+		}
+	}
+
+	/** Adds units with the given scale to the sum. */
+	private void sum(long units, int scale)
+	{
+		if (scale > sumScale) {
+			if (FixedPoint.fits(sumUnits, scale - sumScale)) {
+				sumUnits *= FixedPoint.POWERS_OF_TEN[scale - sumScale];
+			} else {
+				spill();
+			}
+			sumScale = scale;
+		} else if (scale < sumScale) {
+			if (!FixedPoint.fits(units, sumScale - scale)) {
+				BigDecimal value = BigDecimal.valueOf(units, scale);
+				sumOverflow = sumOverflow == null ? value : sumOverflow.add(value);
+				return;
+			}
+			units *= FixedPoint.POWERS_OF_TEN[sumScale - scale];
+		}
+		long result = sumUnits + units;
+		if (((sumUnits ^ result) & (units ^ result)) < 0) {
+			spill();
+			result = units;
+		}
+		sumUnits = result;
+	}
+
+	/** Moves the compact part of the sum into the overflow. */
+	private void spill()
+	{
+		BigDecimal value = BigDecimal.valueOf(sumUnits, sumScale);
+		sumOverflow = sumOverflow == null ? value : sumOverflow.add(value);
+		sumUnits = 0;
+	}
+
+	/** Replaces the extremes with the given amount if it exceeds them. */
+	private void offer(long units, int scale, BigDecimal value)
+	{
+		if (compare(units, scale, value, minUnits, minScale, minValue) < 0) {
+			minUnits = units;
+			minScale = scale;
+			minValue = value;
+		}
+		if (compare(units, scale, value, maxUnits, maxScale, maxValue) > 0) {
+			maxUnits = units;
+			maxScale = scale;
+			maxValue = value;
+		}
+	}
+
+	private static int compare(
+			long unitsA, int scaleA, BigDecimal valueA,
+			long unitsB, int scaleB, BigDecimal valueB
+		)
+	{
+		if (valueA == null && valueB == null) {
+			return FixedPoint.compare(unitsA, scaleA, unitsB, scaleB);
+		}
+		if (valueA == null) {
+			valueA = BigDecimal.valueOf(unitsA, scaleA);
+		}
+		if (valueB == null) {
+			valueB = BigDecimal.valueOf(unitsB, scaleB);
+		}
+		return valueA.compareTo(valueB);
+	}
+}
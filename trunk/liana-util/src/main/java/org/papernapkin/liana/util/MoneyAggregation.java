@@ -0,0 +1,286 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Aggregates large numbers of monetary amounts in parallel.  The amounts are
+ * split into chunks, each chunk is summarized into its own
+ * {@link MoneyAccumulator} by a task run on the given ExecutorService, and
+ * the partial results are merged.  Because the accumulators are exact, the
+ * result is the same as that of a single accumulator fed every amount in
+ * order, whatever the number of chunks.
+ *
+ * <p>
+ * The accumulators give the count, sum, minimum, maximum and average of the
+ * amounts.  Grouped aggregation produces one accumulator per key.  Null
+ * amounts are ignored.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class MoneyAggregation
+{
+	/** Below this many amounts the work is done on the calling thread. */
+	private static final int MIN_PARALLEL_SIZE = 1 << 13;
+
+	/**
+	 * Extracts the key and the amount by which an item is aggregated.
+	 * Implementations are called from several threads at once.
+	 */
+	public interface Classifier<T, K>
+	{
+		/** The key of the group to which the item belongs. */
+		K keyOf(T item);
+
+		/** The amount of the item, or null if it has none. */
+		Money amountOf(T item);
+	}
+
+	private MoneyAggregation()
+	{
+		super();
+	}
+
+	/**
+	 * Summarizes an array of amounts.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return An accumulator holding the count, sum and extremes.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static MoneyAccumulator summarize(
+			final Money[] amounts, ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		final int[] bounds = bounds(amounts.length, chunks);
+		List<Callable<MoneyAccumulator>> tasks = new ArrayList<Callable<MoneyAccumulator>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<MoneyAccumulator>() {
+				public MoneyAccumulator call() {
+					MoneyAccumulator acc = new MoneyAccumulator();
+					for (int i = from; i < to; i++) {
+						acc.add(amounts[i]);
+					}
+					return acc;
+				}
+			});
+		}
+		return merge(run(executor, tasks));
+	}
+
+	/**
+	 * Summarizes a collection of amounts.  Lists with random access are split
+	 * in place; other collections are first copied to an array.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return An accumulator holding the count, sum and extremes.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static MoneyAccumulator summarize(
+			Collection<? extends Money> amounts, ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		if (!(amounts instanceof List && amounts instanceof RandomAccess)) {
+			return summarize(amounts.toArray(new Money[amounts.size()]), executor, chunks);
+		}
+		final List<? extends Money> list = (List<? extends Money>)amounts;
+		final int[] bounds = bounds(list.size(), chunks);
+		List<Callable<MoneyAccumulator>> tasks = new ArrayList<Callable<MoneyAccumulator>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<MoneyAccumulator>() {
+				public MoneyAccumulator call() {
+					MoneyAccumulator acc = new MoneyAccumulator();
+					for (int i = from; i < to; i++) {
+						acc.add(list.get(i));
+					}
+					return acc;
+				}
+			});
+		}
+		return merge(run(executor, tasks));
+	}
+
+	/**
+	 * Summarizes the non-null entries of a column.
+	 * @param column The column.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return An accumulator holding the count, sum and extremes.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static MoneyAccumulator summarize(
+			final MoneyColumn column, ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		final int[] bounds = bounds(column.size(), chunks);
+		List<Callable<MoneyAccumulator>> tasks = new ArrayList<Callable<MoneyAccumulator>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<MoneyAccumulator>() {
+				public MoneyAccumulator call() {
+					return column.accumulate(new MoneyAccumulator(), from, to);
+				}
+			});
+		}
+		return merge(run(executor, tasks));
+	}
+
+	/**
+	 * Summarizes the amounts of a list of items grouped by key.
+	 * @param items The items.
+	 * @param classifier Gives the key and amount of each item.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return An accumulator for each key.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static <T, K> Map<K, MoneyAccumulator> summarizeBy(
+			final List<? extends T> items, final Classifier<? super T, K> classifier,
+			ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		if (!(items instanceof RandomAccess)) {
+			return summarizeBy(new ArrayList<T>(items), classifier, executor, chunks);
+		}
+		final int[] bounds = bounds(items.size(), chunks);
+		List<Callable<Map<K, MoneyAccumulator>>> tasks =
+			new ArrayList<Callable<Map<K, MoneyAccumulator>>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Map<K, MoneyAccumulator>>() {
+				public Map<K, MoneyAccumulator> call() {
+					Map<K, MoneyAccumulator> groups = new HashMap<K, MoneyAccumulator>();
+					for (int i = from; i < to; i++) {
+						T item = items.get(i);
+						group(groups, classifier.keyOf(item)).add(classifier.amountOf(item));
+					}
+					return groups;
+				}
+			});
+		}
+		return mergeGroups(run(executor, tasks));
+	}
+
+	/**
+	 * Summarizes the non-null entries of a column grouped by the key of each
+	 * row.
+	 * @param keys The key of each row of the column.
+	 * @param column The column.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return An accumulator for each key.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static <K> Map<K, MoneyAccumulator> summarizeBy(
+			final K[] keys, final MoneyColumn column,
+			ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		if (keys.length < column.size()) {
+			throw new IllegalArgumentException("There are fewer keys than rows");
+		}
+		final int scale = column.getScale();
+		final int[] bounds = bounds(column.size(), chunks);
+		List<Callable<Map<K, MoneyAccumulator>>> tasks =
+			new ArrayList<Callable<Map<K, MoneyAccumulator>>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Map<K, MoneyAccumulator>>() {
+				public Map<K, MoneyAccumulator> call() {
+					Map<K, MoneyAccumulator> groups = new HashMap<K, MoneyAccumulator>();
+					for (int i = from; i < to; i++) {
+						if (!column.isNull(i)) {
+							group(groups, keys[i]).addUnits(column.getUnits(i), scale);
+						}
+					}
+					return groups;
+				}
+			});
+		}
+		return mergeGroups(run(executor, tasks));
+	}
+
+	private static int[] bounds(int size, int chunks)
+	{
+		return ParallelTasks.chunkBounds(size, size < MIN_PARALLEL_SIZE ? 1 : chunks);
+	}
+
+	/** Runs a single task on the calling thread, otherwise uses the executor. */
+	private static <T> List<T> run(ExecutorService executor, List<Callable<T>> tasks)
+		throws InterruptedException
+	{
+		if (tasks.size() == 1) {
+			try {
+				List<T> results = new ArrayList<T>(1);
+				results.add(tasks.get(0).call());
+				return results;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return ParallelTasks.invokeAll(executor, tasks);
+	}
+
+	private static MoneyAccumulator merge(List<MoneyAccumulator> partials)
+	{
+		MoneyAccumulator result = partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			result.merge(partials.get(i));
+		}
+		return result;
+	}
+
+	private static <K> Map<K, MoneyAccumulator> mergeGroups(List<Map<K, MoneyAccumulator>> partials)
+	{
+		Map<K, MoneyAccumulator> result = partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			for (Map.Entry<K, MoneyAccumulator> e : partials.get(i).entrySet()) {
+				MoneyAccumulator acc = result.get(e.getKey());
+				if (acc == null) {
+					result.put(e.getKey(), e.getValue());
+				} else {
+					acc.merge(e.getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+	private static <K> MoneyAccumulator group(Map<K, MoneyAccumulator> groups, K key)
+	{
+		MoneyAccumulator acc = groups.get(key);
+		if (acc == null) {
+			acc = new MoneyAccumulator();
+			groups.put(key, acc);
+		}
+		return acc;
+	}
+}
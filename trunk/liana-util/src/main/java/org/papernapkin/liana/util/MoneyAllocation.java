@@ -0,0 +1,341 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Distributes an amount of minor units across a number of parts in
+ * proportion to weights, so that the parts always sum exactly to the amount.
+ *
+ * <p>
+ * Each part first receives its exact share rounded toward zero.  The units
+ * left over, of which there are fewer than there are parts, are then given
+ * one each to the parts whose shares had the largest fractional remainders
+ * (the largest remainder method).  Ties are broken in favour of the part
+ * with the lower index, so the result depends only on the amount and the
+ * weights.  Every part is therefore within one unit of its exact share, a
+ * part with a greater weight never receives less than one with a smaller
+ * weight, and a part with a weight of zero receives nothing.
+ * </p>
+ *
+ * <p>
+ * The work is done on primitive arrays, creating no objects per part except
+ * when a product of the amount and a weight does not fit in a long.  A
+ * variant taking an ExecutorService computes the weight total and the
+ * shares in parallel chunks for very large numbers of parts; it produces the
+ * same result as the sequential version.
+ * </p>
+ *
+ * @see Money#allocate(long[])
+ * @author pchapman
+ */
+public final class MoneyAllocation
+{
+	/** Below this many parts the parallel variant works sequentially. */
+	private static final int MIN_PARALLEL_PARTS = 1 << 14;
+
+	private MoneyAllocation()
+	{
+		super();
+	}
+
+	/**
+	 * Distributes an amount in proportion to weights.
+	 * @param amount The amount in minor units.
+	 * @param weights The non-negative weights of the parts, at least one of
+	 *                which must be positive.
+	 * @return The parts in minor units, which sum to the amount.
+	 */
+	public static long[] allocate(long amount, long[] weights)
+	{
+		long[] parts = new long[weights.length];
+		allocate(amount, weights, parts);
+		return parts;
+	}
+
+	/**
+	 * Distributes an amount in proportion to weights.
+	 * @param amount The amount in minor units.
+	 * @param weights The non-negative weights of the parts, at least one of
+	 *                which must be positive.
+	 * @param parts Receives the parts in minor units, which sum to the
+	 *              amount.  Must be at least as long as weights.
+	 */
+	public static void allocate(long amount, long[] weights, long[] parts)
+	{
+		checkParts(weights, parts);
+		long total = sum(weights, 0, weights.length);
+		long[] remainders = new long[weights.length];
+		long floors = shares(amount, weights, total, parts, remainders, 0, weights.length);
+		distribute(amount, floors, parts, remainders);
+	}
+
+	/**
+	 * Distributes an amount in proportion to weights, using the executor to
+	 * work on chunks of the parts in parallel.  The result is the same as
+	 * that of {@link #allocate(long, long[], long[])}.
+	 * @param amount The amount in minor units.
+	 * @param weights The non-negative weights of the parts, at least one of
+	 *                which must be positive.
+	 * @param parts Receives the parts in minor units, which sum to the
+	 *              amount.  Must be at least as long as weights.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks into which the parts are split.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public static void allocate(
+			final long amount, final long[] weights, final long[] parts,
+			ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		checkParts(weights, parts);
+		if (weights.length < MIN_PARALLEL_PARTS || chunks < 2) {
+			allocate(amount, weights, parts);
+			return;
+		}
+		final int[] bounds = ParallelTasks.chunkBounds(weights.length, chunks);
+
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(chunks);
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Long>() {
+				public Long call() {
+					return sum(weights, from, to);
+				}
+			});
+		}
+		long total = 0;
+		for (long subtotal : ParallelTasks.invokeAll(executor, tasks)) {
+			total = addWeight(total, subtotal);
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("The weights sum to zero");
+		}
+
+		final long t = total;
+		final long[] remainders = new long[weights.length];
+		tasks.clear();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Long>() {
+				public Long call() {
+					return shares(amount, weights, t, parts, remainders, from, to);
+				}
+			});
+		}
+		long floors = 0;
+		for (long subtotal : ParallelTasks.invokeAll(executor, tasks)) {
+			floors += subtotal;
+		}
+		distribute(amount, floors, parts, remainders);
+	}
+
+	/**
+	 * Distributes an amount in proportion to ratios given as doubles, such as
+	 * 0.3 and 0.7.  Each ratio is taken as the decimal number which
+	 * {@link Double#toString(double)} gives for it, so the ratios are used as
+	 * they were written rather than as their binary approximations.
+	 * @param amount The amount in minor units.
+	 * @param ratios The non-negative ratios of the parts, at least one of
+	 *               which must be positive.
+	 * @return The parts in minor units, which sum to the amount.
+	 * @throws ArithmeticException The ratios have too many significant digits
+	 *         between them to be represented as long weights.
+	 */
+	public static long[] allocate(long amount, double[] ratios)
+	{
+		return allocate(amount, toWeights(ratios));
+	}
+
+	/**
+	 * Converts ratios given as doubles to long weights with the same
+	 * proportions.
+	 * @throws ArithmeticException The ratios cannot be represented as long
+	 *         weights.
+	 */
+	public static long[] toWeights(double[] ratios)
+	{
+		BigDecimal[] values = new BigDecimal[ratios.length];
+		int scale = 0;
+		for (int i = 0; i < ratios.length; i++) {
+			if (Double.isNaN(ratios[i]) || Double.isInfinite(ratios[i]) || ratios[i] < 0) {
+				throw new IllegalArgumentException("Invalid ratio: " + ratios[i]);
+			}
+			values[i] = BigDecimal.valueOf(ratios[i]);
+			scale = Math.max(scale, values[i].scale());
+		}
+		long[] weights = new long[ratios.length];
+		for (int i = 0; i < ratios.length; i++) {
+			BigInteger unscaled = values[i].setScale(scale).unscaledValue();
+			if (unscaled.bitLength() > 63) {
+				throw new ArithmeticException("Ratio " + ratios[i] + " cannot be represented as a weight");
+			}
+			weights[i] = unscaled.longValue();
+		}
+		return weights;
+	}
+
+	/**
+	 * Computes the shares of the parts in the range rounded toward zero, and
+	 * the remainder of each share as a numerator over the total weight.
+	 * Returns the sum of the rounded shares.
+	 */
+	private static long shares(
+			long amount, long[] weights, long total, long[] parts,
+			long[] remainders, int from, int to
+		)
+	{
+		// Shares of the magnitude, so that they are rounded toward zero
+		boolean negative = amount < 0;
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			long w = weights[i];
+			long q;
+			long r;
+			if (w == 0) {
+				q = 0;
+				r = 0;
+			} else if (amount != Long.MIN_VALUE && Math.abs(amount) <= Long.MAX_VALUE / w) {
+				long product = Math.abs(amount) * w;
+				q = product / total;
+				r = product % total;
+			} else {
+				BigInteger[] qr = BigInteger.valueOf(amount).abs()
+					.multiply(BigInteger.valueOf(w))
+					.divideAndRemainder(BigInteger.valueOf(total));
+				q = qr[0].longValue();
+				r = qr[1].longValue();
+			}
+			parts[i] = negative ? -q : q;
+			remainders[i] = r;
+			sum += q;
+		}
+		return sum;
+	}
+
+	/**
+	 * Gives the units left over after the rounded shares, one each, to the
+	 * parts with the largest remainders.
+	 */
+	private static void distribute(long amount, long floors, long[] parts, long[] remainders)
+	{
+		// The magnitude of the amount less the rounded shares, which is less
+		// than the number of parts
+		int leftover = (int)(amount < 0 ? -(amount + floors) : amount - floors);
+		if (leftover == 0) {
+			return;
+		}
+		long unit = amount < 0 ? -1 : 1;
+
+		// The leftover-th largest remainder is the threshold; every part with
+		// a greater remainder gets a unit, as do the first few at the
+		// threshold, in index order.
+		long threshold = select(remainders.clone(), remainders.length - leftover);
+		for (int i = 0; i < remainders.length; i++) {
+			if (remainders[i] > threshold) {
+				parts[i] += unit;
+				leftover--;
+			}
+		}
+		for (int i = 0; leftover > 0; i++) {
+			if (remainders[i] == threshold) {
+				parts[i] += unit;
+				leftover--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the value which would be at index k if the array were sorted in
+	 * ascending order.  The array is reordered.
+	 */
+	private static long select(long[] a, int k)
+	{
+		int lo = 0;
+		int hi = a.length - 1;
+		while (lo < hi) {
+			// Median of three pivot, then a three way partition
+			int mid = (lo + hi) >>> 1;
+			long pivot = median(a[lo], a[mid], a[hi]);
+			int lt = lo;
+			int gt = hi;
+			int i = lo;
+			while (i <= gt) {
+				if (a[i] < pivot) {
+					swap(a, lt++, i++);
+				} else if (a[i] > pivot) {
+					swap(a, i, gt--);
+				} else {
+					i++;
+				}
+			}
+			if (k < lt) {
+				hi = lt - 1;
+			} else if (k > gt) {
+				lo = gt + 1;
+			} else {
+				return pivot;
+			}
+		}
+		return a[k];
+	}
+
+	private static long median(long a, long b, long c)
+	{
+		if (a < b) {
+			return b < c ? b : (a < c ? c : a);
+		} else {
+			return a < c ? a : (b < c ? c : b);
+		}
+	}
+
+	private static void swap(long[] a, int i, int j)
+	{
+		long t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/** Sums the weights in the range, checking that they are valid. */
+	private static long sum(long[] weights, int from, int to)
+	{
+		long total = 0;
+		for (int i = from; i < to; i++) {
+			if (weights[i] < 0) {
+				throw new IllegalArgumentException("Negative weight at index " + i);
+			}
+			total = addWeight(total, weights[i]);
+		}
+		if (from == 0 && to == weights.length && total == 0) {
+			throw new IllegalArgumentException("The weights sum to zero");
+		}
+		return total;
+	}
+
+	private static long addWeight(long total, long weight)
+	{
+		long result = total + weight;
+		if (result < 0) {
+			throw new ArithmeticException("The weights sum to more than a long holds");
+		}
+		return result;
+	}
+
+	private static void checkParts(long[] weights, long[] parts)
+	{
+		if (weights.length == 0) {
+			throw new IllegalArgumentException("No weights");
+		}
+		if (parts.length < weights.length) {
+			throw new IllegalArgumentException("The parts array is shorter than the weights");
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package org.papernapkin.liana.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Encodes arrays of {@link Money} objects into a ByteBuffer and decodes them
+ * again, for shipping large numbers of amounts between processes without the
+ * overhead of Java serialization.
+ *
+ * <p>
+ * Each amount is written as a tag byte followed, for compact amounts, by a
+ * one byte scale and an eight byte count of units.  The currency format and
+ * rounding mode are written only when they differ from those of the previous
+ * amount, so an array of amounts in one locale costs ten bytes per amount
+ * plus a single format definition.  Amounts of a locale's currency format
+ * are written as the locale; those with a caller supplied DecimalFormat carry
+ * its pattern, symbols and settings, from which it is rebuilt.  Decoding
+ * never uses Java serialization, and checks every length against the bytes
+ * remaining, so untrusted data may be decoded safely.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class MoneyCodec
+{
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_COMPACT = 1;
+	private static final byte TAG_INFLATED = 2;
+	private static final byte TAG_LOCALE_FORMAT = 3;
+	private static final byte TAG_CUSTOM_FORMAT = 4;
+
+	private static final String CHARSET = "UTF-8";
+
+	/** The flags of a custom format's settings. */
+	private static final int GROUPING_USED = 1;
+	private static final int DECIMAL_SEPARATOR_ALWAYS_SHOWN = 2;
+	private static final int PARSE_BIG_DECIMAL = 4;
+	private static final int PARSE_INTEGER_ONLY = 8;
+
+	/*
+	 * DecimalFormatSymbols gained a monetary grouping separator in Java 15,
+	 * which currency formats use instead of the grouping separator.  These
+	 * are its accessors, or null on earlier versions.
+	 */
+	private static final Method GET_MONETARY_GROUPING_SEPARATOR =
+		getSymbolsMethod("getMonetaryGroupingSeparator");
+	private static final Method SET_MONETARY_GROUPING_SEPARATOR =
+		getSymbolsMethod("setMonetaryGroupingSeparator", char.class);
+
+	private MoneyCodec()
+	{
+		super();
+	}
+
+	/**
+	 * Computes the number of bytes needed to encode the amounts.
+	 * @param amounts The amounts, which may include nulls.
+	 * @return The encoded length in bytes.
+	 */
+	public static int encodedLength(Money[] amounts)
+	{
+		return encodedLength(amounts, 0, amounts.length);
+	}
+
+	/**
+	 * Computes the number of bytes needed to encode a range of amounts.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param offset The index of the first amount to encode.
+	 * @param length The number of amounts to encode.
+	 * @return The encoded length in bytes.
+	 */
+	public static int encodedLength(Money[] amounts, int offset, int length)
+	{
+		int size = 4;
+		MoneyFormat current = null;
+		for (int i = offset; i < offset + length; i++) {
+			Money m = amounts[i];
+			size++;
+			if (m == null) {
+				continue;
+			}
+			if (m.getMoneyFormat() != current) {
+				current = m.getMoneyFormat();
+				size += formatLength(current);
+			}
+			if (m.getCompactScale() >= 0) {
+				size += 9;
+			} else {
+				size += 8 + m.getValue().unscaledValue().toByteArray().length;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Encodes the amounts into the buffer.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param buffer The buffer to which the amounts are written.
+	 * @throws java.nio.BufferOverflowException There is not enough room in
+	 *         the buffer; see {@link #encodedLength(Money[])}.
+	 */
+	public static void encode(Money[] amounts, ByteBuffer buffer)
+	{
+		encode(amounts, 0, amounts.length, buffer);
+	}
+
+	/**
+	 * Encodes a range of amounts into the buffer.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param offset The index of the first amount to encode.
+	 * @param length The number of amounts to encode.
+	 * @param buffer The buffer to which the amounts are written.
+	 * @throws java.nio.BufferOverflowException There is not enough room in
+	 *         the buffer; see {@link #encodedLength(Money[], int, int)}.
+	 */
+	public static void encode(Money[] amounts, int offset, int length, ByteBuffer buffer)
+	{
+		buffer.putInt(length);
+		MoneyFormat current = null;
+		for (int i = offset; i < offset + length; i++) {
+			Money m = amounts[i];
+			if (m == null) {
+				buffer.put(TAG_NULL);
+				continue;
+			}
+			if (m.getMoneyFormat() != current) {
+				current = m.getMoneyFormat();
+				putFormat(current, buffer);
+			}
+			int scale = m.getCompactScale();
+			if (scale >= 0) {
+				buffer.put(TAG_COMPACT);
+				buffer.put((byte)scale);
+				buffer.putLong(m.getCompactUnits());
+			} else {
+				BigDecimal value = m.getValue();
+				byte[] unscaled = value.unscaledValue().toByteArray();
+				buffer.put(TAG_INFLATED);
+				buffer.putInt(value.scale());
+				buffer.putInt(unscaled.length);
+				buffer.put(unscaled);
+			}
+		}
+	}
+
+	/**
+	 * Decodes amounts written by {@link #encode(Money[], ByteBuffer)}.
+	 * @param buffer The buffer from which the amounts are read.
+	 * @return The amounts.
+	 * @throws IllegalArgumentException The buffer does not hold encoded
+	 *         amounts.
+	 */
+	public static Money[] decode(ByteBuffer buffer)
+	{
+		try {
+			// Every amount takes at least a byte
+			Money[] amounts = new Money[checkLength(buffer.getInt(), buffer)];
+			MoneyFormat current = null;
+			int i = 0;
+			while (i < amounts.length) {
+				byte tag = buffer.get();
+				switch (tag) {
+					case TAG_NULL:
+						i++;
+						break;
+					case TAG_COMPACT:
+						checkFormat(current);
+						int scale = buffer.get();
+						FixedPoint.checkScale(scale);
+						amounts[i++] = new Money(buffer.getLong(), scale, current);
+						break;
+					case TAG_INFLATED:
+						checkFormat(current);
+						int s = buffer.getInt();
+						byte[] unscaled = new byte[checkLength(buffer.getInt(), buffer)];
+						if (unscaled.length == 0) {
+							throw new IllegalArgumentException("Invalid length at " + (buffer.position() - 4));
+						}
+						buffer.get(unscaled);
+						amounts[i++] = new Money(new BigDecimal(new BigInteger(unscaled), s), current);
+						break;
+					case TAG_LOCALE_FORMAT:
+						int mode = getRoundingMode(buffer);
+						Locale locale = new Locale(getString(buffer), getString(buffer), getString(buffer));
+						current = MoneyFormat.getInstance(locale, mode);
+						break;
+					case TAG_CUSTOM_FORMAT:
+						DecimalFormat format = getDecimalFormat(buffer);
+						current = MoneyFormat.getInstance(format, getRoundingMode(buffer));
+						break;
+					default:
+						throw new IllegalArgumentException("Invalid tag " + tag + " at " + (buffer.position() - 1));
+				}
+			}
+			return amounts;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated data", e);
+		}
+	}
+
+	private static int formatLength(MoneyFormat format)
+	{
+		Locale locale = format.getLocale();
+		if (locale == null) {
+			return 6 + toBytes(format.getDecimalFormat()).length;
+		}
+		return 2 + 6 + utf8(locale.getLanguage()).length + utf8(locale.getCountry()).length +
+			utf8(locale.getVariant()).length;
+	}
+
+	private static void putFormat(MoneyFormat format, ByteBuffer buffer)
+	{
+		Locale locale = format.getLocale();
+		if (locale == null) {
+			byte[] bytes = toBytes(format.getDecimalFormat());
+			buffer.put(TAG_CUSTOM_FORMAT);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+			buffer.put((byte)format.getRoundingMode());
+		} else {
+			buffer.put(TAG_LOCALE_FORMAT);
+			buffer.put((byte)format.getRoundingMode());
+			putString(locale.getLanguage(), buffer);
+			putString(locale.getCountry(), buffer);
+			putString(locale.getVariant(), buffer);
+		}
+	}
+
+	private static void checkFormat(MoneyFormat format)
+	{
+		if (format == null) {
+			throw new IllegalArgumentException("Amount precedes its format");
+		}
+	}
+
+	/**
+	 * Checks that a length read from the buffer is not negative and not more
+	 * than the bytes remaining.
+	 */
+	private static int checkLength(int length, ByteBuffer buffer)
+	{
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException(
+					"Invalid length " + length + " at " + (buffer.position() - 4) +
+					" with " + buffer.remaining() + " bytes remaining"
+				);
+		}
+		return length;
+	}
+
+	/** Reads a rounding mode, checking that it is one of BigDecimal's. */
+	private static int getRoundingMode(ByteBuffer buffer)
+	{
+		int mode = buffer.get();
+		try {
+			FixedPoint.toRoundingMode(mode);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(
+					"Invalid rounding mode " + mode + " at " + (buffer.position() - 1), e
+				);
+		}
+		return mode;
+	}
+
+	private static void putString(String s, ByteBuffer buffer)
+	{
+		byte[] bytes = utf8(s);
+		buffer.putShort((short)bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer)
+	{
+		int length = buffer.getShort() & 0xffff;
+		if (length > buffer.remaining()) {
+			throw new IllegalArgumentException("Truncated data");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		try {
+			return new String(bytes, CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] utf8(String s)
+	{
+		try {
+			return s.getBytes(CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the pattern, symbols and settings of a DecimalFormat, from which
+	 * {@link #fromBytes(byte[])} builds an equivalent format.
+	 */
+	private static byte[] toBytes(DecimalFormat format)
+	{
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+			out.writeChar(symbols.getZeroDigit());
+			out.writeChar(symbols.getGroupingSeparator());
+			out.writeChar(GET_MONETARY_GROUPING_SEPARATOR == null ?
+				symbols.getGroupingSeparator() :
+				(Character)invoke(GET_MONETARY_GROUPING_SEPARATOR, symbols));
+			out.writeChar(symbols.getDecimalSeparator());
+			out.writeChar(symbols.getMonetaryDecimalSeparator());
+			out.writeChar(symbols.getPerMill());
+			out.writeChar(symbols.getPercent());
+			out.writeChar(symbols.getDigit());
+			out.writeChar(symbols.getPatternSeparator());
+			out.writeChar(symbols.getMinusSign());
+			out.writeUTF(symbols.getInfinity());
+			out.writeUTF(symbols.getNaN());
+			out.writeUTF(symbols.getExponentSeparator());
+			out.writeUTF(symbols.getInternationalCurrencySymbol());
+			out.writeUTF(symbols.getCurrencySymbol());
+
+			out.writeUTF(format.toPattern());
+			out.writeUTF(format.getPositivePrefix());
+			out.writeUTF(format.getPositiveSuffix());
+			out.writeUTF(format.getNegativePrefix());
+			out.writeUTF(format.getNegativeSuffix());
+			out.writeInt(format.getMultiplier());
+			out.writeInt(format.getGroupingSize());
+			out.writeInt(format.getMinimumIntegerDigits());
+			out.writeInt(format.getMaximumIntegerDigits());
+			out.writeInt(format.getMinimumFractionDigits());
+			out.writeInt(format.getMaximumFractionDigits());
+			out.writeByte(format.getRoundingMode().ordinal());
+			out.writeByte(
+					(format.isGroupingUsed() ? GROUPING_USED : 0) |
+					(format.isDecimalSeparatorAlwaysShown() ? DECIMAL_SEPARATOR_ALWAYS_SHOWN : 0) |
+					(format.isParseBigDecimal() ? PARSE_BIG_DECIMAL : 0) |
+					(format.isParseIntegerOnly() ? PARSE_INTEGER_ONLY : 0)
+				);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Builds a DecimalFormat from the bytes written by toBytes. */
+	private static DecimalFormat fromBytes(byte[] bytes)
+		throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.ROOT);
+		symbols.setZeroDigit(in.readChar());
+		symbols.setGroupingSeparator(in.readChar());
+		char monetaryGroupingSeparator = in.readChar();
+		if (SET_MONETARY_GROUPING_SEPARATOR != null) {
+			invoke(SET_MONETARY_GROUPING_SEPARATOR, symbols, monetaryGroupingSeparator);
+		}
+		symbols.setDecimalSeparator(in.readChar());
+		symbols.setMonetaryDecimalSeparator(in.readChar());
+		symbols.setPerMill(in.readChar());
+		symbols.setPercent(in.readChar());
+		symbols.setDigit(in.readChar());
+		symbols.setPatternSeparator(in.readChar());
+		symbols.setMinusSign(in.readChar());
+		symbols.setInfinity(in.readUTF());
+		symbols.setNaN(in.readUTF());
+		symbols.setExponentSeparator(in.readUTF());
+		// Setting the international symbol also sets the local one, so the
+		// local one is set after it
+		symbols.setInternationalCurrencySymbol(in.readUTF());
+		symbols.setCurrencySymbol(in.readUTF());
+
+		DecimalFormat format = new DecimalFormat(in.readUTF(), symbols);
+		format.setPositivePrefix(in.readUTF());
+		format.setPositiveSuffix(in.readUTF());
+		format.setNegativePrefix(in.readUTF());
+		format.setNegativeSuffix(in.readUTF());
+		format.setMultiplier(in.readInt());
+		format.setGroupingSize(in.readInt());
+		format.setMinimumIntegerDigits(in.readInt());
+		format.setMaximumIntegerDigits(in.readInt());
+		format.setMinimumFractionDigits(in.readInt());
+		format.setMaximumFractionDigits(in.readInt());
+		int rounding = in.readUnsignedByte();
+		if (rounding >= RoundingMode.values().length) {
+			throw new IOException("Invalid rounding mode " + rounding);
+		}
+		format.setRoundingMode(RoundingMode.values()[rounding]);
+		int flags = in.readUnsignedByte();
+		format.setGroupingUsed((flags & GROUPING_USED) != 0);
+		format.setDecimalSeparatorAlwaysShown((flags & DECIMAL_SEPARATOR_ALWAYS_SHOWN) != 0);
+		format.setParseBigDecimal((flags & PARSE_BIG_DECIMAL) != 0);
+		format.setParseIntegerOnly((flags & PARSE_INTEGER_ONLY) != 0);
+		if (in.read() >= 0) {
+			throw new IOException("Unexpected data after the format");
+		}
+		return format;
+	}
+
+	private static Method getSymbolsMethod(String name, Class<?> ... parameterTypes)
+	{
+		try {
+			return DecimalFormatSymbols.class.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object ... args)
+	{
+		try {
+			return method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			// The method is public
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			// The accessors do not throw
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static DecimalFormat getDecimalFormat(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[checkLength(buffer.getInt(), buffer)];
+		buffer.get(bytes);
+		try {
+			return fromBytes(bytes);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid currency format", e);
+		} catch (IllegalArgumentException e) {
+			// Thrown for an invalid pattern or setting
+			throw new IllegalArgumentException("Invalid currency format", e);
+		}
+	}
+}
@@ -0,0 +1,554 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * A column of monetary amounts held as a long array of minor units which
+ * share a single scale and locale, with a bitmap marking null entries.  This
+ * holds a large number of amounts in a fraction of the memory needed for the
+ * equivalent Money objects, and the bulk operations (sum, extremes, prefix
+ * sums, sorting, filtering and percentiles) work on the primitive values
+ * without creating an object per entry.
+ *
+ * <p>
+ * Money objects are converted to minor units when they are added, rounding
+ * with the Money's own rounding mode if the Money has more decimal places
+ * than the column, and are created again only when an entry is read with
+ * {@link #getMoney(int)}.
+ * </p>
+ *
+ * <p>
+ * This class is not synchronized.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class MoneyColumn
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int scale;
+	private final Locale locale;
+
+	/** The amounts in units of 10<sup>-scale</sup>; 0 for null entries. */
+	private long[] units;
+	/** One bit per entry, set if the entry is null. */
+	private long[] nulls;
+	private int size;
+
+	/**
+	 * Creates an empty column.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point of each entry, from 0 to 18.  For dollars and cents,
+	 *              this is 2.
+	 * @param locale The locale of the Money objects created from the column.
+	 */
+	public MoneyColumn(int scale, Locale locale)
+	{
+		this(scale, locale, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty column.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point of each entry, from 0 to 18.  For dollars and cents,
+	 *              this is 2.
+	 * @param locale The locale of the Money objects created from the column.
+	 * @param initialCapacity The number of entries for which space is
+	 *                        initially allocated.
+	 */
+	public MoneyColumn(int scale, Locale locale, int initialCapacity)
+	{
+		super();
+		FixedPoint.checkScale(scale);
+		this.scale = scale;
+		this.locale = locale;
+		this.units = new long[Math.max(initialCapacity, 1)];
+		this.nulls = new long[(units.length + 63) >>> 6];
+	}
+
+	/**
+	 * Creates a column holding the given amounts in iteration order.
+	 * @param amounts The amounts, which may include nulls.
+	 * @param scale The scale of the column.
+	 * @param locale The locale of the Money objects created from the column.
+	 * @return The new column.
+	 */
+	public static MoneyColumn valueOf(
+			Collection<? extends Money> amounts, int scale, Locale locale
+		)
+	{
+		MoneyColumn column = new MoneyColumn(scale, locale, amounts.size());
+		for (Money m : amounts) {
+			column.add(m);
+		}
+		return column;
+	}
+
+	/**
+	 * Reads a column of amounts from the remaining rows of a result set.  The
+	 * rows are read forward only, so the result set need not be scrollable,
+	 * and the fetch size controls how many rows the driver fetches from the
+	 * database at a time.
+	 * @param result The result set.
+	 * @param index The index of the column holding the amounts.
+	 * @param scale The scale of the column.
+	 * @param locale The locale of the Money objects created from the column.
+	 * @param fetchSize The fetch size to set on the result set, or zero to
+	 *                  leave the driver's default.
+	 * @param minorUnits Whether the database column is an integer column
+	 *                   holding counts of minor units at the given scale, as
+	 *                   opposed to holding the amounts themselves.
+	 * @return The new column.
+	 * @throws SQLException If thrown by the result set.
+	 * @see #readFrom(ResultSet, int, boolean)
+	 */
+	public static MoneyColumn read(
+			ResultSet result, int index, int scale, Locale locale,
+			int fetchSize, boolean minorUnits
+		)
+		throws SQLException
+	{
+		if (fetchSize > 0) {
+			result.setFetchSize(fetchSize);
+		}
+		MoneyColumn column = new MoneyColumn(
+				scale, locale, Math.max(fetchSize, DEFAULT_CAPACITY)
+			);
+		column.readFrom(result, index, minorUnits);
+		return column;
+	}
+
+	// ACCESSORS
+
+	/** The number of entries in the column. */
+	public int size()
+	{
+		return size;
+	}
+
+	/** The number of digits to the right of the implied decimal point. */
+	public int getScale()
+	{
+		return scale;
+	}
+
+	/** The locale of the Money objects created from the column. */
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	/** Returns true if the entry at the row is null. */
+	public boolean isNull(int row)
+	{
+		checkRow(row);
+		return (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the entry at the row in minor units.  Null entries return 0;
+	 * use {@link #isNull(int)} to tell them apart.
+	 */
+	public long getUnits(int row)
+	{
+		checkRow(row);
+		return units[row];
+	}
+
+	/** Returns the entry at the row as a BigDecimal, or null. */
+	public BigDecimal getValue(int row)
+	{
+		return isNull(row) ? null : BigDecimal.valueOf(units[row], scale);
+	}
+
+	/** Returns the entry at the row as a Money object, or null. */
+	public Money getMoney(int row)
+	{
+		if (isNull(row)) {
+			return null;
+		} else if (scale <= 2) {
+			return new Money(units[row], scale, locale);
+		} else {
+			return new Money(BigDecimal.valueOf(units[row], scale), locale);
+		}
+	}
+
+	/**
+	 * Converts a Money object to minor units at the scale of this column,
+	 * rounding with the Money's rounding mode if necessary.
+	 * @throws ArithmeticException The amount does not fit in a long at this
+	 *                             column's scale.
+	 */
+	public long toUnits(Money m)
+	{
+		return m.toUnits(scale);
+	}
+
+	// MUTATORS
+
+	/**
+	 * Appends the amounts in the remaining rows of a result set, reading
+	 * forward with next() until it is exhausted.  Integer columns are read
+	 * with getLong and other columns with getBigDecimal, so no amount passes
+	 * through a double.  Amounts with more decimal places than this column
+	 * are rounded as a Money object's amount would be by default.
+	 * @param result The result set.
+	 * @param index The index of the column holding the amounts.
+	 * @param minorUnits Whether the database column is an integer column
+	 *                   holding counts of minor units at this column's scale,
+	 *                   as opposed to holding the amounts themselves.
+	 * @return The number of rows read.
+	 * @throws SQLException If thrown by the result set.
+	 * @throws ArithmeticException An amount does not fit in a long at this
+	 *                             column's scale.
+	 */
+	public int readFrom(ResultSet result, int index, boolean minorUnits)
+		throws SQLException
+	{
+		boolean integral = isIntegral(result.getMetaData().getColumnType(index));
+		int count = 0;
+		while (result.next()) {
+			long l = readUnits(result, index, scale, integral, minorUnits);
+			if (result.wasNull()) {
+				addNull();
+			} else {
+				addUnits(l);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the amount in the current row of a result set in minor units at
+	 * the given scale.  A null amount is read as 0, and the result set's
+	 * wasNull() method then returns true.
+	 * @param integral Whether the database column has an integer type.
+	 * @param minorUnits Whether the database column holds minor units.
+	 * @see #readFrom(ResultSet, int, boolean)
+	 */
+	static long readUnits(
+			ResultSet result, int index, int scale, boolean integral, boolean minorUnits
+		)
+		throws SQLException
+	{
+		if (minorUnits || integral) {
+			long l = result.getLong(index);
+			if (minorUnits || result.wasNull()) {
+				return l;
+			} else if (FixedPoint.fits(l, scale)) {
+				return l * FixedPoint.POWERS_OF_TEN[scale];
+			} else {
+				throw new ArithmeticException("Amount " + l + " does not fit the column");
+			}
+		}
+		BigDecimal d = result.getBigDecimal(index);
+		return d == null ? 0 : FixedPoint.toUnits(d, scale, Money.DEFAULT_ROUNDING_MODE);
+	}
+
+	/** Whether a java.sql.Types type is an integer type. */
+	static boolean isIntegral(int type)
+	{
+		return type == Types.BIGINT || type == Types.INTEGER ||
+			type == Types.SMALLINT || type == Types.TINYINT;
+	}
+
+	/** Appends an amount, or a null entry if m is null. */
+	public void add(Money m)
+	{
+		if (m == null) {
+			addNull();
+		} else {
+			addUnits(toUnits(m));
+		}
+	}
+
+	/** Appends an amount given in minor units. */
+	public void addUnits(long amount)
+	{
+		ensureCapacity(size + 1);
+		units[size++] = amount;
+	}
+
+	/** Appends a null entry. */
+	public void addNull()
+	{
+		ensureCapacity(size + 1);
+		units[size] = 0;
+		nulls[size >>> 6] |= 1L << size;
+		size++;
+	}
+
+	/** Replaces the entry at the row, or sets it to null if m is null. */
+	public void set(int row, Money m)
+	{
+		if (m == null) {
+			setNull(row);
+		} else {
+			setUnits(row, toUnits(m));
+		}
+	}
+
+	/** Replaces the entry at the row with an amount in minor units. */
+	public void setUnits(int row, long amount)
+	{
+		checkRow(row);
+		units[row] = amount;
+		nulls[row >>> 6] &= ~(1L << row);
+	}
+
+	/** Sets the entry at the row to null. */
+	public void setNull(int row)
+	{
+		checkRow(row);
+		units[row] = 0;
+		nulls[row >>> 6] |= 1L << row;
+	}
+
+	/** Removes all entries. */
+	public void clear()
+	{
+		Arrays.fill(nulls, 0, (size + 63) >>> 6, 0L);
+		size = 0;
+	}
+
+	// BULK OPERATIONS
+
+	/**
+	 * Adds the non-null entries in the range of rows to an accumulator.
+	 * @param acc The accumulator to add to.
+	 * @param fromRow The first row, inclusive.
+	 * @param toRow The last row, exclusive.
+	 * @return The accumulator.
+	 */
+	public MoneyAccumulator accumulate(MoneyAccumulator acc, int fromRow, int toRow)
+	{
+		checkRange(fromRow, toRow);
+		for (int i = fromRow; i < toRow; i++) {
+			if ((nulls[i >>> 6] & (1L << i)) == 0) {
+				acc.addUnits(units[i], scale);
+			}
+		}
+		return acc;
+	}
+
+	/**
+	 * Returns an accumulator holding the count, sum and extremes of the
+	 * non-null entries.
+	 */
+	public MoneyAccumulator summarize()
+	{
+		return accumulate(new MoneyAccumulator(), 0, size);
+	}
+
+	/** Returns the exact sum of the non-null entries. */
+	public BigDecimal sum()
+	{
+		return summarize().getSum();
+	}
+
+	/**
+	 * Returns the row of the smallest non-null entry, or -1 if there are no
+	 * non-null entries.  If there are ties, the first such row is returned.
+	 */
+	public int minIndex()
+	{
+		int index = -1;
+		for (int i = 0; i < size; i++) {
+			if (
+					(nulls[i >>> 6] & (1L << i)) == 0 &&
+					(index < 0 || units[i] < units[index])
+				)
+			{
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the row of the largest non-null entry, or -1 if there are no
+	 * non-null entries.  If there are ties, the first such row is returned.
+	 */
+	public int maxIndex()
+	{
+		int index = -1;
+		for (int i = 0; i < size; i++) {
+			if (
+					(nulls[i >>> 6] & (1L << i)) == 0 &&
+					(index < 0 || units[i] > units[index])
+				)
+			{
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the running totals of the column in minor units.  Element i of
+	 * the result is the sum of rows 0 through i; null entries count as zero.
+	 * @throws ArithmeticException A running total overflows a long.
+	 */
+	public long[] prefixSums()
+	{
+		long[] sums = new long[size];
+		long total = 0;
+		for (int i = 0; i < size; i++) {
+			long u = units[i];
+			long r = total + u;
+			if (((total ^ r) & (u ^ r)) < 0) {
+				throw new ArithmeticException("Running total overflows at row " + i);
+			}
+			sums[i] = total = r;
+		}
+		return sums;
+	}
+
+	/**
+	 * Returns the rows of the column ordered by ascending amount, with null
+	 * entries last.  The sort is stable, so rows with equal amounts keep
+	 * their relative order.
+	 */
+	public int[] sortIndices()
+	{
+		int[] indices = new int[size];
+		int n = 0;
+		int nullCount = 0;
+		for (int i = 0; i < size; i++) {
+			if ((nulls[i >>> 6] & (1L << i)) == 0) {
+				indices[n++] = i;
+			} else {
+				nullCount++;
+			}
+		}
+		// Null rows go at the end in row order.
+		for (int i = 0, j = n; nullCount > 0; i++) {
+			if ((nulls[i >>> 6] & (1L << i)) != 0) {
+				indices[j++] = i;
+				nullCount--;
+			}
+		}
+		if (n > 1) {
+			int[] work = new int[n];
+			mergeSort(indices, work, 0, n);
+		}
+		return indices;
+	}
+
+	/**
+	 * Returns the rows whose entries are not null and are between the given
+	 * amounts, inclusive, in row order.
+	 * @param minUnits The smallest amount to include, in minor units.
+	 * @param maxUnits The largest amount to include, in minor units.
+	 */
+	public int[] filterRange(long minUnits, long maxUnits)
+	{
+		int[] rows = new int[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			long u = units[i];
+			if (u >= minUnits && u <= maxUnits && (nulls[i >>> 6] & (1L << i)) == 0) {
+				rows[n++] = i;
+			}
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Returns the given percentile of the non-null entries, using the nearest
+	 * rank method.  The 0th percentile is the minimum, the 50th the (lower)
+	 * median and the 100th the maximum.
+	 * @param percent The percentile, from 0 to 100.
+	 * @return The amount in minor units.
+	 * @throws IllegalStateException The column has no non-null entries.
+	 */
+	public long percentile(double percent)
+	{
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("Invalid percentile: " + percent);
+		}
+		long[] values = new long[size];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if ((nulls[i >>> 6] & (1L << i)) == 0) {
+				values[n++] = units[i];
+			}
+		}
+		if (n == 0) {
+			throw new IllegalStateException("The column has no non-null entries");
+		}
+		Arrays.sort(values, 0, n);
+		int rank = (int)Math.ceil(percent / 100 * n);
+		return values[Math.max(rank, 1) - 1];
+	}
+
+	// INTERNALS
+
+	/** Sorts indices[from, to) by amount, using work as scratch space. */
+	private void mergeSort(int[] indices, int[] work, int from, int to)
+	{
+		if (to - from < 8) {
+			// Insertion sort for small runs.
+			for (int i = from + 1; i < to; i++) {
+				int index = indices[i];
+				long u = units[index];
+				int j = i - 1;
+				while (j >= from && units[indices[j]] > u) {
+					indices[j + 1] = indices[j];
+					j--;
+				}
+				indices[j + 1] = index;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(indices, work, from, mid);
+		mergeSort(indices, work, mid, to);
+		if (units[indices[mid - 1]] <= units[indices[mid]]) {
+			return;
+		}
+		System.arraycopy(indices, from, work, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && units[work[i]] <= units[work[j]])) {
+				indices[k] = work[i++];
+			} else {
+				indices[k] = work[j++];
+			}
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > units.length) {
+			int newCapacity = Math.max(capacity, units.length + (units.length >> 1) + 1);
+			units = Arrays.copyOf(units, newCapacity);
+			nulls = Arrays.copyOf(nulls, (newCapacity + 63) >>> 6);
+		}
+	}
+
+	private void checkRow(int row)
+	{
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+		}
+	}
+
+	private void checkRange(int fromRow, int toRow)
+	{
+		if (fromRow < 0 || toRow > size || fromRow > toRow) {
+			throw new IndexOutOfBoundsException(
+					"From: " + fromRow + ", To: " + toRow + ", Size: " + size
+				);
+		}
+	}
+}
@@ -0,0 +1,829 @@
+package org.papernapkin.liana.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable formatting state shared by {@link Money} instances.  A
+ * MoneyFormat pairs a currency format with the rounding mode used to round
+ * an amount to whole cents before it is formatted.
+ *
+ * <p>
+ * Instances for a locale's default currency format are cached, so all Money
+ * objects of the same locale and rounding mode reference a single
+ * MoneyFormat rather than each carrying its own DecimalFormat.  Instances
+ * for caller supplied formats are cached too, by the settings and symbols
+ * of the format, up to a limit.  Because
+ * DecimalFormat is not thread safe, formatting and parsing are done with a
+ * per-thread copy of the format.
+ * </p>
+ *
+ * <p>
+ * When a MoneyFormat is created, the affixes, separators and digit counts of
+ * its currency format are extracted and checked against the DecimalFormat
+ * itself.  If they reproduce its output, amounts held as minor units are
+ * formatted and parsed directly from those symbols without a DecimalFormat,
+ * without intermediate doubles or strings, and without throwing exceptions
+ * for input which cannot be parsed.  Formats which use features this does
+ * not handle (exponents, multipliers and the like) always use the
+ * DecimalFormat.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class MoneyFormat implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final ConcurrentMap<Key, MoneyFormat> CACHE =
+		new ConcurrentHashMap<Key, MoneyFormat>();
+
+	/** The most instances for caller supplied formats which are cached. */
+	private static final int MAX_CUSTOM_FORMATS = 256;
+
+	private static final ConcurrentMap<Key, MoneyFormat> CUSTOM_CACHE =
+		new ConcurrentHashMap<Key, MoneyFormat>();
+
+	/** The most integer digits the compiled format will write. */
+	private static final int MAX_DIGITS = 19;
+
+	/**
+	 * Amounts in cents used to check the compiled format against the
+	 * DecimalFormat.  Parsing is checked with the same amounts, so none of them
+	 * has more digits than a double holds exactly.
+	 */
+	private static final long[] SAMPLE_CENTS = {
+		0L, 1L, 5L, 10L, 40L, 49L, 50L, 51L, 99L, 100L, 150L, 250L, 1000L,
+		12345L, 99999L, 100000L, 123456789L, 100000000000L, 999999999999999L
+	};
+
+	/**
+	 * The locale whose default currency format is used, or null if this
+	 * instance wraps a caller supplied format.
+	 */
+	private final Locale locale;
+
+	/** The rounding mode used to round amounts to whole cents. */
+	private final int roundingMode;
+
+	/** The format from which the per-thread copies are made. */
+	private final DecimalFormat prototype;
+
+	/**
+	 * A copy of the prototype lent to Money for its deprecated currencyFormat
+	 * field, so that changes made to it cannot affect this instance.
+	 */
+	private final transient DecimalFormat sharedCopy;
+
+	private final transient ThreadLocal<DecimalFormat> formats =
+		new ThreadLocal<DecimalFormat>()
+		{
+			@Override
+			protected DecimalFormat initialValue() {
+				return (DecimalFormat)prototype.clone();
+			}
+		};
+
+	/*
+	 * The currency format, compiled for direct formatting and parsing.  These
+	 * are derived from the prototype whenever an instance is constructed.
+	 */
+	private final transient String positivePrefix;
+	private final transient String positiveSuffix;
+	private final transient String negativePrefix;
+	private final transient String negativeSuffix;
+	private final transient char zeroDigit;
+	private final transient char groupingSeparator;
+	private final transient char decimalSeparator;
+	/** The number of digits in a group, or zero if grouping is not used. */
+	private final transient int groupingSize;
+	private final transient boolean decimalSeparatorAlwaysShown;
+	private final transient int minimumIntegerDigits;
+	private final transient int minimumFractionDigits;
+	private final transient int maximumFractionDigits;
+	/** The mode the DecimalFormat rounds with to its fraction digits. */
+	private final transient int formatRoundingMode;
+	/** Whether the compiled form formats exactly as the DecimalFormat does. */
+	private final transient boolean compiledFormat;
+	/** Whether the compiled form parses exactly as the DecimalFormat does. */
+	private final transient boolean compiledParse;
+
+	private MoneyFormat(Locale locale, DecimalFormat prototype, int roundingMode)
+	{
+		super();
+		this.locale = locale;
+		this.prototype = prototype;
+		this.roundingMode = roundingMode;
+		sharedCopy = (DecimalFormat)prototype.clone();
+
+		DecimalFormatSymbols symbols = prototype.getDecimalFormatSymbols();
+		positivePrefix = prototype.getPositivePrefix();
+		positiveSuffix = prototype.getPositiveSuffix();
+		negativePrefix = prototype.getNegativePrefix();
+		negativeSuffix = prototype.getNegativeSuffix();
+		zeroDigit = symbols.getZeroDigit();
+		groupingSeparator = symbols.getGroupingSeparator();
+		decimalSeparator = prototype.toPattern().indexOf('\u00A4') < 0 ?
+			symbols.getDecimalSeparator() : symbols.getMonetaryDecimalSeparator();
+		groupingSize = prototype.isGroupingUsed() ? prototype.getGroupingSize() : 0;
+		decimalSeparatorAlwaysShown = prototype.isDecimalSeparatorAlwaysShown();
+		minimumIntegerDigits = prototype.getMinimumIntegerDigits();
+		minimumFractionDigits = prototype.getMinimumFractionDigits();
+		maximumFractionDigits = prototype.getMaximumFractionDigits();
+		formatRoundingMode = prototype.getRoundingMode().ordinal();
+
+		boolean supported =
+			prototype.getMultiplier() == 1 &&
+			prototype.getMaximumIntegerDigits() > MAX_DIGITS &&
+			minimumIntegerDigits <= MAX_DIGITS &&
+			minimumFractionDigits <= FixedPoint.MAX_SCALE &&
+			FixedPoint.isCompactRoundingMode(roundingMode) &&
+			FixedPoint.isCompactRoundingMode(formatRoundingMode);
+		compiledFormat = supported && verifyFormat();
+		compiledParse = compiledFormat && verifyParse();
+	}
+
+	/**
+	 * Gets the shared instance which uses the currency format of the given
+	 * locale and rounds with the given mode.
+	 * @param locale The locale whose currency format is to be used.
+	 * @param roundingMode One of the BigDecimal rounding modes.
+	 * @return The shared MoneyFormat instance.
+	 */
+	public static MoneyFormat getInstance(Locale locale, int roundingMode)
+	{
+		Key key = new Key(locale, null, roundingMode);
+		MoneyFormat format = CACHE.get(key);
+		if (format == null) {
+			format = new MoneyFormat(
+					locale,
+					(DecimalFormat)NumberFormat.getCurrencyInstance(locale),
+					roundingMode
+				);
+			MoneyFormat existing = CACHE.putIfAbsent(key, format);
+			if (existing != null) {
+				format = existing;
+			}
+		}
+		return format;
+	}
+
+	/**
+	 * Gets an instance which uses the given format.  The format is copied,
+	 * so later changes to it do not affect the returned instance.  Instances
+	 * are cached by the settings and symbols of the format, as compared by
+	 * {@link DecimalFormat#equals(Object)}, and the rounding mode, so that
+	 * equal formats share an instance and are compiled once.
+	 * @param format The currency format to use.
+	 * @param roundingMode One of the BigDecimal rounding modes.
+	 * @return The MoneyFormat instance.
+	 */
+	public static MoneyFormat getInstance(DecimalFormat format, int roundingMode)
+	{
+		MoneyFormat result = CUSTOM_CACHE.get(new Key(null, format, roundingMode));
+		if (result == null) {
+			DecimalFormat copy = (DecimalFormat)format.clone();
+			result = new MoneyFormat(null, copy, roundingMode);
+			// The copy is never changed, so it may serve as the key
+			if (CUSTOM_CACHE.size() < MAX_CUSTOM_FORMATS) {
+				MoneyFormat existing = CUSTOM_CACHE.putIfAbsent(new Key(null, copy, roundingMode), result);
+				if (existing != null) {
+					result = existing;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The locale whose currency format is used, or null if this instance
+	 * wraps a caller supplied format.
+	 */
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	/** The rounding mode used to round amounts to whole cents. */
+	public int getRoundingMode()
+	{
+		return roundingMode;
+	}
+
+	/**
+	 * Returns a copy of the underlying DecimalFormat.  Changes to the copy do
+	 * not affect this instance.
+	 */
+	public DecimalFormat getDecimalFormat()
+	{
+		return (DecimalFormat)prototype.clone();
+	}
+
+	/**
+	 * Returns a copy of the underlying DecimalFormat which is made once and
+	 * shared by every caller.  Changes to it do not affect this instance.
+	 */
+	DecimalFormat getSharedDecimalFormat()
+	{
+		return sharedCopy;
+	}
+
+	/**
+	 * Gets an instance with the same currency format as this one which rounds
+	 * with the given mode.
+	 * @param mode One of the BigDecimal rounding modes.
+	 * @return The MoneyFormat instance.
+	 */
+	public MoneyFormat withRoundingMode(int mode)
+	{
+		if (mode == roundingMode) {
+			return this;
+		} else if (locale != null) {
+			return getInstance(locale, mode);
+		} else {
+			return getInstance(prototype, mode);
+		}
+	}
+
+	/**
+	 * Rounds the amount to whole cents using the rounding mode and formats
+	 * it with the currency format.
+	 * @param amount The amount to format.
+	 * @return The formatted amount.
+	 */
+	public String format(BigDecimal amount)
+	{
+		if (compiledFormat && amount.scale() >= 0 && amount.scale() <= FixedPoint.MAX_SCALE) {
+			BigInteger unscaled = amount.unscaledValue();
+			if (unscaled.bitLength() < 64) {
+				return format(unscaled.longValue(), amount.scale());
+			}
+		}
+		return formats.get().format(amount.setScale(2, FixedPoint.toRoundingMode(roundingMode)));
+	}
+
+	/**
+	 * Rounds an amount given as a count of minor units to whole cents using
+	 * the rounding mode and formats it with the currency format.
+	 * @param units The amount in units of 10<sup>-scale</sup>.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point, from 0 to 18.
+	 * @return The formatted amount.
+	 */
+	public String format(long units, int scale)
+	{
+		StringBuilder sb = new StringBuilder(24);
+		format(units, scale, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Rounds an amount given as a count of minor units to whole cents using
+	 * the rounding mode and appends it, formatted with the currency format,
+	 * to the buffer.
+	 * @param units The amount in units of 10<sup>-scale</sup>.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point, from 0 to 18.
+	 * @param sb The buffer to append to.
+	 * @return The buffer.
+	 */
+	public StringBuilder format(long units, int scale, StringBuilder sb)
+	{
+		try {
+			format(units, scale, (Appendable)sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return sb;
+	}
+
+	/**
+	 * Rounds an amount given as a count of minor units to whole cents using
+	 * the rounding mode and appends it, formatted with the currency format,
+	 * to the output.
+	 * @param units The amount in units of 10<sup>-scale</sup>.
+	 * @param scale The number of digits to the right of the implied decimal
+	 *              point, from 0 to 18.
+	 * @param out The output to append to.
+	 * @throws IOException If thrown by the output.
+	 */
+	public void format(long units, int scale, Appendable out) throws IOException
+	{
+		FixedPoint.checkScale(scale);
+		if (compiledFormat && units != Long.MIN_VALUE) {
+			appendUnits(units, scale, out);
+		} else {
+			out.append(formats.get().format(
+					BigDecimal.valueOf(units, scale).setScale(2, FixedPoint.toRoundingMode(roundingMode))
+				));
+		}
+	}
+
+	/**
+	 * Parses a string with the currency format.
+	 * @param string The string to parse.
+	 * @return The parsed number.
+	 * @throws ParseException Indicates the string is inconsistent with the
+	 *         currency format.
+	 */
+	public Number parse(String string) throws ParseException
+	{
+		return formats.get().parse(string);
+	}
+
+	/**
+	 * Parses a region of text as a monetary amount and returns it as a count
+	 * of minor units.  The whole region must be either an amount formatted
+	 * with the currency format, or a plain number such as
+	 * <code>-1234.5</code> with an optional sign and a period as the decimal
+	 * point.  Digits beyond the requested scale are rounded with the rounding
+	 * mode.
+	 *
+	 * <p>
+	 * No exception is thrown if the text cannot be parsed; instead the error
+	 * index of the parse position is set to the offset of the offending
+	 * character and zero is returned.  On success the error index is -1 and
+	 * the index of the parse position is set to the end of the region.  A
+	 * single ParsePosition may be reused for many calls.  Char arrays may be
+	 * parsed by wrapping them in a {@link java.nio.CharBuffer}.
+	 * </p>
+	 * @param text The text to parse.
+	 * @param start The offset of the first character of the amount.
+	 * @param end The offset following the last character of the amount.
+	 * @param scale The scale of the result, from 0 to 18.
+	 * @param pos Receives the status of the parse.
+	 * @return The amount in units of 10<sup>-scale</sup>.
+	 */
+	public long parseUnits(CharSequence text, int start, int end, int scale, ParsePosition pos)
+	{
+		FixedPoint.checkScale(scale);
+		if (compiledParse) {
+			return parseUnits(text, start, end, true, scale, false, pos);
+		}
+		// The format could not be compiled, so parse it the slow way
+		pos.setErrorIndex(-1);
+		String string = text.subSequence(start, end).toString();
+		ParsePosition pp = new ParsePosition(0);
+		Number number = formats.get().parse(string, pp);
+		BigDecimal value;
+		if (number != null && pp.getIndex() == string.length()) {
+			value = new BigDecimal(number.toString());
+		} else {
+			value = parsePlainSlow(string);
+		}
+		if (value != null) {
+			value = value.setScale(scale, FixedPoint.toRoundingMode(roundingMode));
+			if (value.unscaledValue().bitLength() < 64) {
+				pos.setIndex(end);
+				return value.unscaledValue().longValue();
+			}
+		}
+		pos.setErrorIndex(start + (pp.getErrorIndex() < 0 ? 0 : pp.getErrorIndex()));
+		return 0;
+	}
+
+	/**
+	 * Parses a string in the currency format into whole cents without
+	 * rounding.  Returns Long.MIN_VALUE if the string cannot be parsed that
+	 * way, in which case the caller should fall back to the DecimalFormat.
+	 * Zero is left to the DecimalFormat too, since it parses a negative zero
+	 * to a Double rather than a Long.
+	 */
+	long parseCents(String string)
+	{
+		if (!compiledParse) {
+			return Long.MIN_VALUE;
+		}
+		ParsePosition pos = new ParsePosition(0);
+		long cents = parseUnits(string, 0, string.length(), false, 2, true, pos);
+		return pos.getErrorIndex() < 0 && cents != 0 ? cents : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Parses a string as a plain number, such as <code>-1234.5</code>, into
+	 * whole cents without rounding.  Returns Long.MIN_VALUE if the string
+	 * cannot be parsed that way, or if the currency format cannot be parsed
+	 * without the DecimalFormat, which the caller should then try first.
+	 */
+	long parsePlainCents(String string)
+	{
+		if (!compiledParse) {
+			return Long.MIN_VALUE;
+		}
+		ParsePosition pos = new ParsePosition(0);
+		long cents = parsePlain(string, 0, string.length(), 2, true, pos);
+		return pos.getErrorIndex() < 0 ? cents : Long.MIN_VALUE;
+	}
+
+	/** Whether amounts are formatted without the DecimalFormat. */
+	boolean isCompiledFormat()
+	{
+		return compiledFormat;
+	}
+
+	/** Whether amounts are parsed without the DecimalFormat. */
+	boolean isCompiledParse()
+	{
+		return compiledParse;
+	}
+
+	/**
+	 * Formats the units as the DecimalFormat would format them after they had
+	 * been rounded to whole cents.  Units must not be Long.MIN_VALUE.
+	 */
+	private void appendUnits(long units, int scale, Appendable out) throws IOException
+	{
+		// Round to whole cents, then to the digits shown by the format
+		if (scale > 2) {
+			units = FixedPoint.divideAndRound(units, FixedPoint.POWERS_OF_TEN[scale - 2], roundingMode);
+			scale = 2;
+		}
+		// Like DecimalFormat, keep the sign of a negative amount which the
+		// format rounds to zero
+		boolean negative = units < 0;
+		if (scale > maximumFractionDigits) {
+			units = FixedPoint.divideAndRound(
+					units, FixedPoint.POWERS_OF_TEN[scale - maximumFractionDigits], formatRoundingMode
+				);
+			scale = maximumFractionDigits;
+		}
+		// Trailing zeros beyond the minimum fraction digits are not shown
+		while (scale > minimumFractionDigits && units % 10 == 0) {
+			units /= 10;
+			scale--;
+		}
+
+		long magnitude = Math.abs(units);
+		long integer = magnitude / FixedPoint.POWERS_OF_TEN[scale];
+		long fraction = magnitude % FixedPoint.POWERS_OF_TEN[scale];
+
+		out.append(negative ? negativePrefix : positivePrefix);
+		int digits = Math.max(digitCount(integer), minimumIntegerDigits);
+		for (int i = digits - 1; i >= 0; i--) {
+			int digit = i > FixedPoint.MAX_SCALE ?
+				0 : (int)(integer / FixedPoint.POWERS_OF_TEN[i] % 10);
+			out.append((char)(zeroDigit + digit));
+			if (groupingSize > 0 && i > 0 && i % groupingSize == 0) {
+				out.append(groupingSeparator);
+			}
+		}
+		if (scale > 0 || minimumFractionDigits > 0 || decimalSeparatorAlwaysShown) {
+			out.append(decimalSeparator);
+			for (int i = scale - 1; i >= 0; i--) {
+				out.append((char)(zeroDigit + (int)(fraction / FixedPoint.POWERS_OF_TEN[i] % 10)));
+			}
+			for (int i = scale; i < minimumFractionDigits; i++) {
+				out.append(zeroDigit);
+			}
+		}
+		out.append(negative ? negativeSuffix : positiveSuffix);
+	}
+
+	/**
+	 * Parses the whole of the region in the currency format or, if allowPlain
+	 * is true, as a plain number.  If exact is true, the parse fails rather
+	 * than round away non-zero digits beyond the scale.
+	 */
+	private long parseUnits(
+			CharSequence text, int start, int end, boolean allowPlain,
+			int scale, boolean exact, ParsePosition pos
+		)
+	{
+		pos.setErrorIndex(-1);
+		// When both affix pairs match, the longer one is the right one
+		boolean positive = matches(text, start, end, positivePrefix, positiveSuffix);
+		boolean negative = matches(text, start, end, negativePrefix, negativeSuffix);
+		if (positive && negative) {
+			int p = positivePrefix.length() + positiveSuffix.length();
+			int n = negativePrefix.length() + negativeSuffix.length();
+			negative = n > p;
+			positive = !negative;
+		}
+		long units = 0;
+		if (positive || negative) {
+			String prefix = negative ? negativePrefix : positivePrefix;
+			String suffix = negative ? negativeSuffix : positiveSuffix;
+			units = parseNumber(
+					text, start + prefix.length(), end - suffix.length(), negative,
+					zeroDigit, groupingSize > 0, groupingSeparator, decimalSeparator,
+					scale, exact, pos
+				);
+			if (pos.getErrorIndex() < 0 || !allowPlain) {
+				if (pos.getErrorIndex() < 0) {
+					pos.setIndex(end);
+				}
+				return units;
+			}
+		} else if (!allowPlain) {
+			pos.setErrorIndex(start);
+			return 0;
+		}
+		// A plain number with an optional sign
+		return parsePlain(text, start, end, scale, exact, pos);
+	}
+
+	/**
+	 * Parses the whole of the region as a plain number with an optional sign.
+	 * If exact is true, the parse fails rather than round away non-zero
+	 * digits beyond the scale.
+	 */
+	private long parsePlain(
+			CharSequence text, int start, int end, int scale, boolean exact, ParsePosition pos
+		)
+	{
+		pos.setErrorIndex(-1);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+			negative = text.charAt(i) == '-';
+			i++;
+		}
+		long units = parseNumber(text, i, end, negative, '0', false, ',', '.', scale, exact, pos);
+		if (pos.getErrorIndex() < 0) {
+			pos.setIndex(end);
+		}
+		return units;
+	}
+
+	/**
+	 * Parses the digits of an amount, which must occupy the whole region, into
+	 * units of 10<sup>-scale</sup>.
+	 */
+	private long parseNumber(
+			CharSequence text, int start, int end, boolean negative,
+			char zero, boolean grouping, char groupingChar, char decimalChar,
+			int scale, boolean exact, ParsePosition pos
+		)
+	{
+		long magnitude = 0;
+		int digits = 0;
+		// The number of fraction digits seen, or -1 before the decimal point
+		int fractionDigits = -1;
+		// The first digit beyond the scale and whether any later one is non-zero
+		int discarded = 0;
+		boolean sticky = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			int digit = c - zero;
+			if (digit >= 0 && digit <= 9) {
+				digits++;
+				if (fractionDigits >= 0 && ++fractionDigits > scale) {
+					if (fractionDigits == scale + 1) {
+						discarded = digit;
+					} else if (digit != 0) {
+						sticky = true;
+					}
+					if (exact && digit != 0) {
+						pos.setErrorIndex(i);
+						return 0;
+					}
+				} else if (magnitude > (Long.MAX_VALUE - digit) / 10) {
+					pos.setErrorIndex(i);
+					return 0;
+				} else {
+					magnitude = magnitude * 10 + digit;
+				}
+			} else if (
+					grouping && c == groupingChar && fractionDigits < 0 &&
+					digits > 0 && i + 1 < end && isDigit(text.charAt(i + 1), zero)
+				)
+			{
+				// Grouping separators between integer digits are ignored
+			} else if (c == decimalChar && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				pos.setErrorIndex(i);
+				return 0;
+			}
+		}
+		if (digits == 0) {
+			pos.setErrorIndex(start);
+			return 0;
+		}
+		if (fractionDigits < scale) {
+			int shift = scale - Math.max(fractionDigits, 0);
+			if (!FixedPoint.fits(magnitude, shift)) {
+				pos.setErrorIndex(start);
+				return 0;
+			}
+			magnitude *= FixedPoint.POWERS_OF_TEN[shift];
+		} else if (
+				(discarded != 0 || sticky) &&
+				roundsAway(magnitude, discarded, sticky, negative)
+			)
+		{
+			if (magnitude == Long.MAX_VALUE) {
+				pos.setErrorIndex(start);
+				return 0;
+			}
+			magnitude++;
+		}
+		return negative ? -magnitude : magnitude;
+	}
+
+	/**
+	 * Determines whether a magnitude from which digits were discarded should
+	 * be incremented under the rounding mode.
+	 */
+	private boolean roundsAway(long magnitude, int discarded, boolean sticky, boolean negative)
+	{
+		int half = discarded == 5 ? (sticky ? 1 : 0) : (discarded > 5 ? 1 : -1);
+		switch (FixedPoint.toRoundingMode(roundingMode)) {
+			case UP:
+				return true;
+			case DOWN:
+				return false;
+			case CEILING:
+				return !negative;
+			case FLOOR:
+				return negative;
+			case HALF_UP:
+				return half >= 0;
+			case HALF_DOWN:
+				return half > 0;
+			case HALF_EVEN:
+				return half > 0 || (half == 0 && (magnitude & 1) != 0);
+			default:
+				throw new IllegalArgumentException("Invalid rounding mode: " + roundingMode);
+		}
+	}
+
+	/**
+	 * Checks the compiled format against the DecimalFormat over a range of
+	 * amounts, including ones which round to zero and to ties.
+	 */
+	private boolean verifyFormat()
+	{
+		DecimalFormat df = (DecimalFormat)prototype.clone();
+		StringBuilder sb = new StringBuilder();
+		try {
+			for (long units : SAMPLE_CENTS) {
+				for (int sign = 1; sign >= -1; sign -= 2) {
+					sb.setLength(0);
+					appendUnits(sign * units, 2, sb);
+					String expected = df.format(BigDecimal.valueOf(sign * units, 2));
+					if (!expected.equals(sb.toString())) {
+						return false;
+					}
+				}
+			}
+		} catch (IOException e) {
+			return false;
+		} catch (RuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that the compiled parser reads what the DecimalFormat writes as
+	 * the DecimalFormat itself reads it.
+	 */
+	private boolean verifyParse()
+	{
+		DecimalFormat df = (DecimalFormat)prototype.clone();
+		ParsePosition pos = new ParsePosition(0);
+		try {
+			for (long units : SAMPLE_CENTS) {
+				for (int sign = 1; sign >= -1; sign -= 2) {
+					String s = df.format(BigDecimal.valueOf(sign * units, 2));
+					BigDecimal expected = new BigDecimal(df.parse(s).toString());
+					long cents = parseUnits(s, 0, s.length(), false, 2, false, pos);
+					if (
+							pos.getErrorIndex() >= 0 ||
+							BigDecimal.valueOf(cents, 2).compareTo(expected) != 0
+						)
+					{
+						return false;
+					}
+				}
+			}
+		} catch (ParseException e) {
+			return false;
+		} catch (RuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/** Parses a plain number, returning null if it is not one. */
+	private static BigDecimal parsePlainSlow(String string)
+	{
+		try {
+			return new BigDecimal(string);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static boolean matches(
+			CharSequence text, int start, int end, String prefix, String suffix
+		)
+	{
+		if (end - start < prefix.length() + suffix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(start + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		int offset = end - suffix.length();
+		for (int i = 0; i < suffix.length(); i++) {
+			if (text.charAt(offset + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigit(char c, char zero)
+	{
+		return c >= zero && c <= zero + 9;
+	}
+
+	/** The number of decimal digits in a non-negative value; zero for zero. */
+	private static int digitCount(long value)
+	{
+		int count = 0;
+		while (value != 0) {
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the locale and rounding mode.  The currency format itself is
+	 * written only if it was supplied by the caller, since a locale's format
+	 * is recreated from the locale when the instance is read.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("locale", locale);
+		fields.put("roundingMode", roundingMode);
+		fields.put("prototype", locale == null ? prototype : null);
+		out.writeFields();
+	}
+
+	/** Replaces a deserialized instance with the shared one if possible. */
+	private Object readResolve() throws ObjectStreamException
+	{
+		if (locale != null) {
+			return getInstance(locale, roundingMode);
+		} else {
+			return getInstance(prototype, roundingMode);
+		}
+	}
+
+	/**
+	 * The key by which shared instances are cached: a locale, or else a
+	 * caller supplied format, and a rounding mode.
+	 */
+	private static final class Key
+	{
+		private final Locale locale;
+		private final DecimalFormat format;
+		private final int roundingMode;
+
+		Key(Locale locale, DecimalFormat format, int roundingMode)
+		{
+			this.locale = locale;
+			this.format = format;
+			this.roundingMode = roundingMode;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj instanceof Key) {
+				Key other = (Key)obj;
+				return roundingMode == other.roundingMode && (
+						locale != null ? locale.equals(other.locale) :
+							other.locale == null && format.equals(other.format)
+					);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (locale != null ? locale.hashCode() : format.hashCode()) * 31 + roundingMode;
+		}
+	}
+}
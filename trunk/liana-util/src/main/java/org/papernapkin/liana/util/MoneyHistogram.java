@@ -0,0 +1,265 @@
+package org.papernapkin.liana.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts the occurrences of monetary amounts, for building histograms of
+ * amounts or finding duplicate amounts among a large number of rows.
+ *
+ * <p>
+ * Amounts are held as long counts of minor units at a fixed scale, in an
+ * open addressing hash table of primitive keys and counts, so counting an
+ * amount creates no objects.  Because the key is the amount in minor units,
+ * amounts which are equal but written with different scales, such as 1.0
+ * and 1.00, are counted together.  Money objects with more decimal places
+ * than the histogram are rounded with their own rounding mode.
+ * </p>
+ *
+ * <p>
+ * This class is not synchronized.
+ * </p>
+ *
+ * @author pchapman
+ */
+public class MoneyHistogram
+{
+	private static final int DEFAULT_CAPACITY = 64;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private final int scale;
+
+	/** The amounts; a slot is empty if its count is zero. */
+	private long[] keys;
+	private long[] counts;
+	private int size;
+	private long total;
+	private long nullCount;
+
+	/**
+	 * Creates a histogram of amounts with the given scale.
+	 * @param scale The number of decimal places of the amounts; 2 for cents.
+	 */
+	public MoneyHistogram(int scale)
+	{
+		this(scale, DEFAULT_CAPACITY / 2);
+	}
+
+	/**
+	 * Creates a histogram of amounts with the given scale.
+	 * @param scale The number of decimal places of the amounts; 2 for cents.
+	 * @param expectedSize The number of distinct amounts for which space is
+	 *                     initially allocated.
+	 */
+	public MoneyHistogram(int scale, int expectedSize)
+	{
+		super();
+		FixedPoint.checkScale(scale);
+		this.scale = scale;
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < MAX_CAPACITY && capacity / 2 < expectedSize) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		counts = new long[capacity];
+	}
+
+	// ACCESSORS
+
+	/** The scale of the amounts. */
+	public int getScale()
+	{
+		return scale;
+	}
+
+	/** The number of distinct amounts counted. */
+	public int size()
+	{
+		return size;
+	}
+
+	/** The number of (non-null) amounts counted. */
+	public long getTotalCount()
+	{
+		return total;
+	}
+
+	/** The number of null amounts offered. */
+	public long getNullCount()
+	{
+		return nullCount;
+	}
+
+	/**
+	 * The number of times an amount has been counted.
+	 * @param units The amount in minor units.
+	 */
+	public long getCount(long units)
+	{
+		return counts[find(units)];
+	}
+
+	/** The number of times an amount has been counted. */
+	public long getCount(Money m)
+	{
+		return m == null ? nullCount : getCount(m.toUnits(scale));
+	}
+
+	/** The distinct amounts counted, in minor units, in ascending order. */
+	public long[] amounts()
+	{
+		long[] result = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (counts[i] != 0) {
+				result[n++] = keys[i];
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * The amounts counted more than once, in minor units, in ascending
+	 * order.
+	 */
+	public long[] duplicates()
+	{
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (counts[i] > 1) {
+				n++;
+			}
+		}
+		long[] result = new long[n];
+		n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (counts[i] > 1) {
+				result[n++] = keys[i];
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	// MUTATORS
+
+	/**
+	 * Counts an amount once.
+	 * @param units The amount in minor units.
+	 * @return The number of times the amount had been counted before; zero
+	 *         if this is its first occurrence.
+	 */
+	public long add(long units)
+	{
+		return add(units, 1);
+	}
+
+	/**
+	 * Counts an amount a number of times.
+	 * @param units The amount in minor units.
+	 * @param count The number of occurrences, which must be positive.
+	 * @return The number of times the amount had been counted before.
+	 */
+	public long add(long units, long count)
+	{
+		if (count <= 0) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+		int slot = find(units);
+		long previous = counts[slot];
+		if (previous == 0) {
+			keys[slot] = units;
+			if (++size > keys.length / 2) {
+				counts[slot] = count;
+				total += count;
+				rehash(keys.length << 1);
+				return 0;
+			}
+		}
+		counts[slot] = previous + count;
+		total += count;
+		return previous;
+	}
+
+	/**
+	 * Counts an amount once, rounding it to the scale of the histogram with
+	 * its rounding mode if necessary.  Null amounts are counted separately.
+	 * @return The number of times the amount had been counted before.
+	 * @throws ArithmeticException The amount does not fit in a long at the
+	 *                             histogram's scale.
+	 */
+	public long add(Money m)
+	{
+		if (m == null) {
+			return nullCount++;
+		}
+		return add(m.toUnits(scale));
+	}
+
+	/**
+	 * Counts each entry of a column.
+	 * @throws IllegalArgumentException The column has a different scale.
+	 */
+	public void addAll(MoneyColumn column)
+	{
+		if (column.getScale() != scale) {
+			throw new IllegalArgumentException(
+					"Column scale " + column.getScale() + " differs from " + scale
+				);
+		}
+		for (int i = 0; i < column.size(); i++) {
+			if (column.isNull(i)) {
+				nullCount++;
+			} else {
+				add(column.getUnits(i));
+			}
+		}
+	}
+
+	/** Discards all counts. */
+	public void clear()
+	{
+		Arrays.fill(counts, 0L);
+		size = 0;
+		total = 0;
+		nullCount = 0;
+	}
+
+	/** Returns the slot holding the key, or the empty slot where it belongs. */
+	private int find(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (counts[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity)
+	{
+		if (capacity > MAX_CAPACITY) {
+			throw new IllegalStateException("Too many distinct amounts");
+		}
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		keys = new long[capacity];
+		counts = new long[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/** Spreads the bits of a key, since amounts are often multiples of 100. */
+	private static int mix(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+}
@@ -0,0 +1,547 @@
+package org.papernapkin.liana.util;
+
+/**
+ * Parses decimal numbers from ranges of CharSequences, char arrays and byte
+ * arrays without creating objects or throwing exceptions, for reading large
+ * amounts of data in which many values may be blank or invalid.  The numbers
+ * accepted are those accepted by Integer.parseInt(String), Long.parseLong,
+ * Short.parseShort and Double.parseDouble; bytes are read as ISO-8859-1
+ * characters.
+ *
+ * <p>
+ * A parser records the status and value of the last number it parsed, so
+ * that a caller can tell a blank value from an invalid one or one out of
+ * range.  Parsers are not synchronized; each thread should use its own.  The
+ * parse methods of {@link IntegerUtil}, {@link LongUtil}, {@link ShortUtil}
+ * and {@link DoubleUtil} return a default value instead, using a parser held
+ * by the calling thread.
+ * </p>
+ *
+ * <p>
+ * Doubles of at most 15 significant digits and small exponents are converted
+ * exactly with a single multiplication or division.  Other valid doubles are
+ * converted by Double.parseDouble, which requires a String.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class NumberParser
+{
+	/** The result of parsing a number. */
+	public enum Status {
+		/** The number was parsed. */
+		OK,
+		/** The text was null or empty, or for doubles only whitespace. */
+		EMPTY,
+		/** The text is not a number. */
+		INVALID,
+		/** The text is an integer too large or small for the type. */
+		OVERFLOW
+	}
+
+	private static final ThreadLocal<NumberParser> local = new ThreadLocal<NumberParser>() {
+		@Override
+		protected NumberParser initialValue() {
+			return new NumberParser();
+		}
+	};
+
+	/** The powers of ten which are exact as doubles. */
+	private static final double[] EXACT_POWERS = new double[23];
+	static {
+		EXACT_POWERS[0] = 1;
+		for (int i = 1; i < EXACT_POWERS.length; i++) {
+			EXACT_POWERS[i] = EXACT_POWERS[i - 1] * 10;
+		}
+	}
+
+	/** The most significant digits of a double converted exactly. */
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	private Status status = Status.EMPTY;
+	private long longValue;
+	private double doubleValue;
+
+	// The text being parsed; one of these is set
+	private CharSequence chars;
+	private char[] charArray;
+	private byte[] byteArray;
+
+	/**
+	 * Creates a parser.
+	 */
+	public NumberParser()
+	{
+		super();
+	}
+
+	/** The parser of the calling thread. */
+	static NumberParser getInstance()
+	{
+		return local.get();
+	}
+
+	// ACCESSORS
+
+	/** The status of the last number parsed. */
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	/** Whether the last number was parsed. */
+	public boolean isValid()
+	{
+		return status == Status.OK;
+	}
+
+	/** The last int, short or long parsed, or 0 if it was not valid. */
+	public long getLong()
+	{
+		return longValue;
+	}
+
+	/** The last int or short parsed, or 0 if it was not valid. */
+	public int getInt()
+	{
+		return (int)longValue;
+	}
+
+	/** The last short parsed, or 0 if it was not valid. */
+	public short getShort()
+	{
+		return (short)longValue;
+	}
+
+	/** The last double parsed, or 0 if it was not valid. */
+	public double getDouble()
+	{
+		return doubleValue;
+	}
+
+	// PARSING
+
+	/**
+	 * Parses an int from a range of text.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseInt(CharSequence s, int start, int end)
+	{
+		return parseIntegral(s, null, null, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Parses an int from a slice of a char array.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseInt(char[] buf, int offset, int length)
+	{
+		return parseIntegral(null, buf, null, offset, offset + length, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Parses an int from a slice of a byte array.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseInt(byte[] buf, int offset, int length)
+	{
+		return parseIntegral(null, null, buf, offset, offset + length, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a long from a range of text.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseLong(CharSequence s, int start, int end)
+	{
+		return parseIntegral(s, null, null, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a long from a slice of a char array.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseLong(char[] buf, int offset, int length)
+	{
+		return parseIntegral(null, buf, null, offset, offset + length, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a long from a slice of a byte array.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseLong(byte[] buf, int offset, int length)
+	{
+		return parseIntegral(null, null, buf, offset, offset + length, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a short from a range of text.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseShort(CharSequence s, int start, int end)
+	{
+		return parseIntegral(s, null, null, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a short from a slice of a char array.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseShort(char[] buf, int offset, int length)
+	{
+		return parseIntegral(null, buf, null, offset, offset + length, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a short from a slice of a byte array.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseShort(byte[] buf, int offset, int length)
+	{
+		return parseIntegral(null, null, buf, offset, offset + length, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	/**
+	 * Parses a double from a range of text.  As with Double.parseDouble,
+	 * leading and trailing whitespace is ignored.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseDouble(CharSequence s, int start, int end)
+	{
+		return parseFloating(s, null, null, start, end);
+	}
+
+	/**
+	 * Parses a double from a slice of a char array.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseDouble(char[] buf, int offset, int length)
+	{
+		return parseFloating(null, buf, null, offset, offset + length);
+	}
+
+	/**
+	 * Parses a double from a slice of a byte array.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The status, which is also held by the parser.
+	 */
+	public Status parseDouble(byte[] buf, int offset, int length)
+	{
+		return parseFloating(null, null, buf, offset, offset + length);
+	}
+
+	// IMPLEMENTATION
+
+	private char charAt(int i)
+	{
+		if (charArray != null) {
+			return charArray[i];
+		} else if (byteArray != null) {
+			return (char)(byteArray[i] & 0xFF);
+		}
+		return chars.charAt(i);
+	}
+
+	private Status finish(Status s)
+	{
+		chars = null;
+		charArray = null;
+		byteArray = null;
+		if (s != Status.OK) {
+			longValue = 0;
+			doubleValue = 0;
+		}
+		status = s;
+		return s;
+	}
+
+	private boolean setText(CharSequence s, char[] c, byte[] b)
+	{
+		chars = s;
+		charArray = c;
+		byteArray = b;
+		return s != null || c != null || b != null;
+	}
+
+	private static int digit(char c)
+	{
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		return c < 128 ? -1 : Character.digit(c, 10);
+	}
+
+	/**
+	 * Parses an optionally signed run of decimal digits in the range min to
+	 * max, accumulating negatively as Long.parseLong does.
+	 */
+	private Status parseIntegral(
+			CharSequence s, char[] c, byte[] b, int start, int end, long min, long max
+		)
+	{
+		if (!setText(s, c, b) || start >= end) {
+			return finish(Status.EMPTY);
+		}
+		int i = start;
+		boolean negative = false;
+		char first = charAt(i);
+		if (first == '-') {
+			negative = true;
+			i++;
+		} else if (first == '+') {
+			i++;
+		}
+		if (i == end) {
+			return finish(Status.INVALID);
+		}
+		long limit = negative ? min : -max;
+		long multmin = limit / 10;
+		long result = 0;
+		boolean overflow = false;
+		for (; i < end; i++) {
+			int d = digit(charAt(i));
+			if (d < 0) {
+				return finish(Status.INVALID);
+			}
+			if (!overflow) {
+				if (result < multmin || result * 10 < limit + d) {
+					overflow = true;
+				} else {
+					result = result * 10 - d;
+				}
+			}
+		}
+		if (overflow) {
+			return finish(Status.OVERFLOW);
+		}
+		longValue = negative ? result : -result;
+		doubleValue = longValue;
+		return finish(Status.OK);
+	}
+
+	private Status parseFloating(CharSequence s, char[] c, byte[] b, int start, int end)
+	{
+		if (!setText(s, c, b)) {
+			return finish(Status.EMPTY);
+		}
+		// Trim as String.trim() does
+		while (start < end && charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && charAt(end - 1) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return finish(Status.EMPTY);
+		}
+
+		int i = start;
+		boolean negative = false;
+		char ch = charAt(i);
+		if (ch == '-' || ch == '+') {
+			negative = ch == '-';
+			i++;
+		}
+		if (matches(i, end, "NaN")) {
+			doubleValue = Double.NaN;
+			return finishDouble();
+		} else if (matches(i, end, "Infinity")) {
+			doubleValue = negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+			return finishDouble();
+		} else if (
+				i + 1 < end && charAt(i) == '0' &&
+				(charAt(i + 1) == 'x' || charAt(i + 1) == 'X')
+			)
+		{
+			if (!isHexFloat(i + 2, end)) {
+				return finish(Status.INVALID);
+			}
+			return slowPath(start, end);
+		}
+
+		// Digits, an optional point and more digits, with at least one digit
+		long mantissa = 0;
+		int significant = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			ch = charAt(i);
+			if (ch >= '0' && ch <= '9') {
+				digits++;
+				if (significant > 0 || ch != '0') {
+					if (significant < 19) {
+						mantissa = mantissa * 10 + (ch - '0');
+					}
+					significant++;
+					if (significant > 19) {
+						// Dropped digits raise the exponent
+						scale--;
+					}
+				}
+				if (point) {
+					scale++;
+				}
+			} else if (ch == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return finish(Status.INVALID);
+		}
+		int exponent = 0;
+		if (i < end && (charAt(i) == 'e' || charAt(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+				negativeExponent = charAt(i) == '-';
+				i++;
+			}
+			int expDigits = 0;
+			for (; i < end && charAt(i) >= '0' && charAt(i) <= '9'; i++) {
+				if (exponent < 100000) {
+					exponent = exponent * 10 + (charAt(i) - '0');
+				}
+				expDigits++;
+			}
+			if (expDigits == 0) {
+				return finish(Status.INVALID);
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+		if (i < end && "fFdD".indexOf(charAt(i)) >= 0) {
+			i++;
+		}
+		if (i != end) {
+			return finish(Status.INVALID);
+		}
+
+		if (significant == 0) {
+			doubleValue = negative ? -0.0 : 0.0;
+			return finishDouble();
+		}
+		int power = exponent - scale;
+		if (significant <= MAX_EXACT_DIGITS && Math.abs(power) < EXACT_POWERS.length) {
+			// Both the mantissa and the power of ten are exact, so a single
+			// rounding gives the correctly rounded result
+			double d = power >= 0 ? mantissa * EXACT_POWERS[power] : mantissa / EXACT_POWERS[-power];
+			doubleValue = negative ? -d : d;
+			return finishDouble();
+		}
+		return slowPath(start, end);
+	}
+
+	private Status finishDouble()
+	{
+		longValue = (long)doubleValue;
+		return finish(Status.OK);
+	}
+
+	/** Converts a range already known to be valid with Double.parseDouble. */
+	private Status slowPath(int start, int end)
+	{
+		String text;
+		if (chars != null) {
+			text = chars.subSequence(start, end).toString();
+		} else if (charArray != null) {
+			text = new String(charArray, start, end - start);
+		} else {
+			char[] cs = new char[end - start];
+			for (int i = start; i < end; i++) {
+				cs[i - start] = (char)(byteArray[i] & 0xFF);
+			}
+			text = new String(cs);
+		}
+		doubleValue = Double.parseDouble(text);
+		return finishDouble();
+	}
+
+	private boolean matches(int i, int end, String word)
+	{
+		if (end - i != word.length()) {
+			return false;
+		}
+		for (int k = 0; k < word.length(); k++) {
+			if (charAt(i + k) != word.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the text after 0x is a hexadecimal float: hex digits with an
+	 * optional point, at least one digit, a binary exponent and an optional
+	 * suffix.
+	 */
+	private boolean isHexFloat(int i, int end)
+	{
+		int digits = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			char ch = charAt(i);
+			if (Character.digit(ch, 16) >= 0 && ch < 128) {
+				digits++;
+			} else if (ch == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0 || i == end || (charAt(i) != 'p' && charAt(i) != 'P')) {
+			return false;
+		}
+		i++;
+		if (i < end && (charAt(i) == '-' || charAt(i) == '+')) {
+			i++;
+		}
+		int expDigits = 0;
+		for (; i < end && charAt(i) >= '0' && charAt(i) <= '9'; i++) {
+			expDigits++;
+		}
+		if (i < end && "fFdD".indexOf(charAt(i)) >= 0) {
+			i++;
+		}
+		return expDigits > 0 && i == end;
+	}
+}
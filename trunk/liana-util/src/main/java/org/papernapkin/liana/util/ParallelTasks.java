@@ -0,0 +1,61 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for splitting work on arrays into chunks run by an
+ * ExecutorService.
+ *
+ * @author pchapman
+ */
+final class ParallelTasks
+{
+	private ParallelTasks()
+	{
+		super();
+	}
+
+	/**
+	 * Splits length elements into at most the given number of chunks of
+	 * nearly equal size.  Chunk c covers the elements from bounds[c] to
+	 * bounds[c + 1].
+	 */
+	static int[] chunkBounds(int length, int chunks)
+	{
+		chunks = Math.max(1, Math.min(chunks, length));
+		int[] bounds = new int[chunks + 1];
+		for (int c = 0; c <= chunks; c++) {
+			bounds[c] = (int)((long)length * c / chunks);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Runs the tasks and returns their results in order.  An exception
+	 * thrown by a task is rethrown unwrapped if it is unchecked.
+	 */
+	static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks)
+		throws InterruptedException
+	{
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> f : executor.invokeAll(tasks)) {
+			try {
+				results.add(f.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				} else if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return results;
+	}
+}
@@ -0,0 +1,276 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A search string compiled into phrases which are matched against text.
+ * Text between double quotes is a phrase of its own; the rest of the search
+ * string is broken into words of ASCII letters and digits, as
+ * {@link StringUtil#getSearchPhrases(String)} does.  Text matches the query
+ * if it contains every phrase, ignoring case.
+ *
+ * <p>
+ * The words of searched text, its maximal runs of ASCII letters and digits,
+ * are its terms.  A word of the query is found in text only within one of
+ * its terms, which allows an index of terms to find candidate matches; see
+ * {@link #terms(CharSequence, TextSegmenter.RangeHandler)}.
+ * </p>
+ *
+ * <p>
+ * Queries are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class SearchQuery
+{
+	private final List<String> phrases;
+	/** The phrases in lower and upper case, for matching without case. */
+	private final char[][] lower;
+	private final char[][] upper;
+	/** The words of the query and the terms of its quoted phrases. */
+	private final List<String> terms;
+
+	private SearchQuery(List<String> phrases)
+	{
+		super();
+		this.phrases = Collections.unmodifiableList(phrases);
+		this.lower = new char[phrases.size()][];
+		this.upper = new char[phrases.size()][];
+		final List<String> t = new ArrayList<String>();
+		for (int i = 0; i < lower.length; i++) {
+			final String phrase = phrases.get(i);
+			lower[i] = new char[phrase.length()];
+			upper[i] = new char[phrase.length()];
+			for (int j = 0; j < phrase.length(); j++) {
+				lower[i][j] = Character.toLowerCase(phrase.charAt(j));
+				upper[i][j] = Character.toUpperCase(phrase.charAt(j));
+			}
+			terms(phrase, new TextSegmenter.RangeHandler() {
+				public void range(int start, int end) {
+					String term = toLowerAscii(phrase, start, end);
+					if (!t.contains(term)) {
+						t.add(term);
+					}
+				}
+			});
+		}
+		this.terms = Collections.unmodifiableList(t);
+	}
+
+	/**
+	 * Compiles a search string.  Quoted phrases are taken in order, each
+	 * once; an unmatched quote is treated as punctuation.  The words outside
+	 * the quotes follow.
+	 * @param query The search string.
+	 * @return The query.
+	 */
+	public static SearchQuery compile(String query)
+	{
+		List<String> phrases = new ArrayList<String>();
+		StringBuilder rest = new StringBuilder(query.length());
+		boolean quoted = hasQuotedPhrase(query);
+		int start = 0;
+		if (quoted) {
+			for (int i = query.indexOf('"'); i >= 0; i = query.indexOf('"', start)) {
+				int j = query.indexOf('"', i + 1);
+				if (j < 0) {
+					break;
+				}
+				String phrase = query.substring(i + 1, j);
+				if (phrase.length() > 0 && !phrases.contains(phrase)) {
+					phrases.add(phrase);
+				}
+				rest.append(query, start, i);
+				start = j + 1;
+			}
+		}
+		rest.append(query, start, query.length());
+
+		final CharSequence words = rest;
+		final List<String> result = phrases;
+		terms(words, new TextSegmenter.RangeHandler() {
+			public void range(int s, int e) {
+				result.add(words.subSequence(s, e).toString());
+			}
+		});
+		return new SearchQuery(result);
+	}
+
+	/**
+	 * Finds the terms of a text, its maximal runs of ASCII letters and
+	 * digits.
+	 * @param text The text.
+	 * @param handler Receives the range of each term.
+	 * @return The number of terms.
+	 */
+	public static int terms(CharSequence text, TextSegmenter.RangeHandler handler)
+	{
+		int count = 0;
+		int start = -1;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			if (isTermChar(text.charAt(i))) {
+				if (start < 0) {
+					start = i;
+				}
+			} else if (start >= 0) {
+				handler.range(start, i);
+				count++;
+				start = -1;
+			}
+		}
+		if (start >= 0) {
+			handler.range(start, length);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Converts a range of text to lower case, for comparison with terms.
+	 * Only ASCII letters are converted.
+	 */
+	public static String toLowerAscii(CharSequence text, int start, int end)
+	{
+		char[] chars = new char[end - start];
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			chars[i - start] = c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+		}
+		return new String(chars);
+	}
+
+	/** The phrases of the query; quoted phrases first, then words. */
+	public List<String> getPhrases()
+	{
+		return phrases;
+	}
+
+	/**
+	 * The distinct terms, in lower case, which text must contain for each
+	 * phrase to be found in it: the words of the query and the words within
+	 * its quoted phrases.  Each must occur within a single term of matching
+	 * text.
+	 */
+	public List<String> getTerms()
+	{
+		return terms;
+	}
+
+	/**
+	 * Whether every phrase is made of a single term, so that text matches if
+	 * each term is found within its terms without checking the text itself.
+	 */
+	public boolean isTermsOnly()
+	{
+		for (String phrase : phrases) {
+			for (int i = 0; i < phrase.length(); i++) {
+				if (!isTermChar(phrase.charAt(i))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Whether the query has no phrases, and so matches everything. */
+	public boolean isEmpty()
+	{
+		return phrases.isEmpty();
+	}
+
+	/**
+	 * Whether the text contains every phrase, ignoring case.
+	 * @param text The text to search.
+	 */
+	public boolean matches(CharSequence text)
+	{
+		for (int p = 0; p < lower.length; p++) {
+			if (indexOf(text, p) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether every phrase is contained in at least one of the values,
+	 * ignoring case.  Null values are skipped.
+	 * @param values The values to search, such as the columns of a row.
+	 */
+	public boolean matches(CharSequence... values)
+	{
+		for (int p = 0; p < lower.length; p++) {
+			boolean found = false;
+			for (int v = 0; v < values.length && !found; v++) {
+				found = values[v] != null && indexOf(values[v], p) >= 0;
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** The phrases of the query, as a list. */
+	public String toString()
+	{
+		return phrases.toString();
+	}
+
+	/** Finds a phrase in the text, ignoring case. */
+	private int indexOf(CharSequence text, int p)
+	{
+		char[] lo = lower[p];
+		char[] up = upper[p];
+		int last = text.length() - lo.length;
+		for (int i = 0; i <= last; i++) {
+			int k = 0;
+			while (k < lo.length && equalsIgnoreCase(text.charAt(i + k), lo[k], up[k])) {
+				k++;
+			}
+			if (k == lo.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equalsIgnoreCase(char c, char lo, char up)
+	{
+		if (c == lo || c == up) {
+			return true;
+		}
+		if (c < 128) {
+			return false;
+		}
+		// As String.regionMatches does when ignoring case
+		char u = Character.toUpperCase(c);
+		return u == up || Character.toLowerCase(u) == lo;
+	}
+
+	private static boolean isTermChar(char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * Whether the query has a quoted phrase of at least one character, as
+	 * the pattern .*".+".* tests.  The pattern's dots do not match line
+	 * terminators, so a query of several lines never has one.
+	 */
+	private static boolean hasQuotedPhrase(String query)
+	{
+		for (int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return false;
+			}
+		}
+		int first = query.indexOf('"');
+		return first >= 0 && query.lastIndexOf('"') > first + 1;
+	}
+}
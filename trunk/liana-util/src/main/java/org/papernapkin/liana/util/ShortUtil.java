@@ -34,24 +34,80 @@ public class ShortUtil
 	}
 	
 	/**
-	 * This method uses java.lang.Short.parseShort(String) to parse the string
-	 * value into a double.  The difference is that if a NumberFormatException
-	 * is caught, 0 is returned. 
+	 * Parses the string as java.lang.Short.parseShort(String) does, returning
+	 * 0 if it cannot be parsed.  No exception is thrown or caught.
 	 * @param str The string to parse.
-	 * @return The short value, or 0 if the string could not be parsed.
+	 * @return The short value, or 0 if the string cannot be parsed into a
+	 *         short.
 	 */
-    public static short parseShortSafe(String str)
-    {
-		// Initialize
-		short s = (short)0;
-	
-		// Try to parse the string
-		try {
-		    s = Short.valueOf(str).shortValue();
-		} catch (NumberFormatException e) {}
-	
-		// Return the value.  Notice that if a Number Format Exception was 
-		// caught, (short)0 is returned.
-		return s;
-    }
+	public static short parseShortSafe(String str)
+	{
+		return parseShort(str, (short)0);
+	}
+
+	/**
+	 * Parses text as java.lang.Short.parseShort(String) does, without
+	 * throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param defaultValue The value returned if the text is null, empty or
+	 *                     not a short.
+	 * @return The short value, or the default.
+	 * @see NumberParser
+	 */
+	public static short parseShort(CharSequence s, short defaultValue)
+	{
+		return s == null ? defaultValue : parseShort(s, 0, s.length(), defaultValue);
+	}
+
+	/**
+	 * Parses a range of text as java.lang.Short.parseShort(String) does,
+	 * without throwing an exception or creating any objects.
+	 * @param s The text, or null.
+	 * @param start The index of the first character.
+	 * @param end The index after the last character.
+	 * @param defaultValue The value returned if the range is empty or not a
+	 *                     short.
+	 * @return The short value, or the default.
+	 */
+	public static short parseShort(CharSequence s, int start, int end, short defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseShort(s, start, end) == NumberParser.Status.OK
+			? parser.getShort() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a char array as java.lang.Short.parseShort(String)
+	 * does, without throwing an exception or creating any objects.
+	 * @param buf The characters, or null.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     short.
+	 * @return The short value, or the default.
+	 */
+	public static short parseShort(char[] buf, int offset, int length, short defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseShort(buf, offset, length) == NumberParser.Status.OK
+			? parser.getShort() : defaultValue;
+	}
+
+	/**
+	 * Parses a slice of a byte array of ASCII or ISO-8859-1 text as
+	 * java.lang.Short.parseShort(String) does, without throwing an exception
+	 * or creating any objects.
+	 * @param buf The bytes, or null.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param defaultValue The value returned if the slice is empty or not a
+	 *                     short.
+	 * @return The short value, or the default.
+	 */
+	public static short parseShort(byte[] buf, int offset, int length, short defaultValue)
+	{
+		NumberParser parser = NumberParser.getInstance();
+		return parser.parseShort(buf, offset, length) == NumberParser.Status.OK
+			? parser.getShort() : defaultValue;
+	}
 }
@@ -1,5 +1,7 @@
 package org.papernapkin.liana.util;
 
+import java.io.IOException;
+
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -9,9 +11,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
  * Utility methods for use with the java.lang.String class.
@@ -22,7 +22,7 @@ public class StringUtil
 {
 	private static final CharSequence[][] HTML_ENTITIES = {
 		{
-			"&amp;", "&"	// Must be the first item in the array
+			"&amp;", "&"
 		},{
 			"&gt;", ">"
 		},{
@@ -32,6 +32,17 @@ public class StringUtil
 		}
 	};
 
+	/**
+	 * The entity for each character below 128 which has one, indexed by the
+	 * character, built from HTML_ENTITIES.
+	 */
+	private static final String[] HTML_ESCAPES = new String[128];
+	static {
+		for (CharSequence[] entity : HTML_ENTITIES) {
+			HTML_ESCAPES[entity[1].charAt(0)] = entity[0].toString();
+		}
+	}
+
 	private static int IDEAL_WIDTH = 80;
 	
 	/**
@@ -240,7 +251,8 @@ public class StringUtil
 	
 	/**
 	 * Replaces characters that are special in HTML with their equivelent
-	 * entitites (such as replacing an ampersand with "&amp;").
+	 * entitites (such as replacing an ampersand with "&amp;").  The string is
+	 * scanned once, and is returned as is if it has no special characters.
 	 * @param s The string to parse.
 	 * @return The parsed string with all special characters converted.
 	 */
@@ -248,14 +260,192 @@ public class StringUtil
 	{
 		if (s == null) {
 			return null;
-		} else {
-			if (s != null) {
-				for (int i = 0; i < HTML_ENTITIES.length; i++) {
-					s = s.replace(HTML_ENTITIES[i][1], HTML_ENTITIES[i][0]);
+		}
+		int first = indexOfHTMLSpecial(s, 0);
+		if (first < 0) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(s.length() + 16);
+		sb.append(s, 0, first);
+		try {
+			appendHTMLEntities(s, first, sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the text to the output, replacing characters that are special
+	 * in HTML with their equivelent entities.  This allows large amounts of
+	 * text to be written to a Writer without building a string first.
+	 * @param s The text to write.
+	 * @param out The output to write to.
+	 * @throws IOException If thrown by the output.
+	 */
+	public static void replaceHTMLEntities(CharSequence s, Appendable out)
+		throws IOException
+	{
+		appendHTMLEntities(s, 0, out);
+	}
+
+	/**
+	 * Replaces the HTML entities in a string with the characters they stand
+	 * for; the reverse of {@link #replaceHTMLEntities(String)}.  The named
+	 * entities produced by replaceHTMLEntities and numeric character
+	 * references (such as "&amp;#39;" or "&amp;#x27;") are decoded.  Anything
+	 * else, including unknown entities, is left as it is.
+	 * @param s The string to parse.
+	 * @return The parsed string with all entities decoded.
+	 */
+	public static String decodeHTMLEntities(String s)
+	{
+		if (s == null) {
+			return null;
+		}
+		int first = s.indexOf('&');
+		if (first < 0) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		sb.append(s, 0, first);
+		try {
+			appendDecodedHTMLEntities(s, first, sb);
+		} catch (IOException e) {
+			// StringBuilder does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the text to the output, replacing HTML entities with the
+	 * characters they stand for.
+	 * @param s The text to write.
+	 * @param out The output to write to.
+	 * @throws IOException If thrown by the output.
+	 * @see #decodeHTMLEntities(String)
+	 */
+	public static void decodeHTMLEntities(CharSequence s, Appendable out)
+		throws IOException
+	{
+		appendDecodedHTMLEntities(s, 0, out);
+	}
+
+	private static int indexOfHTMLSpecial(CharSequence s, int from)
+	{
+		for (int i = from; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < HTML_ESCAPES.length && HTML_ESCAPES[c] != null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Appends the text from the offset on, escaping special characters. */
+	private static void appendHTMLEntities(CharSequence s, int from, Appendable out)
+		throws IOException
+	{
+		int start = from;
+		for (int i = from; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < HTML_ESCAPES.length && HTML_ESCAPES[c] != null) {
+				out.append(s, start, i);
+				out.append(HTML_ESCAPES[c]);
+				start = i + 1;
+			}
+		}
+		out.append(s, start, s.length());
+	}
+
+	/** Appends the text from the offset on, decoding entities. */
+	private static void appendDecodedHTMLEntities(CharSequence s, int from, Appendable out)
+		throws IOException
+	{
+		int start = from;
+		int length = s.length();
+		for (int i = from; i < length; i++) {
+			if (s.charAt(i) != '&') {
+				continue;
+			}
+			int semi = -1;
+			// Entities are short, so look only a little way for the semicolon
+			for (int j = i + 1; j < length && j <= i + 10; j++) {
+				if (s.charAt(j) == ';') {
+					semi = j;
+					break;
+				}
+			}
+			if (semi < 0) {
+				continue;
+			}
+			int c = decodeHTMLEntity(s, i + 1, semi);
+			if (c >= 0) {
+				out.append(s, start, i);
+				if (c <= Character.MAX_VALUE) {
+					out.append((char)c);
+				} else {
+					// A supplementary character is a surrogate pair
+					char[] chars = Character.toChars(c);
+					out.append(chars[0]).append(chars[1]);
+				}
+				start = semi + 1;
+				i = semi;
+			}
+		}
+		out.append(s, start, length);
+	}
+
+	/**
+	 * Decodes the entity between the ampersand and the semicolon, returning
+	 * -1 if it is not one which is decoded.  Numeric references are decoded
+	 * only if they are written in ASCII digits and name a Unicode scalar
+	 * value other than 0; surrogates are not characters on their own.
+	 */
+	private static int decodeHTMLEntity(CharSequence s, int start, int end)
+	{
+		if (start < end && s.charAt(start) == '#') {
+			int radix = 10;
+			int i = start + 1;
+			if (i < end && (s.charAt(i) == 'x' || s.charAt(i) == 'X')) {
+				radix = 16;
+				i++;
+			}
+			if (i == end) {
+				return -1;
+			}
+			int value = 0;
+			for (; i < end; i++) {
+				char ch = s.charAt(i);
+				// Character.digit would also take digits of other scripts
+				int digit = ch < 128 ? Character.digit(ch, radix) : -1;
+				if (digit < 0) {
+					return -1;
+				}
+				value = value * radix + digit;
+				if (value > Character.MAX_CODE_POINT) {
+					return -1;
+				}
+			}
+			boolean surrogate = value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE;
+			return value == 0 || surrogate ? -1 : value;
+		}
+		for (CharSequence[] entity : HTML_ENTITIES) {
+			CharSequence name = entity[0];
+			// The name runs from after the ampersand to before the semicolon
+			if (name.length() == end - start + 2) {
+				boolean match = true;
+				for (int i = start; i < end && match; i++) {
+					match = s.charAt(i) == name.charAt(i - start + 1);
+				}
+				if (match) {
+					return entity[1].charAt(0);
 				}
 			}
-			return s;
 		}
+		return -1;
 	}
 
 	/**
@@ -335,55 +525,16 @@ public class StringUtil
 	 * @param string
 	 *            The string to be segmented.
 	 */
-	public static String[] segment(String string, int length) {
-		String segs[];
-		String token;
-		StringBuffer newSeg = new StringBuffer(length);
-		StringTokenizer st = new StringTokenizer(string);
-		List<String> segments = new LinkedList<String>();
-		while (st.hasMoreTokens()) {
-			token = st.nextToken();
-			if ((newSeg.length() + token.length() + 1) > length) {
-				if (token.length() > length) {
-					// Token's length is greater than the length of each
-					// segment. The token will have to be broken up.
-					if ((newSeg.length() + 2) < length) {
-						newSeg.append(' ');
-					} else {
-						segments.add(newSeg.toString());
-						newSeg = new StringBuffer(length);
-					}
-					for (int i = 0; i < token.length(); i++) {
-						if (newSeg.length() < length) {
-							newSeg.append(token.charAt(i));
-						} else {
-							segments.add(newSeg.toString());
-							newSeg = new StringBuffer(length);
-							newSeg.append(token.charAt(i));
-						}
-					}
-				} else {
-					// Break to next segment
-					segments.add(newSeg.toString());
-					newSeg = new StringBuffer(length);
-					newSeg.append(token);
-				}
-			} else {
-				// Add the token to the string.
-				if (newSeg.length() > 0) {
-					newSeg.append(' ');
-				}
-				newSeg.append(token);
+	public static String[] segment(final String string, int length) {
+		final List<String> segments = new ArrayList<String>();
+		TextSegmenter.segment(string, length, new TextSegmenter.LineHandler() {
+			public void line(int start, int end, boolean spaced) {
+				segments.add(TextSegmenter.appendLine(
+						string, start, end, spaced, new StringBuilder(end - start + 1)
+					).toString());
 			}
-		}
-		// Build an array of strings from the vector.
-		segments.add(newSeg.toString());
-		segs = new String[segments.size()];
-		for (int i = 0; i < segs.length; i++) {
-			segs[i] = (String) segments.get(i);
-		}
-		// Return the array.
-		return segs;
+		});
+		return segments.toArray(new String[segments.size()]);
 	}
 	
     /**
@@ -444,48 +595,15 @@ public class StringUtil
 	 * @return An array of element Strings.
 	 */
 	public static String[] tokenize
-		(String string, String sep, boolean emptyElementSignificant)
+		(final String string, String sep, boolean emptyElementSignificant)
 	{
-		String s = null;
-		List<String> v = new LinkedList<String>();
-		int j = 0;
-		int i = string.indexOf(sep, j);
-		int l = 0;
-		while (i > -1) {
-			l = i - j ;
-			if (l > 0) {
-				if (j < 0) {
-					j = 0;
-				}
-				s = string.substring(j, i);
-				v.add(s);
-			} else if (emptyElementSignificant) {
-				v.add("");
-			}
-			j = ++i;
-			if (i < string.length()) {
-				i = string.indexOf(sep, j);
-			} else {
-				i = -1;
-			}
-		}
-		
-		// The last element
-		i = string.length();
-		l = i - j ;
-		if (l > 0) {
-			if (j < 0) {
-				j = 0;
+		final List<String> v = new ArrayList<String>();
+		TextSegmenter.tokenize(string, sep, emptyElementSignificant, new TextSegmenter.RangeHandler() {
+			public void range(int start, int end) {
+				v.add(string.substring(start, end));
 			}
-			s = string.substring(j, string.length());
-			v.add(s);
-		} else if (emptyElementSignificant) {
-			v.add("");
-		}
-
-		String[] returnArray = new String[v.size()];
-		v.toArray((Object[])returnArray);
-		return returnArray;
+		});
+		return v.toArray(new String[v.size()]);
 	}
 	
 	/**
@@ -508,52 +626,7 @@ public class StringUtil
 		// display width and reasonably long line usually average out.  We're
 		// not being scientific, just attempting to keep from having a dialog
 		// that stretches across the screen. 
-		char[] chars = text.toCharArray();
-		int i;
-		int lineWidth = 0;
-		StringBuffer sb = new StringBuffer();
-		String s;
-		List<String> words = new LinkedList<String>();
-		
-		// Break the string into words and record any single "word" longer
-		// than the maximum width.
-		for (i = 0; i < chars.length; i++) {
-			if (Character.isWhitespace(chars[i])) {
-				if (sb.length() > 0) {
-					s = sb.toString();
-					sb = new StringBuffer();
-					words.add(s);
-					if (s.length() > maxWidth) {
-						maxWidth = s.length();
-					}
-				}
-			} else {
-				sb.append(chars[i]);
-			}
-		}
-		// Add the last word to the vector;
-		s = sb.toString();
-		sb = new StringBuffer();
-		words.add(s);
-		if (s.length() > maxWidth) {
-			maxWidth = s.length();
-		}
-		
-		// Build the wrapped string.  Perhaps code could be added here to
-		// allow only a maximum number of lines...
-		sb = new StringBuffer();
-		for (i = 0; i < words.size(); i++) {
-			s = (String)words.get(i);
-			if (lineWidth + s.length() > maxWidth) {
-				sb.append('\n');
-				lineWidth = s.length();
-			} else {
-				sb.append(' ');
-				lineWidth = lineWidth + 1 + s.length(); 
-			}
-			sb.append(s);
-		}
-		return sb.toString();
+		return TextSegmenter.wrap(text, maxWidth, new StringBuilder(text.length() + 16)).toString();
 	}
 	
 	/**
@@ -562,29 +635,10 @@ public class StringUtil
 	 * of non-empty strings.
 	 * @param str a string to split into words
 	 * @return a List of the non-empty string words
+	 * @see SearchQuery
 	 */
 	public static List<String> getSearchPhrases(String str) {
-		List<String> searchList = new ArrayList<String>();
-		String phrase = ".*\".+\".*";
-		String word = "[^a-zA-Z0-9]+\\s*";
-		
-		if (str.matches(phrase)) {
-			do {
-				int i = str.indexOf('\"');
-				int j = str.indexOf('\"', i+1);
-				searchList.add(str.substring(i+1, j));
-				str = str.replace(str.subSequence(i, j+1), "");
-			} while (str.contains("\""));
-		}
-		if (! str.equalsIgnoreCase("")) {
-			String[] words = str.split(word);
-			for (String w : words) {
-				if (!w.equalsIgnoreCase("")) {
-					searchList.add(w);
-				}
-			}
-		}
-		return searchList;
+		return new ArrayList<String>(SearchQuery.compile(str).getPhrases());
 	}
 	
 	/**
@@ -595,18 +649,9 @@ public class StringUtil
 	 *                    of {n} where n is the position of the arg.  The first
 	 *                    arg will replace {1}, the second arg will replace
 	 *                    {2}, etc.
+	 * @see MessageTemplate
 	 */
 	public static String replaceArgs(String s, Object ... args) {
-		StringBuilder sb;
-		String val;
-		for (int i = 0; i < args.length; i++) {
-			sb = new StringBuilder();
-			sb.append('{');
-			sb.append(i + 1);
-			sb.append('}');
-			val = args[i] == null ? "null" : args[i].toString();
-			s = s.replace(sb.toString(), val);
-		}
-		return s;
+		return s == null ? null : MessageTemplate.replaceArgs(s, args);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+package org.papernapkin.liana.util;
+
+/**
+ * Breaks text into tokens, words and lines without copying it.  Rather than
+ * building substrings, the methods of this class report the offsets of each
+ * piece of the text to a handler, which can copy, measure or render the
+ * piece as it needs.  The array returning methods of {@link StringUtil} are
+ * built on these and give the same results.
+ *
+ * @author pchapman
+ */
+public final class TextSegmenter
+{
+	/** Receives ranges of a text. */
+	public interface RangeHandler
+	{
+		/**
+		 * Receives a range of the text.
+		 * @param start The index of the first character of the range.
+		 * @param end The index after the last character of the range.
+		 */
+		void range(int start, int end);
+	}
+
+	/** Receives the lines into which a text is segmented. */
+	public interface LineHandler
+	{
+		/**
+		 * Receives a line.  The text of the line is the range of the source
+		 * text with each run of whitespace replaced by a single space, after
+		 * a space if the line is spaced.
+		 * @param start The index of the first character of the line.
+		 * @param end The index after the last character of the line.
+		 * @param spaced Whether the line begins with a space which is not
+		 *               part of the range.
+		 * @see TextSegmenter#appendLine(CharSequence, int, int, boolean, StringBuilder)
+		 */
+		void line(int start, int end, boolean spaced);
+	}
+
+	private TextSegmenter()
+	{
+		super();
+	}
+
+	/**
+	 * Breaks a text into elements based on a separator, as
+	 * {@link StringUtil#tokenize(String, String, boolean)} does.
+	 * @param text The text to process.
+	 * @param sep The separator between the elements.
+	 * @param emptyElementSignificant Whether empty elements are reported.
+	 * @param handler Receives the range of each element.
+	 * @return The number of elements reported.
+	 */
+	public static int tokenize(
+			CharSequence text, CharSequence sep, boolean emptyElementSignificant,
+			RangeHandler handler
+		)
+	{
+		int count = 0;
+		int length = text.length();
+		int j = 0;
+		int i = indexOf(text, sep, j);
+		while (i > -1) {
+			if (i > j) {
+				handler.range(j, i);
+				count++;
+			} else if (emptyElementSignificant) {
+				handler.range(j, j);
+				count++;
+			}
+			// The next element starts after the first character of the
+			// separator.
+			j = ++i;
+			i = i < length ? indexOf(text, sep, j) : -1;
+		}
+
+		// The last element
+		if (length > j) {
+			handler.range(j, length);
+			count++;
+		} else if (emptyElementSignificant) {
+			handler.range(length, length);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the words of a text, which are separated by whitespace as
+	 * defined by {@link Character#isWhitespace(char)}.
+	 * @param text The text to process.
+	 * @param handler Receives the range of each word.
+	 * @return The number of words.
+	 */
+	public static int words(CharSequence text, RangeHandler handler)
+	{
+		int count = 0;
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				if (i > start) {
+					handler.range(start, i);
+					count++;
+				}
+				start = i + 1;
+			}
+		}
+		if (length > start) {
+			handler.range(start, length);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Segments a text into lines of the given length, as
+	 * {@link StringUtil#segment(String, int)} does.  Words are separated by
+	 * the whitespace characters of {@link java.util.StringTokenizer}; those
+	 * longer than a line are broken across lines.
+	 * @param text The text to segment.
+	 * @param length The length of each line.
+	 * @param handler Receives each line.
+	 * @return The number of lines.
+	 * @throws IllegalArgumentException The length is negative.
+	 */
+	public static int segment(CharSequence text, int length, LineHandler handler)
+	{
+		if (length < 0) {
+			throw new IllegalArgumentException("Invalid segment length: " + length);
+		}
+		int count = 0;
+		int textLength = text.length();
+		// The range of the current line, with start -1 while it is empty, and
+		// the length of its text
+		int lineStart = -1;
+		int lineEnd = -1;
+		int lineLength = 0;
+		boolean spaced = false;
+		int ts = 0;
+		while (true) {
+			while (ts < textLength && isSegmentSpace(text.charAt(ts))) {
+				ts++;
+			}
+			if (ts == textLength) {
+				break;
+			}
+			int te = ts + 1;
+			while (te < textLength && !isSegmentSpace(text.charAt(te))) {
+				te++;
+			}
+			int tokenLength = te - ts;
+			if (lineLength + tokenLength + 1 > length) {
+				if (tokenLength > length) {
+					// The token is longer than a line and will have to be
+					// broken up.
+					if (lineLength + 2 < length) {
+						if (lineLength == 0) {
+							spaced = true;
+						}
+						lineLength++;
+					} else {
+						emitLine(handler, lineStart, lineEnd, spaced, ts);
+						count++;
+						lineStart = -1;
+						lineLength = 0;
+						spaced = false;
+					}
+					for (int i = ts; i < te; i++) {
+						if (lineLength >= length) {
+							emitLine(handler, lineStart, lineEnd, spaced, i);
+							count++;
+							lineStart = -1;
+							lineLength = 0;
+							spaced = false;
+						}
+						if (lineStart < 0) {
+							lineStart = i;
+						}
+						lineEnd = i + 1;
+						lineLength++;
+					}
+				} else {
+					// Break to the next line
+					emitLine(handler, lineStart, lineEnd, spaced, ts);
+					count++;
+					lineStart = ts;
+					lineEnd = te;
+					lineLength = tokenLength;
+					spaced = false;
+				}
+			} else {
+				if (lineLength > 0) {
+					lineLength++;
+				}
+				if (lineStart < 0) {
+					lineStart = ts;
+				}
+				lineEnd = te;
+				lineLength += tokenLength;
+			}
+			ts = te;
+		}
+		emitLine(handler, lineStart, lineEnd, spaced, textLength);
+		return count + 1;
+	}
+
+	/**
+	 * Appends the text of a line reported to a {@link LineHandler}.
+	 * @param text The segmented text.
+	 * @param start The start of the line.
+	 * @param end The end of the line.
+	 * @param spaced Whether the line begins with a space.
+	 * @param sb The builder to which the line is appended.
+	 * @return The builder.
+	 */
+	public static StringBuilder appendLine(
+			CharSequence text, int start, int end, boolean spaced, StringBuilder sb
+		)
+	{
+		if (spaced) {
+			sb.append(' ');
+		}
+		int from = start;
+		for (int i = start; i < end; i++) {
+			if (isSegmentSpace(text.charAt(i))) {
+				sb.append(text, from, i).append(' ');
+				while (i + 1 < end && isSegmentSpace(text.charAt(i + 1))) {
+					i++;
+				}
+				from = i + 1;
+			}
+		}
+		return sb.append(text, from, end);
+	}
+
+	/**
+	 * Wraps text so that lines are no longer than the maximum width, or the
+	 * length of the longest word, as {@link StringUtil#wrapText(String, int)}
+	 * does.
+	 * @param text The text to wrap.
+	 * @param maxWidth The maximum number of characters in a line.
+	 * @param sb The builder to which the wrapped text is appended.
+	 * @return The builder.
+	 */
+	public static StringBuilder wrap(final CharSequence text, int maxWidth, final StringBuilder sb)
+	{
+		// A text which is empty or ends in whitespace has an empty last word
+		int length = text.length();
+		final boolean emptyLast = length == 0 || Character.isWhitespace(text.charAt(length - 1));
+		final int[] state = { maxWidth, 0 };
+		words(text, new RangeHandler() {
+			public void range(int start, int end) {
+				state[0] = Math.max(state[0], end - start);
+			}
+		});
+		final int width = state[0];
+		words(text, new RangeHandler() {
+			public void range(int start, int end) {
+				state[1] = wrapWord(text, start, end, width, state[1], sb);
+			}
+		});
+		if (emptyLast) {
+			wrapWord(text, length, length, width, state[1], sb);
+		}
+		return sb;
+	}
+
+	/** Appends a word to wrapped text, returning the new line width. */
+	private static int wrapWord(
+			CharSequence text, int start, int end, int maxWidth, int lineWidth, StringBuilder sb
+		)
+	{
+		int wordLength = end - start;
+		if (lineWidth + wordLength > maxWidth) {
+			sb.append('\n');
+			lineWidth = wordLength;
+		} else {
+			sb.append(' ');
+			lineWidth = lineWidth + 1 + wordLength;
+		}
+		sb.append(text, start, end);
+		return lineWidth;
+	}
+
+	private static void emitLine(LineHandler handler, int start, int end, boolean spaced, int position)
+	{
+		if (start < 0) {
+			handler.line(position, position, spaced);
+		} else {
+			handler.line(start, end, spaced);
+		}
+	}
+
+	/** The default delimiters of StringTokenizer. */
+	private static boolean isSegmentSpace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+
+	private static int indexOf(CharSequence text, CharSequence s, int from)
+	{
+		if (text instanceof String && s instanceof String) {
+			return ((String)text).indexOf((String)s, from);
+		}
+		int last = text.length() - s.length();
+		for (int i = from; i <= last; i++) {
+			int k = 0;
+			while (k < s.length() && text.charAt(i + k) == s.charAt(k)) {
+				k++;
+			}
+			if (k == s.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
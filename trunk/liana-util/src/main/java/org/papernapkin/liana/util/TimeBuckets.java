@@ -0,0 +1,511 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Groups instants, given as milliseconds since the epoch, into days, weeks,
+ * months or quarters of a time zone, and counts or sums them per bucket.
+ * The bucket of an instant is computed arithmetically from its epoch day,
+ * without creating a Calendar; the zone's offset is found in a table of its
+ * transitions, such as those of daylight saving time, which is computed once
+ * per zone for the years {@link #MIN_TABLE_YEAR} to {@link #MAX_TABLE_YEAR}.
+ * Instants outside those years are looked up in the zone itself.
+ *
+ * <p>
+ * Each bucket is identified by a long: the epoch day on which a day or week
+ * starts, or the number of months or quarters since January 1970 (which may
+ * be negative).  {@link #getStartDay(long)} and
+ * {@link #getStartMillis(long)} give the start of a bucket, for labels.
+ * Weeks start on the first day of the week of the given locale.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class TimeBuckets
+{
+	/** The size of a bucket. */
+	public enum Unit {
+		DAY,
+		WEEK,
+		MONTH,
+		QUARTER
+	}
+
+	/** The first year of the zone offset tables. */
+	public static final int MIN_TABLE_YEAR = 1900;
+	/** The last year of the zone offset tables. */
+	public static final int MAX_TABLE_YEAR = 2100;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	/** Below this many instants the work is done on the calling thread. */
+	private static final int MIN_PARALLEL_SIZE = 1 << 13;
+
+	private static final ConcurrentMap<TimeZone, OffsetTable> offsetTables =
+		new ConcurrentHashMap<TimeZone, OffsetTable>();
+
+	/**
+	 * The offsets of a zone between the instants at which they change.
+	 * Offset i applies from transition i - 1 up to transition i.
+	 */
+	private static final class OffsetTable
+	{
+		final TimeZone zone;
+		final long start;
+		final long end;
+		final long[] transitions;
+		final int[] offsets;
+
+		OffsetTable(TimeZone zone)
+		{
+			this.zone = zone;
+			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			cal.clear();
+			cal.set(MIN_TABLE_YEAR, Calendar.JANUARY, 1);
+			start = cal.getTimeInMillis();
+			cal.set(MAX_TABLE_YEAR + 1, Calendar.JANUARY, 1);
+			end = cal.getTimeInMillis();
+
+			// Probe each day and find the exact instant of each change
+			List<Long> t = new ArrayList<Long>();
+			List<Integer> o = new ArrayList<Integer>();
+			int offset = zone.getOffset(start);
+			o.add(Integer.valueOf(offset));
+			for (long probe = start + MILLIS_PER_DAY; probe < end + MILLIS_PER_DAY; probe += MILLIS_PER_DAY) {
+				int next = zone.getOffset(probe);
+				if (next != offset) {
+					long lo = probe - MILLIS_PER_DAY;
+					long hi = probe;
+					while (hi - lo > 1) {
+						long mid = lo + (hi - lo) / 2;
+						if (zone.getOffset(mid) == offset) {
+							lo = mid;
+						} else {
+							hi = mid;
+						}
+					}
+					t.add(Long.valueOf(hi));
+					offset = zone.getOffset(hi);
+					o.add(Integer.valueOf(offset));
+					// Recheck the probe, in case of a second change within the day
+					probe = hi;
+				}
+			}
+			transitions = new long[t.size()];
+			offsets = new int[o.size()];
+			for (int i = 0; i < transitions.length; i++) {
+				transitions[i] = t.get(i).longValue();
+			}
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = o.get(i).intValue();
+			}
+		}
+
+		int getOffset(long millis)
+		{
+			if (millis < start || millis >= end) {
+				return zone.getOffset(millis);
+			}
+			int i = Arrays.binarySearch(transitions, millis);
+			return offsets[i >= 0 ? i + 1 : -i - 1];
+		}
+	}
+
+	/**
+	 * Counts and sums per bucket, held for a contiguous range of buckets which
+	 * grows as instants are added.  Totals are not synchronized.
+	 */
+	public static final class Totals
+	{
+		private final int scale;
+		private final boolean sums;
+		private long first;
+		private long[] counts = new long[0];
+		private MoneyAccumulator[] accumulators;
+
+		private Totals(boolean sums, int scale)
+		{
+			super();
+			this.sums = sums;
+			this.scale = scale;
+			accumulators = sums ? new MoneyAccumulator[0] : null;
+		}
+
+		/** Whether the totals hold sums of amounts as well as counts. */
+		public boolean hasSums()
+		{
+			return sums;
+		}
+
+		/** The buckets with at least one instant, in ascending order. */
+		public long[] getBuckets()
+		{
+			int n = 0;
+			for (long c : counts) {
+				if (c != 0) {
+					n++;
+				}
+			}
+			long[] buckets = new long[n];
+			n = 0;
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] != 0) {
+					buckets[n++] = first + i;
+				}
+			}
+			return buckets;
+		}
+
+		/** The number of instants in a bucket. */
+		public long getCount(long bucket)
+		{
+			long i = bucket - first;
+			return i < 0 || i >= counts.length ? 0 : counts[(int)i];
+		}
+
+		/**
+		 * The amounts of a bucket, or null if it has none.  Only the non-null
+		 * amounts are accumulated, so the accumulator's count may be less
+		 * than the bucket's.
+		 */
+		public MoneyAccumulator getSum(long bucket)
+		{
+			if (!sums) {
+				throw new IllegalStateException("Only counts were taken");
+			}
+			long i = bucket - first;
+			return i < 0 || i >= counts.length ? null : accumulators[(int)i];
+		}
+
+		/** The total number of instants. */
+		public long getTotalCount()
+		{
+			long total = 0;
+			for (long c : counts) {
+				total += c;
+			}
+			return total;
+		}
+
+		private int index(long bucket)
+		{
+			if (counts.length == 0) {
+				first = bucket;
+				grow(0, 16);
+			} else if (bucket < first) {
+				long extra = Math.max(first - bucket, counts.length / 2);
+				grow(checkSpan(extra), counts.length + checkSpan(extra));
+				first -= extra;
+			} else if (bucket - first >= counts.length) {
+				long needed = bucket - first + 1;
+				grow(0, checkSpan(Math.max(needed, counts.length * 2L)));
+			}
+			return (int)(bucket - first);
+		}
+
+		private void grow(int shift, int length)
+		{
+			long[] c = new long[length];
+			System.arraycopy(counts, 0, c, shift, counts.length);
+			counts = c;
+			if (sums) {
+				MoneyAccumulator[] a = new MoneyAccumulator[length];
+				System.arraycopy(accumulators, 0, a, shift, accumulators.length);
+				accumulators = a;
+			}
+		}
+
+		private static int checkSpan(long span)
+		{
+			if (span > Integer.MAX_VALUE / 2) {
+				throw new IllegalArgumentException("The instants span too many buckets");
+			}
+			return (int)span;
+		}
+
+		private void add(long bucket)
+		{
+			// The index may replace the array
+			int i = index(bucket);
+			counts[i]++;
+		}
+
+		private void add(long bucket, long units, boolean isNull)
+		{
+			int i = index(bucket);
+			counts[i]++;
+			if (!isNull) {
+				MoneyAccumulator acc = accumulators[i];
+				if (acc == null) {
+					acc = new MoneyAccumulator();
+					accumulators[i] = acc;
+				}
+				acc.addUnits(units, scale);
+			}
+		}
+
+		private Totals merge(Totals other)
+		{
+			for (int i = 0; i < other.counts.length; i++) {
+				if (other.counts[i] == 0) {
+					continue;
+				}
+				int j = index(other.first + i);
+				counts[j] += other.counts[i];
+				if (sums && other.accumulators[i] != null) {
+					if (accumulators[j] == null) {
+						accumulators[j] = other.accumulators[i];
+					} else {
+						accumulators[j].merge(other.accumulators[i]);
+					}
+				}
+			}
+			return this;
+		}
+	}
+
+	private final Unit unit;
+	private final TimeZone zone;
+	private final OffsetTable offsets;
+	private final WeekTable weeks;
+
+	/**
+	 * Creates buckets of a zone.
+	 * @param unit The size of the buckets.
+	 * @param zone The time zone in which days start.
+	 * @param locale The locale whose first day of the week starts a week.
+	 */
+	public TimeBuckets(Unit unit, TimeZone zone, Locale locale)
+	{
+		super();
+		this.unit = unit;
+		this.zone = (TimeZone)zone.clone();
+		this.weeks = WeekTable.getInstance(locale);
+		OffsetTable table = offsetTables.get(this.zone);
+		if (table == null) {
+			table = new OffsetTable(this.zone);
+			OffsetTable existing = offsetTables.putIfAbsent(this.zone, table);
+			if (existing != null) {
+				table = existing;
+			}
+		}
+		this.offsets = table;
+	}
+
+	// ACCESSORS
+
+	/** The size of the buckets. */
+	public Unit getUnit()
+	{
+		return unit;
+	}
+
+	/** The time zone in which days start. */
+	public TimeZone getTimeZone()
+	{
+		return (TimeZone)zone.clone();
+	}
+
+	/**
+	 * The epoch day on which an instant falls in the zone.
+	 * @param millis The instant.
+	 */
+	public long getEpochDay(long millis)
+	{
+		long local = millis + offsets.getOffset(millis);
+		long day = local / MILLIS_PER_DAY;
+		return local % MILLIS_PER_DAY < 0 ? day - 1 : day;
+	}
+
+	/**
+	 * The bucket of an instant.
+	 * @param millis The instant.
+	 */
+	public long bucketOf(long millis)
+	{
+		long day = getEpochDay(millis);
+		switch (unit) {
+			case DAY:
+				return day;
+			case WEEK:
+				return weeks.getWeekStart(day);
+			default:
+				long civil = CalendarUtil.civil(day);
+				long month = ((civil >> 9) - 1970) * 12 + ((civil >> 5) & 0xF);
+				if (unit == Unit.MONTH) {
+					return month;
+				}
+				return month >= 0 ? month / 3 : (month - 2) / 3;
+		}
+	}
+
+	/**
+	 * The epoch day on which a bucket starts.
+	 * @param bucket The bucket.
+	 */
+	public long getStartDay(long bucket)
+	{
+		switch (unit) {
+			case DAY:
+			case WEEK:
+				return bucket;
+			default:
+				long month = unit == Unit.MONTH ? bucket : bucket * 3;
+				long year = month >= 0 ? month / 12 : (month - 11) / 12;
+				return CalendarUtil.toEpochDay((int)(1970 + year), (int)(month - year * 12), 1);
+		}
+	}
+
+	/**
+	 * The instant at which a bucket starts: the start of its first day in
+	 * the zone.
+	 * @param bucket The bucket.
+	 */
+	public long getStartMillis(long bucket)
+	{
+		long day = getStartDay(bucket);
+		Calendar cal = Calendar.getInstance(zone);
+		cal.clear();
+		cal.set(CalendarUtil.getYear(day), CalendarUtil.getMonth(day), CalendarUtil.getDayOfMonth(day));
+		return cal.getTimeInMillis();
+	}
+
+	// AGGREGATION
+
+	/**
+	 * Counts the instants in each bucket.
+	 * @param millis The instants.
+	 * @param from The index of the first instant.
+	 * @param to The index after the last instant.
+	 * @return The counts.
+	 */
+	public Totals count(long[] millis, int from, int to)
+	{
+		Totals totals = new Totals(false, 0);
+		for (int i = from; i < to; i++) {
+			totals.add(bucketOf(millis[i]));
+		}
+		return totals;
+	}
+
+	/**
+	 * Counts the instants in each bucket, in parallel chunks.
+	 * @param millis The instants.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The counts.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 */
+	public Totals count(final long[] millis, ExecutorService executor, int chunks)
+		throws InterruptedException
+	{
+		final int[] bounds = bounds(millis.length, chunks);
+		List<Callable<Totals>> tasks = new ArrayList<Callable<Totals>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Totals>() {
+				public Totals call() {
+					return count(millis, from, to);
+				}
+			});
+		}
+		return merge(run(executor, tasks));
+	}
+
+	/**
+	 * Counts the instants in each bucket and sums their amounts.  Each
+	 * instant is paired with the amount in the same row of the column; the
+	 * rows with null amounts are counted but not summed.
+	 * @param millis The instants.
+	 * @param amounts The amounts, at least as many as the instants.
+	 * @param from The index of the first instant.
+	 * @param to The index after the last instant.
+	 * @return The counts and sums.
+	 */
+	public Totals sum(long[] millis, MoneyColumn amounts, int from, int to)
+	{
+		Totals totals = new Totals(true, amounts.getScale());
+		for (int i = from; i < to; i++) {
+			totals.add(bucketOf(millis[i]), amounts.getUnits(i), amounts.isNull(i));
+		}
+		return totals;
+	}
+
+	/**
+	 * Counts the instants in each bucket and sums their amounts, in parallel
+	 * chunks.
+	 * @param millis The instants.
+	 * @param amounts The amounts, at least as many as the instants.
+	 * @param executor The executor which runs the chunks.
+	 * @param chunks The number of chunks; typically the number of threads.
+	 * @return The counts and sums.
+	 * @throws InterruptedException If interrupted while waiting for the
+	 *         chunks to complete.
+	 * @see #sum(long[], MoneyColumn, int, int)
+	 */
+	public Totals sum(
+			final long[] millis, final MoneyColumn amounts, ExecutorService executor, int chunks
+		)
+		throws InterruptedException
+	{
+		final int[] bounds = bounds(millis.length, chunks);
+		List<Callable<Totals>> tasks = new ArrayList<Callable<Totals>>();
+		for (int c = 0; c < bounds.length - 1; c++) {
+			final int from = bounds[c];
+			final int to = bounds[c + 1];
+			tasks.add(new Callable<Totals>() {
+				public Totals call() {
+					return sum(millis, amounts, from, to);
+				}
+			});
+		}
+		return merge(run(executor, tasks));
+	}
+
+	private static int[] bounds(int size, int chunks)
+	{
+		return ParallelTasks.chunkBounds(size, size < MIN_PARALLEL_SIZE ? 1 : chunks);
+	}
+
+	/** Runs a single task on the calling thread, otherwise uses the executor. */
+	private static List<Totals> run(ExecutorService executor, List<Callable<Totals>> tasks)
+		throws InterruptedException
+	{
+		if (tasks.size() == 1) {
+			List<Totals> results = new ArrayList<Totals>(1);
+			try {
+				results.add(tasks.get(0).call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return results;
+		}
+		return ParallelTasks.invokeAll(executor, tasks);
+	}
+
+	private static Totals merge(List<Totals> partials)
+	{
+		Totals result = partials.get(0);
+		for (int i = 1; i < partials.size(); i++) {
+			result.merge(partials.get(i));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,173 @@
+package org.papernapkin.liana.util;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The weeks of a locale, with the start of the first week of each year from
+ * {@link #MIN_YEAR} to {@link #MAX_YEAR} computed in advance, so that the
+ * start or end of a week is found without creating a Calendar.  Days are
+ * given as epoch days, the number of days since 1 January 1970, in the
+ * proleptic Gregorian calendar; see {@link CalendarUtil#toEpochDay(int, int, int)}.
+ *
+ * <p>
+ * Weeks are numbered exactly as by {@link CalendarUtil#getWeekStart(int, int)}
+ * and {@link CalendarUtil#getWeekEnd(int, int)}.  The reference day of a year
+ * is the day of January given by the locale's minimal days in the first
+ * week.  Week 0 starts on the locale's first day of the week within the
+ * Sunday to Saturday week of the reference day, so when the reference day
+ * falls before the first day of the week, as a Sunday does where weeks start
+ * on Monday, week 0 starts after it.  Week n starts n weeks after week 0.
+ * </p>
+ *
+ * <p>
+ * Tables depend only on the first day of the week and the minimal days in
+ * the first week, so locales with the same rules share a table.  Tables are
+ * immutable and may be shared between threads.
+ * </p>
+ *
+ * @author pchapman
+ */
+public final class WeekTable
+{
+	/** The first year held in the table. */
+	public static final int MIN_YEAR = 1900;
+	/** The last year held in the table. */
+	public static final int MAX_YEAR = 2199;
+
+	private static final ConcurrentMap<Locale, WeekTable> byLocale =
+		new ConcurrentHashMap<Locale, WeekTable>();
+	private static final WeekTable[] byRules = new WeekTable[7 * 7];
+
+	private final int firstDayOfWeek;
+	private final int minimalDays;
+	/** The epoch day on which week 0 of each year starts. */
+	private final int[] firstWeekStarts;
+
+	private WeekTable(int firstDayOfWeek, int minimalDays)
+	{
+		super();
+		this.firstDayOfWeek = firstDayOfWeek;
+		this.minimalDays = minimalDays;
+		firstWeekStarts = new int[MAX_YEAR - MIN_YEAR + 1];
+		for (int year = MIN_YEAR; year <= MAX_YEAR; year++) {
+			firstWeekStarts[year - MIN_YEAR] = (int)computeFirstWeekStart(year);
+		}
+	}
+
+	/**
+	 * Gets the table of a locale's weeks.
+	 * @param locale The locale.
+	 * @return The table.
+	 */
+	public static WeekTable getInstance(Locale locale)
+	{
+		WeekTable table = byLocale.get(locale);
+		if (table == null) {
+			Calendar cal = Calendar.getInstance(locale);
+			table = getInstance(cal.getFirstDayOfWeek(), cal.getMinimalDaysInFirstWeek());
+			byLocale.putIfAbsent(locale, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the table of weeks with the given rules.
+	 * @param firstDayOfWeek The first day of the week, such as
+	 *                       Calendar.SUNDAY.
+	 * @param minimalDays The minimal days in the first week of the year, from
+	 *                    1 to 7.
+	 * @return The table.
+	 */
+	public static WeekTable getInstance(int firstDayOfWeek, int minimalDays)
+	{
+		if (firstDayOfWeek < Calendar.SUNDAY || firstDayOfWeek > Calendar.SATURDAY) {
+			throw new IllegalArgumentException("Invalid first day of week: " + firstDayOfWeek);
+		}
+		if (minimalDays < 1 || minimalDays > 7) {
+			throw new IllegalArgumentException("Invalid minimal days in first week: " + minimalDays);
+		}
+		int i = (firstDayOfWeek - 1) * 7 + minimalDays - 1;
+		synchronized (byRules) {
+			if (byRules[i] == null) {
+				byRules[i] = new WeekTable(firstDayOfWeek, minimalDays);
+			}
+			return byRules[i];
+		}
+	}
+
+	/** The first day of the week, such as Calendar.SUNDAY. */
+	public int getFirstDayOfWeek()
+	{
+		return firstDayOfWeek;
+	}
+
+	/** The minimal days in the first week of the year. */
+	public int getMinimalDaysInFirstWeek()
+	{
+		return minimalDays;
+	}
+
+	/**
+	 * The epoch day on which a week of a year starts.
+	 * @param weekOfYear The week, numbered from 0.
+	 * @param year The year.
+	 */
+	public long getWeekStart(int weekOfYear, int year)
+	{
+		return getFirstWeekStart(year) + 7L * weekOfYear;
+	}
+
+	/**
+	 * The epoch day on which a week of a year ends, six days after it starts.
+	 * @param weekOfYear The week, numbered from 0.
+	 * @param year The year.
+	 */
+	public long getWeekEnd(int weekOfYear, int year)
+	{
+		return getWeekStart(weekOfYear, year) + 6;
+	}
+
+	/**
+	 * The epoch day on which the week containing a day starts; the day itself
+	 * or up to six days before it.
+	 * @param epochDay The day.
+	 */
+	public long getWeekStart(long epochDay)
+	{
+		int back = CalendarUtil.getDayOfWeek(epochDay) - firstDayOfWeek;
+		return epochDay - (back < 0 ? back + 7 : back);
+	}
+
+	/**
+	 * The epoch day on which the week containing a day ends.
+	 * @param epochDay The day.
+	 */
+	public long getWeekEnd(long epochDay)
+	{
+		return getWeekStart(epochDay) + 6;
+	}
+
+	/**
+	 * The epoch day on which week 0 of a year starts, which may be after the
+	 * reference day of the year; see the class documentation.
+	 * @param year The year.
+	 */
+	public long getFirstWeekStart(int year)
+	{
+		if (year >= MIN_YEAR && year <= MAX_YEAR) {
+			return firstWeekStarts[year - MIN_YEAR];
+		}
+		return computeFirstWeekStart(year);
+	}
+
+	private long computeFirstWeekStart(int year)
+	{
+		// As CalendarUtil.getWeekStart(Calendar), which moves to the first day
+		// of the week without wrapping into the previous Sunday-based week
+		long reference = CalendarUtil.toEpochDay(year, Calendar.JANUARY, minimalDays);
+		return reference + firstDayOfWeek - CalendarUtil.getDayOfWeek(reference);
+	}
+}
@@ -0,0 +1,242 @@
+package org.papernapkin.liana.locale;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests compiling XML resource bundles and loading them through the
+ * org.papernapkin.liana.locale.CompiledResourceBundleControl class.
+ *
+ * @author pchapman
+ */
+public class TestCompiledBundle
+{
+	private static final String BASE_NAME = "org.papernapkin.liana.locale.TestTranslation";
+	private static final String PATH = "org/papernapkin/liana/locale/";
+
+	private static File createTempDir() throws IOException {
+		File dir = File.createTempFile("bundles", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+
+	/** Copies the test bundles, in XML, to a directory. */
+	private static File copyBundles(File dir, String ... locales) throws IOException {
+		File pkg = new File(dir, PATH);
+		pkg.mkdirs();
+		for (String locale : locales) {
+			String name = "TestTranslation_" + locale + ".xml";
+			InputStream in = TestCompiledBundle.class.getResourceAsStream(name);
+			FileOutputStream out = new FileOutputStream(new File(pkg, name));
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+			in.close();
+			out.close();
+		}
+		return pkg;
+	}
+
+	private static Properties loadXml(String locale) throws IOException {
+		Properties props = new Properties();
+		InputStream in = TestCompiledBundle.class.getResourceAsStream("TestTranslation_" + locale + ".xml");
+		props.loadFromXML(in);
+		in.close();
+		return props;
+	}
+
+	private static void assertBundle(Properties expected, ResourceBundle bundle) {
+		for (String key : expected.stringPropertyNames()) {
+			assertEquals(key, expected.getProperty(key), bundle.getString(key));
+		}
+		assertTrue(Collections.list(bundle.getKeys()).containsAll(expected.stringPropertyNames()));
+		try {
+			bundle.getString("no.such.key");
+			fail("Found a missing key");
+		} catch (MissingResourceException e) {
+			// Expected
+		}
+	}
+
+	/** Tests that bundles compiled in a directory are mapped and read. */
+	@Test
+	public void testCompiledDirectory() throws Exception {
+		File dir = createTempDir();
+		try {
+			File pkg = copyBundles(dir, "en_US", "en_GB");
+			assertEquals(2, BundleCompiler.compileDirectory(dir));
+			// Only the compiled bundles remain to be found
+			new File(pkg, "TestTranslation_en_US.xml").delete();
+			new File(pkg, "TestTranslation_en_GB.xml").delete();
+
+			ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, null);
+			CompiledResourceBundleControl control = new CompiledResourceBundleControl();
+			ResourceBundle us = ResourceBundle.getBundle(BASE_NAME, Locale.US, loader, control);
+			assertTrue(us instanceof CompiledResourceBundle);
+			assertBundle(loadXml("en_US"), us);
+			ResourceBundle gb = ResourceBundle.getBundle(BASE_NAME, Locale.UK, loader, control);
+			assertTrue(gb instanceof CompiledResourceBundle);
+			assertBundle(loadXml("en_GB"), gb);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/** Tests that a compiled bundle is read from a jar. */
+	@Test
+	public void testCompiledJar() throws Exception {
+		File dir = createTempDir();
+		try {
+			File pkg = copyBundles(dir, "en_US");
+			File compiled = new File(pkg, "TestTranslation_en_US.bundle");
+			BundleCompiler.compile(new File(pkg, "TestTranslation_en_US.xml"), compiled);
+
+			File jar = new File(dir, "bundles.jar");
+			JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+			out.putNextEntry(new JarEntry(PATH + compiled.getName()));
+			FileInputStream in = new FileInputStream(compiled);
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+			in.close();
+			out.close();
+
+			ClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null);
+			ResourceBundle us = ResourceBundle.getBundle(
+				BASE_NAME, Locale.US, loader, new CompiledResourceBundleControl()
+			);
+			assertTrue(us instanceof CompiledResourceBundle);
+			assertBundle(loadXml("en_US"), us);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/** Tests that XML is loaded for the locales which are not compiled. */
+	@Test
+	public void testXmlFallback() throws Exception {
+		File dir = createTempDir();
+		try {
+			File pkg = copyBundles(dir, "en_US", "en_GB");
+			BundleCompiler.compile(
+				new File(pkg, "TestTranslation_en_GB.xml"), new File(pkg, "TestTranslation_en_GB.bundle")
+			);
+			ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, null);
+			CompiledResourceBundleControl control = new CompiledResourceBundleControl();
+			ResourceBundle gb = ResourceBundle.getBundle(BASE_NAME, Locale.UK, loader, control);
+			assertTrue(gb instanceof CompiledResourceBundle);
+			assertEquals("TestTranslation_en_GB.xml", gb.getString("identifier"));
+			ResourceBundle us = ResourceBundle.getBundle(BASE_NAME, Locale.US, loader, control);
+			assertTrue(!(us instanceof CompiledResourceBundle));
+			assertBundle(loadXml("en_US"), us);
+		} finally {
+			delete(dir);
+		}
+
+		// The test resources have no compiled bundles
+		Translation trans = Translation.getTranslation(BASE_NAME, Locale.US);
+		assertEquals("TestTranslation_en_US.xml", trans.getString("identifier"));
+	}
+
+	/** Tests that a mapped bundle keeps its contents when it is recompiled. */
+	@Test
+	public void testRecompile() throws Exception {
+		File dir = createTempDir();
+		try {
+			File pkg = copyBundles(dir, "en_US", "en_GB");
+			File compiled = new File(pkg, "TestTranslation_en_US.bundle");
+			BundleCompiler.compile(new File(pkg, "TestTranslation_en_US.xml"), compiled);
+			ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, null);
+			CompiledResourceBundleControl control = new CompiledResourceBundleControl();
+			ResourceBundle mapped = control.newBundle(BASE_NAME, Locale.US, "bundle", loader, false);
+			assertTrue(mapped instanceof CompiledResourceBundle);
+
+			// The en_GB bundle is written where the en_US one was mapped
+			BundleCompiler.compile(new File(pkg, "TestTranslation_en_GB.xml"), compiled);
+			assertBundle(loadXml("en_US"), mapped);
+			ResourceBundle reloaded = control.newBundle(BASE_NAME, Locale.US, "bundle", loader, true);
+			assertEquals("TestTranslation_en_GB.xml", reloaded.getString("identifier"));
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/** Tests the compiled form of many keys, with shared and unusual values. */
+	@Test
+	public void testFormat() throws Exception {
+		Random random = new Random(50);
+		Properties props = new Properties();
+		for (int i = 0; i < 500; i++) {
+			StringBuilder key = new StringBuilder();
+			for (int k = random.nextInt(12); k >= 0; k--) {
+				key.append((char)(random.nextBoolean() ? 'a' + random.nextInt(26) : random.nextInt(0x3000)));
+			}
+			props.setProperty(key.toString(), i % 7 == 0 ? "" : i % 5 == 0 ? "shared" : "value " + i + "é中");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CompiledResourceBundle.write(props, bytes);
+		CompiledResourceBundle bundle = new CompiledResourceBundle(ByteBuffer.wrap(bytes.toByteArray()));
+		assertEquals(props.size(), bundle.size());
+		for (String key : props.stringPropertyNames()) {
+			assertEquals(props.getProperty(key), bundle.getString(key));
+			for (String missing : new String[] { key + "\u0000", key.substring(1) }) {
+				if (!props.containsKey(missing)) {
+					assertNull(bundle.handleGetObject(missing));
+				}
+			}
+		}
+		assertEquals(props.stringPropertyNames(), new HashSet<String>(Collections.list(bundle.getKeys())));
+
+		// Not a compiled bundle, and one cut short
+		try {
+			new CompiledResourceBundle(ByteBuffer.wrap("<?xml version".getBytes("US-ASCII")));
+			fail("Read XML as a compiled bundle");
+		} catch (IOException e) {
+			// Expected
+		}
+		byte[] truncated = new byte[bytes.size() - 2];
+		System.arraycopy(bytes.toByteArray(), 0, truncated, 0, truncated.length);
+		try {
+			new CompiledResourceBundle(ByteBuffer.wrap(truncated));
+			fail("Read a truncated bundle");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
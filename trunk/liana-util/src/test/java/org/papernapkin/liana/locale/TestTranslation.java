@@ -5,6 +5,7 @@ import java.util.Locale;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import org.junit.Test;
 
 /**
@@ -112,4 +113,64 @@ public class TestTranslation
 		text = trans.getString("test.text2", "foo", "bar", "baz");
 		assertEquals("Argument replacement failed.", "Parameter 1 is foo Parameter 2 is bar Parameter 3 is baz", text);
 	}
+
+	/** Tests that the parsed text of a key is kept and shared. */
+	@Test
+	public void testTemplateCache() {
+		Translation trans = Translation.getTranslation(getClass(), Locale.US);
+		Translation again = Translation.getTranslation(getClass(), Locale.US);
+		assertSame(trans.getTemplate("test.text2"), again.getTemplate("test.text2"));
+		assertEquals(3, trans.getTemplate("test.text2").getSlotCount());
+		assertEquals("Parameter 1 is {1}", trans.getString("test.text1"));
+		assertNull(trans.getTemplate("no.such.key"));
+		assertNull(trans.getString("no.such.key", "foo"));
+	}
+
+	/** Tests that translations and misses are cached. */
+	@Test
+	public void testTranslationCache() throws Exception {
+		long ttl = Translation.getMissTimeToLive();
+		Locale saved = Locale.getDefault();
+		try {
+			Translation.clearCache();
+			Translation trans = Translation.getTranslation(getClass(), Locale.US);
+			assertEquals(0, Translation.getCacheHitCount());
+			assertEquals(1, Translation.getCacheMissCount());
+			assertSame(trans, Translation.getTranslation(getClass(), Locale.US));
+			assertSame(trans, Translation.getTranslation(getClass().getName(), Locale.US));
+			assertEquals(2, Translation.getCacheHitCount());
+			assertEquals(1, Translation.getCacheMissCount());
+
+			// A miss falls back to en_US, which misses too; both are cached
+			assertNull(Translation.getTranslation("DoesNotExist", Locale.UK));
+			assertEquals(3, Translation.getCacheMissCount());
+			assertEquals(2, Translation.getCacheHitCount());
+			assertNull(Translation.getTranslation("DoesNotExist", Locale.UK));
+			assertNull(Translation.getTranslation("DoesNotExist", Locale.US));
+			assertEquals(3, Translation.getCacheMissCount());
+			assertEquals(4, Translation.getCacheHitCount());
+
+			// Misses expire
+			Translation.setMissTimeToLive(0);
+			Translation.clearCache();
+			assertNull(Translation.getTranslation("DoesNotExist", Locale.US));
+			Thread.sleep(5);
+			assertNull(Translation.getTranslation("DoesNotExist", Locale.US));
+			assertEquals(0, Translation.getCacheHitCount());
+			assertEquals(2, Translation.getCacheMissCount());
+
+			// The en_US translation used for a miss expires with the miss
+			Locale.setDefault(Locale.JAPAN);
+			Translation.clearCache();
+			Translation us = Translation.getTranslation(getClass(), Locale.US);
+			assertSame(us, Translation.getTranslation(getClass(), Locale.FRANCE));
+			Thread.sleep(5);
+			assertSame(us, Translation.getTranslation(getClass(), Locale.FRANCE));
+			assertEquals(2, Translation.getCacheHitCount());
+			assertEquals(3, Translation.getCacheMissCount());
+		} finally {
+			Locale.setDefault(saved);
+			Translation.setMissTimeToLive(ttl);
+		}
+	}
 }
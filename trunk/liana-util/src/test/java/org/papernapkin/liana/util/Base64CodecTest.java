@@ -0,0 +1,209 @@
+package org.papernapkin.liana.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the Base64Codec class, and BASE64Encoder and BASE64Decoder against
+ * copies of their original implementations.
+ *
+ * @author pchapman
+ */
+public class Base64CodecTest
+{
+	private static final String ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	/** The original BASE64Encoder.encode. */
+	private static String legacyEncode(byte[] data) {
+		StringBuffer result = new StringBuffer();
+		int i = 0;
+		while (i < data.length - 2) {
+			int t = (data[i++] & 0xFF) << 16 | (data[i++] & 0xFF) << 8 | (data[i++] & 0xFF);
+			result.append(ALPHABET.charAt(t >> 18)).append(ALPHABET.charAt((t >> 12) & 63))
+				.append(ALPHABET.charAt((t >> 6) & 63)).append(ALPHABET.charAt(t & 63));
+			if (i % 57 == 0) {
+				result.append("\n");
+			}
+		}
+		if (i == data.length - 1) {
+			int t = (data[i++] & 0xFF) << 4;
+			result.append(ALPHABET.charAt(t >> 6)).append(ALPHABET.charAt(t & 63)).append("==");
+		}
+		if (i == data.length - 2) {
+			int t = ((data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF)) << 2;
+			result.append(ALPHABET.charAt(t >> 12)).append(ALPHABET.charAt((t >> 6) & 63))
+				.append(ALPHABET.charAt(t & 63)).append("=");
+		}
+		return result.toString();
+	}
+
+	/** The original BASE64Decoder.decodeBuffer. */
+	private static byte[] legacyDecode(String data) {
+		StringBuilder useful = new StringBuilder();
+		for (char c : data.toCharArray()) {
+			if (ALPHABET.indexOf(c) >= 0) {
+				useful.append(c);
+			}
+		}
+		byte[] result = new byte[useful.length() * 3 / 4];
+		int bits = 0;
+		int n = 0;
+		int index = 0;
+		for (int i = 0; i < useful.length() && index < result.length; i++) {
+			bits = bits << 6 | ALPHABET.indexOf(useful.charAt(i));
+			n++;
+			if (n == 4) {
+				result[index++] = (byte)(bits >> 16);
+				result[index++] = (byte)(bits >> 8);
+				result[index++] = (byte)bits;
+				bits = 0;
+				n = 0;
+			}
+		}
+		if (n == 2 && index < result.length) {
+			result[index] = (byte)(bits >> 4);
+		} else if (n == 3 && index < result.length) {
+			result[index++] = (byte)(bits >> 10);
+			result[index] = (byte)(bits >> 2);
+		}
+		return result;
+	}
+
+	/** Tests the vectors of RFC 4648. */
+	@Test
+	public void testVectors() throws Exception {
+		String[][] vectors = new String[][] {
+			{ "", "" }, { "f", "Zg==" }, { "fo", "Zm8=" }, { "foo", "Zm9v" },
+			{ "foob", "Zm9vYg==" }, { "fooba", "Zm9vYmE=" }, { "foobar", "Zm9vYmFy" }
+		};
+		for (String[] v : vectors) {
+			byte[] bytes = v[0].getBytes("US-ASCII");
+			assertEquals(v[1], Base64Codec.BASIC.encodeToString(bytes));
+			assertEquals(v[1], new String(Base64Codec.MIME.encode(bytes), "US-ASCII"));
+			assertArrayEquals(bytes, Base64Codec.decode(v[1]));
+			assertArrayEquals(bytes, Base64Codec.decode(v[1].getBytes("US-ASCII")));
+		}
+		assertArrayEquals("foobar".getBytes("US-ASCII"), Base64Codec.decode(" Zm9v\r\nYm*Fy=="));
+	}
+
+	/** Tests random data of every length up to several lines. */
+	@Test
+	public void testRandom() throws Exception {
+		Random random = new Random(46);
+		BASE64Encoder encoder = new BASE64Encoder();
+		BASE64Decoder decoder = new BASE64Decoder();
+		Base64Codec[] codecs = new Base64Codec[] {
+			Base64Codec.BASIC, Base64Codec.MIME, Base64Codec.LEGACY, new Base64Codec(8, "--")
+		};
+		for (int length = 0; length < 400; length++) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+
+			String legacy = legacyEncode(data);
+			assertEquals(legacy, encoder.encode(data));
+			assertArrayEquals(data, decoder.decodeBuffer(legacy));
+
+			for (Base64Codec codec : codecs) {
+				String s = codec.encodeToString(data);
+				assertEquals(codec.encodedLength(length), s.length());
+				assertEquals(s, new String(codec.encode(data), "US-ASCII"));
+				if (codec.getLineLength() > 0 && codec != Base64Codec.LEGACY) {
+					String[] lines = s.split(codec.getLineSeparator(), -1);
+					for (int i = 0; i < lines.length - 1; i++) {
+						assertEquals(codec.getLineLength(), lines[i].length());
+					}
+					assertEquals(Base64Codec.BASIC.encodeToString(data), s.replace(codec.getLineSeparator(), ""));
+				}
+				assertArrayEquals(data, Base64Codec.decode(s));
+
+				// Slices of larger arrays
+				char[] chars = new char[codec.encodedLength(length) + 5];
+				assertEquals(s.length(), codec.encode(data, 0, length, chars, 3));
+				assertEquals(s, new String(chars, 3, s.length()));
+				byte[] out = new byte[length + 2];
+				assertEquals(length, Base64Codec.decode(chars, 3, s.length(), out, 1));
+				assertArrayEquals(data, Arrays.copyOfRange(out, 1, length + 1));
+			}
+		}
+	}
+
+	/** Tests that malformed text decodes as the original decoder did. */
+	@Test
+	public void testLenientDecoding() throws Exception {
+		Random random = new Random(460);
+		String noise = ALPHABET + "=\r\n \t*é-_";
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(40);
+			for (int k = 0; k < length; k++) {
+				sb.append(noise.charAt(random.nextInt(noise.length())));
+			}
+			String s = sb.toString();
+			byte[] expected = legacyDecode(s);
+			assertArrayEquals(s, expected, Base64Codec.decode(s));
+			assertArrayEquals(s, expected, Base64Codec.decode(s.getBytes("ISO-8859-1")));
+		}
+	}
+
+	/**
+	 * Tests that encoding and decoding in parallel chunks give the same
+	 * results as doing so serially, for lengths leaving each amount of
+	 * padding and text with line breaks and noise at the chunk boundaries.
+	 */
+	@Test
+	public void testParallel() throws Exception {
+		Random random = new Random(48);
+		Base64Codec[] codecs = new Base64Codec[] {
+			Base64Codec.BASIC, Base64Codec.MIME, Base64Codec.LEGACY, new Base64Codec(8, "--")
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 5; i++) {
+				int length = (1 << 16) + random.nextInt(1 << 17);
+				for (int padding = 0; padding < 3; padding++) {
+					byte[] data = new byte[length + padding];
+					random.nextBytes(data);
+					int chunks = 2 + random.nextInt(9);
+					for (Base64Codec codec : codecs) {
+						byte[] expected = codec.encode(data);
+						byte[] text = codec.encode(data, executor, chunks);
+						assertArrayEquals(expected, text);
+						assertArrayEquals(data, Base64Codec.decode(text, executor, chunks));
+
+						byte[] out = new byte[data.length + 3];
+						assertEquals(data.length, Base64Codec.decode(text, 0, text.length, out, 2, executor, chunks));
+						assertArrayEquals(data, Arrays.copyOfRange(out, 2, data.length + 2));
+					}
+
+					// Runs of noise, some long enough to hold a chunk boundary
+					byte[] text = Base64Codec.BASIC.encode(data);
+					byte[] noisy = new byte[text.length * 2];
+					int n = 0;
+					for (byte b : text) {
+						if (random.nextInt(500) == 0) {
+							int run = random.nextInt(100) == 0 ? 40000 : random.nextInt(5);
+							for (int k = 0; k < run && n < noisy.length - 1; k++) {
+								noisy[n++] = (byte)"\r\n =*".charAt(random.nextInt(5));
+							}
+						}
+						noisy[n++] = b;
+						if (n == noisy.length) {
+							break;
+						}
+					}
+					noisy = Arrays.copyOf(noisy, n);
+					assertArrayEquals(Base64Codec.decode(noisy), Base64Codec.decode(noisy, executor, chunks));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package org.papernapkin.liana.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests Base64OutputStream, Base64InputStream and the channel methods of
+ * Base64Codec against encoding and decoding whole arrays.
+ *
+ * @author pchapman
+ */
+public class Base64StreamTest
+{
+	private static final Base64Codec[] CODECS = new Base64Codec[] {
+		Base64Codec.BASIC, Base64Codec.MIME, Base64Codec.LEGACY, new Base64Codec(8, "--")
+	};
+
+	/** Lengths around the chunk sizes of the streams. */
+	private static final int[] LENGTHS = new int[] {
+		0, 1, 2, 3, 56, 57, 58, 12254, 12255, 12256, 12287, 12288, 12289, 16383, 16384,
+		16385, 24510, 24511, 100000
+	};
+
+	/** Returns at most a few bytes from each read. */
+	private static class TrickleInputStream extends ByteArrayInputStream
+	{
+		private final Random random;
+
+		TrickleInputStream(byte[] buf, Random random) {
+			super(buf);
+			this.random = random;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 1 + random.nextInt(7)));
+		}
+	}
+
+	private static byte[] readAll(InputStream is, Random random) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buf = new byte[5000];
+		while (true) {
+			if (random.nextInt(10) == 0) {
+				int b = is.read();
+				if (b < 0) {
+					break;
+				}
+				os.write(b);
+			} else {
+				int n = is.read(buf, 0, 1 + random.nextInt(buf.length));
+				if (n < 0) {
+					break;
+				}
+				os.write(buf, 0, n);
+			}
+		}
+		return os.toByteArray();
+	}
+
+	/** Tests that writes of every size produce the encoding of the whole. */
+	@Test
+	public void testOutputStream() throws Exception {
+		Random random = new Random(47);
+		for (int length : LENGTHS) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			for (Base64Codec codec : CODECS) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				Base64OutputStream os = new Base64OutputStream(bytes, codec);
+				int off = 0;
+				while (off < length) {
+					if (random.nextInt(10) == 0) {
+						os.write(data[off++]);
+					} else {
+						int n = Math.min(length - off, random.nextInt(30000));
+						os.write(data, off, n);
+						off += n;
+					}
+				}
+				os.close();
+				assertArrayEquals(codec.encode(data), bytes.toByteArray());
+			}
+		}
+	}
+
+	/** Tests that reads of every size give the decoding of the whole. */
+	@Test
+	public void testInputStream() throws Exception {
+		Random random = new Random(470);
+		for (int length : LENGTHS) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			for (Base64Codec codec : CODECS) {
+				byte[] text = codec.encode(data);
+				assertArrayEquals(data, readAll(new Base64InputStream(new ByteArrayInputStream(text)), random));
+				assertArrayEquals(data, readAll(new Base64InputStream(new TrickleInputStream(text, random)), random));
+			}
+		}
+
+		// Noise between groups, and a dangling character
+		byte[] text = " Zm9v\r\nYm*Fy==\nQ".getBytes("US-ASCII");
+		Base64InputStream is = new Base64InputStream(new TrickleInputStream(text, random));
+		assertEquals(2, is.skip(2));
+		assertArrayEquals("obar".getBytes("US-ASCII"), readAll(is, random));
+		assertEquals(-1, is.read());
+	}
+
+	/** Tests encoding and decoding between channels. */
+	@Test
+	public void testChannels() throws Exception {
+		Random random = new Random(4700);
+		for (int length : new int[] { 0, 1, 65535, 65536, 65537, 200000 }) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			for (Base64Codec codec : CODECS) {
+				ByteArrayOutputStream text = new ByteArrayOutputStream();
+				assertEquals(length, codec.encode(
+					Channels.newChannel(new TrickleInputStream(data, random)), Channels.newChannel(text)));
+				assertArrayEquals(codec.encode(data), text.toByteArray());
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				assertEquals(length, Base64Codec.decode(
+					Channels.newChannel(new ByteArrayInputStream(text.toByteArray())), Channels.newChannel(bytes)));
+				assertArrayEquals(data, bytes.toByteArray());
+			}
+		}
+	}
+
+	/** Tests that nothing may be written once the encoding is finished. */
+	@Test
+	public void testFinish() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Base64OutputStream os = new Base64OutputStream(bytes, Base64Codec.BASIC);
+		os.write("foob".getBytes("US-ASCII"));
+		os.flush();
+		// Nothing is encoded until a chunk fills or the encoding is finished
+		assertEquals("", bytes.toString("US-ASCII"));
+		os.finish();
+		assertEquals("Zm9vYg==", bytes.toString("US-ASCII"));
+		try {
+			os.write(1);
+			fail("Wrote after finishing");
+		} catch (IOException ioe) {
+			// Expected
+		}
+		os.close();
+	}
+}
@@ -0,0 +1,323 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing rows in batches with BatchWriter, using an in-memory H2
+ * database.
+ *
+ * @author pchapman
+ */
+public class BatchWriterTest
+{
+	private static final int ROWS = 2003;
+
+	private static class Entry
+	{
+		Integer id;
+		Long count;
+		String name;
+		Calendar day;
+		Money amount;
+	}
+
+	private static final BatchWriter.RowBinder<Entry> BINDER = new BatchWriter.RowBinder<Entry>() {
+		public void bind(PreparedStatement stmt, Entry row) throws SQLException {
+			IntegerUtil.setNullableInteger(stmt, 1, row.id);
+			LongUtil.setNullableLong(stmt, 2, row.count);
+			StringUtil.setNullableString(stmt, 3, row.name);
+			CalendarUtil.setNullableDate(stmt, 4, row.day);
+			Money.setNullableMoney(stmt, 5, row.amount);
+		}
+	};
+
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		conn = DriverManager.getConnection("jdbc:h2:mem:batchwriter", "sa", "");
+		Statement stmt = conn.createStatement();
+		stmt.execute(
+				"CREATE TABLE entries (id INT, cnt BIGINT, name VARCHAR(40), " +
+				"day DATE, amount DECIMAL(20,2))"
+			);
+		stmt.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Statement stmt = conn.createStatement();
+		stmt.execute("DROP TABLE entries");
+		stmt.close();
+		conn.close();
+	}
+
+	/** Tests writing objects in the calling thread. */
+	@Test
+	public void testWriteObjects() throws Exception {
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, BINDER, 64);
+		assertEquals(ROWS, writer.writeAll(entries(ROWS).iterator()));
+		ps.close();
+		assertEquals(ROWS, writer.getRowCount());
+		assertEquals(ROWS, writer.getUpdateCount());
+		assertEquals(0, writer.getPendingCount());
+		assertTrue(writer.getRowsPerSecond() > 0);
+		checkEntries(ROWS);
+	}
+
+	/** Tests writing objects made by a producer thread. */
+	@Test
+	public void testProducerThread() throws Exception {
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, BINDER, 7);
+		assertEquals(ROWS, writer.writeAll(entries(ROWS).iterator(), true));
+		ps.close();
+		assertEquals(ROWS, writer.getRowCount());
+		checkEntries(ROWS);
+	}
+
+	/** Tests that a failure of the producer is thrown by the writer. */
+	@Test
+	public void testProducerFailure() throws Exception {
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, BINDER, 10);
+		final Iterator<Entry> it = entries(25).iterator();
+		Iterator<Entry> failing = new Iterator<Entry>() {
+			public boolean hasNext() {
+				return true;
+			}
+			public Entry next() {
+				if (!it.hasNext()) {
+					throw new IllegalStateException("Out of entries");
+				}
+				return it.next();
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		try {
+			writer.writeAll(failing, true);
+			fail("The producer's exception was not thrown");
+		} catch (IllegalStateException ise) {
+			assertEquals("Out of entries", ise.getMessage());
+		}
+		assertEquals(20, writer.getRowCount());
+		// The unexecuted rows are discarded
+		assertEquals(0, writer.getPendingCount());
+		writer.flush();
+		ps.close();
+		checkEntries(20);
+	}
+
+	/** An endless iterator of entries which takes a while to give each. */
+	private static class SlowIterator implements Iterator<Entry>
+	{
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger running = new AtomicInteger();
+		private final long millis;
+
+		SlowIterator(long millis) {
+			this.millis = millis;
+		}
+
+		public boolean hasNext() {
+			return true;
+		}
+
+		public Entry next() {
+			running.incrementAndGet();
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			Entry e = new Entry();
+			e.id = Integer.valueOf(calls.incrementAndGet());
+			return e;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/** Tests that the producer has stopped when the writer fails. */
+	@Test
+	public void testWriterFailure() throws Exception {
+		BatchWriter.RowBinder<Entry> binder = new BatchWriter.RowBinder<Entry>() {
+			public void bind(PreparedStatement stmt, Entry row) throws SQLException {
+				if (row.id.intValue() == 3) {
+					throw new SQLException("Cannot bind");
+				}
+				BINDER.bind(stmt, row);
+			}
+		};
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, binder, 10);
+		SlowIterator rows = new SlowIterator(20);
+		try {
+			writer.writeAll(rows, true);
+			fail("The binder's exception was not thrown");
+		} catch (SQLException e) {
+			assertEquals("Cannot bind", e.getMessage());
+		}
+		// The iterator is not in use, and is not called again
+		assertEquals(0, rows.running.get());
+		int calls = rows.calls.get();
+		Thread.sleep(50);
+		assertEquals(calls, rows.calls.get());
+		ps.close();
+	}
+
+	/** Tests that time spent waiting for rows is not counted as elapsed. */
+	@Test
+	public void testElapsedTime() throws Exception {
+		for (boolean producerThread : new boolean[] { false, true }) {
+			PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+			BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, BINDER, 4);
+			final SlowIterator slow = new SlowIterator(25);
+			Iterator<Entry> rows = new Iterator<Entry>() {
+				public boolean hasNext() {
+					return slow.calls.get() < 12;
+				}
+				public Entry next() {
+					return slow.next();
+				}
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+			assertEquals(12, writer.writeAll(rows, producerThread));
+			ps.close();
+			// The rows took 300 ms to make
+			assertTrue(writer.toString(), writer.getElapsedMillis() < 150);
+		}
+	}
+
+	/** Tests that null rows reach the binder with or without a producer thread. */
+	@Test
+	public void testNullRows() throws Exception {
+		BatchWriter.RowBinder<Entry> binder = new BatchWriter.RowBinder<Entry>() {
+			public void bind(PreparedStatement stmt, Entry row) throws SQLException {
+				BINDER.bind(stmt, row == null ? new Entry() : row);
+			}
+		};
+		List<Entry> rows = new ArrayList<Entry>();
+		rows.add(null);
+		rows.add(null);
+		for (boolean producerThread : new boolean[] { false, true }) {
+			PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+			BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, binder, 10);
+			assertEquals(2, writer.writeAll(rows.iterator(), producerThread));
+			ps.close();
+			assertEquals(2, writer.getRowCount());
+		}
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM entries WHERE id IS NULL");
+		rs.next();
+		assertEquals(4, rs.getInt(1));
+		rs.close();
+		stmt.close();
+	}
+
+	/** Tests writing the rows of a ColumnBatch and reading them back. */
+	@Test
+	public void testWriteColumnBatch() throws Exception {
+		ColumnSpec[] specs = new ColumnSpec[] {
+			ColumnSpec.intColumn(1),
+			ColumnSpec.longColumn(2),
+			ColumnSpec.stringColumn(3),
+			ColumnSpec.dateColumn(4),
+			ColumnSpec.moneyColumn(5, 2, Locale.US, false)
+		};
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		BatchWriter<Entry> writer = new BatchWriter<Entry>(ps, BINDER, 100);
+		writer.writeAll(entries(ROWS).iterator());
+		ps.close();
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT * FROM entries ORDER BY id");
+		ColumnBatch batch = ColumnBatch.read(rs, specs, 100);
+		rs.close();
+		stmt.execute("DELETE FROM entries");
+
+		ps = conn.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?, ?)");
+		writer = new BatchWriter<Entry>(ps, 50);
+		assertEquals(ROWS, writer.writeAll(batch));
+		ps.close();
+		assertEquals(ROWS, writer.getRowCount());
+		checkEntries(ROWS);
+		stmt.close();
+	}
+
+	private static List<Entry> entries(int n) {
+		List<Entry> list = new ArrayList<Entry>(n);
+		for (int i = 0; i < n; i++) {
+			Entry e = new Entry();
+			e.id = Integer.valueOf(i);
+			e.count = i % 4 == 1 ? null : Long.valueOf(i * 100000000000L);
+			e.name = i % 6 == 2 ? null : "entry " + i;
+			if (i % 5 != 0) {
+				e.day = Calendar.getInstance();
+				e.day.clear();
+				e.day.set(2010, Calendar.JANUARY, 1);
+				e.day.add(Calendar.DAY_OF_MONTH, i);
+			}
+			e.amount = i % 3 == 0 ? null : new Money(BigDecimal.valueOf(i * 37L - 5000, 2));
+			list.add(e);
+		}
+		return list;
+	}
+
+	private void checkEntries(int n) throws SQLException {
+		List<Entry> expected = entries(n);
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT * FROM entries ORDER BY id");
+		int i = 0;
+		while (rs.next()) {
+			Entry e = expected.get(i++);
+			assertEquals(e.id, IntegerUtil.getNullableInteger(rs, 1));
+			assertEquals(e.count, LongUtil.getNullableLong(rs, 2));
+			assertEquals(e.name, StringUtil.getNullableString(rs, 3));
+			Calendar day = CalendarUtil.getNullableDate(rs, 4);
+			if (e.day == null) {
+				assertNull(day);
+			} else {
+				assertEquals(e.day.getTimeInMillis(), day.getTimeInMillis());
+			}
+			Money amount = Money.getNullableMoney(rs, 5);
+			if (e.amount == null) {
+				assertNull(amount);
+			} else {
+				assertEquals(0, e.amount.getValue().compareTo(amount.getValue()));
+			}
+		}
+		assertEquals(n, i);
+		rs.close();
+		stmt.close();
+	}
+}
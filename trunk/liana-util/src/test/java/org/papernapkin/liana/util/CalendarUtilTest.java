@@ -1,6 +1,11 @@
 package org.papernapkin.liana.util;
 
 import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -9,6 +14,11 @@ import org.junit.Test;
  * @author pchapman
  */
 public class CalendarUtilTest {
+	private static final Locale[] LOCALES = new Locale[] {
+		Locale.US, Locale.UK, Locale.CANADA, Locale.GERMANY, Locale.FRANCE,
+		Locale.JAPAN, new Locale("es", "MX"), new Locale("ar", "EG")
+	};
+
 	@Test
 	public void testGetDays() {
 		Calendar cal = CalendarUtil.getWeekStart(21, 2011);
@@ -23,4 +33,92 @@ public class CalendarUtilTest {
 		assertEquals(28, cal.get(Calendar.DAY_OF_MONTH));
 	}
 
+	/** Tests epoch days against GregorianCalendar. */
+	@Test
+	public void testEpochDays() {
+		GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		cal.clear();
+		cal.set(1600, Calendar.JANUARY, 1);
+		long day = CalendarUtil.toEpochDay(1600, Calendar.JANUARY, 1);
+		assertEquals(cal.getTimeInMillis() / 86400000L, day);
+		for (int i = 0; i < 200000; i++) {
+			assertEquals(cal.get(Calendar.YEAR), CalendarUtil.getYear(day));
+			assertEquals(cal.get(Calendar.MONTH), CalendarUtil.getMonth(day));
+			assertEquals(cal.get(Calendar.DAY_OF_MONTH), CalendarUtil.getDayOfMonth(day));
+			assertEquals(cal.get(Calendar.DAY_OF_WEEK), CalendarUtil.getDayOfWeek(day));
+			assertEquals(day, CalendarUtil.toEpochDay(cal));
+			cal.add(Calendar.DAY_OF_MONTH, 1);
+			day++;
+		}
+		assertEquals(0, CalendarUtil.toEpochDay(1970, Calendar.JANUARY, 1));
+		assertEquals(-1, CalendarUtil.toEpochDay(1969, Calendar.DECEMBER, 31));
+
+		Random random = new Random(43);
+		TimeZone zone = TimeZone.getTimeZone("America/Chicago");
+		Calendar local = Calendar.getInstance(zone);
+		for (int i = 0; i < 10000; i++) {
+			long millis = (random.nextLong() % 4000000000000L);
+			local.setTimeInMillis(millis);
+			assertEquals(CalendarUtil.toEpochDay(local), CalendarUtil.toEpochDay(millis, zone));
+		}
+		Calendar c = CalendarUtil.toCalendar(CalendarUtil.toEpochDay(2012, Calendar.FEBRUARY, 29));
+		assertEquals(2012, c.get(Calendar.YEAR));
+		assertEquals(Calendar.FEBRUARY, c.get(Calendar.MONTH));
+		assertEquals(29, c.get(Calendar.DAY_OF_MONTH));
+	}
+
+	/**
+	 * Tests that the week tables give the same days as getWeekStart and
+	 * getWeekEnd, including where those methods move forward to the first
+	 * day of the week because the day of January they start from falls
+	 * earlier in the week (a Sunday, for a week starting on Monday).
+	 */
+	@Test
+	public void testWeekTables() {
+		Locale saved = Locale.getDefault();
+		try {
+			for (Locale locale : LOCALES) {
+				Locale.setDefault(locale);
+				WeekTable table = WeekTable.getInstance(locale);
+				Calendar ref = Calendar.getInstance(locale);
+				assertEquals(ref.getFirstDayOfWeek(), table.getFirstDayOfWeek());
+				assertEquals(ref.getMinimalDaysInFirstWeek(), table.getMinimalDaysInFirstWeek());
+				for (int year = 1890; year <= 2210; year += year < 1990 || year > 2040 ? 7 : 1) {
+					for (int week = 0; week < 54; week++) {
+						String msg = locale + " " + year + " week " + week;
+						long start = CalendarUtil.getWeekStartDay(week, year, locale);
+						long end = CalendarUtil.getWeekEndDay(week, year, locale);
+						assertEquals(msg, CalendarUtil.toEpochDay(CalendarUtil.getWeekStart(week, year)), start);
+						assertEquals(msg, CalendarUtil.toEpochDay(CalendarUtil.getWeekEnd(week, year)), end);
+						assertEquals(msg, table.getFirstDayOfWeek(), CalendarUtil.getDayOfWeek(start));
+						assertEquals(msg, start + 6, end);
+					}
+				}
+			}
+		} finally {
+			Locale.setDefault(saved);
+		}
+	}
+
+	/** Tests finding the week containing a day. */
+	@Test
+	public void testWeekOfDay() {
+		for (Locale locale : LOCALES) {
+			WeekTable table = WeekTable.getInstance(locale);
+			Calendar cal = Calendar.getInstance(locale);
+			cal.clear();
+			cal.set(2011, Calendar.DECEMBER, 1);
+			for (int i = 0; i < 100; i++) {
+				long day = CalendarUtil.toEpochDay(cal);
+				long start = table.getWeekStart(day);
+				assertTrue(start <= day && day <= table.getWeekEnd(day));
+				assertEquals(cal.getFirstDayOfWeek(), CalendarUtil.getDayOfWeek(start));
+				Calendar c = (Calendar)cal.clone();
+				c.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+				assertEquals(CalendarUtil.toEpochDay(c), start);
+				cal.add(Calendar.DAY_OF_MONTH, 1);
+			}
+		}
+		assertSame(WeekTable.getInstance(Locale.US), WeekTable.getInstance(Calendar.SUNDAY, 1));
+	}
 }
@@ -0,0 +1,213 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading result sets into ColumnBatches, comparing the values with
+ * those read by the getNullable methods, using an in-memory H2 database.
+ *
+ * @author pchapman
+ */
+public class ColumnBatchTest
+{
+	private static final int ROWS = 1000;
+
+	private static final ColumnSpec[] SPECS = new ColumnSpec[] {
+		ColumnSpec.intColumn(1),
+		ColumnSpec.longColumn(2),
+		ColumnSpec.doubleColumn(3),
+		ColumnSpec.moneyColumn(4, 2, Locale.US, false),
+		ColumnSpec.moneyColumn(5, 2, Locale.US, true),
+		ColumnSpec.dateColumn(6),
+		ColumnSpec.timestampColumn(7),
+		ColumnSpec.stringColumn(8)
+	};
+
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		conn = DriverManager.getConnection("jdbc:h2:mem:columnbatch", "sa", "");
+		Statement stmt = conn.createStatement();
+		stmt.execute(
+				"CREATE TABLE facts (id INT, big BIGINT, ratio DOUBLE, amount DECIMAL(20,2), " +
+				"cents BIGINT, day DATE, stamp TIMESTAMP, label VARCHAR(40))"
+			);
+		stmt.close();
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO facts VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+		long base = 1300000000000L;
+		for (int i = 0; i < ROWS; i++) {
+			boolean nulls = i % 7 == 3;
+			IntegerUtil.setNullableInteger(ps, 1, i % 11 == 5 ? null : Integer.valueOf(i - 500));
+			LongUtil.setNullableLong(ps, 2, nulls ? null : Long.valueOf(i * 12345678901L));
+			if (nulls) {
+				ps.setNull(3, java.sql.Types.DOUBLE);
+			} else {
+				ps.setDouble(3, i / 7.0);
+			}
+			Money m = new Money(BigDecimal.valueOf(i * 1013L - 300000, 2));
+			Money.setNullableMoney(ps, 4, nulls ? null : m);
+			Money.setNullableMoneyUnits(ps, 5, i % 5 == 0 ? null : m, 2);
+			ps.setDate(6, nulls ? null : new java.sql.Date(base + i * 86400000L));
+			ps.setTimestamp(7, i % 3 == 0 ? null : new Timestamp(base + i * 3600017L));
+			ps.setString(8, i % 13 == 0 ? null : "row " + i);
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Statement stmt = conn.createStatement();
+		stmt.execute("DROP TABLE facts");
+		stmt.close();
+		conn.close();
+	}
+
+	/** Tests that a batch read in chunks holds the values of the helpers. */
+	@Test
+	public void testReadMatchesHelpers() throws Exception {
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT * FROM facts ORDER BY id");
+		ColumnBatch batch = new ColumnBatch(SPECS, null, 10);
+		int read;
+		while ((read = batch.readFrom(rs, 128)) == 128) {
+			assertEquals(0, batch.size() % 128);
+		}
+		assertEquals(ROWS % 128, read);
+		assertEquals(ROWS, batch.size());
+		rs.close();
+
+		rs = stmt.executeQuery("SELECT * FROM facts ORDER BY id");
+		int row = 0;
+		while (rs.next()) {
+			assertEquals(IntegerUtil.getNullableInteger(rs, 1), batch.getValue(row, 0));
+			assertEquals(LongUtil.getNullableLong(rs, 2), batch.getValue(row, 1));
+			assertEquals(DoubleUtil.getNullableDouble(rs, 3), batch.getValue(row, 2));
+			assertEquals(Money.getNullableMoney(rs, 4), batch.getValue(row, 3));
+			assertEquals(Money.getNullableMoneyUnits(rs, 5, 2), batch.getValue(row, 4));
+			assertEquals(millis(CalendarUtil.getNullableDate(rs, 6)), batch.getValue(row, 5));
+			assertEquals(millis(CalendarUtil.getNullableTimestamp(rs, 7)), batch.getValue(row, 6));
+			assertEquals(StringUtil.getNullableString(rs, 8), batch.getString(row, 7));
+			assertEquals(rs.getObject(1) == null, batch.isNull(row, 0));
+			row++;
+		}
+		assertEquals(ROWS, row);
+		rs.close();
+		stmt.close();
+	}
+
+	/** Tests reading a whole result set with read(). */
+	@Test
+	public void testRead() throws Exception {
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT amount AS total, cents FROM facts ORDER BY id");
+		ColumnBatch batch = ColumnBatch.read(
+				rs, new ColumnSpec[] {
+					ColumnSpec.moneyColumn(1, 2, Locale.US, false),
+					ColumnSpec.moneyColumn(2, 2, Locale.US, true)
+				}, 100
+			);
+		rs.close();
+		stmt.close();
+		assertEquals(ROWS, batch.size());
+		assertEquals("TOTAL", batch.getName(0));
+		assertEquals(Money.class, batch.getValueClass(0));
+		MoneyColumn column = batch.toMoneyColumn(0);
+		assertEquals(ROWS, column.size());
+		long[] units = batch.getLongVector(0);
+		for (int row = 0; row < ROWS; row++) {
+			assertEquals(batch.isNull(row, 0), column.isNull(row));
+			assertEquals(units[row], column.getUnits(row));
+			if (!batch.isNull(row, 0) && !batch.isNull(row, 1)) {
+				assertEquals(batch.getLong(row, 0), batch.getLong(row, 1));
+			}
+		}
+	}
+
+	/** Tests that a row whose read failed part way is read again cleanly. */
+	@Test
+	public void testReadAfterFailure() throws Exception {
+		ColumnBatch batch = new ColumnBatch(new ColumnSpec[] {
+				ColumnSpec.stringColumn(1), ColumnSpec.moneyColumn(2, 2, Locale.US, false)
+			}, null, 4);
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT CAST(NULL AS VARCHAR), CAST(1E30 AS DECIMAL(40,2))");
+		try {
+			batch.readFrom(rs, 0);
+			fail("Read an amount too large for a long");
+		} catch (ArithmeticException e) {
+			// Expected
+		}
+		rs.close();
+		assertEquals(0, batch.size());
+		rs = stmt.executeQuery("SELECT 'x', CAST(1.5 AS DECIMAL(10,2))");
+		assertEquals(1, batch.readFrom(rs, 0));
+		rs.close();
+		stmt.close();
+		assertFalse(batch.isNull(0, 0));
+		assertEquals("x", batch.getString(0, 0));
+		assertEquals(150L, batch.getLong(0, 1));
+	}
+
+	/** Tests building a batch row by row. */
+	@Test
+	public void testSetters() {
+		ColumnBatch batch = new ColumnBatch(SPECS, null, 1);
+		for (int i = 0; i < 200; i++) {
+			int row = batch.addRow();
+			assertEquals(i, row);
+			for (int c = 0; c < SPECS.length; c++) {
+				assertTrue(batch.isNull(row, c));
+			}
+			batch.setInt(row, 0, i);
+			batch.setLong(row, 1, -i);
+			batch.setDouble(row, 2, i / 2.0);
+			batch.setLong(row, 3, i * 100L + 5);
+			batch.setLong(row, 5, 86400000L * i);
+			batch.setString(row, 7, "x" + i);
+		}
+		assertEquals(Integer.valueOf(150), batch.getValue(150, 0));
+		assertEquals(Long.valueOf(-150), batch.getValue(150, 1));
+		assertEquals(new Money(new BigDecimal("150.05"), Locale.US), batch.getValue(150, 3));
+		assertNull(batch.getValue(150, 4));
+		assertEquals(new Date(86400000L * 150), batch.getValue(150, 5));
+		assertEquals("x150", batch.getValue(150, 7));
+
+		batch.setNull(150, 0);
+		assertTrue(batch.isNull(150, 0));
+		assertEquals(0, batch.getInt(150, 0));
+		batch.setString(150, 7, null);
+		assertNull(batch.getString(150, 7));
+
+		batch.clear();
+		assertEquals(0, batch.size());
+		batch.addRow();
+		assertTrue(batch.isNull(0, 7));
+		assertNull(batch.getString(0, 7));
+	}
+
+	private static Date millis(Calendar c) {
+		return c == null ? null : new Date(c.getTimeInMillis());
+	}
+}
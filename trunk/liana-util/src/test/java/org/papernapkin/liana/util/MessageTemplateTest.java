@@ -0,0 +1,82 @@
+package org.papernapkin.liana.util;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the MessageTemplate class.
+ *
+ * @author pchapman
+ */
+public class MessageTemplateTest
+{
+	/** The replacements formerly made by replaceArgs, one argument at a time. */
+	private static String replaceEach(String s, Object... args)
+	{
+		for (int i = 0; i < args.length; i++) {
+			s = s.replace("{" + (i + 1) + "}", args[i] == null ? "null" : args[i].toString());
+		}
+		return s;
+	}
+
+	/** Tests that rendering matches the former argument replacement. */
+	@Test
+	public void testRender() {
+		String[] patterns = {
+			"", "no placeholders", "{1}", "{1}{2}{1}", "a {2} b {1} c", "{0} {1} {01} {} {x} {3}",
+			"{", "}", "{1", "trailing {", "{12} {1}2}", "{1234567890}"
+		};
+		Object[][] argSets = {
+			{}, {"x"}, {"x", null}, {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}
+		};
+		for (String p : patterns) {
+			MessageTemplate t = MessageTemplate.compile(p);
+			assertEquals(p, t.toString());
+			for (Object[] args : argSets) {
+				String expected = replaceEach(p, args);
+				assertEquals(p, expected, t.render(args));
+				assertEquals(p, expected, MessageTemplate.replaceArgs(p, args));
+				assertEquals(p, expected, StringUtil.replaceArgs(p, args));
+				assertEquals(p, "<" + expected, t.render(new StringBuilder("<"), args).toString());
+			}
+		}
+	}
+
+	/** Tests that arguments are not themselves searched for placeholders. */
+	@Test
+	public void testSinglePass() {
+		assertEquals("{2} and b", MessageTemplate.compile("{1} and {2}").render("{2}", "b"));
+		assertEquals("{2} and b", StringUtil.replaceArgs("{1} and {2}", "{2}", "b"));
+	}
+
+	/** Tests formatting arguments for a locale. */
+	@Test
+	public void testFormatter() throws Exception {
+		Calendar cal = Calendar.getInstance(Locale.GERMANY);
+		cal.clear();
+		cal.set(2011, Calendar.MAY, 22);
+		Money m = new Money(new BigDecimal("1234.5"));
+		MessageTemplate t = MessageTemplate.compile("{1} / {2} / {3} / {4}");
+
+		StringWriter out = new StringWriter();
+		t.appendTo(out, MessageTemplate.getFormatter(Locale.GERMANY, DateFormat.SHORT, -1),
+				1234567.5, m, cal.getTime(), "text");
+		// The German symbols differ between JDKs, so expect what the formats give
+		String expected =
+			NumberFormat.getInstance(Locale.GERMANY).format(1234567.5) + " / " +
+			MoneyFormat.getInstance(Locale.GERMANY, m.getRoundingMode()).format(m.getValue()) + " / " +
+			DateFormat.getDateInstance(DateFormat.SHORT, Locale.GERMANY).format(cal.getTime()) + " / text";
+		assertEquals(expected, out.toString());
+
+		out = new StringWriter();
+		t.appendTo(out, MessageTemplate.ArgumentFormatter.DEFAULT, 1.5, m, null, "text");
+		assertEquals("1.5 / " + m + " / null / text", out.toString());
+	}
+}
@@ -0,0 +1,83 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyAccumulator class.
+ *
+ * @author pchapman
+ */
+public class MoneyAccumulatorTest
+{
+	/**
+	 * Tests that the accumulated results match those computed with
+	 * BigDecimal, including when the sum overflows a long.
+	 */
+	@Test
+	public void testAgainstBigDecimal() {
+		Random random = new Random(28L);
+		MoneyAccumulator acc = new MoneyAccumulator();
+		MoneyAccumulator left = new MoneyAccumulator();
+		MoneyAccumulator right = new MoneyAccumulator();
+		BigDecimal sum = BigDecimal.ZERO;
+		BigDecimal min = null;
+		BigDecimal max = null;
+		for (int i = 0; i < 5000; i++) {
+			BigDecimal value;
+			switch (i % 4) {
+				case 0:
+					value = BigDecimal.valueOf(random.nextLong(), random.nextInt(4));
+					acc.add(value);
+					break;
+				case 1:
+					value = BigDecimal.valueOf(random.nextInt(), 2);
+					acc.addUnits(value.unscaledValue().longValue(), 2);
+					break;
+				case 2:
+					value = new BigDecimal(random.nextLong() + "123456789.5");
+					acc.add(new Money(value, Locale.US));
+					break;
+				default:
+					value = BigDecimal.valueOf(random.nextInt(1000), random.nextInt(3));
+					acc.add(new Money(value, Locale.US));
+			}
+			(i % 2 == 0 ? left : right).add(value);
+			sum = sum.add(value);
+			min = min == null || value.compareTo(min) < 0 ? value : min;
+			max = max == null || value.compareTo(max) > 0 ? value : max;
+		}
+		acc.add((Money)null);
+		assertEquals(5000, acc.getCount());
+		assertEquals(sum, acc.getSum());
+		assertEquals(0, min.compareTo(acc.getMin()));
+		assertEquals(0, max.compareTo(acc.getMax()));
+		assertEquals(
+				sum.divide(BigDecimal.valueOf(5000), 2, BigDecimal.ROUND_HALF_EVEN),
+				acc.getAverage(2, BigDecimal.ROUND_HALF_EVEN)
+			);
+
+		left.merge(right);
+		assertEquals(5000, left.getCount());
+		assertEquals(0, sum.compareTo(left.getSum()));
+		assertEquals(0, min.compareTo(left.getMin()));
+		assertEquals(0, max.compareTo(left.getMax()));
+	}
+
+	/** Tests the results of an empty accumulator. */
+	@Test
+	public void testEmpty() {
+		MoneyAccumulator acc = new MoneyAccumulator();
+		acc.addUnits(125, 2).reset();
+		assertEquals(0, acc.getCount());
+		assertEquals(BigDecimal.ZERO, acc.getSum());
+		assertNull(acc.getMin());
+		assertNull(acc.getMax());
+		assertNull(acc.getAverage(2, BigDecimal.ROUND_HALF_UP));
+	}
+}
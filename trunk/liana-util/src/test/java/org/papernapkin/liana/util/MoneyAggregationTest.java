@@ -0,0 +1,116 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyAggregation class.
+ *
+ * @author pchapman
+ */
+public class MoneyAggregationTest
+{
+	private static final int SIZE = 50000;
+
+	private ExecutorService executor;
+	private Money[] amounts;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+		Random random = new Random(34L);
+		amounts = new Money[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			int kind = random.nextInt(10);
+			if (kind == 0) {
+				// Left null
+			} else if (kind == 1) {
+				amounts[i] = new Money(new BigDecimal(random.nextLong() + "123456789.125"), Locale.US);
+			} else {
+				amounts[i] = new Money(random.nextLong() >> 8, 2, Locale.US);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	/** Tests that parallel results equal those of a single accumulator. */
+	@Test
+	public void testSummarize() throws Exception {
+		MoneyAccumulator expected = new MoneyAccumulator().addAll(Arrays.asList(amounts));
+		for (int chunks : new int[] {1, 3, 8}) {
+			check(expected, MoneyAggregation.summarize(amounts, executor, chunks));
+			check(expected, MoneyAggregation.summarize(Arrays.asList(amounts), executor, chunks));
+			check(expected, MoneyAggregation.summarize(new LinkedList<Money>(Arrays.asList(amounts)), executor, chunks));
+		}
+
+		MoneyColumn column = new MoneyColumn(2, Locale.US);
+		for (Money m : amounts) {
+			if (m == null || m.getCompactScale() >= 0) {
+				column.add(m);
+			}
+		}
+		check(column.summarize(), MoneyAggregation.summarize(column, executor, 5));
+	}
+
+	/** Tests grouped sums against a sequential computation. */
+	@Test
+	public void testSummarizeBy() throws Exception {
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < SIZE; i++) {
+			items.add(i);
+		}
+		MoneyAggregation.Classifier<Integer, Integer> byRemainder =
+			new MoneyAggregation.Classifier<Integer, Integer>() {
+				public Integer keyOf(Integer item) {
+					return item % 17;
+				}
+				public Money amountOf(Integer item) {
+					return amounts[item];
+				}
+			};
+		Map<Integer, MoneyAccumulator> groups =
+			MoneyAggregation.summarizeBy(items, byRemainder, executor, 6);
+		assertEquals(17, groups.size());
+		for (int k = 0; k < 17; k++) {
+			MoneyAccumulator expected = new MoneyAccumulator();
+			for (int i = k; i < SIZE; i += 17) {
+				expected.add(amounts[i]);
+			}
+			check(expected, groups.get(k));
+		}
+
+		MoneyColumn column = new MoneyColumn(2, Locale.US);
+		String[] keys = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			column.addUnits(i);
+			keys[i] = (i % 2 == 0) ? "even" : "odd";
+		}
+		Map<String, MoneyAccumulator> parity = MoneyAggregation.summarizeBy(keys, column, executor, 4);
+		assertEquals(BigDecimal.valueOf((long)(SIZE / 2) * (SIZE / 2 - 1), 2), parity.get("even").getSum());
+		assertEquals(BigDecimal.valueOf((long)(SIZE / 2) * (SIZE / 2), 2), parity.get("odd").getSum());
+	}
+
+	private static void check(MoneyAccumulator expected, MoneyAccumulator actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(0, expected.getSum().compareTo(actual.getSum()));
+		assertEquals(0, expected.getMin().compareTo(actual.getMin()));
+		assertEquals(0, expected.getMax().compareTo(actual.getMax()));
+	}
+}
@@ -0,0 +1,138 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyAllocation class by checking the
+ * properties of allocations of random amounts over random weights.
+ *
+ * @author pchapman
+ */
+public class MoneyAllocationTest
+{
+	/**
+	 * Tests that the parts sum to the amount, are each within one unit of the
+	 * exact share, are ordered as the weights are, and that zero weights get
+	 * nothing.
+	 */
+	@Test
+	public void testProperties() {
+		Random random = new Random(33L);
+		for (int trial = 0; trial < 2000; trial++) {
+			long amount = randomAmount(random);
+			long[] weights = randomWeights(random, 1 + random.nextInt(50));
+			long[] parts = MoneyAllocation.allocate(amount, weights);
+			checkProperties(amount, weights, parts);
+		}
+	}
+
+	/** Tests that the parallel variant gives the same result. */
+	@Test
+	public void testParallel() throws Exception {
+		Random random = new Random(34L);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int trial = 0; trial < 5; trial++) {
+				long amount = randomAmount(random);
+				long[] weights = randomWeights(random, 100000 + random.nextInt(1000));
+				long[] expected = MoneyAllocation.allocate(amount, weights);
+				long[] parts = new long[weights.length];
+				MoneyAllocation.allocate(amount, weights, parts, executor, 7);
+				assertArrayEquals(expected, parts);
+				checkProperties(amount, weights, parts);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/** Tests ties go to the lowest indices. */
+	@Test
+	public void testTies() {
+		assertArrayEquals(new long[] {34, 33, 33}, MoneyAllocation.allocate(100, new long[] {1, 1, 1}));
+		assertArrayEquals(new long[] {-34, -33, -33}, MoneyAllocation.allocate(-100, new long[] {1, 1, 1}));
+		assertArrayEquals(new long[] {0, 1, 0}, MoneyAllocation.allocate(1, new long[] {0, 5, 5}));
+		assertArrayEquals(new long[] {30, 70}, MoneyAllocation.allocate(100, new double[] {0.3, 0.7}));
+	}
+
+	/** Tests allocating Money objects. */
+	@Test
+	public void testMoney() {
+		Money total = new Money(new BigDecimal("100.00"), Locale.US);
+		Money[] parts = total.allocate(3);
+		assertEquals("$33.34", parts[0].toString());
+		assertEquals("$33.33", parts[2].toString());
+		Money sum = new Money(0L, Locale.US);
+		for (Money m : total.allocate(new long[] {17, 0, 23, 59})) {
+			sum = sum.add(m);
+		}
+		assertEquals(total, sum);
+		assertEquals(new BigDecimal("0.005"), new Money(new BigDecimal("0.010"), Locale.US).allocate(2)[1].getValue());
+	}
+
+	private static void checkProperties(long amount, long[] weights, long[] parts) {
+		BigInteger total = BigInteger.ZERO;
+		for (long w : weights) {
+			total = total.add(BigInteger.valueOf(w));
+		}
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < parts.length; i++) {
+			sum = sum.add(BigInteger.valueOf(parts[i]));
+			// |part - amount * w / total| < 1
+			BigInteger exact = BigInteger.valueOf(amount).multiply(BigInteger.valueOf(weights[i]));
+			BigInteger diff = BigInteger.valueOf(parts[i]).multiply(total).subtract(exact).abs();
+			if (diff.compareTo(total) >= 0) {
+				fail("Part " + i + " of " + Arrays.toString(parts));
+			}
+			if (weights[i] == 0) {
+				assertEquals(0L, parts[i]);
+			}
+		}
+		assertEquals(BigInteger.valueOf(amount), sum);
+		for (int i = 1; i < parts.length; i++) {
+			int byWeight = weights[i - 1] < weights[i] ? -1 : (weights[i - 1] == weights[i] ? 0 : 1);
+			long a = Math.abs(parts[i - 1]);
+			long b = Math.abs(parts[i]);
+			if (byWeight < 0) {
+				assertTrue(a <= b);
+			} else if (byWeight > 0) {
+				assertTrue(a >= b);
+			}
+		}
+	}
+
+	private static long randomAmount(Random random) {
+		switch (random.nextInt(4)) {
+			case 0:
+				return random.nextInt(1000) - 500;
+			case 1:
+				return random.nextLong();
+			case 2:
+				return Long.MIN_VALUE + random.nextInt(10);
+			default:
+				return random.nextInt();
+		}
+	}
+
+	private static long[] randomWeights(Random random, int n) {
+		long[] weights = new long[n];
+		long bound = random.nextBoolean() ? 100 : Long.MAX_VALUE / n;
+		for (int i = 0; i < n; i++) {
+			weights[i] = random.nextInt(5) == 0 ? 0 : (random.nextLong() & Long.MAX_VALUE) % bound;
+		}
+		weights[random.nextInt(n)] = 1 + random.nextInt(100);
+		return weights;
+	}
+}
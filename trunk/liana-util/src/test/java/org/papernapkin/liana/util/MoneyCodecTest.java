@@ -0,0 +1,142 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyCodec class.
+ *
+ * @author pchapman
+ */
+public class MoneyCodecTest
+{
+	/** Tests that mixed amounts and formats round trip through a buffer. */
+	@Test
+	public void testRoundTrip() {
+		Random random = new Random(32L);
+		DecimalFormat german = (DecimalFormat)NumberFormat.getCurrencyInstance(Locale.GERMANY);
+		german.setPositivePrefix("EUR ");
+		german.setRoundingMode(java.math.RoundingMode.HALF_EVEN);
+		Money[] amounts = new Money[1000];
+		for (int i = 0; i < amounts.length; i++) {
+			switch (random.nextInt(6)) {
+				case 0:
+					break;
+				case 1:
+					amounts[i] = new Money(new BigDecimal(
+							new java.math.BigInteger(100, random), random.nextInt(4)
+						), Locale.GERMANY);
+					break;
+				case 2:
+					amounts[i] = new Money(random.nextInt(), 2, Locale.US)
+						.setRoundingMode(BigDecimal.ROUND_HALF_EVEN);
+					break;
+				case 3:
+					amounts[i] = new Money(random.nextLong(), Locale.US)
+						.setCurrencyFormat(new DecimalFormat("0.00"));
+					break;
+				case 4:
+					amounts[i] = new Money(random.nextInt(), 2, Locale.US)
+						.setCurrencyFormat(german);
+					break;
+				default:
+					amounts[i] = new Money(random.nextLong(), Locale.US);
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(MoneyCodec.encodedLength(amounts));
+		MoneyCodec.encode(amounts, buffer);
+		assertEquals(buffer.capacity(), buffer.position());
+		buffer.flip();
+		Money[] copy = MoneyCodec.decode(buffer);
+		assertEquals(amounts.length, copy.length);
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] == null) {
+				assertNull(copy[i]);
+			} else {
+				assertEquals(amounts[i].getValue(), copy[i].getValue());
+				assertEquals(amounts[i].toString(), copy[i].toString());
+				assertEquals(amounts[i].getRoundingMode(), copy[i].getRoundingMode());
+			}
+		}
+	}
+
+	/** Tests that amounts sharing a format cost ten bytes each. */
+	@Test
+	public void testSize() {
+		Money[] amounts = new Money[100];
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = new Money(i, 2, Locale.US);
+		}
+		int formatLength = MoneyCodec.encodedLength(amounts, 0, 1) - 4 - 10;
+		assertEquals(4 + formatLength + 10 * amounts.length, MoneyCodec.encodedLength(amounts));
+	}
+
+	/** Tests that custom formats are rebuilt with the same settings. */
+	@Test
+	public void testCustomFormat() {
+		DecimalFormat format = (DecimalFormat)NumberFormat.getCurrencyInstance(Locale.FRANCE);
+		format.setNegativePrefix("<");
+		format.setNegativeSuffix(">");
+		format.setMinimumFractionDigits(3);
+		format.setParseBigDecimal(true);
+		Money[] amounts = {new Money(-123456789L, 2, Locale.US).setCurrencyFormat(format)};
+		ByteBuffer buffer = ByteBuffer.allocate(MoneyCodec.encodedLength(amounts));
+		MoneyCodec.encode(amounts, buffer);
+		buffer.flip();
+		Money copy = MoneyCodec.decode(buffer)[0];
+		assertEquals(amounts[0].toString(), copy.toString());
+		for (String n : new String[] { "-1234567.8915", "0.5", "1E+20" }) {
+			assertEquals(format.format(new BigDecimal(n)), copy.getCurrencyFormat().format(new BigDecimal(n)));
+		}
+		assertTrue(copy.getCurrencyFormat().isParseBigDecimal());
+	}
+
+	/** Tests that lengths and rounding modes are checked before use. */
+	@Test
+	public void testInvalid() {
+		// Far more amounts than there are bytes
+		assertInvalid(ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE).put((byte)0), "Invalid length");
+		// An unscaled value longer than the data
+		Money[] amounts = {new Money(new BigDecimal("1E+40"), Locale.US)};
+		ByteBuffer buffer = ByteBuffer.allocate(MoneyCodec.encodedLength(amounts));
+		MoneyCodec.encode(amounts, buffer);
+		buffer.putInt(buffer.position() - 5, Integer.MAX_VALUE);
+		assertInvalid(buffer, "Invalid length");
+		// A rounding mode which BigDecimal does not have
+		buffer = ByteBuffer.allocate(16).putInt(1).put((byte)3).put((byte)99);
+		assertInvalid(buffer, "Invalid rounding mode");
+		// A custom format which does not hold a format
+		buffer = ByteBuffer.allocate(16).putInt(1).put((byte)4).putInt(3).put(new byte[] {1, 2, 3});
+		assertInvalid(buffer, "Invalid currency format");
+	}
+
+	private static void assertInvalid(ByteBuffer buffer, String message) {
+		buffer.flip();
+		try {
+			MoneyCodec.decode(buffer);
+			fail("Decoded invalid data");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncated() {
+		Money[] amounts = {new Money(1L, Locale.US)};
+		ByteBuffer buffer = ByteBuffer.allocate(MoneyCodec.encodedLength(amounts));
+		MoneyCodec.encode(amounts, buffer);
+		buffer.flip();
+		buffer.limit(buffer.limit() - 1);
+		MoneyCodec.decode(buffer);
+	}
+}
@@ -0,0 +1,105 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyColumn class.
+ *
+ * @author pchapman
+ */
+public class MoneyColumnTest
+{
+	/** Tests conversion between Money objects and the column. */
+	@Test
+	public void testConversion() {
+		MoneyColumn column = new MoneyColumn(2, Locale.US, 1);
+		column.add(new Money(new BigDecimal("19.955"), Locale.US));
+		column.add(null);
+		column.add(new Money(new BigDecimal("19.955"), Locale.US).setRoundingMode(BigDecimal.ROUND_HALF_UP));
+		column.add(new Money(5L, Locale.US));
+		assertEquals(4, column.size());
+		assertEquals(1995L, column.getUnits(0));
+		assertTrue(column.isNull(1));
+		assertNull(column.getMoney(1));
+		assertEquals(1996L, column.getUnits(2));
+		assertEquals(new Money(5L, Locale.US), column.getMoney(3));
+		assertEquals("$5.00", column.getMoney(3).toString());
+		assertEquals(new BigDecimal("44.91"), column.sum());
+	}
+
+	/** Tests the bulk operations against a straightforward computation. */
+	@Test
+	public void testBulkOperations() {
+		Random random = new Random(29L);
+		MoneyColumn column = new MoneyColumn(2, Locale.US);
+		long[] values = new long[1000];
+		int nonNull = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (random.nextInt(10) == 0) {
+				column.addNull();
+			} else {
+				values[nonNull++] = random.nextInt(2000) - 1000;
+				column.addUnits(values[nonNull - 1]);
+			}
+		}
+		long[] sorted = Arrays.copyOf(values, nonNull);
+		Arrays.sort(sorted);
+
+		int[] order = column.sortIndices();
+		assertEquals(column.size(), order.length);
+		for (int i = 0; i < nonNull; i++) {
+			assertEquals(sorted[i], column.getUnits(order[i]));
+			if (i > 0 && sorted[i] == sorted[i - 1]) {
+				assertTrue("Sort is not stable", order[i] > order[i - 1]);
+			}
+		}
+		for (int i = nonNull; i < order.length; i++) {
+			assertTrue(column.isNull(order[i]));
+		}
+
+		assertEquals(sorted[0], column.getUnits(column.minIndex()));
+		assertEquals(sorted[nonNull - 1], column.getUnits(column.maxIndex()));
+		assertEquals(sorted[0], column.percentile(0));
+		assertEquals(sorted[nonNull - 1], column.percentile(100));
+		assertEquals(sorted[(nonNull + 1) / 2 - 1], column.percentile(50));
+
+		long total = 0;
+		long[] prefix = column.prefixSums();
+		for (int i = 0; i < column.size(); i++) {
+			total += column.getUnits(i);
+			assertEquals(total, prefix[i]);
+		}
+		assertEquals(BigDecimal.valueOf(total, 2), column.sum());
+
+		int[] rows = column.filterRange(-100, 100);
+		int expected = 0;
+		for (int i = 0; i < nonNull; i++) {
+			if (values[i] >= -100 && values[i] <= 100) {
+				expected++;
+			}
+		}
+		assertEquals(expected, rows.length);
+		for (int row : rows) {
+			assertTrue(!column.isNull(row) && Math.abs(column.getUnits(row)) <= 100);
+		}
+	}
+
+	/** Tests that cleared columns do not keep null markers. */
+	@Test
+	public void testClear() {
+		MoneyColumn column = new MoneyColumn(2, Locale.US);
+		column.addNull();
+		column.clear();
+		column.addUnits(5);
+		assertArrayEquals(new int[] {0}, column.filterRange(5, 5));
+	}
+}
@@ -0,0 +1,136 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyFormat class.
+ *
+ * @author pchapman
+ */
+public class MoneyFormatTest
+{
+	private static final Locale[] LOCALES = {
+		Locale.US, Locale.UK, Locale.GERMANY, Locale.FRANCE, Locale.ITALY,
+		Locale.JAPAN, Locale.CANADA_FRENCH, new Locale("de", "CH"),
+		new Locale("en", "IN"), new Locale("es", "ES"), new Locale("ar", "EG")
+	};
+
+	/**
+	 * Tests that amounts are formatted exactly as the DecimalFormat formats
+	 * them.
+	 */
+	@Test
+	public void testFormatMatchesDecimalFormat() {
+		Random random = new Random(30L);
+		for (Locale locale : LOCALES) {
+			MoneyFormat format = MoneyFormat.getInstance(locale, BigDecimal.ROUND_HALF_UP);
+			DecimalFormat df = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+			for (int i = 0; i < 2000; i++) {
+				long units = random.nextLong() >> random.nextInt(64);
+				int scale = random.nextInt(6);
+				BigDecimal value = BigDecimal.valueOf(units, scale);
+				String expected = df.format(value.setScale(2, BigDecimal.ROUND_HALF_UP));
+				assertEquals(locale + " " + value, expected, format.format(units, scale));
+				assertEquals(locale + " " + value, expected, format.format(value));
+			}
+		}
+	}
+
+	/**
+	 * Tests that formatted amounts parse back to the same value the
+	 * DecimalFormat parses them to.
+	 */
+	@Test
+	public void testParseRoundTrip() throws Exception {
+		Random random = new Random(31L);
+		ParsePosition pos = new ParsePosition(0);
+		for (Locale locale : LOCALES) {
+			MoneyFormat format = MoneyFormat.getInstance(locale, BigDecimal.ROUND_HALF_UP);
+			DecimalFormat df = (DecimalFormat)NumberFormat.getCurrencyInstance(locale);
+			for (int i = 0; i < 2000; i++) {
+				// Kept within the digits a double holds exactly
+				long cents = random.nextLong() % 100000000000000L >> random.nextInt(48);
+				String s = df.format(BigDecimal.valueOf(cents, 2));
+				BigDecimal expected = new BigDecimal(df.parse(s).toString());
+				long units = format.parseUnits(s, 0, s.length(), 2, pos);
+				assertEquals(locale + " " + s, -1, pos.getErrorIndex());
+				assertEquals(locale + " " + s, 0, expected.compareTo(BigDecimal.valueOf(units, 2)));
+				// The scale too is that of the DecimalFormat's result
+				assertEquals(locale + " " + s, expected, new Money(s, locale).getValue());
+				assertEquals(locale + " " + s, expected, new Money(locale).parse(s).getValue());
+			}
+		}
+	}
+
+	/** Tests the common locales are handled without the DecimalFormat. */
+	@Test
+	public void testCompiled() {
+		for (Locale locale : new Locale[] {Locale.US, Locale.GERMANY, Locale.JAPAN}) {
+			MoneyFormat format = MoneyFormat.getInstance(locale, BigDecimal.ROUND_HALF_UP);
+			assertTrue(locale.toString(), format.isCompiledFormat());
+			assertTrue(locale.toString(), format.isCompiledParse());
+		}
+	}
+
+	/** Tests parsing plain numbers, regions, rounding and bad input. */
+	@Test
+	public void testParseUnits() {
+		MoneyFormat format = MoneyFormat.getInstance(Locale.US, BigDecimal.ROUND_HALF_UP);
+		ParsePosition pos = new ParsePosition(0);
+
+		assertEquals(-123450L, format.parseUnits("-1234.5", 0, 7, 2, pos));
+		assertEquals(-1, pos.getErrorIndex());
+		assertEquals(7, pos.getIndex());
+		assertEquals(1235L, format.parseUnits("12.345", 0, 6, 2, pos));
+		assertEquals(-1235L, format.parseUnits("-12.345", 0, 7, 2, pos));
+		assertEquals(12L, format.parseUnits("12.345", 0, 6, 0, pos));
+		assertEquals(50L, format.parseUnits(".5", 0, 2, 2, pos));
+
+		char[] chars = "a,19.95,b".toCharArray();
+		CharBuffer buffer = CharBuffer.wrap(chars);
+		assertEquals(1995L, format.parseUnits(buffer, 2, 7, 2, pos));
+		assertEquals(-1, pos.getErrorIndex());
+
+		format.parseUnits("12x", 0, 3, 2, pos);
+		assertEquals(2, pos.getErrorIndex());
+		format.parseUnits("", 0, 0, 2, pos);
+		assertTrue(pos.getErrorIndex() >= 0);
+		format.parseUnits("-", 0, 1, 2, pos);
+		assertTrue(pos.getErrorIndex() >= 0);
+		format.parseUnits("99999999999999999999", 0, 20, 2, pos);
+		assertTrue(pos.getErrorIndex() >= 0);
+	}
+
+	/** Tests amounts the compiled parser declines still parse as before. */
+	@Test
+	public void testFallback() throws Exception {
+		assertEquals(new BigDecimal("1.234"), new Money("1.234", Locale.US).getValue());
+		assertEquals(new BigDecimal("1E+3"), new Money("1E3", Locale.US).getValue());
+		StringBuilder sb = new StringBuilder();
+		new Money("1.234", Locale.US).appendTo(sb);
+		assertEquals(new Money("1.234", Locale.US).toString(), sb.toString());
+	}
+
+	/** Tests that parsed amounts keep the scale they had before compiling. */
+	@Test
+	public void testParsedScale() throws Exception {
+		NumberFormat df = NumberFormat.getCurrencyInstance(Locale.US);
+		for (String s : new String[] { "$1.50", "$1.00", "$0.05", "$1,234.10", "$0.00", "$12,345,678.90" }) {
+			BigDecimal expected = new BigDecimal(df.parse(s).toString());
+			assertEquals(s, expected, new Money(s, Locale.US).getValue());
+		}
+		for (String s : new String[] { "1.5", "1.50", "1", "-1.", "+.5", "1.500", "0.000000000000000000000" }) {
+			assertEquals(s, new BigDecimal(s), new Money(s, Locale.US).getValue());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.MoneyHistogram class and the
+ * consistency of Money.hashCode with Money.equals.
+ *
+ * @author pchapman
+ */
+public class MoneyHistogramTest
+{
+	/** Tests that equal amounts of different scales hash alike. */
+	@Test
+	public void testHashCodeConsistentWithEquals() {
+		String[][] equal = {
+			{"1.0", "1.00", "1"},
+			{"0", "0.00", "0E+3"},
+			{"-100", "-1E+2", "-100.000"},
+			{"123456789012345678901234567890", "123456789012345678901234567890.000"},
+			{"12.3400", "12.34"},
+		};
+		for (String[] group : equal) {
+			Money first = new Money(new BigDecimal(group[0]), Locale.US);
+			for (String s : group) {
+				Money m = new Money(new BigDecimal(s), Locale.US);
+				assertEquals(s, first, m);
+				assertEquals(s, first.hashCode(), m.hashCode());
+			}
+		}
+		// Compact and inflated forms of the same value
+		Money compact = new Money(1999L, 2, Locale.US);
+		Money inflated = new Money(new BigDecimal("19.9900000000000000000000"), Locale.US);
+		assertEquals(compact, inflated);
+		assertEquals(compact.hashCode(), inflated.hashCode());
+
+		Map<Money, Integer> map = new HashMap<Money, Integer>();
+		map.put(new Money(new BigDecimal("1.0"), Locale.US), 1);
+		assertEquals(Integer.valueOf(1), map.get(new Money(new BigDecimal("1.00"), Locale.US)));
+	}
+
+	/** Tests counts against a HashMap of Long. */
+	@Test
+	public void testCounts() {
+		Random random = new Random(35L);
+		MoneyHistogram histogram = new MoneyHistogram(2);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for (int i = 0; i < 100000; i++) {
+			long units = (random.nextInt(5000) - 2500) * 100L;
+			Long previous = expected.get(units);
+			assertEquals(previous == null ? 0L : previous.longValue(), histogram.add(units));
+			expected.put(units, previous == null ? 1L : previous + 1);
+		}
+		assertEquals(expected.size(), histogram.size());
+		assertEquals(100000L, histogram.getTotalCount());
+		for (Map.Entry<Long, Long> e : expected.entrySet()) {
+			assertEquals(e.getValue().longValue(), histogram.getCount(e.getKey()));
+		}
+		assertEquals(0L, histogram.getCount(1L));
+		long[] amounts = histogram.amounts();
+		for (int i = 1; i < amounts.length; i++) {
+			assertEquals(true, amounts[i - 1] < amounts[i]);
+		}
+	}
+
+	/** Tests counting Money objects and finding duplicates. */
+	@Test
+	public void testMoney() {
+		MoneyHistogram histogram = new MoneyHistogram(2);
+		histogram.add(new Money(new BigDecimal("1.0"), Locale.US));
+		histogram.add(new Money(new BigDecimal("1.00"), Locale.US));
+		histogram.add(new Money(new BigDecimal("2.50"), Locale.US));
+		histogram.add((Money)null);
+		assertEquals(2L, histogram.getCount(new Money(1L, Locale.US)));
+		assertEquals(1L, histogram.getNullCount());
+		assertArrayEquals(new long[] {100L}, histogram.duplicates());
+		histogram.clear();
+		assertEquals(0, histogram.size());
+		assertEquals(0L, histogram.getCount(100L));
+	}
+}
@@ -0,0 +1,111 @@
+package org.papernapkin.liana.util;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading and writing Money amounts with JDBC, using an in-memory H2
+ * database.
+ *
+ * @author pchapman
+ */
+public class MoneyJdbcTest
+{
+	private static final int ROWS = 5000;
+
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		conn = DriverManager.getConnection("jdbc:h2:mem:moneyjdbc", "sa", "");
+		Statement stmt = conn.createStatement();
+		stmt.execute(
+				"CREATE TABLE ledger (id INT PRIMARY KEY, amount DECIMAL(20,2), cents BIGINT)"
+			);
+		stmt.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		conn.close();
+	}
+
+	/** Tests that amounts are written and read back exactly. */
+	@Test
+	public void testExactRoundTrip() throws Exception {
+		Money big = new Money(new BigDecimal("123456789012345678.91"));
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO ledger VALUES (?, ?, ?)");
+		ps.setInt(1, 1);
+		Money.setNullableMoney(ps, 2, big);
+		Money.setNullableMoneyUnits(ps, 3, new Money(new BigDecimal("19.955")), 2);
+		ps.executeUpdate();
+		ps.setInt(1, 2);
+		Money.setNullableMoney(ps, 2, null);
+		Money.setNullableMoneyUnits(ps, 3, null, 2);
+		ps.executeUpdate();
+		ps.close();
+
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT amount, cents FROM ledger ORDER BY id");
+		assertTrue(rs.next());
+		assertEquals(big, Money.getNullableMoney(rs, 1));
+		assertEquals(0, big.getValue().compareTo(Money.getNullableMoney(rs, 1).getValue()));
+		assertEquals(new BigDecimal("19.95"), Money.getNullableMoneyUnits(rs, 2, 2).getValue());
+		assertTrue(rs.next());
+		assertNull(Money.getNullableMoney(rs, 1));
+		assertNull(Money.getNullableMoneyUnits(rs, 2, 2));
+		assertEquals(Money.CURRENCY_ZERO, Money.getNonNullableMoney(rs, 1));
+		rs.close();
+		stmt.close();
+	}
+
+	/** Tests reading a whole column into a MoneyColumn. */
+	@Test
+	public void testReadColumn() throws Exception {
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO ledger VALUES (?, ?, ?)");
+		long expected = 0;
+		for (int i = 0; i < ROWS; i++) {
+			ps.setInt(1, i);
+			if (i % 7 == 0) {
+				ps.setNull(2, java.sql.Types.DECIMAL);
+				ps.setNull(3, java.sql.Types.BIGINT);
+			} else {
+				long cents = (i * 7919L) % 1000003L - 500000L;
+				expected += cents;
+				ps.setBigDecimal(2, BigDecimal.valueOf(cents, 2));
+				ps.setLong(3, cents);
+			}
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+
+		for (int c = 1; c <= 2; c++) {
+			Statement stmt = conn.createStatement(
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+				);
+			ResultSet rs = stmt.executeQuery("SELECT amount, cents FROM ledger ORDER BY id");
+			MoneyColumn column = MoneyColumn.read(rs, c, 2, Locale.US, 500, c == 2);
+			rs.close();
+			stmt.close();
+
+			assertEquals(ROWS, column.size());
+			assertTrue(column.isNull(0));
+			assertEquals(BigDecimal.valueOf(expected, 2), column.sum());
+			assertEquals((7919L % 1000003L) - 500000L, column.getUnits(1));
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package org.papernapkin.liana.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the org.papernapkin.liana.util.Money class.
+ *
+ * @author pchapman
+ */
+public class MoneyTest
+{
+	private static final int[] ROUNDING_MODES = {
+		BigDecimal.ROUND_UP, BigDecimal.ROUND_DOWN, BigDecimal.ROUND_CEILING,
+		BigDecimal.ROUND_FLOOR, BigDecimal.ROUND_HALF_UP,
+		BigDecimal.ROUND_HALF_DOWN, BigDecimal.ROUND_HALF_EVEN
+	};
+
+	/**
+	 * Tests that arithmetic on compact values gives the same results as
+	 * arithmetic on the equivalent BigDecimal values.
+	 */
+	@Test
+	public void testCompactArithmetic() {
+		Random random = new Random(26L);
+		for (int i = 0; i < 10000; i++) {
+			long a = random.nextInt() * (long)random.nextInt(1000);
+			long b = random.nextInt();
+			int sa = random.nextInt(5);
+			int sb = random.nextInt(5);
+			Money ma = new Money(a, Math.min(sa, 2), Locale.US);
+			Money mb = new Money(BigDecimal.valueOf(b, sb), Locale.US);
+			BigDecimal ba = ma.getValue();
+			BigDecimal bb = mb.getValue();
+
+			assertEquals(ba.add(bb), ma.add(mb).getValue());
+			assertEquals(ba.subtract(bb), ma.subtract(mb).getValue());
+			assertEquals(ba.multiply(BigDecimal.valueOf(b)), ma.multiply(b).getValue());
+			assertEquals(ba.negate(), ma.negate().getValue());
+			assertEquals(ba.abs(), ma.abs().getValue());
+			assertEquals(ba.compareTo(bb), ma.compareTo(mb));
+			if (b != 0) {
+				assertEquals(
+						ba.divide(BigDecimal.valueOf(b), BigDecimal.ROUND_HALF_UP),
+						ma.divide(b).getValue()
+					);
+			}
+			for (int mode : ROUNDING_MODES) {
+				assertEquals(
+						bb.setScale(2, mode).movePointRight(2).longValue(),
+						mb.setRoundingMode(mode).toLong()
+					);
+			}
+		}
+	}
+
+	/** Tests that results which overflow a long fall back to BigDecimal. */
+	@Test
+	public void testOverflow() {
+		Money max = new Money(Long.MAX_VALUE, 2, Locale.US);
+		Money min = new Money(Long.MIN_VALUE, 0, Locale.US);
+		BigDecimal bmax = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+		BigDecimal bmin = BigDecimal.valueOf(Long.MIN_VALUE);
+
+		assertEquals(bmax.add(bmax), max.add(max).getValue());
+		assertEquals(bmin.subtract(bmax), min.subtract(max).getValue());
+		assertEquals(bmax.multiply(BigDecimal.valueOf(3)), max.multiply(3L).getValue());
+		assertEquals(bmin.negate(), min.negate().getValue());
+		assertEquals(bmin.abs(), min.abs().getValue());
+		assertEquals(bmin.add(bmax), min.add(max).getValue());
+		assertTrue(min.isLessThan(max));
+		assertTrue(max.add(max).subtract(max).isEqual(max));
+	}
+
+	/** Tests that equal values of differing scale compare as equal. */
+	@Test
+	public void testScaleInsensitiveComparison() {
+		Money a = new Money(new BigDecimal("1.0"), Locale.US);
+		Money b = new Money(new BigDecimal("1.00"), Locale.US);
+		assertEquals(0, a.compareTo(b));
+		assertTrue(a.equals(b));
+		assertTrue(new Money(Locale.US).isZero());
+		assertTrue(new Money(-1L, Locale.US).isNegative());
+	}
+
+	/** Tests that formatting is unaffected by the internal representation. */
+	@Test
+	public void testToString() {
+		Money m = new Money(new BigDecimal("1234.5678"), Locale.US);
+		assertEquals("$1,234.56", m.toString());
+		assertEquals("$1,234.57", m.setRoundingMode(BigDecimal.ROUND_HALF_UP).toString());
+		// The negative pattern of the locale differs between JDKs
+		String negative = NumberFormat.getCurrencyInstance(Locale.US).format(new BigDecimal("-1234.56"));
+		assertEquals(negative, m.negate().toString());
+	}
+
+	/** Tests that formatting state is shared rather than copied. */
+	@Test
+	public void testSharedFormat() {
+		Money a = new Money(1L, Locale.US);
+		Money b = new Money(2L, Locale.US).add(a);
+		assertTrue(MoneyFormat.getInstance(Locale.US, BigDecimal.ROUND_DOWN) == MoneyFormat.getInstance(Locale.US, BigDecimal.ROUND_DOWN));
+		assertEquals("$3.00", b.toString());
+		assertEquals(BigDecimal.ROUND_HALF_UP, b.setRoundingMode(BigDecimal.ROUND_HALF_UP).getRoundingMode());
+
+		DecimalFormat format = a.getCurrencyFormat();
+		format.setPositivePrefix("USD ");
+		assertEquals("$1.00", a.toString());
+		Money c = a.setCurrencyFormat(format);
+		format.setPositivePrefix("$$");
+		assertEquals("USD 1.00", c.toString());
+		assertEquals("USD 2.00", c.add(a).toString());
+
+		// Equal custom formats share an instance, whatever the rounding mode
+		format.setPositivePrefix("USD ");
+		assertTrue(c.getMoneyFormat() == a.setCurrencyFormat(format).getMoneyFormat());
+		Money d = c.setRoundingMode(BigDecimal.ROUND_HALF_UP);
+		assertTrue(d.getMoneyFormat() == c.setRoundingMode(BigDecimal.ROUND_HALF_UP).getMoneyFormat());
+		assertTrue(c.getMoneyFormat() == d.setRoundingMode(BigDecimal.ROUND_DOWN).getMoneyFormat());
+		format.setPositivePrefix("USD  ");
+		assertTrue(c.getMoneyFormat() != a.setCurrencyFormat(format).getMoneyFormat());
+	}
+
+	/** Tests that the deprecated fields follow the shared format. */
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testDeprecatedFields() {
+		Money a = new Money(150L, 2, Locale.US);
+		assertEquals(BigDecimal.ROUND_DOWN, a.roundingMode);
+		assertEquals(a.getCurrencyFormat(), a.currencyFormat);
+		Money b = a.setRoundingMode(BigDecimal.ROUND_HALF_EVEN);
+		assertEquals(BigDecimal.ROUND_HALF_EVEN, b.roundingMode);
+		assertEquals(BigDecimal.ROUND_HALF_EVEN, new Money(b).roundingMode);
+		DecimalFormat format = a.getCurrencyFormat();
+		format.setPositivePrefix("USD ");
+		Money c = b.setCurrencyFormat(format);
+		assertEquals(format, c.currencyFormat);
+		assertEquals(BigDecimal.ROUND_HALF_EVEN, c.roundingMode);
+		assertEquals(null, a.value);
+		assertEquals(new BigDecimal("1.50"), a.getInflatedValue());
+	}
+
+	/** Tests that a serialized Money is restored with the same value. */
+	@Test
+	public void testSerialization() throws Exception {
+		Money m = new Money(199500L, 2, Locale.US);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(m);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		Money copy = (Money)in.readObject();
+		assertEquals(m.getValue(), copy.getValue());
+		assertEquals(m.toString(), copy.toString());
+		assertEquals(new BigDecimal("1.00"), copy.subtract(new Money(1994L, Locale.US)).getValue());
+	}
+
+	/**
+	 * Tests that the compact serial form is small, round trips inflated
+	 * values and custom formats, and writes shared formats once per stream.
+	 */
+	@Test
+	public void testCompactSerialForm() throws Exception {
+		Money[] amounts = {
+			new Money(199500L, 2, Locale.US),
+			new Money(new BigDecimal("123456789012345678901234567890.125"), Locale.US),
+			new Money(-5L, Locale.US),
+		};
+		amounts[2] = amounts[2].setCurrencyFormat(new DecimalFormat("#,##0.000 'units'"));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(amounts);
+		out.close();
+		Money[] copy = (Money[])new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())
+			).readObject();
+		for (int i = 0; i < amounts.length; i++) {
+			assertEquals(amounts[i].getValue(), copy[i].getValue());
+			assertEquals(amounts[i].toString(), copy[i].toString());
+			assertEquals(amounts[i].getRoundingMode(), copy[i].getRoundingMode());
+		}
+
+		bytes = new ByteArrayOutputStream();
+		out = new ObjectOutputStream(bytes);
+		out.writeObject(amounts[0]);
+		out.flush();
+		int first = bytes.size();
+		out.writeObject(new Money(1L, Locale.US));
+		out.flush();
+		// The field based form took over 2000 bytes for a single object
+		assertTrue("Serialized size " + first, first < 500);
+		assertTrue("Serialized size " + (bytes.size() - first), bytes.size() - first < 30);
+	}
+
+	/** Writes a Money's format as another object. */
+	private static class ReplacingOutputStream extends ObjectOutputStream
+	{
+		ReplacingOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) {
+			return obj instanceof MoneyFormat ? "not a format" : obj;
+		}
+	}
+
+	private static void assertInvalid(byte[] bytes) throws Exception {
+		try {
+			new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+			fail("Read a tampered stream");
+		} catch (InvalidObjectException e) {
+			// Expected
+		}
+	}
+
+	/** Tests that tampered serial forms are rejected as invalid. */
+	@Test
+	public void testTamperedSerialForm() throws Exception {
+		Money m = new Money(new BigDecimal("123456789012345678901234567890.125"), Locale.US);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(m);
+		out.close();
+		byte[] good = bytes.toByteArray();
+
+		// Find the length written before the unscaled bytes
+		byte[] unscaled = m.getValue().unscaledValue().toByteArray();
+		int at = -1;
+		for (int i = 4; at < 0 && i + unscaled.length <= good.length; i++) {
+			boolean match = good[i - 1] == unscaled.length && good[i - 2] == 0;
+			for (int k = 0; match && k < unscaled.length; k++) {
+				match = good[i + k] == unscaled[k];
+			}
+			if (match) {
+				at = i - 4;
+			}
+		}
+		assertTrue(at >= 0);
+		for (int length : new int[] { 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 65537 }) {
+			byte[] tampered = good.clone();
+			tampered[at] = (byte)(length >>> 24);
+			tampered[at + 1] = (byte)(length >>> 16);
+			tampered[at + 2] = (byte)(length >>> 8);
+			tampered[at + 3] = (byte)length;
+			assertInvalid(tampered);
+		}
+
+		bytes = new ByteArrayOutputStream();
+		out = new ReplacingOutputStream(bytes);
+		out.writeObject(m);
+		out.close();
+		assertInvalid(bytes.toByteArray());
+	}
+
+	/** Tests that a Money serialized by the original class can be read. */
+	@Test
+	public void testReadBaselineSerialForm() throws Exception {
+		ObjectInputStream in = new ObjectInputStream(
+				getClass().getResourceAsStream("money-baseline.ser")
+			);
+		Money m = (Money)in.readObject();
+		in.close();
+		assertEquals(new BigDecimal("-1234.567"), m.getValue());
+		assertEquals(BigDecimal.ROUND_HALF_UP, m.getRoundingMode());
+		assertEquals("($1,234.57)", m.toString());
+	}
+}
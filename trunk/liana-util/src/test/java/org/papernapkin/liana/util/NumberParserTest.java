@@ -0,0 +1,148 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests NumberParser and the parse methods of the number utilities against
+ * the parse methods of java.lang.
+ *
+ * @author pchapman
+ */
+public class NumberParserTest
+{
+	private static final String[] FIXED = new String[] {
+		"", " ", "0", "-0", "+0", "1", "-1", "+", "-", "12a", "a12", " 12", "12 ",
+		"2147483647", "2147483648", "-2147483648", "-2147483649", "32767", "32768",
+		"-32768", "-32769", "9223372036854775807", "9223372036854775808",
+		"-9223372036854775808", "-9223372036854775809", "99999999999999999999",
+		"١٢٣", "00012", "1.5", ".5", "5.", ".", "1e10", "1E-5",
+		"1e", "1e+", "-1.5e-3", "1.5f", "2d", "1.5x", "NaN", "-Infinity",
+		"+Infinity", "Infinity ", "\t3.25\n", "0x1.8p3", "0x1p-2f", "0x1.8", "0xp3",
+		"1.7976931348623157E308", "1e309", "4.9e-324", "1e-400", "123456789012345678",
+		"0.1", "0.30000000000000004", "3.141592653589793", "1234567890.12345",
+		"000000000000000000000000000001.5", "1.000000000000000000000000001",
+		"-0.0", "0e5", "1e22", "1e23", "9007199254740993", "8.98846567431158E307"
+	};
+
+	private static List<String> inputs() {
+		List<String> list = new ArrayList<String>();
+		for (String s : FIXED) {
+			list.add(s);
+		}
+		Random random = new Random(45);
+		String alphabet = "0123456789-+.eE x";
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int len = random.nextInt(12);
+			for (int k = 0; k < len; k++) {
+				// Mostly digits, so that many inputs are valid
+				sb.append(random.nextInt(3) > 0
+						? (char)('0' + random.nextInt(10))
+						: alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			list.add(sb.toString());
+			list.add(Long.toString(random.nextLong() >> random.nextInt(64)));
+			list.add(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			list.add(Double.toString(random.nextInt(1000000) / 1000.0));
+			list.add(Float.toString(random.nextFloat() * 1000));
+		}
+		return list;
+	}
+
+	/** Tests ints, longs and shorts. */
+	@Test
+	public void testIntegral() throws Exception {
+		NumberParser parser = new NumberParser();
+		for (String s : inputs()) {
+			char[] chars = ("##" + s + "#").toCharArray();
+			byte[] bytes = ("##" + s + "#").getBytes("ISO-8859-1");
+			// Characters outside ISO-8859-1 cannot be given as bytes
+			boolean latin = new String(bytes, "ISO-8859-1").equals("##" + s + "#");
+
+			Integer i = null;
+			try {
+				i = Integer.valueOf(Integer.parseInt(s));
+			} catch (NumberFormatException e) {
+				// Invalid
+			}
+			assertEquals(s, i == null ? -7 : i.intValue(), IntegerUtil.parseInt(s, -7));
+			assertEquals(s, i == null ? -7 : i.intValue(), IntegerUtil.parseInt(chars, 2, s.length(), -7));
+			if (latin) {
+				assertEquals(s, i == null ? -7 : i.intValue(), IntegerUtil.parseInt(bytes, 2, s.length(), -7));
+			}
+			assertEquals(s, i == null ? 0 : i.intValue(), IntegerUtil.parseIntegerSafe(s));
+			parser.parseInt(s, 0, s.length());
+			assertEquals(s, i != null, parser.isValid());
+
+			Long l = null;
+			try {
+				l = Long.valueOf(Long.parseLong(s));
+			} catch (NumberFormatException e) {
+				// Invalid
+			}
+			assertEquals(s, l == null ? 3 : l.longValue(), LongUtil.parseLong(s, 3));
+			assertEquals(s, l == null ? 3 : l.longValue(), LongUtil.parseLong(chars, 2, s.length(), 3));
+			assertEquals(s, l == null ? 0 : l.longValue(), LongUtil.parseLongSafe(s));
+
+			Short sh = null;
+			try {
+				sh = Short.valueOf(Short.parseShort(s));
+			} catch (NumberFormatException e) {
+				// Invalid
+			}
+			assertEquals(s, sh == null ? 5 : sh.shortValue(), ShortUtil.parseShort(s, (short)5));
+			assertEquals(s, sh == null ? 0 : sh.shortValue(), ShortUtil.parseShortSafe(s));
+			if (latin) {
+				assertEquals(s, sh == null ? 5 : sh.shortValue(), ShortUtil.parseShort(bytes, 2, s.length(), (short)5));
+			}
+		}
+	}
+
+	/** Tests doubles. */
+	@Test
+	public void testDouble() throws Exception {
+		for (String s : inputs()) {
+			Double d = null;
+			try {
+				d = Double.valueOf(Double.parseDouble(s));
+			} catch (NumberFormatException e) {
+				// Invalid
+			}
+			long expected = Double.doubleToRawLongBits(d == null ? -1.25 : d.doubleValue());
+			assertEquals(s, expected, Double.doubleToRawLongBits(DoubleUtil.parseDouble(s, -1.25)));
+			char[] chars = ("x" + s + "y").toCharArray();
+			assertEquals(s, expected,
+					Double.doubleToRawLongBits(DoubleUtil.parseDouble(chars, 1, s.length(), -1.25)));
+			byte[] bytes = ("x" + s + "y").getBytes("ISO-8859-1");
+			assertEquals(s, expected,
+					Double.doubleToRawLongBits(DoubleUtil.parseDouble(bytes, 1, s.length(), -1.25)));
+			assertEquals(s, d == null ? 0.0 : d.doubleValue(), DoubleUtil.parseDoubleSafe(s), 0.0);
+		}
+	}
+
+	/** Tests the statuses. */
+	@Test
+	public void testStatus() {
+		NumberParser parser = new NumberParser();
+		assertEquals(NumberParser.Status.EMPTY, parser.parseInt((CharSequence)null, 0, 0));
+		assertEquals(NumberParser.Status.EMPTY, parser.parseInt("abc", 1, 1));
+		assertEquals(NumberParser.Status.INVALID, parser.parseInt("-", 0, 1));
+		assertEquals(NumberParser.Status.INVALID, parser.parseLong("1x", 0, 2));
+		assertEquals(NumberParser.Status.OVERFLOW, parser.parseInt("2147483648", 0, 10));
+		assertEquals(0, parser.getInt());
+		assertEquals(NumberParser.Status.OVERFLOW, parser.parseShort("-40000", 0, 6));
+		assertEquals(NumberParser.Status.INVALID, parser.parseShort("99999x", 0, 6));
+		assertEquals(NumberParser.Status.OK, parser.parseShort("a-123b", 1, 5));
+		assertEquals(-123, parser.getShort());
+		assertEquals(NumberParser.Status.EMPTY, parser.parseDouble("  \t", 0, 3));
+		assertEquals(NumberParser.Status.INVALID, parser.parseDouble("1e", 0, 2));
+		assertEquals(NumberParser.Status.OK, parser.parseDouble(" 2.5e1 ", 0, 7));
+		assertEquals(25.0, parser.getDouble(), 0.0);
+		assertEquals(25, parser.getLong());
+	}
+}
@@ -0,0 +1,79 @@
+package org.papernapkin.liana.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the SearchQuery class.
+ *
+ * @author pchapman
+ */
+public class SearchQueryTest
+{
+	/** The former StringUtil.getSearchPhrases, to check the results are unchanged. */
+	private static List<String> legacySearchPhrases(String str) {
+		List<String> searchList = new ArrayList<String>();
+		String phrase = ".*\".+\".*";
+		String word = "[^a-zA-Z0-9]+\\s*";
+
+		if (str.matches(phrase)) {
+			do {
+				int i = str.indexOf('\"');
+				int j = str.indexOf('\"', i+1);
+				searchList.add(str.substring(i+1, j));
+				str = str.replace(str.subSequence(i, j+1), "");
+			} while (str.contains("\""));
+		}
+		if (! str.equalsIgnoreCase("")) {
+			String[] words = str.split(word);
+			for (String w : words) {
+				if (!w.equalsIgnoreCase("")) {
+					searchList.add(w);
+				}
+			}
+		}
+		return searchList;
+	}
+
+	/** Tests that the phrases are those formerly given by getSearchPhrases. */
+	@Test
+	public void testPhrases() {
+		String[] queries = {
+			"", "   ", "chapman", "Philip Chapman", "  o'brien,  smith-jones ", "\"new york\" pizza",
+			"pizza \"new york\" \"san francisco\" sourdough", "\"exact\"", "a\"b c\"d", "\"x\" y \"x\"",
+			"line\none \"not\" quoted", "\"\"", "\"", "ümlaut wörds 42", "x \"a-b\" y"
+		};
+		for (String q : queries) {
+			assertEquals(q, legacySearchPhrases(q), StringUtil.getSearchPhrases(q));
+		}
+		// Formerly an unmatched quote after a phrase threw an exception
+		assertEquals(Arrays.asList("a", "b"), StringUtil.getSearchPhrases("\"a\" b\""));
+	}
+
+	/** Tests matching text. */
+	@Test
+	public void testMatches() {
+		SearchQuery q = SearchQuery.compile("\"New York\" pizza");
+		assertEquals(Arrays.asList("New York", "pizza"), q.getPhrases());
+		assertEquals(Arrays.asList("new", "york", "pizza"), q.getTerms());
+		assertFalse(q.isTermsOnly());
+		assertTrue(q.matches("Best PIZZA in new york"));
+		assertFalse(q.matches("Best pizza in York, New Jersey"));
+		assertTrue(q.matches("Pizzeria", "NEW YORK", null, "pizza"));
+		assertFalse(q.matches("pizza", null));
+
+		q = SearchQuery.compile("straße 7");
+		assertEquals(Arrays.asList("stra", "e", "7"), q.getPhrases());
+		assertTrue(q.isTermsOnly());
+		assertTrue(q.matches("STRASSE 17"));
+		assertTrue(SearchQuery.compile("\"ÄRGER\"").matches("kein ärger"));
+		assertTrue(SearchQuery.compile(" ,; ").isEmpty());
+		assertTrue(SearchQuery.compile(" ,; ").matches("anything"));
+	}
+}
@@ -0,0 +1,261 @@
+package org.papernapkin.liana.util;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Tests the StringUtil class.
+ *
+ * @author pchapman
+ */
+public class StringUtilTest
+{
+	/** The replacements formerly made, one entity at a time. */
+	private static String replaceEach(String s)
+	{
+		return s.replace("&", "&amp;").replace(">", "&gt;").replace("<", "&lt;").replace("\"", "&quot;");
+	}
+
+	/** Tests that entities are replaced as they were by repeated replaces. */
+	@Test
+	public void testReplaceHTMLEntities() throws Exception {
+		String[] samples = {
+			"", "plain text", "&", "<b>\"Fish\" & Chips</b>", "&amp;", "a<<>>b&&c\"\"",
+			"été > ☃", "trailing &"
+		};
+		for (String s : samples) {
+			assertEquals(replaceEach(s), StringUtil.replaceHTMLEntities(s));
+			StringWriter out = new StringWriter();
+			StringUtil.replaceHTMLEntities(s, out);
+			assertEquals(replaceEach(s), out.toString());
+			assertEquals(s, StringUtil.decodeHTMLEntities(StringUtil.replaceHTMLEntities(s)));
+		}
+		String plain = "nothing to escape";
+		assertSame(plain, StringUtil.replaceHTMLEntities(plain));
+		assertNull(StringUtil.replaceHTMLEntities(null));
+	}
+
+	/** Tests decoding entities, leaving unknown ones alone. */
+	@Test
+	public void testDecodeHTMLEntities() throws Exception {
+		assertEquals("<a href=\"x\">&</a>",
+				StringUtil.decodeHTMLEntities("&lt;a href=&quot;x&quot;&gt;&amp;&lt;/a&gt;"));
+		assertEquals("it's 'quoted'", StringUtil.decodeHTMLEntities("it&#39;s &#x27;quoted&#X27;"));
+		assertEquals("&nbsp; &amp &#; &#xZZ; & ;", StringUtil.decodeHTMLEntities("&nbsp; &amp &#; &#xZZ; & ;"));
+		assertEquals("&amp;", StringUtil.decodeHTMLEntities("&amp;amp;"));
+		// Characters beyond the Basic Multilingual Plane, and beyond Unicode
+		assertEquals("\uD83D\uDE00 \uD83D\uDE00", StringUtil.decodeHTMLEntities("&#128512; &#x1F600;"));
+		assertEquals("&#x110000; &#99999999;", StringUtil.decodeHTMLEntities("&#x110000; &#99999999;"));
+		// Not characters, or not written in ASCII digits
+		for (String s : new String[] {
+			"&#0;", "&#x0;", "&#00;", "&#xD800;", "&#xdbff;", "&#56320;", "&#xDFFF;",
+			"&#\u0661\u0662;", "&#x\uFF11;"
+		}) {
+			assertEquals(s, StringUtil.decodeHTMLEntities(s));
+		}
+		assertEquals("\uD7FF\uE000", StringUtil.decodeHTMLEntities("&#xD7FF;&#xE000;"));
+		StringWriter out = new StringWriter();
+		StringUtil.decodeHTMLEntities(new StringBuilder("1 &lt; 2"), out);
+		assertEquals("1 < 2", out.toString());
+		assertNull(StringUtil.decodeHTMLEntities(null));
+	}
+
+	/** Tests tokenizing, segmenting and wrapping against the former code. */
+	@Test
+	public void testSegmentation() {
+		String[] samples = {
+			"", " ", "a", "  leading and trailing  ", "one two three four five six seven",
+			"a,b,,c,", ",", ",,", "averyveryverylongwordindeed and some more", "tabs\tand\nnewlines\r\n here",
+			"ab", "abab", "xabyab"
+		};
+		String[] seps = { ",", " ", "ab", "" };
+		for (String s : samples) {
+			checkSegmentation(s, seps);
+		}
+		Random random = new Random(42);
+		char[] alphabet = { 'a', 'b', 'c', ' ', ' ', ',', '\t', '\n' };
+		for (int n = 0; n < 2000; n++) {
+			char[] chars = new char[random.nextInt(40)];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = alphabet[random.nextInt(alphabet.length)];
+			}
+			checkSegmentation(new String(chars), seps);
+		}
+	}
+
+	private static void checkSegmentation(String s, String[] seps) {
+		for (String sep : seps) {
+			assertArrayEquals(s + "/" + sep, legacyTokenize(s, sep, false), StringUtil.tokenize(s, sep, false));
+			assertArrayEquals(s + "/" + sep, legacyTokenize(s, sep, true), StringUtil.tokenize(s, sep, true));
+		}
+		for (int length = 0; length < 12; length++) {
+			assertEquals(s + "/" + length,
+					Arrays.asList(legacySegment(s, length)), Arrays.asList(StringUtil.segment(s, length)));
+			assertEquals(s + "/" + length, legacyWrapText(s, length), StringUtil.wrapText(s, length));
+		}
+	}
+
+	// The former implementations, kept to check that the results are unchanged
+
+	private static String[] legacySegment(String string, int length) {
+		String segs[];
+		String token;
+		StringBuffer newSeg = new StringBuffer(length);
+		StringTokenizer st = new StringTokenizer(string);
+		List<String> segments = new LinkedList<String>();
+		while (st.hasMoreTokens()) {
+			token = st.nextToken();
+			if ((newSeg.length() + token.length() + 1) > length) {
+				if (token.length() > length) {
+					// Token's length is greater than the length of each
+					// segment. The token will have to be broken up.
+					if ((newSeg.length() + 2) < length) {
+						newSeg.append(' ');
+					} else {
+						segments.add(newSeg.toString());
+						newSeg = new StringBuffer(length);
+					}
+					for (int i = 0; i < token.length(); i++) {
+						if (newSeg.length() < length) {
+							newSeg.append(token.charAt(i));
+						} else {
+							segments.add(newSeg.toString());
+							newSeg = new StringBuffer(length);
+							newSeg.append(token.charAt(i));
+						}
+					}
+				} else {
+					// Break to next segment
+					segments.add(newSeg.toString());
+					newSeg = new StringBuffer(length);
+					newSeg.append(token);
+				}
+			} else {
+				// Add the token to the string.
+				if (newSeg.length() > 0) {
+					newSeg.append(' ');
+				}
+				newSeg.append(token);
+			}
+		}
+		// Build an array of strings from the vector.
+		segments.add(newSeg.toString());
+		segs = new String[segments.size()];
+		for (int i = 0; i < segs.length; i++) {
+			segs[i] = (String) segments.get(i);
+		}
+		// Return the array.
+		return segs;
+	}
+
+	private static String[] legacyTokenize
+		(String string, String sep, boolean emptyElementSignificant)
+	{
+		String s = null;
+		List<String> v = new LinkedList<String>();
+		int j = 0;
+		int i = string.indexOf(sep, j);
+		int l = 0;
+		while (i > -1) {
+			l = i - j ;
+			if (l > 0) {
+				if (j < 0) {
+					j = 0;
+				}
+				s = string.substring(j, i);
+				v.add(s);
+			} else if (emptyElementSignificant) {
+				v.add("");
+			}
+			j = ++i;
+			if (i < string.length()) {
+				i = string.indexOf(sep, j);
+			} else {
+				i = -1;
+			}
+		}
+		
+		// The last element
+		i = string.length();
+		l = i - j ;
+		if (l > 0) {
+			if (j < 0) {
+				j = 0;
+			}
+			s = string.substring(j, string.length());
+			v.add(s);
+		} else if (emptyElementSignificant) {
+			v.add("");
+		}
+
+		String[] returnArray = new String[v.size()];
+		v.toArray((Object[])returnArray);
+		return returnArray;
+	}
+
+	private static String legacyWrapText(String text, int maxWidth)
+	{
+		// Since the default font is probably not a fixed with font, we would
+		// idealy go by display width rather than character width.  However,
+		// we don't do that because it is more CPU intensive to caclulate
+		// display width and reasonably long line usually average out.  We're
+		// not being scientific, just attempting to keep from having a dialog
+		// that stretches across the screen. 
+		char[] chars = text.toCharArray();
+		int i;
+		int lineWidth = 0;
+		StringBuffer sb = new StringBuffer();
+		String s;
+		List<String> words = new LinkedList<String>();
+		
+		// Break the string into words and record any single "word" longer
+		// than the maximum width.
+		for (i = 0; i < chars.length; i++) {
+			if (Character.isWhitespace(chars[i])) {
+				if (sb.length() > 0) {
+					s = sb.toString();
+					sb = new StringBuffer();
+					words.add(s);
+					if (s.length() > maxWidth) {
+						maxWidth = s.length();
+					}
+				}
+			} else {
+				sb.append(chars[i]);
+			}
+		}
+		// Add the last word to the vector;
+		s = sb.toString();
+		sb = new StringBuffer();
+		words.add(s);
+		if (s.length() > maxWidth) {
+			maxWidth = s.length();
+		}
+		
+		// Build the wrapped string.  Perhaps code could be added here to
+		// allow only a maximum number of lines...
+		sb = new StringBuffer();
+		for (i = 0; i < words.size(); i++) {
+			s = (String)words.get(i);
+			if (lineWidth + s.length() > maxWidth) {
+				sb.append('\n');
+				lineWidth = s.length();
+			} else {
+				sb.append(' ');
+				lineWidth = lineWidth + 1 + s.length(); 
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,158 @@
+package org.papernapkin.liana.util;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests TimeBuckets against buckets found with Calendars.
+ *
+ * @author pchapman
+ */
+public class TimeBucketsTest
+{
+	private static final String[] ZONES = new String[] {
+		"UTC", "America/New_York", "Europe/London", "Australia/Lord_Howe",
+		"Asia/Kolkata", "Pacific/Apia", "America/Sao_Paulo"
+	};
+
+	/** The bucket of an instant as found with a Calendar. */
+	private static long calendarBucket(TimeBuckets.Unit unit, Calendar cal, long millis) {
+		cal.setTimeInMillis(millis);
+		switch (unit) {
+			case DAY:
+				return CalendarUtil.toEpochDay(cal);
+			case WEEK:
+				int back = cal.get(Calendar.DAY_OF_WEEK) - cal.getFirstDayOfWeek();
+				return CalendarUtil.toEpochDay(cal) - (back < 0 ? back + 7 : back);
+			case MONTH:
+				return (cal.get(Calendar.YEAR) - 1970) * 12L + cal.get(Calendar.MONTH);
+			default:
+				long month = (cal.get(Calendar.YEAR) - 1970) * 12L + cal.get(Calendar.MONTH);
+				return (long)Math.floor(month / 3.0);
+		}
+	}
+
+	/** Tests random instants and the instants around each change of offset. */
+	@Test
+	public void testBuckets() {
+		Random random = new Random(44);
+		for (String id : ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			for (TimeBuckets.Unit unit : TimeBuckets.Unit.values()) {
+				TimeBuckets buckets = new TimeBuckets(unit, zone, Locale.GERMANY);
+				Calendar cal = Calendar.getInstance(zone, Locale.GERMANY);
+				for (int i = 0; i < 20000; i++) {
+					// From about 1873 to 2066, beyond the table at the start
+					long millis = random.nextLong() % 3000000000000L;
+					assertEquals(id + " " + unit + " " + millis,
+							calendarBucket(unit, cal, millis), buckets.bucketOf(millis));
+				}
+				// Each hour either side of the changes of 2011
+				cal.clear();
+				cal.set(2011, Calendar.JANUARY, 1);
+				long t = cal.getTimeInMillis();
+				int offset = zone.getOffset(t);
+				for (int h = 0; h < 366 * 24; h++, t += 3600000L) {
+					if (zone.getOffset(t) != offset) {
+						offset = zone.getOffset(t);
+						for (long m = t - 7200001L; m < t + 7200001L; m += 600000L) {
+							assertEquals(id + " " + unit + " " + m,
+									calendarBucket(unit, cal, m), buckets.bucketOf(m));
+							assertEquals(calendarBucket(unit, cal, m - 1), buckets.bucketOf(m - 1));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Tests that each instant falls between the start of its bucket and the next. */
+	@Test
+	public void testBucketStarts() {
+		Random random = new Random(441);
+		TimeZone zone = TimeZone.getTimeZone("America/Sao_Paulo");
+		for (TimeBuckets.Unit unit : TimeBuckets.Unit.values()) {
+			TimeBuckets buckets = new TimeBuckets(unit, zone, Locale.US);
+			for (int i = 0; i < 5000; i++) {
+				long millis = random.nextLong() % 2000000000000L;
+				long bucket = buckets.bucketOf(millis);
+				long next = unit == TimeBuckets.Unit.WEEK ? bucket + 7 : bucket + 1;
+				assertTrue(buckets.getStartMillis(bucket) <= millis);
+				assertTrue(millis < buckets.getStartMillis(next));
+				assertEquals(bucket, buckets.bucketOf(buckets.getStartMillis(bucket)));
+			}
+		}
+		TimeBuckets quarters = new TimeBuckets(TimeBuckets.Unit.QUARTER, zone, Locale.US);
+		assertEquals(CalendarUtil.toEpochDay(1969, Calendar.OCTOBER, 1), quarters.getStartDay(-1));
+		assertEquals(CalendarUtil.toEpochDay(2011, Calendar.JULY, 1), quarters.getStartDay(166));
+	}
+
+	/** Tests counts and sums, serially and in parallel. */
+	@Test
+	public void testTotals() throws Exception {
+		Random random = new Random(4444);
+		int n = 100000;
+		long[] millis = new long[n];
+		MoneyColumn amounts = new MoneyColumn(2, Locale.US, n);
+		for (int i = 0; i < n; i++) {
+			millis[i] = 1262304000000L + (long)(random.nextDouble() * 4 * 365 * 86400000L);
+			if (i % 10 == 0) {
+				amounts.addNull();
+			} else {
+				amounts.addUnits(random.nextInt(2000000) - 1000000);
+			}
+		}
+		TimeZone zone = TimeZone.getTimeZone("America/Chicago");
+		TimeBuckets buckets = new TimeBuckets(TimeBuckets.Unit.WEEK, zone, Locale.US);
+		Calendar cal = Calendar.getInstance(zone, Locale.US);
+		Map<Long, Long> counts = new HashMap<Long, Long>();
+		Map<Long, MoneyAccumulator> sums = new HashMap<Long, MoneyAccumulator>();
+		for (int i = 0; i < n; i++) {
+			Long key = Long.valueOf(calendarBucket(TimeBuckets.Unit.WEEK, cal, millis[i]));
+			Long c = counts.get(key);
+			counts.put(key, Long.valueOf(c == null ? 1 : c.longValue() + 1));
+			if (!amounts.isNull(i)) {
+				MoneyAccumulator acc = sums.get(key);
+				if (acc == null) {
+					acc = new MoneyAccumulator();
+					sums.put(key, acc);
+				}
+				acc.add(amounts.getMoney(i));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			TimeBuckets.Totals serial = buckets.sum(millis, amounts, 0, n);
+			TimeBuckets.Totals parallel = buckets.sum(millis, amounts, executor, 7);
+			TimeBuckets.Totals counted = buckets.count(millis, executor, 5);
+			for (TimeBuckets.Totals totals : new TimeBuckets.Totals[] { serial, parallel, counted }) {
+				assertEquals(n, totals.getTotalCount());
+				assertEquals(counts.size(), totals.getBuckets().length);
+				for (long bucket : totals.getBuckets()) {
+					Long key = Long.valueOf(bucket);
+					assertEquals(counts.get(key).longValue(), totals.getCount(bucket));
+					if (totals.hasSums()) {
+						assertEquals(sums.get(key).getSum(), totals.getSum(bucket).getSum());
+						assertEquals(sums.get(key).getCount(), totals.getSum(bucket).getCount());
+					}
+				}
+			}
+			assertEquals(0, serial.getCount(-5));
+			assertNull(serial.getSum(-5));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}